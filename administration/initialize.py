@@ -42,6 +42,8 @@ TYPE_DB = 'type_db'
 BACKENDTOKEN = 'backend-token'
 SHOCK = 'shock'
 GFS = 'gridFS'
+FS = 'filesystem'
+FSDIR = 'filesystem-backend-dir'
 
 REQPARAMS = [MOHOST, MODB]
 AUTHPARAMS = [MOUSER, MOPWD]
@@ -131,7 +133,8 @@ def configDB(wscfg, db):
                   'workspace database name: ' + wscfg[MODB])
             typedb = None
     settings[TYPE_DB] = typedb
-    backend = getinput('Choose a backend: ', ('s', SHOCK), {'g': GFS})
+    backend = getinput('Choose a backend: ', ('s', SHOCK),
+                       {'g': GFS, 'f': FS})
     if backend == 's':
         settings[BACKEND] = SHOCK
         shockurl = input('Please enter the url of the shock server: ')
@@ -154,6 +157,13 @@ def configDB(wscfg, db):
             printerr(shockurl + ' is not a shock server root url')
         settings[SHOCKURL] = j['url']
         settings[SHOCKUSER] = shockuser
+    elif backend == 'f':
+        settings[BACKEND] = FS
+        fsdir = None
+        while not fsdir:
+            fsdir = input('Please enter the directory in which to store ' +
+                          'blobs: ')
+        wscfg[FSDIR] = fsdir
     else:
         settings[BACKEND] = GFS
 
@@ -3963,6 +3963,7 @@ lock_status is a string
 =item Description
 
 List workspaces viewable by the user.
+The results are not paged; all matching workspaces are returned.
 
 =back
 
@@ -4289,6 +4290,7 @@ ListObjectsParams is a reference to a hash where the following keys are defined:
 	includeMetadata has a value which is a Workspace.boolean
 	excludeGlobal has a value which is a Workspace.boolean
 	limit has a value which is an int
+	startafter has a value which is a Workspace.obj_ref
 ws_name is a string
 ws_id is an int
 type_string is a string
@@ -4299,6 +4301,7 @@ timestamp is a string
 epoch is an int
 obj_id is an int
 boolean is an int
+obj_ref is a string
 object_info is a reference to a list containing 11 items:
 	0: (objid) a Workspace.obj_id
 	1: (name) a Workspace.obj_name
@@ -4341,6 +4344,7 @@ ListObjectsParams is a reference to a hash where the following keys are defined:
 	includeMetadata has a value which is a Workspace.boolean
 	excludeGlobal has a value which is a Workspace.boolean
 	limit has a value which is an int
+	startafter has a value which is a Workspace.obj_ref
 ws_name is a string
 ws_id is an int
 type_string is a string
@@ -4351,6 +4355,7 @@ timestamp is a string
 epoch is an int
 obj_id is an int
 boolean is an int
+obj_ref is a string
 object_info is a reference to a list containing 11 items:
 	0: (objid) a Workspace.obj_id
 	1: (name) a Workspace.obj_name
@@ -10964,6 +10969,16 @@ Parameters for the 'list_objects' function.
                         parameter only has an effect when filtering by types alone.
                 int limit - limit the output to X objects. Default and maximum value
                         is 10000. Limit values < 1 are treated as 10000, the default.
+                obj_ref startafter - only return objects after this reference, which
+                        must be of the form X/Y/Z, where X is the workspace ID, Y the object
+                        ID, and Z the version. Objects are returned in order of workspace
+                        ID, object ID, and version descending. To page through objects,
+                        set startafter to the reference of the last object returned by
+                        the previous call. startafter is a plain object reference rather
+                        than an opaque paging token. It cannot be used with the type,
+                        savedby, meta, after, before, after_epoch, or before_epoch
+                        filters, since the results are not sorted when those filters are
+                        set, and the error returned names the filters that conflict.
 
 
 =item Definition
@@ -10991,6 +11006,7 @@ showAllVersions has a value which is a Workspace.boolean
 includeMetadata has a value which is a Workspace.boolean
 excludeGlobal has a value which is a Workspace.boolean
 limit has a value which is an int
+startafter has a value which is a Workspace.obj_ref
 
 </pre>
 
@@ -11018,6 +11034,7 @@ showAllVersions has a value which is a Workspace.boolean
 includeMetadata has a value which is a Workspace.boolean
 excludeGlobal has a value which is a Workspace.boolean
 limit has a value which is an int
+startafter has a value which is a Workspace.obj_ref
 
 
 =end text
@@ -2841,6 +2841,7 @@ class Workspace(object):
     def list_workspace_info(self, params, context=None):
         """
         List workspaces viewable by the user.
+        The results are not paged; all matching workspaces are returned.
         :param params: instance of type "ListWorkspaceInfoParams" (Input
            parameters for the "list_workspace_info" function. Only one of
            each timestamp/epoch pair may be supplied. Optional parameters:
@@ -3086,12 +3087,22 @@ class Workspace(object):
            excludeGlobal - exclude objects in global workspaces. This
            parameter only has an effect when filtering by types alone. int
            limit - limit the output to X objects. Default and maximum value
-           is 10000. Limit values < 1 are treated as 10000, the default.) ->
-           structure: parameter "workspaces" of list of type "ws_name" (A
-           string used as a name for a workspace. Any string consisting of
-           alphanumeric characters and "_", ".", or "-" that is not an
-           integer is acceptable. The name may optionally be prefixed with
-           the workspace owner's user name and a colon, e.g.
+           is 10000. Limit values < 1 are treated as 10000, the default.
+           obj_ref startafter - only return objects after this reference,
+           which must be of the form X/Y/Z, where X is the workspace ID, Y
+           the object ID, and Z the version. Objects are returned in order of
+           workspace ID, object ID, and version descending. To page through
+           objects, set startafter to the reference of the last object
+           returned by the previous call. startafter is a plain object
+           reference rather than an opaque paging token. It cannot be used
+           with the type, savedby, meta, after, before, after_epoch, or
+           before_epoch filters, since the results are not sorted when those
+           filters are set, and the error returned names the filters that
+           conflict.) -> structure: parameter "workspaces" of list of type
+           "ws_name" (A string used as a name for a workspace. Any string
+           consisting of alphanumeric characters and "_", ".", or "-" that is
+           not an integer is acceptable. The name may optionally be prefixed
+           with the workspace owner's user name and a colon, e.g.
            kbasetest:my_workspace.), parameter "ids" of list of type "ws_id"
            (The unique, permanent numerical ID of a workspace.), parameter
            "type" of type "type_string" (A type string. Specifies the type
@@ -3137,7 +3148,17 @@ class Workspace(object):
            "boolean" (A boolean. 0 = false, other = true.), parameter
            "includeMetadata" of type "boolean" (A boolean. 0 = false, other =
            true.), parameter "excludeGlobal" of type "boolean" (A boolean. 0
-           = false, other = true.), parameter "limit" of Long
+           = false, other = true.), parameter "limit" of Long, parameter
+           "startafter" of type "obj_ref" (A string that uniquely identifies
+           an object in the workspace service. The format is [ws_name or
+           id]/[obj_name or id]/[obj_ver]. For example,
+           MyFirstWorkspace/MyFirstObject/3 would identify the third version
+           of an object called MyFirstObject in the workspace called
+           MyFirstWorkspace. 42/Panic/1 would identify the first version of
+           the object name Panic in workspace with id 42. Towel/1/6 would
+           identify the 6th version of the object with id 1 in the Towel
+           workspace.If the version number is omitted, the latest version of
+           the object is assumed.)
         :returns: instance of list of type "object_info" (Information about
            an object, including user provided metadata. obj_id objid - the
            numerical id of the object. obj_name name - the name of the
@@ -0,0 +1,53 @@
+package us.kbase.workspace.performance.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import us.kbase.typedobj.core.ExtractedMetadata;
+import us.kbase.typedobj.core.MetadataExtractionHandler;
+import us.kbase.typedobj.core.MetadataExtractor;
+import us.kbase.typedobj.core.SubdataExtractor;
+import us.kbase.typedobj.core.SubsetSelection;
+import us.kbase.workspace.database.WorkspaceUserMetadata;
+
+/** Benchmarks extracting subsets of and metadata from a typed object.
+ * @author gaprice@lbl.gov
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3G")
+public class ExtractionBenchmark {
+
+	private static final SubsetSelection SELECTION = new SubsetSelection(Arrays.asList(
+			"/name", "/features/[*]/id", "/features/[*]/location"));
+
+	@Benchmark
+	public void subdataExtract(final SyntheticDocument doc) throws Exception {
+		try (final JsonGenerator jgen = new JsonFactory().createGenerator(
+				new NullOutputStream())) {
+			SubdataExtractor.extract(SELECTION, doc.getParser(), jgen);
+		}
+	}
+
+	@Benchmark
+	public ExtractedMetadata extractFields(final SyntheticDocument doc) throws Exception {
+		return MetadataExtractor.extractFields(doc.getTokenSequenceProvider(),
+				new MetadataExtractionHandler(doc.getMetadataSelection(),
+						WorkspaceUserMetadata.MAX_METADATA_SIZE));
+	}
+}
@@ -0,0 +1,50 @@
+package us.kbase.workspace.performance.benchmarks;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.ResourceUsageConfigurationBuilder;
+import us.kbase.workspace.database.ResourceUsageConfigurationBuilder.ResourceUsageConfiguration;
+
+/** Benchmarks caching an object returned from the blob store, using the
+ * default resource limits. Objects larger than the returned data memory limit
+ * are cached in temporary files.
+ * @author gaprice@lbl.gov
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3G")
+public class FileCacheBenchmark {
+
+	private static final ResourceUsageConfiguration CFG =
+			new ResourceUsageConfigurationBuilder().build();
+
+	@Benchmark
+	public void createBAFC(final SyntheticDocument doc, final Blackhole bh)
+			throws Exception {
+		// as in the workspace, a new manager is created for each get objects call
+		final ByteArrayFileCacheManager man = new ByteArrayFileCacheManager(
+				CFG.getMaxReturnedDataMemoryUsage(), CFG.getMaxReturnedDataSize() * 2L,
+				doc.getTempFilesManager());
+		final ByteArrayFileCache bafc;
+		try (final InputStream is = doc.getInputStream()) {
+			bafc = man.createBAFC(is, true, true);
+		}
+		bh.consume(bafc.getSize());
+		bafc.destroy();
+	}
+}
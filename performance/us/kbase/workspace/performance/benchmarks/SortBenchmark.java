@@ -0,0 +1,80 @@
+package us.kbase.workspace.performance.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import us.kbase.common.utils.sortjson.UTF8JsonSorterFactory;
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.typedobj.core.TypedObjectValidator;
+import us.kbase.typedobj.core.ValidatedTypedObject;
+import us.kbase.typedobj.idref.IdReferenceHandlerSet;
+import us.kbase.typedobj.idref.IdReferenceHandlerSetFactory;
+import us.kbase.workspace.database.ResourceUsageConfigurationBuilder;
+import us.kbase.workspace.database.ResourceUsageConfigurationBuilder.ResourceUsageConfiguration;
+
+/** Benchmarks relabeling and sorting a validated typed object, using the
+ * default resource limits. As when saving objects, objects larger than the
+ * incoming data memory limit are sorted via temporary files.
+ * @author gaprice@lbl.gov
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3G")
+public class SortBenchmark {
+
+	private static final ResourceUsageConfiguration CFG =
+			new ResourceUsageConfigurationBuilder().build();
+
+	private ValidatedTypedObject vto;
+	private UTF8JsonSorterFactory fac;
+	// null if the object is sorted in memory
+	private TempFilesManager tfm;
+
+	@Setup
+	public void setUp(final SyntheticDocument doc) throws Exception {
+		final IdReferenceHandlerSet<String> handlers =
+				new IdReferenceHandlerSetFactory(100).createHandlers(String.class);
+		vto = new TypedObjectValidator(doc.getTypeProvider()).validate(
+				doc.getUObject(), SyntheticDocument.TYPE, handlers);
+		handlers.processIDs();
+		fac = new UTF8JsonSorterFactory(CFG.getMaxRelabelAndSortMemoryUsage());
+		if (vto.calculateRelabeledSize() > CFG.getMaxIncomingDataMemoryUsage()) {
+			tfm = doc.getTempFilesManager();
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		vto.destroyCachedResources();
+	}
+
+	@Benchmark
+	public ValidatedTypedObject sort() throws Exception {
+		vto.sort(fac, tfm);
+		return vto;
+	}
+
+	/* Always uses temporary files, and so is only comparable to sort() for
+	 * large objects.
+	 */
+	@Benchmark
+	public ValidatedTypedObject relabelAndSort(final SyntheticDocument doc) throws Exception {
+		vto.relabelAndSort(CFG.getMaxRelabelAndSortMemoryUsage(), doc.getTempFilesManager());
+		return vto;
+	}
+}
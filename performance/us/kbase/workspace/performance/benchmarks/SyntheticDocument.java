@@ -0,0 +1,272 @@
+package us.kbase.workspace.performance.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import us.kbase.common.service.JsonTokenStream;
+import us.kbase.common.service.UObject;
+import us.kbase.typedobj.core.AbsoluteTypeDefId;
+import us.kbase.typedobj.core.JsonTokenValidationSchema;
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.typedobj.core.TokenSequenceProvider;
+import us.kbase.typedobj.core.TypeDefId;
+import us.kbase.typedobj.core.TypeDefName;
+import us.kbase.typedobj.core.TypeProvider;
+import us.kbase.typedobj.exceptions.NoSuchTypeException;
+
+/** A synthetic, genome like typed object shared by the benchmarks. The
+ * object is written to a temporary file once per trial and, other than for
+ * the largest size, also held in memory.
+ *
+ * The object's keys are not sorted and it contains no ID references, so
+ * sorting has work to do but no ID handlers are required.
+ *
+ * The type schema is served from memory, so no type database, MongoDB, or
+ * type compiler is required.
+ * @author gaprice@lbl.gov
+ *
+ */
+@State(Scope.Benchmark)
+public class SyntheticDocument {
+
+	/** The sizes of the benchmarked objects. */
+	public enum Size {
+		/** About 2 KB. */
+		small (2 * 1024),
+		/** About 1 MB. */
+		medium (1024 * 1024),
+		/** About 500 MB. The object is never held in memory. */
+		large (500L * 1024 * 1024);
+
+		private final long bytes;
+
+		private Size(final long bytes) {
+			this.bytes = bytes;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		public boolean inMemory() {
+			return this != large;
+		}
+	}
+
+	public static final TypeDefId TYPE = new TypeDefId("Bench.Genome");
+	private static final AbsoluteTypeDefId ABS_TYPE =
+			new AbsoluteTypeDefId(new TypeDefName("Bench.Genome"), 1, 0);
+
+	private static final String STRING = "{\"type\": \"string\"}";
+	private static final String INT = "{\"type\": \"integer\"}";
+	private static final String SCHEMA =
+			"{\"id\": \"Genome\", \"type\": \"object\", \"original-type\": \"kidl-structure\"," +
+			" \"metadata-ws\": {\"Name\": \"name\", \"Source\": \"source\"," +
+			" \"Number features\": \"length(features)\"}," +
+			" \"properties\": {" +
+				"\"name\": " + STRING + ", \"id\": " + STRING + ", \"source\": " + STRING + "," +
+				"\"features\": {\"type\": \"array\", \"original-type\": \"kidl-list\"," +
+				" \"items\": {\"id\": \"Feature\", \"type\": \"object\"," +
+				" \"original-type\": \"kidl-structure\", \"properties\": {" +
+					"\"id\": " + STRING + ", \"type\": " + STRING + "," +
+					"\"location\": {\"type\": \"array\", \"items\": {\"type\": \"array\"," +
+					" \"items\": [" + STRING + ", " + INT + ", " + STRING + ", " + INT + "]," +
+					" \"minItems\": 4, \"maxItems\": 4}}," +
+					"\"function\": " + STRING + ", \"protein_translation\": " + STRING + "," +
+					"\"aliases\": {\"type\": \"object\", \"original-type\": \"kidl-mapping\"," +
+					" \"additionalProperties\": " + STRING + "}}," +
+				" \"additionalProperties\": true," +
+				" \"required\": [\"id\", \"type\", \"location\", \"function\"," +
+				" \"protein_translation\", \"aliases\"]}}," +
+				"\"num_features\": " + INT + "}," +
+			" \"additionalProperties\": true," +
+			" \"required\": [\"name\", \"id\", \"source\", \"features\", \"num_features\"]}";
+
+	private static final String PROTEIN =
+			"MKVLAAGIVGLSLAAQPALAETTPVKVEHLNGKPVTEAEFIKQAAEKGWSVNRLGDNLVTLSAP";
+
+	@Param
+	public Size size;
+
+	private File tempDir;
+	private File file;
+	private byte[] bytes;
+	private TempFilesManager tfm;
+	private JsonTokenValidationSchema schema;
+	private JsonNode metadataSelection;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		tempDir = Files.createTempDirectory("SyntheticDocument").toFile();
+		tfm = new TempFilesManager(tempDir);
+		file = new File(tempDir, "document.json");
+		try (final OutputStream os = new BufferedOutputStream(new FileOutputStream(file))) {
+			write(os, size.getBytes());
+		}
+		if (size.inMemory()) {
+			bytes = Files.readAllBytes(file.toPath());
+		}
+		schema = JsonTokenValidationSchema.parseJsonSchema(SCHEMA);
+		metadataSelection = new ObjectMapper().readTree(SCHEMA).get("metadata-ws");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		tfm.cleanup();
+		FileUtils.deleteDirectory(tempDir);
+	}
+
+	private static void write(final OutputStream os, final long target) throws IOException {
+		final CountingOutputStream cos = new CountingOutputStream(os);
+		final JsonGenerator jgen = new JsonFactory().createGenerator(cos);
+		jgen.writeStartObject();
+		jgen.writeStringField("name", "Synthetic genome");
+		jgen.writeStringField("id", "Bench.1");
+		jgen.writeStringField("source", "benchmark");
+		jgen.writeArrayFieldStart("features");
+		int count = 0;
+		do {
+			jgen.writeStartObject();
+			jgen.writeStringField("id", "Bench.1.CDS." + count);
+			jgen.writeStringField("type", "CDS");
+			jgen.writeArrayFieldStart("location");
+			jgen.writeStartArray();
+			jgen.writeString("contig." + count % 100);
+			jgen.writeNumber(count * 300L % 10000000);
+			jgen.writeString(count % 2 == 0 ? "+" : "-");
+			jgen.writeNumber(300);
+			jgen.writeEndArray();
+			jgen.writeEndArray();
+			jgen.writeStringField("function", "hypothetical protein " + count);
+			jgen.writeStringField("protein_translation", PROTEIN);
+			jgen.writeObjectFieldStart("aliases");
+			jgen.writeStringField("locus_tag", "BENCH_" + count);
+			jgen.writeStringField("gene", "gen" + count);
+			jgen.writeEndObject();
+			jgen.writeEndObject();
+			count++;
+			jgen.flush();
+		} while (cos.getByteCount() < target);
+		jgen.writeEndArray();
+		jgen.writeNumberField("num_features", count);
+		jgen.writeEndObject();
+		jgen.close();
+	}
+
+	/** Get the object data.
+	 * @return the object data, either as a byte array or a file.
+	 */
+	public Object getData() {
+		return bytes != null ? bytes : file;
+	}
+
+	public InputStream getInputStream() throws IOException {
+		return Files.newInputStream(file.toPath());
+	}
+
+	public JsonParser getParser() throws IOException {
+		return new JsonTokenStream(getData());
+	}
+
+	public UObject getUObject() throws IOException {
+		return new UObject(new JsonTokenStream(getData()), null);
+	}
+
+	public TokenSequenceProvider getTokenSequenceProvider() throws IOException {
+		final JsonParser jp = getParser();
+		return new TokenSequenceProvider() {
+
+			@Override
+			public JsonToken nextToken() throws IOException, JsonParseException {
+				return jp.nextToken();
+			}
+
+			@Override
+			public String getText() throws IOException, JsonParseException {
+				return jp.getText();
+			}
+
+			@Override
+			public Number getNumberValue() throws IOException, JsonParseException {
+				return jp.getNumberValue();
+			}
+
+			@Override
+			public void close() throws IOException {
+				jp.close();
+			}
+
+			@Override
+			public boolean isComplete() {
+				return false;
+			}
+		};
+	}
+
+	public TempFilesManager getTempFilesManager() {
+		return tfm;
+	}
+
+	public JsonTokenValidationSchema getSchema() {
+		return schema;
+	}
+
+	public JsonNode getMetadataSelection() {
+		return metadataSelection;
+	}
+
+	public TypeProvider getTypeProvider() {
+		return new TypeProvider() {
+
+			@Override
+			public AbsoluteTypeDefId resolveTypeDef(final TypeDefId typeDefId)
+					throws NoSuchTypeException {
+				checkType(typeDefId);
+				return ABS_TYPE;
+			}
+
+			@Override
+			public String getTypeJsonSchema(final AbsoluteTypeDefId typeDefId)
+					throws NoSuchTypeException {
+				checkType(typeDefId);
+				return SCHEMA;
+			}
+
+			@Override
+			public JsonTokenValidationSchema getTypeValidationSchema(
+					final AbsoluteTypeDefId typeDefId)
+					throws NoSuchTypeException {
+				checkType(typeDefId);
+				return schema;
+			}
+		};
+	}
+
+	private static void checkType(final TypeDefId typeDefId) throws NoSuchTypeException {
+		if (!typeDefId.getType().equals(TYPE.getType())) {
+			throw new NoSuchTypeException("No such type: " + typeDefId.getTypeString());
+		}
+	}
+}
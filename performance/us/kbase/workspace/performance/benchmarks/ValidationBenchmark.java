@@ -0,0 +1,138 @@
+package us.kbase.workspace.performance.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import us.kbase.typedobj.core.AbsoluteTypeDefId;
+import us.kbase.typedobj.core.JsonDocumentLocation;
+import us.kbase.typedobj.core.JsonTokenValidationException;
+import us.kbase.typedobj.core.JsonTokenValidationListener;
+import us.kbase.typedobj.core.JsonTokenValidationSchema;
+import us.kbase.typedobj.core.TypeDefId;
+import us.kbase.typedobj.core.TypeProvider;
+import us.kbase.typedobj.core.TypedObjectValidator;
+import us.kbase.typedobj.core.ValidatedTypedObject;
+import us.kbase.typedobj.idref.IdReference;
+import us.kbase.typedobj.exceptions.NoSuchModuleException;
+import us.kbase.typedobj.exceptions.NoSuchTypeException;
+import us.kbase.typedobj.exceptions.TypeStorageException;
+import us.kbase.typedobj.exceptions.TypedObjectSchemaException;
+import us.kbase.typedobj.idref.IdReferenceHandlerSetFactory;
+
+/** Benchmarks validating a typed object, both via the validator and by
+ * checking the object against the parsed type schema directly. Validation is
+ * benchmarked with the parsed schema fetched from a cache, as the type database
+ * provides it, and with the schema parsed on every call.
+ * @author gaprice@lbl.gov
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3G")
+public class ValidationBenchmark {
+
+	private static final IdReferenceHandlerSetFactory HANDLER_FAC =
+			new IdReferenceHandlerSetFactory(100);
+
+	private TypedObjectValidator validator;
+	private TypedObjectValidator uncachedValidator;
+
+	@Setup
+	public void setUp(final SyntheticDocument doc) {
+		validator = new TypedObjectValidator(doc.getTypeProvider());
+		uncachedValidator = new TypedObjectValidator(uncached(doc.getTypeProvider()));
+	}
+
+	/* Wraps a type provider such that the validation schema is parsed from the schema
+	 * document on every call rather than fetched from a cache.
+	 */
+	private static TypeProvider uncached(final TypeProvider tp) {
+		return new TypeProvider() {
+
+			@Override
+			public AbsoluteTypeDefId resolveTypeDef(final TypeDefId typeDefId)
+					throws NoSuchTypeException, NoSuchModuleException,
+					TypeStorageException {
+				return tp.resolveTypeDef(typeDefId);
+			}
+
+			@Override
+			public String getTypeJsonSchema(final AbsoluteTypeDefId typeDefId)
+					throws NoSuchTypeException, NoSuchModuleException,
+					TypeStorageException {
+				return tp.getTypeJsonSchema(typeDefId);
+			}
+
+			@Override
+			public JsonTokenValidationSchema getTypeValidationSchema(
+					final AbsoluteTypeDefId typeDefId)
+					throws NoSuchTypeException, NoSuchModuleException,
+					TypeStorageException, TypedObjectSchemaException {
+				return JsonTokenValidationSchema.parseJsonSchema(tp.getTypeJsonSchema(typeDefId));
+			}
+		};
+	}
+
+	@Benchmark
+	public ValidatedTypedObject validate(final SyntheticDocument doc) throws Exception {
+		return validate(validator, doc);
+	}
+
+	@Benchmark
+	public ValidatedTypedObject validateUncachedSchema(final SyntheticDocument doc)
+			throws Exception {
+		return validate(uncachedValidator, doc);
+	}
+
+	private ValidatedTypedObject validate(
+			final TypedObjectValidator val,
+			final SyntheticDocument doc)
+			throws Exception {
+		final ValidatedTypedObject vto = val.validate(doc.getUObject(),
+				SyntheticDocument.TYPE, HANDLER_FAC.createHandlers(String.class));
+		if (!vto.isInstanceValid()) {
+			throw new IllegalStateException("Invalid object: " + vto.getErrorMessages());
+		}
+		return vto;
+	}
+
+	@Benchmark
+	public void checkJsonData(final SyntheticDocument doc, final Blackhole bh)
+			throws Exception {
+		doc.getSchema().checkJsonData(doc.getParser(), new JsonTokenValidationListener() {
+
+			@Override
+			public void addError(final String message) throws JsonTokenValidationException {
+				throw new JsonTokenValidationException(message);
+			}
+
+			@Override
+			public void addStringIdRefMessage(
+					final IdReference<String> ref,
+					final JsonDocumentLocation loc) {
+				bh.consume(ref);
+			}
+
+			@Override
+			public void addMetadataWsMessage(final JsonNode selection) {
+				bh.consume(selection);
+			}
+		});
+	}
+}
@@ -0,0 +1,137 @@
+package us.kbase.workspace.performance.workspace;
+
+import static us.kbase.workspace.performance.workspace.Common.printStats;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+
+import com.mongodb.DB;
+import com.mongodb.MongoClient;
+
+import us.kbase.typedobj.core.LocalTypeProvider;
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.typedobj.core.TypeDefId;
+import us.kbase.typedobj.core.TypedObjectValidator;
+import us.kbase.typedobj.db.FileTypeStorage;
+import us.kbase.typedobj.db.TypeDefinitionDB;
+import us.kbase.typedobj.idref.IdReferenceHandlerSetFactory;
+import us.kbase.workspace.database.ObjectIDNoWSNoVer;
+import us.kbase.workspace.database.Provenance;
+import us.kbase.workspace.database.ResourceUsageConfigurationBuilder;
+import us.kbase.workspace.database.Workspace;
+import us.kbase.workspace.database.WorkspaceIdentifier;
+import us.kbase.workspace.database.WorkspaceSaveObject;
+import us.kbase.workspace.database.WorkspaceUser;
+import us.kbase.workspace.database.mongo.GridFSBlobStore;
+import us.kbase.workspace.database.mongo.MongoWorkspaceDB;
+
+/** Times saving batches of objects with varying numbers of save threads
+ * (see {@link ResourceUsageConfigurationBuilder#withSaveObjectsThreads(int)}).
+ * The objects' keys are unsorted, so each object must be sorted prior to
+ * saving. Uses a GridFS backend on a MongoDB instance on localhost. The
+ * database is dropped at the start of the run.
+ */
+public class SaveObjectsThreadsTiming {
+
+	private static final String WS_DB = "ws_perf_save_threads";
+	private static final String USER = "perfuser";
+	private static final String MODULE = "SaveTiming";
+	private static final String SPEC =
+			"module " + MODULE + " {" +
+				"typedef structure {" +
+					"mapping<string, string> m;" +
+					"list<int> l;" +
+				"} Obj;" +
+			"};";
+	private static final TypeDefId TYPE = new TypeDefId(MODULE + ".Obj");
+
+	private static final List<Integer> THREADS = Arrays.asList(1, 2, 4, 8);
+	private static final int ITERS = 10;
+	private static final int BATCH_SIZE = 200;
+	private static final int MAP_SIZE = 2000;
+	private static final int LIST_SIZE = 2000;
+
+	public static void main(final String[] args) throws Exception {
+		final Path tempdir = Files.createTempDirectory("SaveObjectsThreadsTiming");
+		final MongoClient mc = new MongoClient();
+		try {
+			final DB db = mc.getDB(WS_DB);
+			db.dropDatabase();
+
+			final TypeDefinitionDB typeDB = new TypeDefinitionDB(new FileTypeStorage(
+					tempdir.resolve("types").toFile().getAbsolutePath()));
+			typeDB.requestModuleRegistration(MODULE, USER);
+			typeDB.approveModuleRegistrationRequest(USER, MODULE, true);
+			typeDB.registerModule(SPEC, Arrays.asList("Obj"), USER);
+			typeDB.releaseModule(MODULE, USER, false);
+
+			final TempFilesManager tfm = new TempFilesManager(
+					tempdir.resolve("temp").toFile());
+			final Workspace ws = new Workspace(
+					new MongoWorkspaceDB(db, new GridFSBlobStore(db), tfm),
+					new ResourceUsageConfigurationBuilder().build(),
+					new TypedObjectValidator(new LocalTypeProvider(typeDB)));
+			final WorkspaceUser user = new WorkspaceUser(USER);
+			final WorkspaceIdentifier wsi = new WorkspaceIdentifier("savetiming");
+			ws.createWorkspace(user, wsi.getName(), false, null, null);
+
+			final Random rand = new Random(42);
+			int count = 1;
+			for (final int threads: THREADS) {
+				ws.setResourceConfig(new ResourceUsageConfigurationBuilder(
+						ws.getResourceConfig()).withSaveObjectsThreads(threads).build());
+				final List<Long> times = new LinkedList<>();
+				for (int i = 0; i < ITERS; i++) {
+					final List<WorkspaceSaveObject> objs = new LinkedList<>();
+					for (int j = 0; j < BATCH_SIZE; j++) {
+						// unique data per object so each object gets a new blob
+						objs.add(new WorkspaceSaveObject(new ObjectIDNoWSNoVer("obj" + count),
+								makeObject(rand, count), TYPE, null, new Provenance(user),
+								false));
+						count++;
+					}
+					final long start = System.nanoTime();
+					ws.saveObjects(user, wsi, objs, new IdReferenceHandlerSetFactory(100));
+					times.add(System.nanoTime() - start);
+				}
+				long sum = 0;
+				for (final long t: times) {
+					sum += t;
+				}
+				System.out.println(String.format(
+						"Save threads: %s, objects per batch: %s, objects/sec: %.1f",
+						threads, BATCH_SIZE,
+						ITERS * BATCH_SIZE / (sum / 1000000000.0)));
+				System.out.println("Per batch:");
+				printStats(times);
+			}
+		} finally {
+			mc.close();
+			FileUtils.deleteQuietly(tempdir.toFile());
+		}
+	}
+
+	private static Map<String, Object> makeObject(final Random rand, final int id) {
+		final Map<String, String> m = new HashMap<>();
+		for (int i = 0; i < MAP_SIZE; i++) {
+			m.put(Long.toHexString(rand.nextLong()), "val" + id + "-" + i);
+		}
+		final List<Integer> l = new LinkedList<>();
+		for (int i = 0; i < LIST_SIZE; i++) {
+			l.add(rand.nextInt());
+		}
+		final Map<String, Object> obj = new HashMap<>();
+		obj.put("m", m);
+		obj.put("l", l);
+		return obj;
+	}
+
+}
@@ -0,0 +1,532 @@
+package us.kbase.typedobj.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/** A structural index of a JSON document, recording the byte offsets of the values in the
+ * document's largest objects and arrays. The index allows parts of a large document to be read
+ * without parsing the entire document.
+ *
+ * The root of the document, and any object or array at least as large as the expansion size,
+ * is expanded in the index, meaning that the offset of each of its values (and for objects, the
+ * key of each value) is recorded. Smaller objects and arrays are recorded as a single value.
+ * The number of recorded values is capped so that the index stays small compared to the
+ * document; objects and arrays that would exceed the cap are not expanded.
+ *
+ * The document must be valid JSON encoded as UTF-8.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class JsonStructureIndex {
+
+	/** The default minimum size, in bytes, of an object or array for it to be expanded. */
+	public static final long DEFAULT_EXPANSION_SIZE = 1024 * 1024;
+	/** The default maximum number of values recorded in an index. */
+	public static final int DEFAULT_MAX_ENTRIES = 1000000;
+
+	private static final byte[] MAGIC = "KBJSIDX".getBytes(StandardCharsets.US_ASCII);
+	private static final byte VERSION = 1;
+	private static final byte LEAF = 0;
+	private static final byte OBJECT = 1;
+	private static final byte ARRAY = 2;
+	private static final int BUFFER_SIZE = 65536;
+
+	/** A source of byte ranges of a JSON document. */
+	public interface RangeSource {
+
+		/** Open a stream on a range of the document. The caller is responsible for closing
+		 * the stream.
+		 * @param offset the offset of the first byte of the range.
+		 * @param length the length of the range in bytes.
+		 * @return the data in the range.
+		 * @throws IOException if the stream could not be opened.
+		 */
+		InputStream open(long offset, long length) throws IOException;
+	}
+
+	/* A value in the document. Only expanded values record their end and their children. */
+	static class Node {
+
+		private final long start;
+		private long end = -1; // exclusive
+		private boolean array = false;
+		private List<String> keys = null; // null unless an expanded object
+		private List<Node> children = null; // null unless expanded
+		private long entries = 0; // number of values recorded in this subtree
+
+		private Node(final long start) {
+			this.start = start;
+		}
+
+		long getStart() {
+			return start;
+		}
+
+		long getEnd() {
+			return end;
+		}
+
+		boolean isExpanded() {
+			return children != null;
+		}
+
+		boolean isArray() {
+			return array;
+		}
+
+		int size() {
+			return children == null ? 0 : children.size();
+		}
+
+		String getKey(final int index) {
+			return keys.get(index);
+		}
+
+		Node getChild(final int index) {
+			return children.get(index);
+		}
+
+		/* Children don't record their end, so the range of a child extends to the start of the
+		 * next child or the closing bracket of this node. The range thus may include trailing
+		 * whitespace, a separator, and the next key, but always starts with the child's value.
+		 */
+		long getChildEnd(final int index) {
+			return index + 1 < children.size() ? children.get(index + 1).start : end - 1;
+		}
+	}
+
+	private final Node root;
+	private final long size;
+	private final long entries;
+
+	private JsonStructureIndex(final Node root, final long size) {
+		this.root = root;
+		this.size = size;
+		this.entries = root.entries;
+	}
+
+	/** Build an index for a document with the default expansion size and entry limit.
+	 * @param data the document. The stream is not closed.
+	 * @return the index.
+	 * @throws IOException if the document could not be read or is not structurally valid JSON.
+	 */
+	public static JsonStructureIndex build(final InputStream data) throws IOException {
+		return build(data, DEFAULT_EXPANSION_SIZE, DEFAULT_MAX_ENTRIES);
+	}
+
+	/** Build an index for a document.
+	 * @param data the document. The stream is not closed.
+	 * @param expansionSize the minimum size, in bytes, of an object or array for it to be
+	 * expanded. The root of the document is always expanded if the entry limit allows.
+	 * @param maxEntries the maximum number of values to record in the index.
+	 * @return the index.
+	 * @throws IOException if the document could not be read or is not structurally valid JSON.
+	 */
+	public static JsonStructureIndex build(
+			final InputStream data,
+			final long expansionSize,
+			final int maxEntries)
+			throws IOException {
+		if (data == null) {
+			throw new NullPointerException("data");
+		}
+		if (expansionSize < 1 || maxEntries < 0) {
+			throw new IllegalArgumentException(
+					"expansionSize must be at least 1 and maxEntries at least 0");
+		}
+		return new Builder(data, expansionSize, maxEntries).build();
+	}
+
+	Node getRoot() {
+		return root;
+	}
+
+	/** Get the size of the indexed document.
+	 * @return the size of the document in bytes.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/** Get the number of values recorded in the index, not including the root.
+	 * @return the number of values.
+	 */
+	public long getEntryCount() {
+		return entries;
+	}
+
+	/** Serialize the index.
+	 * @return the serialized index.
+	 */
+	public byte[] toBytes() {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(baos);
+		try {
+			out.write(MAGIC);
+			out.writeByte(VERSION);
+			writeVarLong(out, size);
+			writeNode(out, root, 0);
+			out.flush();
+		} catch (IOException e) {
+			throw new RuntimeException("Writing to a byte array failed", e); // impossible
+		}
+		return baos.toByteArray();
+	}
+
+	// offsets are written as deltas from the previous offset to keep the index small
+	private static void writeNode(final DataOutputStream out, final Node n, final long prevStart)
+			throws IOException {
+		writeVarLong(out, n.start - prevStart);
+		if (!n.isExpanded()) {
+			out.writeByte(LEAF);
+			return;
+		}
+		out.writeByte(n.array ? ARRAY : OBJECT);
+		writeVarLong(out, n.end - n.start);
+		writeVarLong(out, n.children.size());
+		long prev = n.start;
+		for (int i = 0; i < n.children.size(); i++) {
+			if (!n.array) {
+				final byte[] key = n.keys.get(i).getBytes(StandardCharsets.UTF_8);
+				writeVarLong(out, key.length);
+				out.write(key);
+			}
+			writeNode(out, n.children.get(i), prev);
+			prev = n.children.get(i).start;
+		}
+	}
+
+	private static void writeVarLong(final DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	/** Deserialize an index.
+	 * @param index the serialized index.
+	 * @return the index.
+	 * @throws IOException if the serialized index is invalid.
+	 */
+	public static JsonStructureIndex fromBytes(final byte[] index) throws IOException {
+		if (index == null) {
+			throw new NullPointerException("index");
+		}
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(index));
+		try {
+			final byte[] magic = new byte[MAGIC.length];
+			in.readFully(magic);
+			if (!Arrays.equals(magic, MAGIC) || in.readByte() != VERSION) {
+				throw new IOException("Invalid structural index header");
+			}
+			final long size = readVarLong(in);
+			final Node root = readNode(in, 0, size);
+			if (in.read() != -1) {
+				throw new IOException("Trailing data in structural index");
+			}
+			return new JsonStructureIndex(root, size);
+		} catch (EOFException e) {
+			throw new IOException("Truncated structural index", e);
+		}
+	}
+
+	private static Node readNode(final DataInputStream in, final long prevStart, final long size)
+			throws IOException {
+		final Node n = new Node(prevStart + readVarLong(in));
+		final byte type = in.readByte();
+		if (type == LEAF) {
+			checkOffset(n.start, size);
+			return n;
+		}
+		if (type != OBJECT && type != ARRAY) {
+			throw new IOException("Invalid node type in structural index: " + type);
+		}
+		n.array = type == ARRAY;
+		n.end = n.start + readVarLong(in);
+		checkOffset(n.end - 1, size);
+		final long count = readVarLong(in);
+		if (count > Integer.MAX_VALUE) {
+			throw new IOException("Invalid child count in structural index: " + count);
+		}
+		n.children = new ArrayList<>();
+		if (!n.array) {
+			n.keys = new ArrayList<>();
+		}
+		long prev = n.start;
+		for (int i = 0; i < count; i++) {
+			if (!n.array) {
+				final long len = readVarLong(in);
+				if (len > in.available()) {
+					throw new IOException("Invalid key length in structural index: " + len);
+				}
+				final byte[] key = new byte[(int) len];
+				in.readFully(key);
+				n.keys.add(new String(key, StandardCharsets.UTF_8));
+			}
+			final Node child = readNode(in, prev, size);
+			if (child.start >= n.end) {
+				throw new IOException("Child offset outside parent in structural index");
+			}
+			n.children.add(child);
+			n.entries += child.entries + 1;
+			prev = child.start;
+		}
+		return n;
+	}
+
+	private static void checkOffset(final long offset, final long size) throws IOException {
+		if (offset < 0 || offset >= size) {
+			throw new IOException("Invalid offset in structural index: " + offset);
+		}
+	}
+
+	private static long readVarLong(final DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			final byte b = in.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				if (value < 0) {
+					throw new IOException("Invalid value in structural index");
+				}
+				return value;
+			}
+		}
+		throw new IOException("Invalid value in structural index");
+	}
+
+	/* Scans the structural characters of the document rather than using a JSON parser, since
+	 * parsers don't reliably report the offset at which each value starts.
+	 */
+	private static class Builder {
+
+		private final InputStream in;
+		private final long expansionSize;
+		private final int maxEntries;
+		private final byte[] buf = new byte[BUFFER_SIZE];
+		private long bufOffset = 0; // the offset of buf[0] in the document
+		private int len = 0;
+		private int ptr = 0;
+		private long entries = 0;
+
+		private Builder(final InputStream in, final long expansionSize, final int maxEntries) {
+			this.in = in;
+			this.expansionSize = expansionSize;
+			this.maxEntries = maxEntries;
+		}
+
+		private static class Frame {
+			private final Node node;
+			private final boolean object;
+			private final List<String> keys;
+			private final List<Node> children = new ArrayList<>();
+			private boolean expectKey;
+			private String key = null;
+
+			private Frame(final Node node, final boolean object) {
+				this.node = node;
+				this.object = object;
+				keys = object ? new ArrayList<String>() : null;
+				expectKey = object;
+			}
+		}
+
+		private int read() throws IOException {
+			while (ptr == len) {
+				bufOffset += len;
+				ptr = 0;
+				len = in.read(buf);
+				if (len < 0) {
+					len = 0;
+					return -1;
+				}
+			}
+			return buf[ptr++] & 0xFF;
+		}
+
+		// the offset of the next byte to be read
+		private long offset() {
+			return bufOffset + ptr;
+		}
+
+		private JsonStructureIndex build() throws IOException {
+			final Deque<Frame> stack = new ArrayDeque<>();
+			Node root = null;
+			int c;
+			while ((c = read()) >= 0) {
+				final long at = offset() - 1;
+				switch (c) {
+					case ' ': case '\t': case '\n': case '\r': case ':':
+						break;
+					case ',':
+						if (!stack.isEmpty() && stack.peek().object) {
+							stack.peek().expectKey = true;
+						}
+						break;
+					case '{': case '[':
+						final Node n = new Node(at);
+						root = add(stack, root, n, at);
+						stack.push(new Frame(n, c == '{'));
+						break;
+					case '}': case ']':
+						if (stack.isEmpty() || stack.peek().object != (c == '}')) {
+							throw new IOException("Unbalanced JSON at byte " + at);
+						}
+						final Frame f = stack.pop();
+						finish(f, at + 1, stack.isEmpty());
+						break;
+					case '"':
+						if (!stack.isEmpty() && stack.peek().expectKey) {
+							stack.peek().key = readKey(at);
+							stack.peek().expectKey = false;
+						} else {
+							root = add(stack, root, new Node(at), at);
+							skipString(at);
+						}
+						break;
+					default:
+						root = add(stack, root, new Node(at), at);
+						skipScalar();
+				}
+			}
+			if (root == null || !stack.isEmpty()) {
+				throw new IOException("Truncated JSON at byte " + offset());
+			}
+			if (!root.isExpanded()) {
+				root.end = offset();
+			}
+			return new JsonStructureIndex(root, offset());
+		}
+
+		private Node add(final Deque<Frame> stack, final Node root, final Node n, final long at)
+				throws IOException {
+			if (stack.isEmpty()) {
+				if (root != null) {
+					throw new IOException("Multiple root values in JSON at byte " + at);
+				}
+				return n;
+			}
+			final Frame f = stack.peek();
+			if (f.object) {
+				if (f.key == null) {
+					throw new IOException("Missing key in JSON object at byte " + at);
+				}
+				f.keys.add(f.key);
+				f.key = null;
+			}
+			f.children.add(n);
+			return root;
+		}
+
+		private void finish(final Frame f, final long end, final boolean isRoot) {
+			final Node n = f.node;
+			n.end = end;
+			long childEntries = 0;
+			for (final Node child: f.children) {
+				childEntries += child.entries;
+			}
+			if ((isRoot || end - n.start >= expansionSize) &&
+					entries + f.children.size() <= maxEntries) {
+				n.array = !f.object;
+				n.keys = f.keys;
+				n.children = f.children;
+				n.entries = childEntries + f.children.size();
+				entries += f.children.size();
+			} else {
+				// discard any expanded descendants along with the children
+				entries -= childEntries;
+			}
+		}
+
+		private void skipString(final long start) throws IOException {
+			int c;
+			while ((c = read()) != '"') {
+				if (c == '\\') {
+					c = read();
+				}
+				if (c < 0) {
+					throw new IOException("Unterminated string in JSON at byte " + start);
+				}
+			}
+		}
+
+		private void skipScalar() throws IOException {
+			int c;
+			while ((c = read()) >= 0) {
+				if (c == ',' || c == ']' || c == '}' || c == ':' ||
+						c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+					ptr--; // the byte was read from the current buffer, so this is safe
+					return;
+				}
+			}
+		}
+
+		private String readKey(final long start) throws IOException {
+			final ByteArrayOutputStream key = new ByteArrayOutputStream();
+			boolean escaped = false;
+			int c;
+			while ((c = read()) != '"') {
+				if (c == '\\') {
+					escaped = true;
+					key.write(c);
+					c = read();
+				}
+				if (c < 0) {
+					throw new IOException("Unterminated string in JSON at byte " + start);
+				}
+				key.write(c);
+			}
+			final String s = new String(key.toByteArray(), StandardCharsets.UTF_8);
+			return escaped ? unescape(s, start) : s;
+		}
+
+		private static String unescape(final String s, final long start) throws IOException {
+			final StringBuilder sb = new StringBuilder(s.length());
+			for (int i = 0; i < s.length(); i++) {
+				final char c = s.charAt(i);
+				if (c != '\\') {
+					sb.append(c);
+					continue;
+				}
+				i++;
+				final char e = s.charAt(i); // strings can't end in an escape
+				switch (e) {
+					case '"': case '\\': case '/': sb.append(e); break;
+					case 'b': sb.append('\b'); break;
+					case 'f': sb.append('\f'); break;
+					case 'n': sb.append('\n'); break;
+					case 'r': sb.append('\r'); break;
+					case 't': sb.append('\t'); break;
+					case 'u':
+						if (i + 4 >= s.length()) {
+							throw new IOException("Invalid escape in JSON string at byte " +
+									start);
+						}
+						try {
+							sb.append((char) Integer.parseInt(s.substring(i + 1, i + 5), 16));
+						} catch (NumberFormatException ex) {
+							throw new IOException("Invalid escape in JSON string at byte " +
+									start, ex);
+						}
+						i += 4;
+						break;
+					default:
+						throw new IOException("Invalid escape in JSON string at byte " + start);
+				}
+			}
+			return sb.toString();
+		}
+	}
+}
@@ -55,6 +55,15 @@ public class JsonTokenStreamWriter {
 		JsonToken t = src.nextToken();
 		if (src.isComplete() || jgen == null)
 			return t;
+		writeCurrentToken(t, src, jgen);
+		return t;
+	}
+	
+	/**
+	 * Write a single token, the current token of the source, to the generator.
+	 */
+	void writeCurrentToken(JsonToken t, TokenSequenceProvider src,
+			JsonGenerator jgen) throws IOException {
 		if (t == JsonToken.START_ARRAY) {
 			jgen.writeStartArray();
 		} else if (t == JsonToken.START_OBJECT) {
@@ -101,6 +110,5 @@ public class JsonTokenStreamWriter {
 		} else {
 			throw new IOException("Unexpected token type: " + t);
 		}
-		return t;
 	}
 }
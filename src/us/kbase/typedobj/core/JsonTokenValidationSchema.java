@@ -5,6 +5,7 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -24,7 +25,8 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
- * This is main validation algorithm.
+ * This is main validation algorithm. Schema trees are immutable once parsed and
+ * so may be cached and shared between threads validating concurrently.
  * @author rsutormin
  */
 public class JsonTokenValidationSchema {
@@ -114,21 +116,23 @@ public class JsonTokenValidationSchema {
 			}
 			
 			ret.idReference = new IdRefDescr(new IdReferenceType(idType),
-					attributes);
+					Collections.unmodifiableList(attributes));
 		}
 		if (ret.type == Type.object) {
 			if (data.containsKey("metadata-ws"))
 				ret.metadataWs = UObject.transformObjectToJackson(data.get("metadata-ws"));
 			
-			ret.objectProperties = new LinkedHashMap<String, JsonTokenValidationSchema>();
+			final Map<String, JsonTokenValidationSchema> properties =
+					new LinkedHashMap<String, JsonTokenValidationSchema>();
 			Map<String, Object> props = (Map<String, Object>)data.get("properties");
 			if (props != null) {
 				for (Map.Entry<String, Object> entry : props.entrySet()) {
 					String prop = entry.getKey();
 					Map<String, Object> propType = (Map<String, Object>)entry.getValue();
-					ret.objectProperties.put(prop, parseJsonSchema(propType));
+					properties.put(prop, parseJsonSchema(propType));
 				}
 			}
+			ret.objectProperties = Collections.unmodifiableMap(properties);
 			Object addProps = data.get("additionalProperties");
 			if (addProps != null) {
 				if (addProps instanceof Map) {
@@ -138,21 +142,24 @@ public class JsonTokenValidationSchema {
 					ret.objectAdditionalPropertiesBoolean = (Boolean)addProps;
 				}
 			}
-			ret.objectRequired = new LinkedHashMap<String, Integer>();
+			final Map<String, Integer> required = new LinkedHashMap<String, Integer>();
 			List<String> reqList = (List<String>)data.get("required");
 			if (reqList != null) {
 				for (String reqItem : reqList)
-					ret.objectRequired.put(reqItem, ret.objectRequired.size());
+					required.put(reqItem, required.size());
 			}
+			ret.objectRequired = Collections.unmodifiableMap(required);
 		} else if (ret.type == Type.array) {
 			Object items = data.get("items");
 			if (items instanceof Map) {
 				ret.arrayItems = parseJsonSchema((Map<String, Object>)items);
 			} else {
 				List<Map<String, Object>> itemList = (List<Map<String, Object>>)items;
-				ret.arrayItemList = new ArrayList<JsonTokenValidationSchema>();
+				final List<JsonTokenValidationSchema> itemSchemas =
+						new ArrayList<JsonTokenValidationSchema>();
 				for (Map<String, Object> item : itemList)
-					ret.arrayItemList.add(parseJsonSchema(item));
+					itemSchemas.add(parseJsonSchema(item));
+				ret.arrayItemList = Collections.unmodifiableList(itemSchemas);
 			}
 			if (data.get("minItems") != null)
 				ret.arrayMinItems = Integer.parseInt("" + data.get("minItems"));
@@ -616,8 +623,8 @@ public class JsonTokenValidationSchema {
 
 
 	private static class IdRefDescr {
-		IdReferenceType idType;
-		List<String> attributes;
+		final IdReferenceType idType;
+		final List<String> attributes;
 		public IdRefDescr(IdReferenceType idType, List<String> attributes) {
 			this.idType = idType;
 			this.attributes = attributes;
@@ -4,6 +4,7 @@ import us.kbase.typedobj.db.TypeDefinitionDB;
 import us.kbase.typedobj.exceptions.NoSuchModuleException;
 import us.kbase.typedobj.exceptions.NoSuchTypeException;
 import us.kbase.typedobj.exceptions.TypeStorageException;
+import us.kbase.typedobj.exceptions.TypedObjectSchemaException;
 
 /** A type provider for the typed object validator that takes a direct instance
  * of a type database.
@@ -39,4 +40,12 @@ public class LocalTypeProvider implements TypeProvider {
 		return typeDB.getJsonSchemaDocument(typeDefId);
 	}
 
+	@Override
+	public JsonTokenValidationSchema getTypeValidationSchema(
+			AbsoluteTypeDefId typeDefId)
+			throws NoSuchTypeException, NoSuchModuleException,
+			TypeStorageException, TypedObjectSchemaException {
+		return typeDB.getValidationSchema(typeDefId);
+	}
+
 }
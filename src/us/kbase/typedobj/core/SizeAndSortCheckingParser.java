@@ -0,0 +1,136 @@
+package us.kbase.typedobj.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserDelegate;
+
+import us.kbase.common.utils.CountingOutputStream;
+
+/**
+ * A parser that, as the tokens of a single JSON value are read from it,
+ * calculates the size of the value when written by a
+ * {@link JsonTokenStreamWriter} and whether the keys of every map in the value
+ * are sorted. This allows the validator to calculate the size of an object
+ * that contains no ID references - and so will not change when relabeled -
+ * while validating, rather than in a separate pass over the data.
+ *
+ * Checking may be stopped at any point, e.g. when an ID reference is found, in
+ * which case no results are available.
+ * @author gaprice@lbl.gov
+ */
+class SizeAndSortCheckingParser extends JsonParserDelegate {
+
+	private final CountingOutputStream cos = new CountingOutputStream();
+	private final JsonGenerator jgen;
+	private final JsonTokenStreamWriter writer = new JsonTokenStreamWriter();
+	private final TokenSequenceProvider current;
+	// the previous key of each enclosing map, innermost last. Null if no keys yet.
+	private final List<String> prevKeys = new ArrayList<String>();
+	private int depth = 0;
+	private boolean started = false;
+	private boolean sorted = true;
+	private boolean stopped = false;
+
+	public SizeAndSortCheckingParser(final JsonParser jp) throws IOException {
+		super(jp);
+		jgen = new JsonFactory().createGenerator(cos);
+		current = new TokenSequenceProvider() {
+
+			@Override
+			public JsonToken nextToken() {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public String getText() throws IOException, JsonParseException {
+				return SizeAndSortCheckingParser.this.getText();
+			}
+
+			@Override
+			public Number getNumberValue() throws IOException, JsonParseException {
+				return SizeAndSortCheckingParser.this.getNumberValue();
+			}
+
+			@Override
+			public void close() {}
+
+			@Override
+			public boolean isComplete() {
+				return false;
+			}
+		};
+	}
+
+	@Override
+	public JsonToken nextToken() throws IOException, JsonParseException {
+		final JsonToken t = super.nextToken();
+		if (stopped || t == null || isComplete()) {
+			return t;
+		}
+		started = true;
+		if (t == JsonToken.START_OBJECT) {
+			prevKeys.add(null);
+		} else if (t == JsonToken.END_OBJECT) {
+			prevKeys.remove(prevKeys.size() - 1);
+		} else if (t == JsonToken.FIELD_NAME) {
+			final String key = getText();
+			final int last = prevKeys.size() - 1;
+			final String prev = prevKeys.get(last);
+			if (prev != null && prev.compareTo(key) >= 0) {
+				sorted = false;
+			}
+			prevKeys.set(last, key);
+		}
+		if (t == JsonToken.START_OBJECT || t == JsonToken.START_ARRAY) {
+			depth++;
+		} else if (t == JsonToken.END_OBJECT || t == JsonToken.END_ARRAY) {
+			depth--;
+		}
+		writer.writeCurrentToken(t, current, jgen);
+		return t;
+	}
+
+	/** Stop checking. No results will be available. */
+	public void stop() {
+		stopped = true;
+	}
+
+	/** Returns true if the entire value has been read and checking was not
+	 * stopped.
+	 * @return true if results are available.
+	 */
+	public boolean isComplete() {
+		return !stopped && started && depth == 0;
+	}
+
+	/** Get the size of the value.
+	 * @return the size of the value in bytes.
+	 * @throws IOException if an IO error occurs.
+	 */
+	public long getSize() throws IOException {
+		checkComplete();
+		jgen.flush();
+		return cos.getSize();
+	}
+
+	/** Get whether all the maps in the value are sorted.
+	 * @return true if the maps are sorted.
+	 */
+	public boolean isSorted() {
+		checkComplete();
+		return sorted;
+	}
+
+	private void checkComplete() {
+		if (!isComplete()) {
+			throw new IllegalStateException("Checking is not complete");
+		}
+	}
+}
@@ -0,0 +1,654 @@
+package us.kbase.typedobj.core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonToken;
+
+import us.kbase.common.utils.sortjson.KeyDuplicationException;
+import us.kbase.common.utils.sortjson.TooManyKeysException;
+
+/**
+ * Writes the JSON from a token source with the keys of every map sorted, in a
+ * single pass over the source. Typically the source relabels ID references as
+ * it is read, so relabeling and sorting are done together.
+ *
+ * The entries of each map are buffered until the end of the map, then written
+ * in key order. Buffers are kept in memory until the memory limit is reached,
+ * at which point the buffer currently being written is moved to a temporary
+ * file. Map keys are always kept in memory, and sorting fails if the keys
+ * alone exceed the limit.
+ *
+ * A nested map whose buffer was moved to a file, or that contains such a
+ * map, is not copied into the buffer of its parent. The parent keeps a
+ * reference to it and the map is written in key order when the parent is
+ * written, so the amount written to temporary files does not grow with the
+ * depth of nesting. The keys of such maps are kept in memory until the top
+ * level map is written.
+ *
+ * If the buffer for the top level map is moved to a file and contains no
+ * such references, the sorted output is read directly from that file in key
+ * order rather than being copied to another file.
+ * @author gaprice@lbl.gov
+ */
+class StreamingJsonSorter {
+
+	// estimated memory for a key and the position and length of its value
+	private static final int KEY_OVERHEAD = 64;
+	/* the maximum number of entries in a top level map for which the output is
+	 * read directly from the map's buffer file. Larger maps are copied to a
+	 * new file to avoid very fragmented reads.
+	 */
+	private static final int MAX_DIRECT_ENTRIES = 10000;
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+	private static final Comparator<Entry> KEY_ORDER = new Comparator<Entry>() {
+
+		@Override
+		public int compare(final Entry e1, final Entry e2) {
+			return compareUTF8(e1.key, e2.key);
+		}
+	};
+
+	private final long maxMemoryUsage;
+	private final TempFilesManager tfm;
+	private final JsonTokenStreamWriter writer = new JsonTokenStreamWriter();
+	private final SwitchableOutputStream out = new SwitchableOutputStream();
+	private final JsonGenerator jgen;
+	private final List<Level> levels = new ArrayList<Level>();
+	private final List<String> path = new ArrayList<String>();
+	private long memoryUsed = 0;
+	private long keyMemoryUsed = 0;
+	private long tempBytesWritten = 0;
+
+	/** Create a sorter.
+	 * @param maxMemoryUsage the maximum memory to use for buffering map
+	 * entries and storing keys.
+	 * @param tfm the temporary file manager with which to create temporary
+	 * files.
+	 */
+	public StreamingJsonSorter(
+			final long maxMemoryUsage,
+			final TempFilesManager tfm)
+			throws IOException {
+		if (tfm == null) {
+			throw new NullPointerException("tfm");
+		}
+		if (maxMemoryUsage < 1) {
+			throw new IllegalArgumentException("maxMemoryUsage must be > 0");
+		}
+		this.maxMemoryUsage = maxMemoryUsage;
+		this.tfm = tfm;
+		jgen = new JsonFactory().createGenerator(out);
+		// separators are written by the sorter
+		jgen.setRootValueSeparator(null);
+	}
+
+	/** The sorted JSON. */
+	static class SortedJson {
+
+		// either a byte array or a range of the file
+		private static class Piece {
+			private final byte[] bytes;
+			private final long offset;
+			private final long length;
+
+			private Piece(final byte[] bytes) {
+				this.bytes = bytes;
+				this.offset = 0;
+				this.length = bytes.length;
+			}
+
+			private Piece(final long offset, final long length) {
+				this.bytes = null;
+				this.offset = offset;
+				this.length = length;
+			}
+		}
+
+		private final File file;
+		private final List<Piece> pieces;
+		private final long tempBytesWritten;
+
+		private SortedJson(
+				final File file,
+				final List<Piece> pieces,
+				final long tempBytesWritten) {
+			this.file = file;
+			this.pieces = pieces;
+			this.tempBytesWritten = tempBytesWritten;
+		}
+
+		/** Get the sorted JSON. The caller is responsible for closing the
+		 * stream.
+		 * @return the JSON.
+		 * @throws IOException if the temporary file could not be opened.
+		 */
+		public InputStream getInputStream() throws IOException {
+			return new PieceInputStream(
+					FileChannel.open(file.toPath(), StandardOpenOption.READ), pieces);
+		}
+
+		/** Get the number of bytes written to temporary files while sorting.
+		 * @return the number of bytes.
+		 */
+		public long getTempBytesWritten() {
+			return tempBytesWritten;
+		}
+
+		/** Delete the temporary file containing the JSON. */
+		public void destroy() {
+			file.delete();
+		}
+	}
+
+	private static class PieceInputStream extends InputStream {
+
+		private final FileChannel ch;
+		private final List<SortedJson.Piece> pieces;
+		private int piece = 0;
+		private long pos = 0;
+
+		private PieceInputStream(final FileChannel ch, final List<SortedJson.Piece> pieces) {
+			this.ch = ch;
+			this.pieces = pieces;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final byte[] b = new byte[1];
+			final int read = read(b, 0, 1);
+			return read < 0 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			while (piece < pieces.size() && pos >= pieces.get(piece).length) {
+				piece++;
+				pos = 0;
+			}
+			if (piece >= pieces.size()) {
+				return -1;
+			}
+			final SortedJson.Piece p = pieces.get(piece);
+			final int toRead = (int) Math.min(len, p.length - pos);
+			final int read;
+			if (p.bytes != null) {
+				System.arraycopy(p.bytes, (int) pos, b, off, toRead);
+				read = toRead;
+			} else {
+				read = ch.read(ByteBuffer.wrap(b, off, toRead), p.offset + pos);
+				if (read < 0) {
+					throw new IOException("Unexpected end of sorted data file");
+				}
+			}
+			pos += read;
+			return read;
+		}
+
+		@Override
+		public void close() throws IOException {
+			ch.close();
+		}
+	}
+
+	private static class Entry {
+		private final String key;
+		private final long offset;
+		private final long length;
+		// the range of the level's children contained in the entry's value
+		private final int firstChild;
+		private final int lastChild;
+
+		private Entry(
+				final String key,
+				final long offset,
+				final long length,
+				final int firstChild,
+				final int lastChild) {
+			this.key = key;
+			this.offset = offset;
+			this.length = length;
+			this.firstChild = firstChild;
+			this.lastChild = lastChild;
+		}
+	}
+
+	// a spilled map, the sorted JSON of which belongs at a position in its parent's buffer
+	private static class Child {
+		private final long position;
+		private final Level level;
+
+		private Child(final long position, final Level level) {
+			this.position = position;
+			this.level = level;
+		}
+	}
+
+	private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+
+		private byte[] getBuffer() {
+			return buf;
+		}
+	}
+
+	/* Buffers the entries of a map. Starts in memory and moves to a file when
+	 * the memory limit is exceeded.
+	 */
+	private class Level extends OutputStream {
+
+		private final List<Entry> entries = new ArrayList<Entry>();
+		private final List<Child> children = new ArrayList<Child>();
+		private long keyMemory = 0;
+		private ExposedByteArrayOutputStream mem = new ExposedByteArrayOutputStream();
+		private File file = null;
+		private OutputStream fileOut = null;
+		private FileChannel fileIn = null;
+		private long size = 0;
+
+		@Override
+		public void write(final int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			size += len;
+			if (mem != null) {
+				mem.write(b, off, len);
+				memoryUsed += len;
+				if (memoryUsed > maxMemoryUsage) {
+					spill();
+				}
+			} else {
+				fileOut.write(b, off, len);
+				tempBytesWritten += len;
+			}
+		}
+
+		private void spill() throws IOException {
+			file = tfm.generateTempFile("sortspill", "json");
+			fileOut = new BufferedOutputStream(new FileOutputStream(file), COPY_BUFFER_SIZE);
+			mem.writeTo(fileOut);
+			tempBytesWritten += mem.size();
+			memoryUsed -= mem.size();
+			mem = null;
+		}
+
+		private void addEntry(final String key, final long offset, final int firstChild)
+				throws TooManyKeysException {
+			final long km = KEY_OVERHEAD + 2L * key.length();
+			keyMemory += km;
+			keyMemoryUsed += km;
+			memoryUsed += km;
+			if (keyMemoryUsed > maxMemoryUsage) {
+				throw new TooManyKeysException(maxMemoryUsage, getPath(path.size()));
+			}
+			entries.add(new Entry(key, offset, size - offset, firstChild, children.size()));
+		}
+
+		private void addChild(final Level child) {
+			children.add(new Child(size, child));
+		}
+
+		private boolean isSpilled() {
+			return mem == null;
+		}
+
+		// closes the output file, if any, after which no more data can be written
+		private void finish() throws IOException {
+			if (fileOut != null) {
+				fileOut.close();
+				fileOut = null;
+			}
+		}
+
+		private void copyTo(final OutputStream os, final Entry e) throws IOException {
+			long pos = e.offset;
+			for (int i = e.firstChild; i < e.lastChild; i++) {
+				final Child c = children.get(i);
+				copyTo(os, pos, c.position - pos);
+				writeMap(c.level, os);
+				pos = c.position;
+			}
+			copyTo(os, pos, e.offset + e.length - pos);
+		}
+
+		private void copyTo(final OutputStream os, final long offset, final long length)
+				throws IOException {
+			if (mem != null) {
+				os.write(mem.getBuffer(), (int) offset, (int) length);
+			} else {
+				// opened on demand so that spilled children don't each hold a file open
+				if (fileIn == null) {
+					fileIn = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+				}
+				final ByteBuffer buf = ByteBuffer.allocate(
+						(int) Math.min(COPY_BUFFER_SIZE, Math.max(1, length)));
+				long pos = offset;
+				final long end = offset + length;
+				while (pos < end) {
+					buf.clear();
+					buf.limit((int) Math.min(buf.capacity(), end - pos));
+					final int read = fileIn.read(buf, pos);
+					if (read < 0) {
+						throw new IOException("Unexpected end of sort buffer file");
+					}
+					os.write(buf.array(), 0, read);
+					pos += read;
+				}
+			}
+		}
+
+		private void closeInput() throws IOException {
+			if (fileIn != null) {
+				fileIn.close();
+				fileIn = null;
+			}
+		}
+
+		/* releases memory, and deletes the file unless it is kept for the output.
+		 * Children are always released.
+		 */
+		private void release(final boolean deleteFile) throws IOException {
+			memoryUsed -= keyMemory;
+			keyMemoryUsed -= keyMemory;
+			if (mem != null) {
+				memoryUsed -= mem.size();
+				mem = null;
+			}
+			if (fileOut != null) {
+				fileOut.close();
+			}
+			if (fileIn != null) {
+				fileIn.close();
+			}
+			if (file != null && deleteFile) {
+				file.delete();
+			}
+			for (final Child c: children) {
+				c.level.release(true);
+			}
+			children.clear();
+		}
+	}
+
+	private static class SwitchableOutputStream extends OutputStream {
+
+		private OutputStream target;
+
+		@Override
+		public void write(final int b) throws IOException {
+			target.write(b);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			target.write(b, off, len);
+		}
+	}
+
+	/** Write the JSON from a token source with all the map keys sorted.
+	 * The source is not closed.
+	 * @param src the source of the JSON tokens.
+	 * @param digest a digest to update with the sorted JSON, or null.
+	 * @return the sorted JSON.
+	 * @throws IOException if an IO error occurs.
+	 * @throws KeyDuplicationException if a map contains duplicate keys.
+	 * @throws TooManyKeysException if the memory required to store map keys
+	 * exceeds the limit.
+	 */
+	public SortedJson sort(final TokenSequenceProvider src, final MessageDigest digest)
+			throws IOException, KeyDuplicationException, TooManyKeysException {
+		File output = null;
+		boolean success = false;
+		try {
+			final JsonToken first = src.nextToken();
+			if (first == JsonToken.START_OBJECT) {
+				final Level root = readMap(src);
+				if (root.isSpilled() && root.children.isEmpty() &&
+						root.entries.size() <= MAX_DIRECT_ENTRIES) {
+					// read the output directly from the map buffer file
+					final SortedJson ret = new SortedJson(
+							root.file, toPieces(root), tempBytesWritten);
+					root.release(false);
+					if (digest != null) {
+						// the output was never written in order, so it must be read
+						try {
+							updateDigest(ret, digest);
+						} catch (IOException | RuntimeException | Error e) {
+							ret.destroy();
+							throw e;
+						}
+					}
+					success = true;
+					return ret;
+				}
+				output = tfm.generateTempFile("sortout", "json");
+				try (final OutputStream os = openOutput(output, digest)) {
+					writeMap(root, os);
+				} finally {
+					root.release(true);
+				}
+			} else {
+				output = tfm.generateTempFile("sortout", "json");
+				try (final OutputStream os = openOutput(output, digest)) {
+					out.target = os;
+					writeValue(src, first);
+					jgen.flush();
+				}
+			}
+			tempBytesWritten += output.length();
+			final SortedJson ret = new SortedJson(output, Collections.singletonList(
+					new SortedJson.Piece(0, output.length())), tempBytesWritten);
+			success = true;
+			return ret;
+		} finally {
+			if (!success) {
+				for (final Level l: levels) {
+					l.release(true);
+				}
+				levels.clear();
+				if (output != null) {
+					output.delete();
+				}
+			}
+		}
+	}
+
+	private static OutputStream openOutput(final File output, final MessageDigest digest)
+			throws IOException {
+		final OutputStream os = new BufferedOutputStream(
+				new FileOutputStream(output), COPY_BUFFER_SIZE);
+		return digest == null ? os : new DigestOutputStream(os, digest);
+	}
+
+	private static void updateDigest(final SortedJson json, final MessageDigest digest)
+			throws IOException {
+		try (final InputStream is = json.getInputStream()) {
+			final byte[] buf = new byte[COPY_BUFFER_SIZE];
+			int read;
+			while ((read = is.read(buf)) > -1) {
+				digest.update(buf, 0, read);
+			}
+		}
+	}
+
+	private List<SortedJson.Piece> toPieces(final Level root) throws IOException {
+		final List<SortedJson.Piece> pieces = new ArrayList<SortedJson.Piece>();
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		out.target = bytes;
+		jgen.writeRaw('{');
+		boolean first = true;
+		for (final Entry e: root.entries) {
+			if (!first) {
+				jgen.writeRaw(',');
+			}
+			first = false;
+			jgen.writeString(e.key);
+			jgen.writeRaw(':');
+			jgen.flush();
+			pieces.add(new SortedJson.Piece(bytes.toByteArray()));
+			bytes.reset();
+			pieces.add(new SortedJson.Piece(e.offset, e.length));
+		}
+		jgen.writeRaw('}');
+		jgen.flush();
+		pieces.add(new SortedJson.Piece(bytes.toByteArray()));
+		return pieces;
+	}
+
+	private void writeValue(final TokenSequenceProvider src, final JsonToken t)
+			throws IOException, KeyDuplicationException, TooManyKeysException {
+		if (t == JsonToken.START_OBJECT) {
+			final OutputStream parent = out.target;
+			final Level l = readMap(src);
+			if (parent instanceof Level && (l.isSpilled() || !l.children.isEmpty())) {
+				/* don't copy a spilled map, or a map containing one, to the parent's
+				 * buffer, which may also be spilled
+				 */
+				if (!l.isSpilled() && memoryUsed > maxMemoryUsage) {
+					l.spill();
+					l.finish();
+				}
+				((Level) parent).addChild(l);
+			} else {
+				try {
+					writeMap(l, parent);
+				} finally {
+					l.release(true);
+				}
+			}
+		} else if (t == JsonToken.START_ARRAY) {
+			jgen.writeRaw('[');
+			int index = 0;
+			while (true) {
+				final JsonToken next = src.nextToken();
+				if (next == JsonToken.END_ARRAY) {
+					break;
+				}
+				if (next == null) {
+					throw new IOException("Unexpected end of JSON data");
+				}
+				if (index > 0) {
+					jgen.writeRaw(',');
+				}
+				path.add(String.valueOf(index));
+				writeValue(src, next);
+				path.remove(path.size() - 1);
+				index++;
+			}
+			jgen.writeRaw(']');
+		} else if (t == null) {
+			throw new IOException("Unexpected end of JSON data");
+		} else {
+			writer.writeCurrentToken(t, src, jgen);
+		}
+	}
+
+	// reads a map, the START_OBJECT token of which has been read, into a new level
+	private Level readMap(final TokenSequenceProvider src)
+			throws IOException, KeyDuplicationException, TooManyKeysException {
+		final OutputStream parent = out.target;
+		jgen.flush();
+		final Level l = new Level();
+		levels.add(l);
+		out.target = l;
+		while (true) {
+			final JsonToken t = src.nextToken();
+			if (t == JsonToken.END_OBJECT) {
+				break;
+			}
+			if (t != JsonToken.FIELD_NAME) {
+				throw new IOException("Expected a map key, got " + t);
+			}
+			final String key = src.getText();
+			final long offset = l.size;
+			final int firstChild = l.children.size();
+			path.add(key);
+			writeValue(src, src.nextToken());
+			jgen.flush();
+			path.remove(path.size() - 1);
+			l.addEntry(key, offset, firstChild);
+		}
+		l.finish();
+		levels.remove(levels.size() - 1);
+		out.target = parent;
+		Collections.sort(l.entries, KEY_ORDER);
+		for (int i = 1; i < l.entries.size(); i++) {
+			if (l.entries.get(i - 1).key.equals(l.entries.get(i).key)) {
+				l.release(true);
+				throw new KeyDuplicationException(getPath(path.size()), l.entries.get(i).key);
+			}
+		}
+		return l;
+	}
+
+	private void writeMap(final Level l, final OutputStream target) throws IOException {
+		out.target = target;
+		jgen.writeRaw('{');
+		boolean first = true;
+		try {
+			for (final Entry e: l.entries) {
+				if (!first) {
+					jgen.writeRaw(',');
+				}
+				first = false;
+				jgen.writeString(e.key);
+				jgen.writeRaw(':');
+				jgen.flush();
+				l.copyTo(target, e);
+			}
+		} finally {
+			l.closeInput();
+		}
+		jgen.writeRaw('}');
+		jgen.flush();
+	}
+
+	private String getPath(final int elements) {
+		if (elements == 0) {
+			return "/";
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < elements; i++) {
+			sb.append("/").append(path.get(i));
+		}
+		return sb.toString();
+	}
+
+	// compares strings in UTF-8 byte order, which is code point order
+	private static int compareUTF8(final String s1, final String s2) {
+		int i1 = 0;
+		int i2 = 0;
+		while (i1 < s1.length() && i2 < s2.length()) {
+			final int c1 = s1.codePointAt(i1);
+			final int c2 = s2.codePointAt(i2);
+			if (c1 != c2) {
+				return c1 < c2 ? -1 : 1;
+			}
+			i1 += Character.charCount(c1);
+			i2 += Character.charCount(c2);
+		}
+		return (s1.length() - i1) - (s2.length() - i2);
+	}
+}
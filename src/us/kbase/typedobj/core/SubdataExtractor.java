@@ -1,14 +1,20 @@
 package us.kbase.typedobj.core;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 
 import us.kbase.common.utils.JsonTreeGenerator;
+import us.kbase.typedobj.core.JsonStructureIndex.Node;
+import us.kbase.typedobj.core.JsonStructureIndex.RangeSource;
 import us.kbase.typedobj.exceptions.TypedObjectExtractionException;
 
 import com.fasterxml.jackson.core.JsonGenerator;
@@ -26,6 +32,10 @@ import com.fasterxml.jackson.databind.node.TreeTraversingParser;
 public class SubdataExtractor {
 	private static ObjectMapper mapper = new ObjectMapper();
 	
+	// past these limits reading the whole document is likely to be as fast
+	private static final int MAX_INDEXED_RANGES = 1000;
+	private static final int MAX_INDEXED_FRACTION = 2;
+	
 	/**
 	 * This method should be used only in tests because it processes json data 
 	 * stored in memory as a tree rather than as token stream that could be processed
@@ -59,8 +69,50 @@ public class SubdataExtractor {
 		extractFields(objpaths, createTokenSequenceProvider(jp), output);
 	}
 	
+	/**
+	 * Extract several selections from the same data in a single pass over the data. Each
+	 * selection is written to the output at the same position in the list of outputs, exactly
+	 * as {@link #extract(SubsetSelection, JsonParser, JsonGenerator)} would write it, including
+	 * the selection's strict map and array settings. If the data is invalid for any of the
+	 * selections, the first error encountered in the data is thrown and the contents of the
+	 * outputs are undefined.
+	 * @param objpaths the selections to extract.
+	 * @param jp the data.
+	 * @param outputs the generators to which the selections are written.
+	 * @throws IOException if the data could not be read or the outputs written.
+	 * @throws TypedObjectExtractionException if a selection is invalid.
+	 */
+	public static void extract(
+			final List<SubsetSelection> objpaths,
+			final JsonParser jp,
+			final List<JsonGenerator> outputs)
+			throws IOException, TypedObjectExtractionException {
+		if (objpaths.size() != outputs.size()) {
+			throw new IllegalArgumentException(
+					"The number of selections and outputs must be the same");
+		}
+		if (objpaths.isEmpty()) {
+			return;
+		}
+		final List<Target> targets = new ArrayList<Target>();
+		for (int i = 0; i < objpaths.size(); i++) {
+			targets.add(new Target(buildSelectionTree(objpaths.get(i)), outputs.get(i),
+					objpaths.get(i).isStrictMaps(), objpaths.get(i).isStrictArrays()));
+		}
+		final TokenSequenceProvider jts = createTokenSequenceProvider(jp);
+		extractFieldsWithOpenToken(jts, jts.nextToken(), targets, new ArrayList<String>());
+	}
+	
 	private static void extractFields(SubsetSelection objpaths, TokenSequenceProvider jts, JsonGenerator output) 
 	        throws IOException, TypedObjectExtractionException {
+		SubdataExtractionNode root = buildSelectionTree(objpaths);
+		JsonToken t = jts.nextToken();
+		extractFieldsWithOpenToken(jts, t, root, output, new ArrayList<String>(), 
+		        objpaths.isStrictMaps(), objpaths.isStrictArrays());
+	}
+	
+	private static SubdataExtractionNode buildSelectionTree(SubsetSelection objpaths)
+			throws TypedObjectExtractionException {
 		//if the selection is empty, we return without adding anything
 		SubdataExtractionNode root = new SubdataExtractionNode();
 		for (int i = 0; i < objpaths.size(); i++) {
@@ -71,9 +123,223 @@ public class SubdataExtractor {
 		        throw new TypedObjectExtractionException(ex.getMessage(), ex);
 		    }
 		}
-		JsonToken t = jts.nextToken();
-		extractFieldsWithOpenToken(jts, t, root, output, new ArrayList<String>(), 
-		        objpaths.isStrictMaps(), objpaths.isStrictArrays());
+		return root;
+	}
+	
+	/**
+	 * Plan the extraction of the fields listed in the selection from a document such that only
+	 * the parts of the document containing the selected fields are read, as located by the
+	 * document's structural index. Objects and arrays expanded in the index are descended into
+	 * when the selection names specific keys or array positions; any other selected value is
+	 * extracted from its byte range exactly as {@link #extract(SubsetSelection, JsonParser,
+	 * JsonGenerator)} would extract it.
+	 * 
+	 * The output of the extraction is identical to extracting the selection from the entire
+	 * document. If a selected key or array position is missing and the selection is strict for
+	 * that data type, the extraction is not planned so that the error is reported by the
+	 * extraction from the entire document.
+	 * @param objpaths the selection to extract.
+	 * @param index the structural index of the document.
+	 * @return the extraction, or null if the selection cannot be extracted efficiently via the
+	 * index, in which case the selection should be extracted from the entire document.
+	 * @throws TypedObjectExtractionException if the selection is invalid.
+	 */
+	public static IndexedExtraction planExtraction(
+			final SubsetSelection objpaths,
+			final JsonStructureIndex index)
+			throws TypedObjectExtractionException {
+		final SubdataExtractionNode selection = buildSelectionTree(objpaths);
+		final IndexedExtraction plan = new IndexedExtraction(
+				objpaths.isStrictMaps(), objpaths.isStrictArrays());
+		final Node root = index.getRoot();
+		plan.root = plan.plan(root, root.getStart(), index.getSize(), selection,
+				new ArrayList<String>());
+		if (plan.root == null || plan.ranges > MAX_INDEXED_RANGES ||
+				plan.bytes > index.getSize() / MAX_INDEXED_FRACTION) {
+			return null;
+		}
+		return plan;
+	}
+	
+	/**
+	 * An extraction of a selection from a document via the document's structural index.
+	 * @see SubdataExtractor#planExtraction(SubsetSelection, JsonStructureIndex)
+	 */
+	public static class IndexedExtraction {
+		
+		private final boolean strictMaps;
+		private final boolean strictArrays;
+		private Step root = null;
+		private int ranges = 0;
+		private long bytes = 0;
+		
+		/* Either a range of the document from which to extract a selection, or an expanded
+		 * object or array with selected children.
+		 */
+		private static class Step {
+			private final long start;
+			private final long end;
+			private final SubdataExtractionNode selection;
+			private final List<String> path;
+			private final boolean array;
+			private final List<String> keys = new ArrayList<>();
+			private final List<Step> children;
+			
+			private Step(
+					final long start,
+					final long end,
+					final SubdataExtractionNode selection,
+					final List<String> path) {
+				this.start = start;
+				this.end = end;
+				this.selection = selection;
+				this.path = new ArrayList<>(path);
+				this.array = false;
+				this.children = null;
+			}
+			
+			private Step(final boolean array) {
+				this.start = -1;
+				this.end = -1;
+				this.selection = null;
+				this.path = null;
+				this.array = array;
+				this.children = new ArrayList<>();
+			}
+		}
+		
+		private IndexedExtraction(final boolean strictMaps, final boolean strictArrays) {
+			this.strictMaps = strictMaps;
+			this.strictArrays = strictArrays;
+		}
+		
+		/* returns null if the extraction can't be planned or exceeds the range limit */
+		private Step plan(
+				final Node node,
+				final long start,
+				final long end,
+				final SubdataExtractionNode selection,
+				final List<String> path) {
+			if (ranges > MAX_INDEXED_RANGES) {
+				return null;
+			}
+			final Map<String, SubdataExtractionNode> selected = selection.getChildren();
+			if (!node.isExpanded() || !selection.hasChildren() ||
+					selected.containsKey(node.isArray() ? "[*]" : "*")) {
+				// wildcards and errors in the selection are handled by the standard extraction
+				ranges++;
+				bytes += end - start;
+				return new Step(start, end, selection, path);
+			}
+			final Step step = new Step(node.isArray());
+			if (node.isArray()) {
+				final Map<Integer, SubdataExtractionNode> positions = new TreeMap<>();
+				for (final Entry<String, SubdataExtractionNode> e: selected.entrySet()) {
+					final int pos;
+					try {
+						pos = Integer.parseInt(e.getKey());
+					} catch (NumberFormatException ex) {
+						ranges++;
+						bytes += end - start;
+						return new Step(start, end, selection, path);
+					}
+					// positions are matched as strings, so "01" never matches
+					if (pos >= 0 && pos < node.size() && e.getKey().equals("" + pos)) {
+						positions.put(pos, e.getValue());
+					} else if (strictArrays) {
+						return null;
+					}
+				}
+				for (final Entry<Integer, SubdataExtractionNode> e: positions.entrySet()) {
+					final int pos = e.getKey();
+					if (!addChild(step, node, pos, e.getValue(), path, null)) {
+						return null;
+					}
+				}
+			} else {
+				int found = 0;
+				for (int i = 0; i < node.size(); i++) {
+					final String key = node.getKey(i);
+					if (selected.containsKey(key)) {
+						found++;
+						if (!addChild(step, node, i, selected.get(key), path, key)) {
+							return null;
+						}
+					}
+				}
+				if (strictMaps && found < selected.size()) {
+					return null;
+				}
+			}
+			return step;
+		}
+		
+		private boolean addChild(
+				final Step step,
+				final Node node,
+				final int index,
+				final SubdataExtractionNode selection,
+				final List<String> path,
+				final String key) {
+			path.add(key == null ? "" + index : key);
+			final Step child = plan(node.getChild(index), node.getChild(index).getStart(),
+					node.getChildEnd(index), selection, path);
+			path.remove(path.size() - 1);
+			if (child == null) {
+				return false;
+			}
+			step.keys.add(key);
+			step.children.add(child);
+			return true;
+		}
+		
+		/**
+		 * Run the extraction.
+		 * @param source a source for byte ranges of the document.
+		 * @param output the generator to which the extracted data is written.
+		 * @throws IOException if the document could not be read or the output written.
+		 * @throws TypedObjectExtractionException if the selection is invalid for the data.
+		 */
+		public void extract(final RangeSource source, final JsonGenerator output)
+				throws IOException, TypedObjectExtractionException {
+			if (source == null || output == null) {
+				throw new NullPointerException("source and output cannot be null");
+			}
+			extract(root, source, output);
+		}
+		
+		private void extract(final Step step, final RangeSource source, final JsonGenerator output)
+				throws IOException, TypedObjectExtractionException {
+			if (step.children == null) {
+				try (final InputStream is = source.open(step.start, step.end - step.start)) {
+					final TokenSequenceProvider jts = createTokenSequenceProvider(
+							mapper.getFactory().createParser(is));
+					try {
+						extractFieldsWithOpenToken(jts, jts.nextToken(), step.selection, output,
+								step.path, strictMaps, strictArrays);
+					} finally {
+						jts.close();
+					}
+				}
+				return;
+			}
+			if (step.array) {
+				output.writeStartArray();
+			} else {
+				output.writeStartObject();
+			}
+			for (int i = 0; i < step.children.size(); i++) {
+				if (!step.array) {
+					output.writeFieldName(step.keys.get(i));
+				}
+				extract(step.children.get(i), source, output);
+			}
+			if (step.array) {
+				output.writeEndArray();
+			} else {
+				output.writeEndObject();
+			}
+		}
 	}
 	
 	/*
@@ -377,6 +643,183 @@ public class SubdataExtractor {
 		}
 	}
 
+	/*
+	 * A selection and the output to which it's written. A selection without children selects
+	 * the entire value.
+	 */
+	private static class Target {
+		private final SubdataExtractionNode selection;
+		private final JsonGenerator jgen;
+		private final boolean strictMaps;
+		private final boolean strictArrays;
+		// the keys or positions not yet visited, or null if all are selected
+		private Set<String> selectedFields = null;
+		// the selection for every key or element, if selected with a wildcard
+		private SubdataExtractionNode allChild = null;
+		
+		private Target(SubdataExtractionNode selection, JsonGenerator jgen, 
+				boolean strictMaps, boolean strictArrays) {
+			this.selection = selection;
+			this.jgen = jgen;
+			this.strictMaps = strictMaps;
+			this.strictArrays = strictArrays;
+		}
+		
+		private Target child(SubdataExtractionNode childSelection) {
+			return new Target(childSelection, jgen, strictMaps, strictArrays);
+		}
+		
+		private boolean isAll() {
+			return selection == null || !selection.hasChildren();
+		}
+	}
+	
+	/*
+	 * The multiple selection version of extractFieldsWithOpenToken. The value is read once and
+	 * written to the outputs of each of the selections that select it. The checks and error
+	 * messages for each selection are identical to those of the single selection version.
+	 */
+	private static void extractFieldsWithOpenToken(TokenSequenceProvider jts, JsonToken current, 
+			List<Target> targets, List<String> path) 
+			throws IOException, TypedObjectExtractionException {
+		if (targets.size() == 1) {
+			Target target = targets.get(0);
+			if (target.isAll()) {
+				writeTokensFromCurrent(jts, current, target.jgen);
+			} else {
+				extractFieldsWithOpenToken(jts, current, target.selection, target.jgen, path, 
+						target.strictMaps, target.strictArrays);
+			}
+			return;
+		}
+		JsonToken t = current;
+		if (t == JsonToken.START_OBJECT) {
+			for (Target target : targets) {
+				if (!target.isAll()) {
+					Set<String> selectedFields = new LinkedHashSet<String>(
+							target.selection.getChildren().keySet());
+					if (selectedFields.contains("*")) {
+						selectedFields.remove("*");
+						target.allChild = target.selection.getChildren().get("*");
+						if (selectedFields.size() > 0)
+							throw new TypedObjectExtractionException("Invalid selection: the selection path contains both '*'" +
+									"to select all fields and selction of specific fields (" + selectedFields + "), at: " + getPathText(path));
+					} else {
+						target.selectedFields = selectedFields;
+					}
+				}
+				writeCurrentToken(jts, t, target.jgen);
+			}
+			while (true) {
+				t = jts.nextToken();
+				if (t == JsonToken.END_OBJECT) {
+					for (Target target : targets)
+						writeCurrentToken(jts, t, target.jgen);
+					break;
+				}
+				if (t != JsonToken.FIELD_NAME)
+					throw new TypedObjectExtractionException("Error parsing json format " + 
+							t.asString() + ", at: " + getPathText(path));
+				String fieldName = jts.getText();
+				List<Target> children = new ArrayList<Target>();
+				for (Target target : targets) {
+					if (target.isAll()) {
+						children.add(target.child(null));
+					} else if (target.allChild != null) {
+						children.add(target.child(target.allChild));
+					} else if (target.selectedFields.remove(fieldName)) {
+						children.add(target.child(target.selection.getChildren().get(fieldName)));
+					} else {
+						continue;
+					}
+					writeCurrentToken(jts, t, target.jgen);
+				}
+				t = jts.nextToken();
+				if (children.isEmpty()) {
+					skipChildren(jts, t);
+				} else {
+					path.add(fieldName);
+					extractFieldsWithOpenToken(jts, t, children, path);
+					path.remove(path.size() - 1);
+				}
+			}
+			for (Target target : targets) {
+				if (target.strictMaps && target.selectedFields != null &&
+						!target.selectedFields.isEmpty()) {
+					String notFound = target.selectedFields.iterator().next();
+					throw new TypedObjectExtractionException("Invalid selection: data does not contain a field or key named " +
+							"'" + notFound + "', at: " + getPathText(path, notFound));
+				}
+			}
+		} else if (t == JsonToken.START_ARRAY) {
+			for (Target target : targets) {
+				if (!target.isAll()) {
+					Set<String> selectedFields = new LinkedHashSet<String>(
+							target.selection.getChildren().keySet());
+					if (!selectedFields.contains("[*]")) {
+						for (String item : selectedFields) {
+							try {
+								Integer.parseInt(item);
+							} catch (NumberFormatException ex) {
+								throw new TypedObjectExtractionException("Invalid selection: data at '"+getPathText(path)+"' is an array, so " +
+										"element selection must be an integer.  You requested element '" + item + "', at: " + getPathText(path));
+							}
+						}
+						target.selectedFields = selectedFields;
+					} else {
+						selectedFields.remove("[*]");
+						target.allChild = target.selection.getChildren().get("[*]");
+						if (selectedFields.size() > 0)
+							throw new TypedObjectExtractionException("Invalid selection: the selection path contains both '[*]'" +
+									"to select all elements and selction of specific elements (" + selectedFields + "), at: " + getPathText(path));
+					}
+				}
+				writeCurrentToken(jts, t, target.jgen);
+			}
+			for (int pos = 0; ; pos++) {
+				t = jts.nextToken();
+				if (t == JsonToken.END_ARRAY) {
+					for (Target target : targets)
+						writeCurrentToken(jts, t, target.jgen);
+					break;
+				}
+				String key = "" + pos;
+				List<Target> children = new ArrayList<Target>();
+				for (Target target : targets) {
+					if (target.isAll()) {
+						children.add(target.child(null));
+					} else if (target.allChild != null) {
+						children.add(target.child(target.allChild));
+					} else if (target.selectedFields.remove(key)) {
+						children.add(target.child(target.selection.getChildren().get(key)));
+					}
+				}
+				if (children.isEmpty()) {
+					skipChildren(jts, t);
+				} else {
+					path.add(key);
+					extractFieldsWithOpenToken(jts, t, children, path);
+					path.remove(path.size() - 1);
+				}
+			}
+			for (Target target : targets) {
+				if (target.strictArrays && target.selectedFields != null &&
+						!target.selectedFields.isEmpty()) {
+					String notFound = target.selectedFields.iterator().next();
+					throw new TypedObjectExtractionException("Invalid selection: no array element exists at position " +
+							"'" + notFound + "', at: " + getPathText(path, notFound));
+				}
+			}
+		} else {
+			for (Target target : targets) {
+				if (!target.isAll())
+					throw new TypedObjectExtractionException("Invalid selection: the path given specifies fields or elements that do not exist because data " +
+							"at this location is a scalar value (i.e. string, integer, float), at: " + getPathText(path));
+				writeCurrentToken(jts, t, target.jgen);
+			}
+		}
+	}
+
 	public static String getPathText(List<String> path, String add) {
 		path.add(add);
 		String ret = getPathText(path);
@@ -3,6 +3,7 @@ package us.kbase.typedobj.core;
 import us.kbase.typedobj.exceptions.NoSuchModuleException;
 import us.kbase.typedobj.exceptions.NoSuchTypeException;
 import us.kbase.typedobj.exceptions.TypeStorageException;
+import us.kbase.typedobj.exceptions.TypedObjectSchemaException;
 
 /** Provides type definitions to the TypedObjectValidator.
  * 
@@ -36,4 +37,21 @@ public interface TypeProvider {
 	public String getTypeJsonSchema(final AbsoluteTypeDefId typeDefId)
 			throws NoSuchTypeException, NoSuchModuleException,
 			TypeStorageException;
+	
+	/** Retrieves the parsed validation schema for the specified type.
+	 * Implementations may return a cached, shared instance, since parsed
+	 * schemas are immutable.
+	 * @param typeDefId a type id.
+	 * @return the validation schema for the type.
+	 * @throws TypeStorageException if an error occurs with the type storage
+	 * engine
+	 * @throws NoSuchModuleException if the module for the type does not exit
+	 * @throws NoSuchTypeException if the type does not exist
+	 * @throws TypedObjectSchemaException if the type's JsonSchema document
+	 * could not be parsed.
+	 */
+	public JsonTokenValidationSchema getTypeValidationSchema(
+			final AbsoluteTypeDefId typeDefId)
+			throws NoSuchTypeException, NoSuchModuleException,
+			TypeStorageException, TypedObjectSchemaException;
 }
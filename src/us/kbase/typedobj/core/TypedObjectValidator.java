@@ -177,19 +177,25 @@ public class TypedObjectValidator {
 		
 		// Actually perform the validation and return the report
 		final List<String> errors = new ArrayList<String>();
-		String schemaText = typeProvider.getTypeJsonSchema(absoluteTypeDefId);
 		final JsonTokenValidationSchema schema =
-				JsonTokenValidationSchema.parseJsonSchema(schemaText);
+				typeProvider.getTypeValidationSchema(absoluteTypeDefId);
 		
 		// these must be arrays to get the inner class def override to work
 		final JsonNode [] metadataSelection = new JsonNode[] {null};
+		SizeAndSortCheckingParser jp = null;
 		try {
 			if (!schema.getOriginalType().equals("kidl-structure"))
 				throw new JsonTokenValidationException(
 						"Data of type other than structure couldn't be stored in workspace");
 			JsonTokenStream jts = obj.getPlacedStream();
+			/* calculate the size and sort order of the object while validating.
+			 * If the object contains ID references, the results are discarded
+			 * since they may change when the IDs are relabeled.
+			 */
+			final SizeAndSortCheckingParser checker = new SizeAndSortCheckingParser(jts);
+			jp = checker;
 			try {
-				schema.checkJsonData(jts, new JsonTokenValidationListener() {
+				schema.checkJsonData(checker, new JsonTokenValidationListener() {
 					int errorCount = 0;
 					@Override
 					public void addError(String message) throws JsonTokenValidationException {
@@ -207,6 +213,7 @@ public class TypedObjectValidator {
 							final JsonDocumentLocation loc)
 							throws TooManyIdsException,
 							JsonTokenValidationException {
+						checker.stop();
 						if (handlers.hasHandler(ref.getType())) {
 							try {
 								handlers.addStringId(ref);
@@ -268,13 +275,17 @@ public class TypedObjectValidator {
 			}
 		}
 
-		return new ValidatedTypedObject(
+		final ValidatedTypedObject vto = new ValidatedTypedObject(
 									obj,
 									absoluteTypeDefId,
 									errors, 
 									metadataSelection[0],
 									schema,
 									handlers);
+		if (errors.isEmpty() && jp != null && jp.isComplete()) {
+			vto.setUnrelabeledSize(jp.getSize(), jp.isSorted());
+		}
+		return vto;
 	}
 	
 	private void mapErrors(final List<String> errors, final String err) {
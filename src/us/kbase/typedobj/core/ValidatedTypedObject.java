@@ -31,6 +31,7 @@ import us.kbase.typedobj.idref.IdReferenceHandlerSetFactory;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 
@@ -80,11 +81,20 @@ public class ValidatedTypedObject implements Restreamable {
 	// whether the object is naturally sorted after relabeling.
 	// Only set to true after relabeling.
 	private boolean naturallySorted = false;
+	// the size and sort order of an object that contains no IDs, calculated
+	// during validation. -1 if not available.
+	private long unrelabeledSize = -1;
+	private boolean unrelabeledSorted = false;
 	
 	private byte[] byteCache = null;
 	
 	private File fileCache = null;
 	
+	private StreamingJsonSorter.SortedJson sortedCache = null;
+	
+	// the number of bytes written to temporary files by the last sort
+	private long tempBytesWritten = 0;
+	
 	private final JsonTokenValidationSchema schema;
 	
 	/**
@@ -155,12 +165,19 @@ public class ValidatedTypedObject implements Restreamable {
 	 */
 	@Override
 	public InputStream getInputStream() {
-		if (byteCache == null && fileCache == null) {
+		if (byteCache == null && fileCache == null && sortedCache == null) {
 			throw new IllegalStateException(
 					"You must call sort() prior to accessing the object data.");
 		}
 		if (byteCache != null) {
 			return new ByteArrayInputStream(byteCache);
+		} else if (sortedCache != null) {
+			try {
+				return new BufferedInputStream(sortedCache.getInputStream());
+			} catch (IOException e) {
+				throw new RuntimeException("A programming error occured and " +
+						"the file cache could not be opened.", e);
+			}
 		} else {
 			try {
 				return new BufferedInputStream(new FileInputStream(fileCache));
@@ -171,8 +188,17 @@ public class ValidatedTypedObject implements Restreamable {
 		}
 	}
 	
+	/* Set the size and sort order of an object that contains no IDs, and
+	 * therefore is not changed by relabeling, as calculated during validation.
+	 */
+	void setUnrelabeledSize(final long size, final boolean sorted) {
+		this.unrelabeledSize = size;
+		this.unrelabeledSorted = sorted;
+	}
+	
 	/** Calculate the size of the object, in bytes, when ids have been
-	 * remapped.
+	 * remapped. If the object contains no ids, the size calculated during
+	 * validation is used and the object is not read again.
 	 * @return the size of the object after id remapping.
 	 * @throws IOException if an IO error occurs.
 	 */
@@ -184,6 +210,11 @@ public class ValidatedTypedObject implements Restreamable {
 		if (size > -1) {
 			return size;
 		}
+		if (unrelabeledSize > -1) {
+			naturallySorted = unrelabeledSorted;
+			size = unrelabeledSize;
+			return size;
+		}
 		final CountingOutputStream cos = new CountingOutputStream();
 		final JsonGenerator jgen = new JsonFactory().createGenerator(cos);
 		naturallySorted =
@@ -274,6 +305,7 @@ public class ValidatedTypedObject implements Restreamable {
 			calculateRelabeledSize();
 		}
 		destroyCachedResources();
+		tempBytesWritten = 0;
 		final MessageDigest digest = getMD5Digest();
 		if (tfm == null) {
 			if (naturallySorted) {
@@ -296,14 +328,7 @@ public class ValidatedTypedObject implements Restreamable {
 			 * isn't necessary
 			 */
 			if (naturallySorted) {
-				fileCache = tfm.generateTempFile("natsortout", "json");
-				try (final OutputStream os = new FileOutputStream(fileCache)) {
-					relabelWsIdReferencesIntoWriter(new DigestOutputStream(
-							os, digest));
-				} catch (IOException | RuntimeException | Error e) {
-					destroyCachedResources();
-					throw e;
-				}
+				writeNaturallySortedFile(tfm, digest);
 			} else {
 				final File f1 = tfm.generateTempFile("sortinp", "json");
 				try {
@@ -321,6 +346,7 @@ public class ValidatedTypedObject implements Restreamable {
 						destroyCachedResources();
 						throw e;
 					}
+					tempBytesWritten = f1.length() + fileCache.length();
 				} finally {
 					f1.delete();
 				}
@@ -329,6 +355,68 @@ public class ValidatedTypedObject implements Restreamable {
 		md5 = getMD5fromDigest(digest);
 	}
 	
+	private void writeNaturallySortedFile(
+			final TempFilesManager tfm,
+			final MessageDigest digest)
+			throws IOException {
+		fileCache = tfm.generateTempFile("natsortout", "json");
+		try (final OutputStream os = new FileOutputStream(fileCache)) {
+			relabelWsIdReferencesIntoWriter(new DigestOutputStream(
+					os, digest));
+		} catch (IOException | RuntimeException | Error e) {
+			destroyCachedResources();
+			throw e;
+		}
+		tempBytesWritten = fileCache.length();
+	}
+	
+	/** Relabel ids and sort the object if necessary and keep a copy in
+	 * temporary files. Unlike sort(), ids are relabeled and map keys sorted
+	 * in a single pass over the object data, and the sorted object is not
+	 * copied to a separate file. Map entries are buffered in memory up to the
+	 * memory limit and in temporary files thereafter.
+	 * You must call this method or sort() prior to calling getInputStream().
+	 * @param maxMemoryUsage the maximum memory to use for sorting.
+	 * @param tfm the temporary file manager to use for managing temporary
+	 * files.
+	 * @throws IOException if an IO exception occurs.
+	 * @throws TooManyKeysException if the memory required to store the keys
+	 * of the maps being sorted exceeds the memory limit.
+	 * @throws KeyDuplicationException if there are duplicate keys present
+	 * in a map after relabeling.
+	 */
+	public void relabelAndSort(final long maxMemoryUsage, final TempFilesManager tfm)
+			throws IOException, KeyDuplicationException, TooManyKeysException {
+		if (tfm == null) {
+			throw new NullPointerException("Temporary file manager cannot be null");
+		}
+		if (size < 0) {
+			calculateRelabeledSize();
+		}
+		destroyCachedResources();
+		final MessageDigest digest = getMD5Digest();
+		if (naturallySorted) {
+			writeNaturallySortedFile(tfm, digest);
+		} else {
+			final TokenSequenceProvider tsp = createIdRefTokenSequenceProvider();
+			try {
+				sortedCache = new StreamingJsonSorter(maxMemoryUsage, tfm).sort(tsp, digest);
+			} finally {
+				tsp.close();
+			}
+			tempBytesWritten = sortedCache.getTempBytesWritten();
+		}
+		md5 = getMD5fromDigest(digest);
+	}
+	
+	/** Get the number of bytes written to temporary files the last time the
+	 * object was sorted.
+	 * @return the number of bytes.
+	 */
+	public long getTempBytesWritten() {
+		return tempBytesWritten;
+	}
+	
 	/** Destroy any cached resources created by this class and allow garbage
 	 * collection of in-memory caches. This method must be called before
 	 * program exit or temporary files may be left on disk. The caches will be
@@ -340,6 +428,10 @@ public class ValidatedTypedObject implements Restreamable {
 			this.fileCache.delete();
 			this.fileCache = null;
 		}
+		if (this.sortedCache != null) {
+			this.sortedCache.destroy();
+			this.sortedCache = null;
+		}
 	}
 	
 	private void relabelWsIdReferencesIntoWriter(final OutputStream os)
@@ -422,12 +514,14 @@ public class ValidatedTypedObject implements Restreamable {
 			final JsonTokenStream afterSort = new JsonTokenStream(
 					byteCache != null ? byteCache : fileCache);
 			return makeTSPfromJTS(afterSort);
+		} else if (sortedCache != null) {
+			return makeTSPfromJTS(new JsonFactory().createParser(getInputStream()));
 		} else {
 			return createIdRefTokenSequenceProvider();
 		}
 	}
 
-	private TokenSequenceProvider makeTSPfromJTS(final JsonTokenStream jts) {
+	private TokenSequenceProvider makeTSPfromJTS(final JsonParser jts) {
 		return new TokenSequenceProvider() {
 			@Override
 			public JsonToken nextToken() throws IOException, JsonParseException {
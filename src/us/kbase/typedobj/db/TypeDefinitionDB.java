@@ -13,6 +13,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -82,6 +83,8 @@ public class TypeDefinitionDB {
 	private final ThreadLocal<Map<String,Integer>> localReadLocks = new ThreadLocal<Map<String,Integer>>(); 
 	private final LoadingCache<String, ModuleInfo> moduleInfoCache;
 	private final LoadingCache<AbsoluteTypeDefId, String> typeJsonSchemaCache;
+	private final LoadingCache<AbsoluteTypeDefId, JsonTokenValidationSchema>
+			typeValidationSchemaCache;
 	
 	private static final SemanticVersion defaultVersion = new SemanticVersion(0, 1);
 	private static final SemanticVersion releaseVersion = new SemanticVersion(1, 0);
@@ -133,6 +136,17 @@ public class TypeDefinitionDB {
 						return jsonSchemaDocument;
 					}
 				});
+		// parsed schemas are immutable and so are shared between validation threads
+		typeValidationSchemaCache = CacheBuilder.newBuilder().maximumSize(cacheSize).build(
+				new CacheLoader<AbsoluteTypeDefId, JsonTokenValidationSchema>() {
+					@Override
+					public JsonTokenValidationSchema load(AbsoluteTypeDefId typeDefId)
+							throws TypeStorageException, NoSuchModuleException,
+							NoSuchTypeException, TypedObjectSchemaException {
+						return JsonTokenValidationSchema.parseJsonSchema(
+								getCachedJsonSchemaDocument(typeDefId));
+					}
+				});
 	}
 	
 	
@@ -306,29 +320,39 @@ public class TypeDefinitionDB {
 			throws NoSuchTypeException, NoSuchModuleException, TypeStorageException {
 		AbsoluteTypeDefId absTypeDefId = resolveTypeDefIdNL(typeDefId, 
 				isOwnerOfModule(typeDefId.getType().getModule(), userId));
+		return getCachedJsonSchemaDocument(absTypeDefId);
+	}
+	
+	private String getCachedJsonSchemaDocument(final AbsoluteTypeDefId absTypeDefId)
+			throws NoSuchTypeException, NoSuchModuleException, TypeStorageException {
 		String ret;
 		try {
 			ret = typeJsonSchemaCache.get(absTypeDefId);
 		} catch (ExecutionException e) {
-			if (e.getCause() != null) {
-				if (e.getCause() instanceof NoSuchModuleException) {
-					throw (NoSuchModuleException)e.getCause();
-				} else if (e.getCause() instanceof NoSuchTypeException) {
-					throw (NoSuchTypeException)e.getCause();
-				} else if (e.getCause() instanceof TypeStorageException) {
-					throw (TypeStorageException)e.getCause();
-				} else {
-					throw new TypeStorageException(e.getCause().getMessage(), e.getCause());
-				}
-			} else {
-				throw new TypeStorageException(e.getMessage(), e);
-			}
+			throw convertCacheException(e);
 		}
 		if (ret == null)
 			throw new NoSuchTypeException("Unable to read type schema record for type: " + absTypeDefId.getTypeString());
 		return ret;
 	}
 	
+	private TypeStorageException convertCacheException(final ExecutionException e)
+			throws NoSuchTypeException, NoSuchModuleException, TypeStorageException {
+		if (e.getCause() != null) {
+			if (e.getCause() instanceof NoSuchModuleException) {
+				throw (NoSuchModuleException)e.getCause();
+			} else if (e.getCause() instanceof NoSuchTypeException) {
+				throw (NoSuchTypeException)e.getCause();
+			} else if (e.getCause() instanceof TypeStorageException) {
+				throw (TypeStorageException)e.getCause();
+			} else {
+				return new TypeStorageException(e.getCause().getMessage(), e.getCause());
+			}
+		} else {
+			return new TypeStorageException(e.getMessage(), e);
+		}
+	}
+	
 	private long getLastReleasedModuleVersion(String moduleName) throws TypeStorageException {
 		ModuleInfo info = moduleInfoCache.getIfPresent(moduleName);
 		if (info != null)
@@ -473,14 +497,48 @@ public class TypeDefinitionDB {
 		String moduleName = typeDefId.getType().getModule();
 		requestReadLock(moduleName);
 		try {
-			final String jsonSchemaDocument =
-					getJsonSchemaDocumentNL(typeDefId, null);
-			return JsonTokenValidationSchema.parseJsonSchema(jsonSchemaDocument);
+			return getValidationSchemaNL(resolveTypeDefIdNL(typeDefId, false));
+		} finally {
+			releaseReadLock(moduleName);
+		}
+	}
+	
+	/**
+	 * Retrieve a Json Schema object that can be used for json validation for the exact
+	 * type version specified. Parsed schemas are cached, so repeated calls for the same
+	 * type return the same immutable instance until the cache entry is evicted or invalidated.
+	 * @param typeDefId
+	 * @return
+	 * @throws NoSuchTypeException
+	 * @throws NoSuchModuleException
+	 * @throws TypeStorageException
+	 * @throws TypedObjectSchemaException 
+	 */
+	public JsonTokenValidationSchema getValidationSchema(final AbsoluteTypeDefId typeDefId)
+			throws NoSuchTypeException, NoSuchModuleException,
+			TypeStorageException, TypedObjectSchemaException {
+		String moduleName = typeDefId.getType().getModule();
+		requestReadLock(moduleName);
+		try {
+			return getValidationSchemaNL(typeDefId);
 		} finally {
 			releaseReadLock(moduleName);
 		}
 	}
 	
+	private JsonTokenValidationSchema getValidationSchemaNL(final AbsoluteTypeDefId typeDefId)
+			throws NoSuchTypeException, NoSuchModuleException,
+			TypeStorageException, TypedObjectSchemaException {
+		try {
+			return typeValidationSchemaCache.get(typeDefId);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof TypedObjectSchemaException) {
+				throw (TypedObjectSchemaException)e.getCause();
+			}
+			throw convertCacheException(e);
+		}
+	}
+	
 	/**
 	 * Convert a Json Schema Document into a Json Schema object that can be used for json validation.
 	 * @param jsonSchemaDocument
@@ -1096,6 +1154,7 @@ public class TypeDefinitionDB {
 	public void cleanupCaches() {
 		moduleInfoCache.cleanUp();
 		typeJsonSchemaCache.cleanUp();
+		typeValidationSchemaCache.invalidateAll();
 	}
 	
 	private ModuleInfo copyOf(ModuleInfo input) throws TypeStorageException {
@@ -2516,6 +2575,13 @@ public class TypeDefinitionDB {
 	
 	private void removeModuleInfoFromCache(String moduleName) {
 		moduleInfoCache.invalidate(moduleName);		
+		final List<AbsoluteTypeDefId> toRemove = new LinkedList<AbsoluteTypeDefId>();
+		for (final AbsoluteTypeDefId type: typeValidationSchemaCache.asMap().keySet()) {
+			if (type.getType().getModule().equals(moduleName)) {
+				toRemove.add(type);
+			}
+		}
+		typeValidationSchemaCache.invalidateAll(toRemove);
 	}
 	
 	public TypeDetailedInfo getTypeDetailedInfo(TypeDefId typeDef, boolean markLinksInSpec, String userId) 
@@ -39,6 +39,7 @@ import com.mongodb.MongoClient;
 import us.kbase.common.test.TestCommon;
 import us.kbase.common.test.controllers.mongo.MongoController;
 import us.kbase.typedobj.core.AbsoluteTypeDefId;
+import us.kbase.typedobj.core.JsonTokenValidationSchema;
 import us.kbase.typedobj.core.MD5;
 import us.kbase.typedobj.core.TypeDefId;
 import us.kbase.typedobj.core.TypeDefName;
@@ -94,6 +95,7 @@ public class TypeRegisteringTest {
 					"testDeps",
 					"testOwnership",
 					"testEmpty",
+					"testValidationSchemaCache",
 			};
 			for (String method : methods) {
 				System.out.println("o-------------------------------------------------------");
@@ -919,6 +921,32 @@ public class TypeRegisteringTest {
 				.getSpecDef(), is("funcdef foo() returns () authentication none;"));
 	}
 	
+	@Test
+	public void testValidationSchemaCache() throws Exception {
+		String sequenceSpec = loadSpec("descr", "Descr");
+		initModule("Descr", adminUser);
+		db.registerModule(sequenceSpec, Arrays.asList("sequence_id", "sequence_pos"), adminUser);
+		releaseModule("Descr", adminUser);
+		AbsoluteTypeDefId type = db.resolveTypeDefId(new TypeDefId("Descr.sequence_pos"));
+		JsonTokenValidationSchema schema = db.getValidationSchema(type);
+		assertThat(schema.getOriginalType(), is("kidl-structure"));
+		assertThat(db.getValidationSchema(type) == schema, is(true));
+		assertThat(db.getJsonSchema(new TypeDefId("Descr.sequence_pos")) == schema, is(true));
+		db.cleanupCaches();
+		JsonTokenValidationSchema schema2 = db.getValidationSchema(type);
+		assertThat(schema2 == schema, is(false));
+		assertThat(db.getValidationSchema(type) == schema2, is(true));
+		db.stopModuleSupport("Descr", adminUser, true);
+		db.resumeModuleSupport("Descr", adminUser, true);
+		assertThat(db.getValidationSchema(type) == schema2, is(false));
+		try {
+			schema2.getObjectProperties().clear();
+			fail("modified cached schema");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+	
 	private Map<String, Long> restrict(Object... params) {
 		Map<String, Long> restrictions = new HashMap<String, Long>();
 		for (int i = 0; i < params.length / 2; i++) {
@@ -0,0 +1,197 @@
+package us.kbase.typedobj.idref;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/** An ID handler set that records IDs found while validating a single typed
+ * object rather than passing them to the ID handlers. This allows objects to
+ * be validated concurrently, after which the recorded IDs are replayed into
+ * the parent handler set in a deterministic order via
+ * {@link #addIdsToParent()}.
+ *
+ * Once the parent handler set has processed its IDs, ID remapping calls are
+ * delegated to the parent, so this handler set may be used to relabel the
+ * object it was used to validate.
+ *
+ * This class is not thread safe, but separate instances with the same parent
+ * may be used by separate threads as long as the parent is not accessed until
+ * all the instances have finished recording IDs.
+ * @author gaprice@lbl.gov
+ *
+ * @param <T> the type of the object to be associated with IDs.
+ */
+public class DeferredIdReferenceHandlerSet<T> extends IdReferenceHandlerSet<T> {
+
+	private final IdReferenceHandlerSet<T> parent;
+	// preserves addition order so the replay into the parent is deterministic
+	private final Set<DeferredId<T>> deferred = new LinkedHashSet<>();
+	private final Set<DeferredId<T>> unique = new HashSet<>();
+	private T associated = null;
+	private boolean replayed = false;
+
+	/** Create a deferred handler set.
+	 * @param parent the handler set into which IDs will eventually be added.
+	 */
+	public DeferredIdReferenceHandlerSet(final IdReferenceHandlerSet<T> parent) {
+		super(parent.getMaximumIdCount(),
+				Collections.<IdReferenceType, IdReferenceHandler<T>>emptyMap());
+		this.parent = parent;
+	}
+
+	private static class DeferredId<T> {
+		private final T associated;
+		private final IdReference<String> id;
+
+		private DeferredId(final T associated, final IdReference<String> id) {
+			this.associated = associated;
+			this.id = id;
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(new Object[] {associated, id});
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null || getClass() != obj.getClass()) {
+				return false;
+			}
+			final DeferredId<?> other = (DeferredId<?>) obj;
+			return associated.equals(other.associated) && id.equals(other.id);
+		}
+	}
+
+	@Override
+	public boolean hasHandler(final IdReferenceType idType) {
+		return parent.hasHandler(idType);
+	}
+
+	@Override
+	public IdReferenceHandlerSet<T> associateObject(final T object) {
+		if (object == null) {
+			throw new NullPointerException("object may not be null");
+		}
+		associated = object;
+		return this;
+	}
+
+	/** Record a string ID for later addition to the parent handler set.
+	 * Identical IDs with identical attributes associated with the same
+	 * object are only recorded once.
+	 * @param id the new ID.
+	 * @throws TooManyIdsException if the number of unique IDs recorded
+	 * exceeds the parent's maximum ID count.
+	 * @throws IdParseException if the ID is the empty string.
+	 */
+	@Override
+	public void addStringId(final IdReference<String> id)
+			throws TooManyIdsException, IdParseException {
+		if (replayed) {
+			throw new IllegalStateException(
+					"IDs have already been added to the parent handler set");
+		}
+		if (associated == null) {
+			throw new IllegalStateException(
+					"Must add an object to associate IDs with prior to adding IDs");
+		}
+		if (id == null) {
+			throw new NullPointerException("id cannot be null");
+		}
+		if (!parent.hasHandler(id.getType())) {
+			throw new NoSuchIdReferenceHandlerException(
+					"There is no handler for the ID type " +
+							id.getType().getType());
+		}
+		// the ID handlers check this when adding the ID. Check here so the
+		// error is reported with any other errors found during validation
+		if (id.getId().isEmpty()) {
+			throw new IdParseException(
+					"IDs may not be null or the empty string",
+					id.getType(), associated, id.getId(), id.getAttributes(),
+					null);
+		}
+		deferred.add(new DeferredId<T>(associated, id));
+		unique.add(new DeferredId<T>(associated, new IdReference<String>(
+				id.getType(), id.getId(), null)));
+		if (unique.size() > getMaximumIdCount()) {
+			throw new TooManyIdsException("Maximum ID count of " +
+					getMaximumIdCount() + " exceeded");
+		}
+	}
+
+	/** Add the recorded IDs to the parent handler set in the order they
+	 * were recorded. May only be called once.
+	 * @throws TooManyIdsException if the parent handler set's maximum ID
+	 * count is exceeded.
+	 * @throws IdReferenceHandlerException if an ID could not be handled. The
+	 * exception is thrown on the first such ID.
+	 */
+	public void addIdsToParent()
+			throws TooManyIdsException, IdReferenceHandlerException {
+		if (replayed) {
+			throw new IllegalStateException(
+					"IDs have already been added to the parent handler set");
+		}
+		replayed = true;
+		for (final DeferredId<T> id: deferred) {
+			parent.associateObject(id.associated);
+			parent.addStringId(id.id);
+		}
+		deferred.clear();
+	}
+
+	@Override
+	public IdReferenceHandlerSet<T> processIDs() {
+		throw new UnsupportedOperationException(
+				"IDs must be processed by the parent handler set");
+	}
+
+	@Override
+	public boolean wereIdsProcessed() {
+		return parent.wereIdsProcessed();
+	}
+
+	@Override
+	public Set<IdReferenceType> getIDTypes() {
+		return parent.getIDTypes();
+	}
+
+	@Override
+	public RemappedId getRemappedId(
+			final IdReferenceType idType,
+			final String oldId) {
+		return parent.getRemappedId(idType, oldId);
+	}
+
+	@Override
+	public Set<RemappedId> getRemappedIds(
+			final IdReferenceType idType,
+			final T associatedObject) {
+		return parent.getRemappedIds(idType, associatedObject);
+	}
+
+	/** Get the number of unique IDs found in the object associated with
+	 * this handler set.
+	 * @return the number of unique IDs.
+	 */
+	@Override
+	public int size() {
+		return unique.size();
+	}
+
+	/** Returns true if no IDs were found in the object associated with
+	 * this handler set.
+	 * @return true if this handler set contains no IDs.
+	 */
+	@Override
+	public boolean isEmpty() {
+		return unique.isEmpty();
+	}
+}
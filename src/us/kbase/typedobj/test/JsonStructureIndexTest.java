@@ -0,0 +1,283 @@
+package us.kbase.typedobj.test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import us.kbase.typedobj.core.JsonStructureIndex;
+import us.kbase.typedobj.core.JsonStructureIndex.RangeSource;
+import us.kbase.typedobj.core.SubdataExtractor;
+import us.kbase.typedobj.core.SubdataExtractor.IndexedExtraction;
+import us.kbase.typedobj.core.SubsetSelection;
+import us.kbase.typedobj.exceptions.TypedObjectExtractionException;
+
+public class JsonStructureIndexTest {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private static byte[] doc;
+	private static JsonStructureIndex index;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		final List<Object> features = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			final Map<String, Object> f = new LinkedHashMap<>();
+			f.put("aliases", Arrays.asList("alias" + i, "alt" + i));
+			f.put("id", "kb|g.0.peg." + i);
+			f.put("location", Arrays.asList(Arrays.asList("contig", i * 100, "+", 99)));
+			f.put("score", i / 3.0);
+			f.put("type", i % 2 == 0 ? "CDS" : null);
+			features.add(f);
+		}
+		final Map<String, Object> contigs = new LinkedHashMap<>();
+		for (int i = 0; i < 100; i++) {
+			contigs.put("contig" + i, Arrays.asList(i, "seq\"\\/é" + i));
+		}
+		contigs.put("esc\"apedé☃key", true);
+		final Map<String, Object> data = new LinkedHashMap<>();
+		data.put("contigs", contigs);
+		data.put("features", features);
+		data.put("id", "genome");
+		data.put("size", 12345678901L);
+		doc = MAPPER.writeValueAsBytes(data);
+		index = JsonStructureIndex.build(new ByteArrayInputStream(doc), 500, 100000);
+	}
+
+	private static class ByteRangeSource implements RangeSource {
+
+		private final byte[] data;
+		private long read = 0;
+		private int opened = 0;
+
+		private ByteRangeSource(final byte[] data) {
+			this.data = data;
+		}
+
+		@Override
+		public InputStream open(final long offset, final long length) {
+			read += length;
+			opened++;
+			return new ByteArrayInputStream(data, (int) offset, (int) length);
+		}
+	}
+
+	private static String extractAll(final byte[] data, final SubsetSelection sel)
+			throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final JsonGenerator jgen = MAPPER.getFactory().createGenerator(out);
+		SubdataExtractor.extract(sel, MAPPER.getFactory().createParser(data), jgen);
+		jgen.close();
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static String extractIndexed(
+			final JsonStructureIndex idx,
+			final ByteRangeSource source,
+			final SubsetSelection sel)
+			throws Exception {
+		final IndexedExtraction ext = SubdataExtractor.planExtraction(sel, idx);
+		assertThat("extraction not planned for " + sel, ext, notNullValue());
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final JsonGenerator jgen = MAPPER.getFactory().createGenerator(out);
+		ext.extract(source, jgen);
+		jgen.close();
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static SubsetSelection sel(final String... paths) {
+		return new SubsetSelection(Arrays.asList(paths));
+	}
+
+	private static SubsetSelection sel(
+			final boolean strictMaps,
+			final boolean strictArrays,
+			final String... paths) {
+		return new SubsetSelection(Arrays.asList(paths), strictMaps, strictArrays);
+	}
+
+	@Test
+	public void buildAndSerialize() throws Exception {
+		assertThat("incorrect size", index.getSize(), is((long) doc.length));
+		// the root, contigs, and features are expanded, but not the individual features
+		assertThat("incorrect entry count", index.getEntryCount(), is(4L + 101 + 200));
+		final byte[] b = index.toBytes();
+		assertThat("index too large", b.length < doc.length / 5, is(true));
+		final JsonStructureIndex copy = JsonStructureIndex.fromBytes(b);
+		assertThat("incorrect size", copy.getSize(), is((long) doc.length));
+		assertThat("incorrect entry count", copy.getEntryCount(), is(305L));
+		assertThat("incorrect serialization", Arrays.equals(copy.toBytes(), b), is(true));
+
+		// the root is always expanded
+		final JsonStructureIndex big = JsonStructureIndex.build(
+				new ByteArrayInputStream(doc), doc.length + 1, 10);
+		assertThat("incorrect entry count", big.getEntryCount(), is(4L));
+		// the entry cap prevents expansion
+		final JsonStructureIndex capped = JsonStructureIndex.build(
+				new ByteArrayInputStream(doc), 500, 3);
+		assertThat("incorrect entry count", capped.getEntryCount(), is(0L));
+	}
+
+	@Test
+	public void extractMatchesFullExtraction() throws Exception {
+		for (final SubsetSelection s: Arrays.asList(
+				sel("features/3"),
+				sel("features/150/id", "features/3/location/0/1", "id"),
+				sel("features/7/aliases/[*]", "size"),
+				sel("features/10/*"),
+				sel("contigs/contig42", "contigs/contig7/1"),
+				sel("contigs/esc\"apedé☃key"),
+				sel("contigs/nosuchcontig", "features/199/score"),
+				sel(true, false, "features/199/type", "features/200", "features/-1",
+						"features/01"),
+				sel("features/2/type", "features/4/type")
+				)) {
+			final ByteRangeSource src = new ByteRangeSource(doc);
+			assertThat("incorrect extraction for " + s, extractIndexed(index, src, s),
+					is(extractAll(doc, s)));
+			assertThat("too much data read for " + s, src.read < doc.length / 20, is(true));
+		}
+	}
+
+	@Test
+	public void extractFallsBack() throws Exception {
+		for (final SubsetSelection s: Arrays.asList(
+				sel("features"),
+				sel("features/[*]/id"),
+				sel("*"),
+				sel("features/200"), // strict arrays
+				sel(true, true, "contigs/nosuchcontig"))) {
+			assertThat("extraction planned for " + s,
+					SubdataExtractor.planExtraction(s, index), nullValue());
+		}
+		// too many ranges
+		final List<Integer> ints = new ArrayList<>();
+		final List<String> paths = new ArrayList<>();
+		for (int i = 0; i < 3000; i++) {
+			ints.add(i);
+			if (i <= 1000) {
+				paths.add("" + i);
+			}
+		}
+		final JsonStructureIndex i = JsonStructureIndex.build(
+				new ByteArrayInputStream(MAPPER.writeValueAsBytes(ints)));
+		assertThat("extraction planned", SubdataExtractor.planExtraction(
+				new SubsetSelection(paths), i), nullValue());
+		assertThat("extraction not planned", SubdataExtractor.planExtraction(
+				new SubsetSelection(paths.subList(0, 1000)), i), notNullValue());
+	}
+
+	@Test
+	public void extractErrors() throws Exception {
+		// errors in the selection of unexpanded data are reported as for the full extraction
+		for (final SubsetSelection s: Arrays.asList(
+				sel("features/3/id/foo"),
+				sel("features/3/location/x"),
+				sel("features/3/location/[*]/0", "features/3/location/0/1"),
+				sel("id/foo"))) {
+			String expected = null;
+			try {
+				extractAll(doc, s);
+				fail("expected exception");
+			} catch (TypedObjectExtractionException e) {
+				expected = e.getMessage();
+			}
+			try {
+				extractIndexed(index, new ByteRangeSource(doc), s);
+				fail("expected exception");
+			} catch (TypedObjectExtractionException e) {
+				assertThat("incorrect exception message", e.getMessage(), is(expected));
+			}
+		}
+	}
+
+	@Test
+	public void scalarAndSmallDocuments() throws Exception {
+		for (final String d: Arrays.asList("  42 ", "\"str\"", "[]", "{}", " {\"a\" : [1, 2] } ")) {
+			final byte[] b = d.getBytes(StandardCharsets.UTF_8);
+			final JsonStructureIndex i = JsonStructureIndex.build(new ByteArrayInputStream(b));
+			assertThat("incorrect size", i.getSize(), is((long) b.length));
+			assertThat("incorrect round trip", Arrays.equals(
+					JsonStructureIndex.fromBytes(i.toBytes()).toBytes(), i.toBytes()), is(true));
+		}
+		final byte[] b = " {\"a\" : [1, 2], \"b\": {\"c\": \"d\"} } ".getBytes(
+				StandardCharsets.UTF_8);
+		final JsonStructureIndex i = JsonStructureIndex.build(new ByteArrayInputStream(b), 1, 10);
+		assertThat("incorrect entry count", i.getEntryCount(), is(5L));
+		final ByteRangeSource src = new ByteRangeSource(b);
+		final IndexedExtraction ext = SubdataExtractor.planExtraction(sel("a/1", "b/c"), i);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final JsonGenerator jgen = MAPPER.getFactory().createGenerator(out);
+		ext.extract(src, jgen);
+		jgen.close();
+		assertThat("incorrect extraction", new String(out.toByteArray(), StandardCharsets.UTF_8),
+				is("{\"a\":[2],\"b\":{\"c\":\"d\"}}"));
+		assertThat("incorrect range count", src.opened, is(2));
+	}
+
+	@Test
+	public void buildFail() throws Exception {
+		failBuild("", "Truncated JSON at byte 0");
+		failBuild("{\"a\": [1, 2}", "Unbalanced JSON at byte 11");
+		failBuild("{\"a\": \"foo", "Unterminated string in JSON at byte 6");
+		failBuild("{\"a\": [1, 2]", "Truncated JSON at byte 12");
+		failBuild("[1] [2]", "Multiple root values in JSON at byte 4");
+		failBuild("{\"a\": 1, 2}", "Missing key in JSON object at byte 9");
+		failBuild("{\"a\\x\": 1}", "Invalid escape in JSON string at byte 1");
+		try {
+			JsonStructureIndex.build(null);
+			fail("expected exception");
+		} catch (NullPointerException e) {
+			assertThat("incorrect exception message", e.getMessage(), is("data"));
+		}
+	}
+
+	private void failBuild(final String json, final String exception) {
+		try {
+			JsonStructureIndex.build(new ByteArrayInputStream(
+					json.getBytes(StandardCharsets.UTF_8)));
+			fail("expected exception");
+		} catch (IOException e) {
+			assertThat("incorrect exception message", e.getMessage(), is(exception));
+		}
+	}
+
+	@Test
+	public void fromBytesFail() throws Exception {
+		final byte[] b = index.toBytes();
+		failFromBytes(Arrays.copyOf(b, 5), "Truncated structural index");
+		failFromBytes(Arrays.copyOf(b, b.length - 1), "Truncated structural index");
+		failFromBytes(Arrays.copyOf(b, b.length + 1), "Trailing data in structural index");
+		final byte[] bad = Arrays.copyOf(b, b.length);
+		bad[0] = 'X';
+		failFromBytes(bad, "Invalid structural index header");
+	}
+
+	private void failFromBytes(final byte[] index, final String exception) {
+		try {
+			JsonStructureIndex.fromBytes(index);
+			fail("expected exception");
+		} catch (IOException e) {
+			assertThat("incorrect exception message", e.getMessage(), is(exception));
+		}
+	}
+}
@@ -27,6 +27,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
@@ -129,13 +130,13 @@ public class ObjectExtractionByPathTest {
 			pathStrings.add(paths.get(k).asText());
 		}
 		SubsetSelection op;
+		if (strict != null) {
+		    op = new SubsetSelection(pathStrings, strict.asBoolean(), SubsetSelection.STRICT_ARRAYS_DEFAULT);
+		} else {
+		    op = new SubsetSelection(pathStrings);
+		}
 		try {
 			JsonNode extract;
-			if (strict != null) {
-			    op = new SubsetSelection(pathStrings, strict.asBoolean(), SubsetSelection.STRICT_ARRAYS_DEFAULT);
-			} else {
-			    op = new SubsetSelection(pathStrings);
-			}
             extract = SubdataExtractor.extract(op, data);
 			
 			assertFalse("  -("+instance.resourceName+") extracted something when error was expected; extract="+extract,expectError);
@@ -146,6 +147,27 @@ public class ObjectExtractionByPathTest {
 			assertTrue("  -("+instance.resourceName+") error message should be '"+expectedErrorMessage+"', but was: '"+e.getMessage()+"'",
 					expectedErrorMessage.equals(e.getMessage()));
 		}
+		
+		// the same selection extracted alongside others in a single pass gives the same result
+		List<StringWriter> outputs = new ArrayList<StringWriter>();
+		List<JsonGenerator> jgens = new ArrayList<JsonGenerator>();
+		for (int k = 0; k < 3; k++) {
+			outputs.add(new StringWriter());
+			jgens.add(mapper.getFactory().createGenerator(outputs.get(k)));
+		}
+		try {
+			SubdataExtractor.extract(Arrays.asList(op, SubsetSelection.EMPTY, op),
+					mapper.treeAsTokens(data), jgens);
+			for (JsonGenerator jgen : jgens)
+				jgen.close();
+			assertFalse("  -("+instance.resourceName+") multiple extraction extracted something when error was expected",expectError);
+			compare(mapper.readTree(outputs.get(0).toString()), expectedExtract, instance.resourceName);
+			compare(mapper.readTree(outputs.get(1).toString()), data, instance.resourceName);
+			compare(mapper.readTree(outputs.get(2).toString()), expectedExtract, instance.resourceName);
+		} catch(TypedObjectExtractionException e) {
+			assertTrue("  -("+instance.resourceName+") multiple extraction error message should be '"+expectedErrorMessage+"', but was: '"+e.getMessage()+"'",
+					expectedErrorMessage.equals(e.getMessage()));
+		}
 		if(VERBOSE) System.out.println("      PASS.");
 	}
 	
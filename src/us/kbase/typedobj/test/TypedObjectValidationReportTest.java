@@ -16,8 +16,10 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -322,6 +324,29 @@ public class TypedObjectValidationReportTest {
 				is(expectedJson));
 	}
 
+	@Test
+	public void sortWithNoIdsNestedMap() throws Exception {
+		// size and sort order are calculated during validation for objects without IDs
+		String json = "{\"z\": {}, \"b\": \"d\"}";
+		String expectedJson = "{\"b\":\"d\",\"z\":{}}";
+
+		IdReferenceHandlerSetFactory fac =
+				new IdReferenceHandlerSetFactory(100);
+		IdReferenceHandlerSet<String> handlers =
+				fac.createHandlers(String.class).associateObject("foo");
+
+		ValidatedTypedObject tovr = validator.validate(json,
+				new TypeDefId("TestIDMap.IDMap"), handlers);
+		handlers.processIDs();
+		failGetRelabeledSize(tovr);
+		assertThat("incorrect size", tovr.calculateRelabeledSize(), is(16L));
+		tovr.sort(SORT_FAC);
+		assertThat("incorrect size", tovr.getRelabeledSize(), is(16L));
+
+		String gotjson = IOUtils.toString(tovr.getInputStream(), "UTF-8");
+		assertThat("Sort correctly", gotjson, is(expectedJson));
+	}
+
 	@Test
 	public void failWriteWithoutSort() throws Exception {
 		String json = "{\"m\": {\"b\": \"a\", \"w\": \"d\"}}";
@@ -473,6 +498,115 @@ public class TypedObjectValidationReportTest {
 		}
 	}
 
+	@Test
+	public void relabelAndSortStreaming() throws Exception {
+		String json = "{\"m\": {\"z\": \"a\", \"b\": \"d\"}}";
+		String expectedJson = "{\"m\":{\"b\":\"whoop\",\"y\":\"a\"}}";
+		Map<String, String> refmap = new HashMap<String, String>();
+		refmap.put("z", "y");
+		refmap.put("d", "whoop");
+		refmap.put("a", "a");
+		refmap.put("b", "b");
+		
+		IdReferenceHandlerSetFactory fac =
+				new IdReferenceHandlerSetFactory(100);
+		fac.addFactory(new DummyIdHandlerFactory(new IdReferenceType("ws"),
+				refmap));
+		TempFilesManager tfm = new TempFilesManager(
+				new File(TestCommon.getTempDir()));
+		
+		/* with plenty of memory the sorted object is written to a single temp file.
+		 * With little memory the root map's data is spilled to disk and read in
+		 * place, so the sorted object is never written.
+		 */
+		final Map<Long, Long> tempBytes = new HashMap<Long, Long>();
+		tempBytes.put(10000L, 27L);
+		tempBytes.put(140L, 21L);
+		for (final long maxmem: tempBytes.keySet()) {
+			IdReferenceHandlerSet<String> handlers =
+					fac.createHandlers(String.class).associateObject("foo");
+			ValidatedTypedObject tovr = validator.validate(json,
+					new TypeDefId("TestIDMap.IDMap"), handlers);
+			handlers.processIDs();
+			
+			tovr.relabelAndSort(maxmem, tfm);
+			assertThat("incorrect md5", tovr.getMD5(),
+					is(new MD5("920d54af26c56df84e4c4df358952138")));
+			String gotjson = IOUtils.toString(tovr.getInputStream(), "UTF-8");
+			assertThat("Relabel and sort correctly", gotjson, is(expectedJson));
+			assertThat("incorrect temp bytes", tovr.getTempBytesWritten(),
+					is(tempBytes.get(maxmem)));
+			tovr.destroyCachedResources();
+			assertThat("Temp files manager is empty", tfm.isEmpty(), is(true));
+		}
+		
+		IdReferenceHandlerSet<String> handlers =
+				fac.createHandlers(String.class).associateObject("foo");
+		ValidatedTypedObject tovr = validator.validate(json,
+				new TypeDefId("TestIDMap.IDMap"), handlers);
+		handlers.processIDs();
+		try {
+			// the 2 keys in the inner map take 66 bytes each
+			tovr.relabelAndSort(131, tfm);
+			fail("sorted with too little memory");
+		} catch (TooManyKeysException tmke) {
+			assertThat("correct exception message", tmke.getLocalizedMessage(),
+					is("Memory necessary for sorting map keys exceeds the limit " +
+					"131 bytes at /m"));
+		}
+		assertThat("Temp files manager is empty", tfm.isEmpty(), is(true));
+		
+		refmap.put("z", "b");
+		handlers = fac.createHandlers(String.class).associateObject("foo");
+		tovr = validator.validate(json, new TypeDefId("TestIDMap.IDMap"), handlers);
+		handlers.processIDs();
+		try {
+			tovr.relabelAndSort(10000, tfm);
+			fail("sorting didn't detect duplicate keys");
+		} catch (KeyDuplicationException kde){
+			assertThat("correct exception message", kde.getLocalizedMessage(),
+					is("Duplicated key 'b' was found at /m"));
+		}
+		assertThat("Temp files manager is empty", tfm.isEmpty(), is(true));
+	}
+	
+	@Test
+	public void relabelAndSortStreamingNestedSpill() throws Exception {
+		// a large map spills to disk inside several small maps, none of which should copy it
+		final StringBuilder inner = new StringBuilder();
+		final StringBuilder sortedInner = new StringBuilder();
+		final String value = "\"" + StringUtils.repeat("x", 500) + "\"";
+		for (int i = 0; i < 200; i++) {
+			inner.insert(0, String.format("\"k%03d\":%s%s", i, value, i == 0 ? "" : ","));
+			sortedInner.append(String.format("%s\"k%03d\":%s", i == 0 ? "" : ",", i, value));
+		}
+		String json = "{" + inner + "}";
+		String expectedJson = "{" + sortedInner + "}";
+		for (int i = 0; i < 4; i++) {
+			json = "{\"z\":" + json + ",\"a\":1}";
+			expectedJson = "{\"a\":1,\"z\":" + expectedJson + "}";
+		}
+		
+		final IdReferenceHandlerSet<String> handlers = new IdReferenceHandlerSetFactory(100)
+				.createHandlers(String.class).associateObject("foo");
+		final ValidatedTypedObject tovr = validator.validate(json,
+				new TypeDefId("TestIDMap.IDMap"), handlers);
+		handlers.processIDs();
+		final TempFilesManager tfm = new TempFilesManager(
+				new File(TestCommon.getTempDir()));
+		
+		tovr.relabelAndSort(20000, tfm);
+		assertThat("incorrect md5", tovr.getMD5(),
+				is(new MD5(DigestUtils.md5Hex(expectedJson))));
+		assertThat("Relabel and sort correctly",
+				IOUtils.toString(tovr.getInputStream(), "UTF-8"), is(expectedJson));
+		// the inner map's values are written once when spilled and once to the output
+		assertThat("incorrect temp bytes", tovr.getTempBytesWritten(),
+				is(200L * value.length() + json.length()));
+		tovr.destroyCachedResources();
+		assertThat("Temp files manager is empty", tfm.isEmpty(), is(true));
+	}
+	
 	@Test
 	public void keySize() throws Exception {
 		String json = "{\"z\":\"a\",\"b\":\"d\"}";
@@ -63,6 +63,16 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
  *                         parameter only has an effect when filtering by types alone.
  *                 int limit - limit the output to X objects. Default and maximum value
  *                         is 10000. Limit values < 1 are treated as 10000, the default.
+ *                 obj_ref startafter - only return objects after this reference, which
+ *                         must be of the form X/Y/Z, where X is the workspace ID, Y the object
+ *                         ID, and Z the version. Objects are returned in order of workspace
+ *                         ID, object ID, and version descending. To page through objects,
+ *                         set startafter to the reference of the last object returned by
+ *                         the previous call. startafter is a plain object reference rather
+ *                         than an opaque paging token. It cannot be used with the type,
+ *                         savedby, meta, after, before, after_epoch, or before_epoch
+ *                         filters, since the results are not sorted when those filters are
+ *                         set, and the error returned names the filters that conflict.
  * </pre>
  * 
  */
@@ -87,7 +97,8 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
     "showAllVersions",
     "includeMetadata",
     "excludeGlobal",
-    "limit"
+    "limit",
+    "startafter"
 })
 public class ListObjectsParams {
 
@@ -129,6 +140,8 @@ public class ListObjectsParams {
     private java.lang.Long excludeGlobal;
     @JsonProperty("limit")
     private java.lang.Long limit;
+    @JsonProperty("startafter")
+    private java.lang.String startafter;
     private Map<java.lang.String, Object> additionalProperties = new HashMap<java.lang.String, Object>();
 
     @JsonProperty("workspaces")
@@ -416,6 +429,21 @@ public class ListObjectsParams {
         return this;
     }
 
+    @JsonProperty("startafter")
+    public java.lang.String getStartafter() {
+        return startafter;
+    }
+
+    @JsonProperty("startafter")
+    public void setStartafter(java.lang.String startafter) {
+        this.startafter = startafter;
+    }
+
+    public ListObjectsParams withStartafter(java.lang.String startafter) {
+        this.startafter = startafter;
+        return this;
+    }
+
     @JsonAnyGetter
     public Map<java.lang.String, Object> getAdditionalProperties() {
         return this.additionalProperties;
@@ -428,7 +456,7 @@ public class ListObjectsParams {
 
     @Override
     public java.lang.String toString() {
-        return ((((((((((((((((((((((((((((((((((((((((("ListObjectsParams"+" [workspaces=")+ workspaces)+", ids=")+ ids)+", type=")+ type)+", perm=")+ perm)+", savedby=")+ savedby)+", meta=")+ meta)+", after=")+ after)+", before=")+ before)+", afterEpoch=")+ afterEpoch)+", beforeEpoch=")+ beforeEpoch)+", minObjectID=")+ minObjectID)+", maxObjectID=")+ maxObjectID)+", showDeleted=")+ showDeleted)+", showOnlyDeleted=")+ showOnlyDeleted)+", showHidden=")+ showHidden)+", showAllVersions=")+ showAllVersions)+", includeMetadata=")+ includeMetadata)+", excludeGlobal=")+ excludeGlobal)+", limit=")+ limit)+", additionalProperties=")+ additionalProperties)+"]");
+        return ((((((((((((((((((((((((((((((((((((((((((("ListObjectsParams"+" [workspaces=")+ workspaces)+", ids=")+ ids)+", type=")+ type)+", perm=")+ perm)+", savedby=")+ savedby)+", meta=")+ meta)+", after=")+ after)+", before=")+ before)+", afterEpoch=")+ afterEpoch)+", beforeEpoch=")+ beforeEpoch)+", minObjectID=")+ minObjectID)+", maxObjectID=")+ maxObjectID)+", showDeleted=")+ showDeleted)+", showOnlyDeleted=")+ showOnlyDeleted)+", showHidden=")+ showHidden)+", showAllVersions=")+ showAllVersions)+", includeMetadata=")+ includeMetadata)+", excludeGlobal=")+ excludeGlobal)+", limit=")+ limit)+", startafter=")+ startafter)+", additionalProperties=")+ additionalProperties)+"]");
     }
 
 }
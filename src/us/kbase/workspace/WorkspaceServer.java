@@ -34,15 +34,22 @@ import static us.kbase.workspace.kbase.IdentifierUtils.processObjectSpecificatio
 import static us.kbase.workspace.kbase.IdentifierUtils.processSubObjectIdentifiers;
 import static us.kbase.workspace.kbase.IdentifierUtils.processWorkspaceIdentifier;
 
+import java.io.IOException;
+import java.lang.reflect.Method;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.Set;
 
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 import org.slf4j.LoggerFactory;
 
 import ch.qos.logback.classic.Level;
@@ -77,7 +84,10 @@ import us.kbase.workspace.kbase.InitWorkspaceServer;
 import us.kbase.workspace.kbase.InitWorkspaceServer.WorkspaceInitResults;
 import us.kbase.workspace.kbase.KBaseWorkspaceConfig;
 import us.kbase.workspace.kbase.WorkspaceAdministration;
+import us.kbase.workspace.kbase.CountingHttpServletResponse;
 import us.kbase.workspace.kbase.WorkspaceServerMethods;
+import us.kbase.workspace.metrics.Metrics;
+import us.kbase.workspace.metrics.Timer;
 //END_HEADER
 
 /**
@@ -113,6 +123,12 @@ public class WorkspaceServer extends JsonServerServlet {
 	private static final long MAX_RPC_PACKAGE_SIZE = 1005000000;
 	private static final int MAX_RPC_PACKAGE_MEM_USE = 100000000;
 	
+	/* the metrics registry never evicts metrics, so only methods this server provides get
+	 * their own metrics rather than any method name a client sends.
+	 */
+	private static final Set<String> RPC_METHODS = getRpcMethods();
+	private static final String UNKNOWN_RPC_METHOD = "unknown";
+	
 	private static Map<String, String> wsConfig = null;
 	
 	private final Workspace ws;
@@ -140,6 +156,57 @@ public class WorkspaceServer extends JsonServerServlet {
 		return ws.getTempFilesManager();
 	}
 
+	@Override
+	protected void doPost(
+			final HttpServletRequest request,
+			final HttpServletResponse response)
+			throws ServletException, IOException {
+		if (ws == null) {
+			super.doPost(request, response);
+			return;
+		}
+		// the method name is set when the request is parsed
+		JsonServerSyslog.getCurrentRpcInfo().setMethod(null);
+		final CountingHttpServletResponse cres = new CountingHttpServletResponse(response);
+		final long start = Timer.start();
+		try {
+			super.doPost(request, cres);
+		} finally {
+			recordRpc(start, request.getContentLength(), cres);
+		}
+	}
+	
+	private void recordRpc(
+			final long start,
+			final int bytesIn,
+			final CountingHttpServletResponse response) {
+		final String method = JsonServerSyslog.getCurrentRpcInfo().getMethod();
+		final String name = "rpc." +
+				(RPC_METHODS.contains(method) ? method : UNKNOWN_RPC_METHOD);
+		final Metrics metrics = ws.getMetrics();
+		final Timer t = metrics.getTimer(name);
+		if (response.getStatusCode() >= 400) {
+			t.fail(start);
+		} else {
+			t.stop(start);
+		}
+		if (bytesIn >= 0) {
+			metrics.getHistogram(name + ".bytesIn").update(bytesIn);
+		}
+		metrics.getHistogram(name + ".bytesOut").update(response.getByteCount());
+	}
+	
+	private static Set<String> getRpcMethods() {
+		final Set<String> methods = new HashSet<>();
+		for (final Method m: WorkspaceServer.class.getMethods()) {
+			final JsonServerMethod rpc = m.getAnnotation(JsonServerMethod.class);
+			if (rpc != null) {
+				methods.add(rpc.rpc().substring(rpc.rpc().lastIndexOf('.') + 1));
+			}
+		}
+		return Collections.unmodifiableSet(methods);
+	}
+	
 	@Override
 	protected void onRpcMethodDone() {
 		if (resourcesToDelete.get() != null &&
@@ -878,6 +945,7 @@ public class WorkspaceServer extends JsonServerServlet {
      * <p>Original spec-file function name: list_workspace_info</p>
      * <pre>
      * List workspaces viewable by the user.
+     * The results are not paged; all matching workspaces are returned.
      * </pre>
      * @param   params   instance of type {@link us.kbase.workspace.ListWorkspaceInfoParams ListWorkspaceInfoParams}
      * @return   parameter "wsinfo" of list of original type "workspace_info" (Information about a workspace. ws_id id - the numerical ID of the workspace. ws_name workspace - name of the workspace. username owner - name of the user who owns (e.g. created) this workspace. timestamp moddate - date when the workspace was last modified. int max_objid - the maximum object ID appearing in this workspace. Since cloning a workspace preserves object IDs, this number may be greater than the number of objects in a newly cloned workspace. permission user_permission - permissions for the authenticated user of this workspace. permission globalread - whether this workspace is globally readable. lock_status lockstat - the status of the workspace lock. usermeta metadata - arbitrary user-supplied metadata about the workspace.) &rarr; tuple of size 9: parameter "id" of original type "ws_id" (The unique, permanent numerical ID of a workspace.), parameter "workspace" of original type "ws_name" (A string used as a name for a workspace. Any string consisting of alphanumeric characters and "_", ".", or "-" that is not an integer is acceptable. The name may optionally be prefixed with the workspace owner's user name and a colon, e.g. kbasetest:my_workspace.), parameter "owner" of original type "username" (Login name of a KBase user account.), parameter "moddate" of original type "timestamp" (A time in the format YYYY-MM-DDThh:mm:ssZ, where Z is either the character Z (representing the UTC timezone) or the difference in time to UTC in the format +/-HHMM, eg: 2012-12-17T23:24:06-0500 (EST time) 2013-04-03T08:56:32+0000 (UTC time) 2013-04-03T08:56:32Z (UTC time)), parameter "max_objid" of Long, parameter "user_permission" of original type "permission" (Represents the permissions a user or users have to a workspace: 'a' - administrator. All operations allowed. 'w' - read/write. 'r' - read. 'n' - no permissions.), parameter "globalread" of original type "permission" (Represents the permissions a user or users have to a workspace: 'a' - administrator. All operations allowed. 'w' - read/write. 'r' - read. 'n' - no permissions.), parameter "lockstat" of original type "lock_status" (The lock status of a workspace. One of 'unlocked', 'locked', or 'published'.), parameter "metadata" of original type "usermeta" (User provided metadata about an object. Arbitrary key-value pairs provided by the user.) &rarr; mapping from String to String
@@ -6,19 +6,34 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.commons.lang.NotImplementedException;
 
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 
 import us.kbase.common.service.JsonTokenStream;
 import us.kbase.common.service.UObject;
+import us.kbase.typedobj.core.JsonStructureIndex;
+import us.kbase.typedobj.core.JsonStructureIndex.RangeSource;
 import us.kbase.typedobj.core.SubsetSelection;
 import us.kbase.typedobj.core.SubdataExtractor;
+import us.kbase.typedobj.core.SubdataExtractor.IndexedExtraction;
 import us.kbase.typedobj.core.TempFilesManager;
 import us.kbase.typedobj.exceptions.TypedObjectExtractionException;
 import us.kbase.workspace.database.exceptions.FileCacheIOException;
@@ -28,19 +43,43 @@ public class ByteArrayFileCacheManager {
 	
 	//TODO TEST unit tests
 	
+	private static final int BUFFER_SIZE = 100000;
+	private static final int INITIAL_BUFFER_SIZE = 8192;
+	
 	private int sizeInMem = 0;
 	private final int maxSizeInMem;
 	private long sizeOnDisk = 0;
 	private final long maxSizeOnDisk;
 	private final TempFilesManager tfm;
+	private final ResourceGovernor governor; // null if there are no server wide limits
 	
 	public ByteArrayFileCacheManager(
 			final int maxSizeInMem,
 			final long maxSizeOnDisk,
 			final TempFilesManager tfm) {
+		this(maxSizeInMem, maxSizeOnDisk, tfm, null);
+	}
+	
+	/** Create a data manager whose caches are also subject to server wide
+	 * limits. Each cache holds its data's memory or disk reservation in the
+	 * governor until the cache is destroyed, while this manager's sizes are
+	 * the totals of all the data stored over the manager's lifetime. When the
+	 * governor's memory pool is exhausted data is stored on disk instead.
+	 * @param maxSizeInMem the maximum memory to use for data.
+	 * @param maxSizeOnDisk the maximum disk space to use for data.
+	 * @param tfm the temporary file manager used to create temporary files.
+	 * @param governor the server wide resource governor, or null if there
+	 * are no server wide limits.
+	 */
+	public ByteArrayFileCacheManager(
+			final int maxSizeInMem,
+			final long maxSizeOnDisk,
+			final TempFilesManager tfm,
+			final ResourceGovernor governor) {
 		this.maxSizeInMem = maxSizeInMem;
 		this.maxSizeOnDisk = maxSizeOnDisk;
 		this.tfm = tfm;
+		this.governor = governor;
 	}
 	
 	public ByteArrayFileCache createBAFC(InputStream input)
@@ -48,7 +87,7 @@ public class ByteArrayFileCacheManager {
 		return createBAFC(input);
 	}
 	
-	public int getSizeInMem() {
+	public synchronized int getSizeInMem() {
 		return sizeInMem;
 	}
 
@@ -56,7 +95,7 @@ public class ByteArrayFileCacheManager {
 		return maxSizeInMem;
 	}
 
-	public long getSizeOnDisk() {
+	public synchronized long getSizeOnDisk() {
 		return sizeOnDisk;
 	}
 
@@ -64,49 +103,57 @@ public class ByteArrayFileCacheManager {
 		return maxSizeOnDisk;
 	}
 
+	/** Create a cache from a stream of JSON data. The data is kept in memory
+	 * if it fits in the remaining memory allowance, and is otherwise written
+	 * to a temporary file. Caches may be created concurrently by multiple
+	 * threads, in which case the threads share the memory and disk allowances.
+	 * @param input the JSON data.
+	 * @param trustedJson whether the data is trusted to be valid JSON.
+	 * @param sorted whether the data is sorted.
+	 * @return the new cache.
+	 * @throws FileCacheIOException if the data could not be read or written.
+	 * @throws FileCacheLimitExceededException if the disk allowance, or the
+	 * server wide disk allowance, is exceeded.
+	 */
 	@SuppressWarnings("resource")
 	public ByteArrayFileCache createBAFC(final InputStream input,
 			final boolean trustedJson, final boolean sorted)
 			throws FileCacheIOException, FileCacheLimitExceededException {
-		byte[] buf = new byte[100000];
-		ByteArrayOutputStream bufOs = new ByteArrayOutputStream();
-		int maxInMemorySize = maxSizeInMem - sizeInMem;
-		long size = 0;
-		while (size < maxInMemorySize + 1) {
-			int count;
-			try {
-				count = input.read(buf, 0, Math.min(
-						buf.length, maxInMemorySize + 1 - (int)size));
-			} catch (IOException ioe) {
-				throw new FileCacheIOException(ioe.getLocalizedMessage(), ioe);
-			}
-			if (count < 0)
-				break;
-			bufOs.write(buf, 0, count);
-			size += count;
-		}
+		// memory is reserved as the buffer grows so that concurrent reads
+		// can't together exceed the memory allowance
+		DataBuffer bufOs = new DataBuffer();
+		int reserved = 0;
 		try {
-			bufOs.close();
+			while (true) {
+				final int res = reserveMemory(Math.max(BUFFER_SIZE, reserved));
+				reserved += res;
+				bufOs.readFrom(input, reserved + 1);
+				if (bufOs.size() <= reserved || res == 0) {
+					break;
+				}
+			}
 		} catch (IOException ioe) {
+			releaseMemory(reserved);
 			throw new FileCacheIOException(ioe.getLocalizedMessage(), ioe);
 		}
-		if (size > maxInMemorySize) {
+		long size = bufOs.size();
+		if (size > reserved) {
+			releaseMemory(reserved);
 			File tempFile = null;
 			OutputStream os = null;
+			long onDisk = 0;
 			try {
 				tempFile = tfm.generateTempFile("resp", "json");
 				os = new BufferedOutputStream(
-						new FileOutputStream(tempFile));
+						new FileOutputStream(tempFile), BUFFER_SIZE);
 				try {
-					os.write(bufOs.toByteArray());
+					// writes the buffer directly rather than copying it
+					bufOs.writeTo(os);
 					bufOs = null;
+					final byte[] buf = new byte[BUFFER_SIZE];
 					while (true) {
-						if (sizeOnDisk + size > maxSizeOnDisk) {
-							cleanUp(tempFile, os);
-							throw new FileCacheLimitExceededException(
-									"Disk limit exceeded for file cache: " +
-											maxSizeOnDisk);
-						}
+						reserveDisk(size - onDisk);
+						onDisk = size;
 						int count = input.read(buf, 0, buf.length);
 						if (count < 0)
 							break;
@@ -116,30 +163,221 @@ public class ByteArrayFileCacheManager {
 				} finally {
 					try { os.close(); } catch (Exception ignore) {}
 				}
-				sizeOnDisk += size;
 				return new ByteArrayFileCache(null, tempFile,
 						new JsonTokenStream(tempFile)
 							.setTrustedWholeJson(trustedJson), sorted, size);
 			} catch (IOException ioe) {
+				releaseDisk(onDisk);
 				cleanUp(tempFile, os);
 				throw new FileCacheIOException(ioe.getLocalizedMessage(), ioe);
-			} catch (RuntimeException re) {
+			} catch (FileCacheLimitExceededException | RuntimeException e) {
+				releaseDisk(onDisk);
 				cleanUp(tempFile, os);
-				throw re;
+				throw e;
 			}
 		} else {
-			sizeInMem += (int)size;
+			releaseMemory(reserved - (int) size);
 			try {
 				return new ByteArrayFileCache(null, null,
-						new JsonTokenStream(bufOs.toByteArray())
+						new JsonTokenStream(bufOs.getData())
 							.setTrustedWholeJson(trustedJson), sorted, size);
 			} catch (IOException ioe) {
+				releaseMemory((int) size);
 				throw new FileCacheIOException(
 						ioe.getLocalizedMessage(), ioe);
 			}
 		}
 	}
+	
+	/* Reserves up to the requested amount of memory, returning the amount
+	 * reserved.
+	 */
+	private int reserveMemory(final int bytes) {
+		final int res;
+		synchronized (this) {
+			res = Math.max(0, Math.min(bytes, maxSizeInMem - sizeInMem));
+			sizeInMem += res;
+		}
+		if (governor == null || res == 0) {
+			return res;
+		}
+		final int gres = (int) governor.reserveMemory(res);
+		if (gres < res) {
+			synchronized (this) {
+				sizeInMem -= res - gres;
+			}
+		}
+		return gres;
+	}
+	
+	/* Reserves the requested amount of memory, or nothing if the entire
+	 * amount is not available.
+	 */
+	private boolean tryReserveMemory(final int bytes) {
+		final int res = reserveMemory(bytes);
+		if (res < bytes) {
+			releaseMemory(res);
+			return false;
+		}
+		return true;
+	}
+	
+	private void releaseMemory(final int bytes) {
+		synchronized (this) {
+			sizeInMem -= bytes;
+		}
+		if (governor != null) {
+			governor.releaseMemory(bytes);
+		}
+	}
+	
+	/* Reserves the requested amount of disk space. The governor is called
+	 * outside the lock as it may wait for space to be released.
+	 */
+	private void reserveDisk(final long bytes)
+			throws FileCacheLimitExceededException {
+		synchronized (this) {
+			if (sizeOnDisk + bytes > maxSizeOnDisk) {
+				throw new FileCacheLimitExceededException(
+						"Disk limit exceeded for file cache: " + maxSizeOnDisk);
+			}
+			sizeOnDisk += bytes;
+		}
+		if (governor != null && !governor.reserveDisk(bytes)) {
+			synchronized (this) {
+				sizeOnDisk -= bytes;
+			}
+			throw new FileCacheLimitExceededException(
+					"Server disk limit exceeded for file cache: " +
+					governor.getMaxDisk());
+		}
+	}
+	
+	private void releaseDisk(final long bytes) {
+		synchronized (this) {
+			sizeOnDisk -= bytes;
+		}
+		if (governor != null) {
+			governor.releaseDisk(bytes);
+		}
+	}
+
+	/* A byte array output stream that can read directly into its buffer and
+	 * that can return its buffer without copying it if the buffer is full.
+	 * This avoids making multiple copies of large data.
+	 */
+	private static class DataBuffer extends ByteArrayOutputStream {
+		
+		private DataBuffer() {
+			super(INITIAL_BUFFER_SIZE);
+		}
+		
+		/* reads until the input is exhausted or maxBytes have been read */
+		private void readFrom(final InputStream input, final int maxBytes)
+				throws IOException {
+			while (count < maxBytes) {
+				if (count == buf.length) {
+					buf = Arrays.copyOf(buf,
+							(int) Math.min(2L * buf.length, maxBytes));
+				}
+				final int read = input.read(
+						buf, count, Math.min(buf.length, maxBytes) - count);
+				if (read < 0) {
+					return;
+				}
+				count += read;
+			}
+		}
+		
+		private byte[] getData() {
+			return count == buf.length ? buf : Arrays.copyOf(buf, count);
+		}
+	}
 
+	/** A source of JSON data that can be read more than once. */
+	public interface DataSource {
+		
+		/** Open a stream on the data. The caller is responsible for closing
+		 * the stream.
+		 * @return the data.
+		 * @throws IOException if the stream could not be opened.
+		 */
+		InputStream open() throws IOException;
+	}
+	
+	/** Create a cache that does not store any data, but instead reads the
+	 * data from a source each time the data is accessed. The data is never
+	 * held in memory as a whole when the cache is serialized via
+	 * {@link ByteArrayFileCache#getUObject()}, so the cache does not count
+	 * against this manager's limits. Subsets cannot be extracted from the
+	 * cache.
+	 * @param source the source of the data. The data must be valid JSON
+	 * encoded as UTF-8.
+	 * @param size the size of the data.
+	 * @param sorted whether the data is sorted.
+	 * @return the new cache.
+	 */
+	public ByteArrayFileCache createStreamingBAFC(
+			final DataSource source,
+			final long size,
+			final boolean sorted) {
+		if (source == null) {
+			throw new NullPointerException("source cannot be null");
+		}
+		return new ByteArrayFileCache(source, sorted, size);
+	}
+	
+	/* Writes JSON from a data source to a generator without reading all
+	 * the data into memory.
+	 */
+	private static class StreamedJson implements JsonSerializable {
+		
+		private final DataSource source;
+		
+		private StreamedJson(final DataSource source) {
+			this.source = source;
+		}
+		
+		@Override
+		public void serialize(
+				final JsonGenerator jgen,
+				final SerializerProvider provider)
+				throws IOException, JsonProcessingException {
+			try (final InputStream is = source.open()) {
+				if (jgen instanceof TokenBuffer) {
+					// token buffers don't support raw writes
+					final JsonParser p = UObject.getMapper().getFactory()
+							.createParser(is);
+					p.nextToken();
+					jgen.copyCurrentStructure(p);
+				} else {
+					final Reader r = new InputStreamReader(is, StandardCharsets.UTF_8);
+					final char[] buf = new char[BUFFER_SIZE];
+					boolean first = true;
+					int read;
+					while ((read = r.read(buf)) > -1) {
+						if (first) {
+							// writes any separator required before the value
+							jgen.writeRawValue(buf, 0, read);
+							first = false;
+						} else {
+							jgen.writeRaw(buf, 0, read);
+						}
+					}
+				}
+			}
+		}
+		
+		@Override
+		public void serializeWithType(
+				final JsonGenerator jgen,
+				final SerializerProvider provider,
+				final TypeSerializer typeSer)
+				throws IOException, JsonProcessingException {
+			serialize(jgen, provider);
+		}
+	}
+	
 	private void cleanUp(File tempFile, OutputStream os) {
 		if (os != null)
 			try {
@@ -149,68 +387,216 @@ public class ByteArrayFileCacheManager {
 			tempFile.delete();
 	}
 
-	@SuppressWarnings("resource")
 	public ByteArrayFileCache getSubdataExtraction(
 			final ByteArrayFileCache parent, final SubsetSelection paths)
 			throws TypedObjectExtractionException,
 			FileCacheLimitExceededException, FileCacheIOException {
-		final OutputStream[] origin = {new ByteArrayOutputStream()};
-		final File[] tempFile = {null};
-		final long[] size = {0L};
-		OutputStream os = new OutputStream() {
+		if (parent.source != null) {
+			throw new IllegalArgumentException(
+					"Subsets cannot be extracted from streamed data");
+		}
+		return writeSubdata(parent, parent.containsTrustedJson(), parent.isSorted(), 1,
+				new SubdataWriter() {
+			
+			@Override
+			public void write(final List<SubdataOutput> os)
+					throws TypedObjectExtractionException {
+				parent.getSubdataExtractionAsStream(paths, os.get(0));
+			}
+		}).get(0);
+	}
+	
+	/** Extract several subsets from a document in a single pass over the
+	 * document. The subsets are identical to those returned by
+	 * {@link #getSubdataExtraction(ByteArrayFileCache, SubsetSelection)}
+	 * for each selection, and together are subject to the data manager's
+	 * limits.
+	 * @param parent the document.
+	 * @param paths the subsets to extract.
+	 * @return the subsets, in the same order as the selections.
+	 * @throws TypedObjectExtractionException if any of the subset
+	 * selections are invalid.
+	 * @throws FileCacheLimitExceededException if the data manager's data
+	 * limit is exceeded.
+	 * @throws FileCacheIOException if the subsets could not be written.
+	 */
+	public List<ByteArrayFileCache> getSubdataExtractions(
+			final ByteArrayFileCache parent, final List<SubsetSelection> paths)
+			throws TypedObjectExtractionException,
+			FileCacheLimitExceededException, FileCacheIOException {
+		if (parent.source != null) {
+			throw new IllegalArgumentException(
+					"Subsets cannot be extracted from streamed data");
+		}
+		if (paths.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return writeSubdata(parent, parent.containsTrustedJson(), parent.isSorted(),
+				paths.size(), new SubdataWriter() {
+			
 			@Override
-			public void write(int b) throws IOException {
-				throw new NotImplementedException(
-						"Single byte writing is not supported");
+			public void write(final List<SubdataOutput> os)
+					throws TypedObjectExtractionException {
+				parent.getSubdataExtractionsAsStreams(paths, os);
 			}
+		});
+	}
+	
+	/** Extract a subset of a JSON document, reading only the parts of the
+	 * document that contain the subset as located by the document's
+	 * structural index.
+	 * @param index the structural index of the document.
+	 * @param source a source for byte ranges of the document. The document
+	 * must be valid JSON encoded as UTF-8.
+	 * @param sorted whether the document is sorted.
+	 * @param paths the subset to extract.
+	 * @return the subset, or null if the subset cannot be extracted
+	 * efficiently via the index, in which case the subset should be
+	 * extracted from the entire document.
+	 * @throws TypedObjectExtractionException if the subset selection is
+	 * invalid.
+	 * @throws FileCacheLimitExceededException if the data manager's data
+	 * limit is exceeded.
+	 * @throws FileCacheIOException if the document could not be read or the
+	 * subset could not be written.
+	 */
+	public ByteArrayFileCache getSubdataExtraction(
+			final JsonStructureIndex index,
+			final RangeSource source,
+			final boolean sorted,
+			final SubsetSelection paths)
+			throws TypedObjectExtractionException,
+			FileCacheLimitExceededException, FileCacheIOException {
+		if (index == null || source == null || paths == null) {
+			throw new NullPointerException("index, source, and paths cannot be null");
+		}
+		final IndexedExtraction ext = SubdataExtractor.planExtraction(paths, index);
+		if (ext == null) {
+			return null;
+		}
+		return writeSubdata(null, true, sorted, 1, new SubdataWriter() {
+			
 			@Override
-			public void write(byte[] b, int off, int len) throws IOException {
-				origin[0].write(b, off, len);
-				size[0] += len;
-				if (tempFile[0] == null) {
-					if (sizeInMem + size[0] > maxSizeInMem) {
-						origin[0].close();
-						byte[] arr = ((ByteArrayOutputStream)origin[0]).toByteArray();
-						tempFile[0] = tfm.generateTempFile("resp", "json");
-						origin[0] = new BufferedOutputStream(new FileOutputStream(tempFile[0]));
-						origin[0].write(arr);
+			public void write(final List<SubdataOutput> os)
+					throws IOException, TypedObjectExtractionException {
+				final JsonGenerator jgen = UObject.getMapper().getFactory()
+						.createGenerator(os.get(0));
+				try {
+					ext.extract(source, jgen);
+				} finally {
+					jgen.close();
+				}
+			}
+		}).get(0);
+	}
+	
+	private interface SubdataWriter {
+		void write(List<SubdataOutput> os)
+				throws IOException, TypedObjectExtractionException;
+	}
+	
+	/* Buffers a subset in memory, moving the data to a temp file if the
+	 * memory limit is exceeded. Memory and disk are reserved as the data is
+	 * written.
+	 */
+	private class SubdataOutput extends OutputStream {
+		
+		private OutputStream origin = new DataBuffer();
+		private File tempFile = null;
+		private long size = 0;
+		private int inMem = 0;
+		private long onDisk = 0;
+		
+		@Override
+		public void write(int b) throws IOException {
+			throw new NotImplementedException(
+					"Single byte writing is not supported");
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			origin.write(b, off, len);
+			size += len;
+			try {
+				if (tempFile == null) {
+					if (tryReserveMemory(len)) {
+						inMem += len;
+					} else {
+						final DataBuffer mem = (DataBuffer) origin;
+						tempFile = tfm.generateTempFile("resp", "json");
+						origin = new BufferedOutputStream(
+								new FileOutputStream(tempFile), BUFFER_SIZE);
+						// writes the buffer directly rather than copying it
+						mem.writeTo(origin);
+						releaseMemory(inMem);
+						inMem = 0;
+						reserveDisk(size);
+						onDisk = size;
 					}
 				} else {
-					if (sizeOnDisk + size[0] > maxSizeOnDisk) {
-						final String err = "Disk limit exceeded for file cache: " +
-								maxSizeOnDisk;
-						throw new IOException(err,
-								new FileCacheLimitExceededException(err));
-					}
+					reserveDisk(len);
+					onDisk += len;
 				}
+			} catch (FileCacheLimitExceededException e) {
+				throw new IOException(e.getLocalizedMessage(), e);
 			}
-			@Override
-			public void close() throws IOException {
-				origin[0].close();
-			}
-		};
+		}
+		
+		private void releaseReservations() {
+			releaseMemory(inMem);
+			releaseDisk(onDisk);
+			inMem = 0;
+			onDisk = 0;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			origin.close();
+		}
+	}
+	
+	/* Writes subsets to new caches, moving the data from memory to temp
+	 * files if the memory limit is exceeded.
+	 */
+	private List<ByteArrayFileCache> writeSubdata(
+			final ByteArrayFileCache parent,
+			final boolean trustedJson,
+			final boolean sorted,
+			final int count,
+			final SubdataWriter writer)
+			throws TypedObjectExtractionException,
+			FileCacheLimitExceededException, FileCacheIOException {
+		final List<SubdataOutput> outs = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			outs.add(new SubdataOutput());
+		}
 		try {
-			parent.getSubdataExtractionAsStream(paths, os);
-			if (tempFile[0] != null) {
-				sizeOnDisk += size[0];
-				return new ByteArrayFileCache(parent, tempFile[0],
-						new JsonTokenStream(tempFile[0])
-						.setTrustedWholeJson(parent.containsTrustedJson()),
-						parent.isSorted(), size[0]); 
-			} else {
-				sizeInMem += (int)size[0];
-				byte[] arr = ((ByteArrayOutputStream)origin[0]).toByteArray();
-				return new ByteArrayFileCache(parent, null,
-						new JsonTokenStream(arr)
-						.setTrustedWholeJson(parent.containsTrustedJson()),
-						parent.isSorted(), size[0]);
+			writer.write(outs);
+			final List<ByteArrayFileCache> ret = new ArrayList<>();
+			for (final SubdataOutput os: outs) {
+				if (os.tempFile != null) {
+					ret.add(new ByteArrayFileCache(parent, os.tempFile,
+							new JsonTokenStream(os.tempFile)
+							.setTrustedWholeJson(trustedJson),
+							sorted, os.size));
+				} else {
+					byte[] arr = ((DataBuffer) os.origin).getData();
+					ret.add(new ByteArrayFileCache(parent, null,
+							new JsonTokenStream(arr)
+							.setTrustedWholeJson(trustedJson),
+							sorted, os.size));
+				}
 			}
+			return ret;
 		} catch (Throwable e) {
-			try {
-				os.close();
-			} catch (Exception ignore) {}
-			if (tempFile[0] != null) {
-				tempFile[0].delete();
+			for (final SubdataOutput os: outs) {
+				try {
+					os.close();
+				} catch (Exception ignore) {}
+				if (os.tempFile != null) {
+					os.tempFile.delete();
+				}
+				os.releaseReservations();
 			}
 			if (e instanceof TypedObjectExtractionException) {
 				throw (TypedObjectExtractionException)e;
@@ -230,7 +616,7 @@ public class ByteArrayFileCacheManager {
 	}
 	
 	@Override
-	public String toString() {
+	public synchronized String toString() {
 		return "ByteArrayFileCacheManager [sizeInMem=" + sizeInMem
 				+ ", maxSizeInMem=" + maxSizeInMem + ", sizeOnDisk="
 				+ sizeOnDisk + ", maxSizeOnDisk=" + maxSizeOnDisk + "]";
@@ -243,6 +629,7 @@ public class ByteArrayFileCacheManager {
 		private boolean destroyed = false;
 		private final boolean sorted;
 		private final long size;
+		private final DataSource source; // null unless the data is streamed
 		
 		// sorted is ignored if a parent is present
 		private ByteArrayFileCache(
@@ -260,6 +647,17 @@ public class ByteArrayFileCacheManager {
 				this.sorted = sorted;
 			}
 			this.size = size;
+			this.source = null;
+		}
+		
+		private ByteArrayFileCache(
+				final DataSource source,
+				final boolean sorted,
+				final long size) {
+			this.jts = null;
+			this.sorted = sorted;
+			this.size = size;
+			this.source = source;
 		}
 		
 		public boolean isSorted() {
@@ -272,6 +670,9 @@ public class ByteArrayFileCacheManager {
 		
 		public UObject getUObject() throws JsonParseException, IOException {
 			checkIfDestroyed();
+			if (source != null) {
+				return new UObject(new StreamedJson(source));
+			}
 			jts.setRoot(null);
 			return new UObject(jts);
 		}
@@ -279,11 +680,19 @@ public class ByteArrayFileCacheManager {
 		public JsonNode getAsJsonNode()
 				throws JsonParseException, IOException {
 			checkIfDestroyed();
+			if (source != null) {
+				try (final InputStream is = source.open()) {
+					return UObject.getMapper().readTree(is);
+				}
+			}
 			return UObject.transformObjectToJackson(getUObject());
 		}
 		
 		public Reader getJSON() throws IOException {
 			checkIfDestroyed();
+			if (source != null) {
+				return new InputStreamReader(source.open(), StandardCharsets.UTF_8);
+			}
 			return jts.createDataReader();
 		}
 		
@@ -293,6 +702,9 @@ public class ByteArrayFileCacheManager {
 		 */
 		public boolean containsTrustedJson() {
 			checkIfDestroyed();
+			if (source != null) {
+				return true;
+			}
 			return jts.hasTrustedWholeJson();
 		}
 
@@ -323,22 +735,56 @@ public class ByteArrayFileCacheManager {
 			}
 		}
 		
+		private void getSubdataExtractionsAsStreams(
+				final List<SubsetSelection> paths,
+				final List<? extends OutputStream> os)
+				throws TypedObjectExtractionException {
+			checkIfDestroyed();
+			try {
+				final List<JsonGenerator> jgens = new ArrayList<>();
+				try {
+					for (final OutputStream o: os) {
+						jgens.add(UObject.getMapper().getFactory().createGenerator(o));
+					}
+					SubdataExtractor.extract(paths, jts.setRoot(null), jgens);
+				} finally {
+					jts.close();
+					for (final JsonGenerator jgen: jgens) {
+						jgen.close();
+					}
+				}
+			} catch (IOException | IllegalStateException ex) {
+				throw new TypedObjectExtractionException(ex.getMessage(), ex);
+			}
+		}
+		
 		/** Destroys any data associated with this cache and calls destroy()
 		 * on this cache's parent. Only subdata objects have a parent, but
-		 * multiple subdata objects can share the same parent.
+		 * multiple subdata objects can share the same parent. Any memory or
+		 * disk reserved for the data in the server wide resource governor is
+		 * released.
 		 */
 		public void destroy() {
 			if (destroyed) {
 				return;
 			}
 			try {
-				jts.close();
+				if (jts != null) {
+					jts.close();
+				}
 			} catch (IOException ioe) {
 				//nothing can be done
 			}
 			if (tempFile != null && tempFile.exists()) {
 				tempFile.delete();
 			}
+			if (governor != null && source == null) {
+				if (tempFile != null) {
+					governor.releaseDisk(size);
+				} else {
+					governor.releaseMemory(size);
+				}
+			}
 			if (parent != null) {
 				parent.destroy();
 			}
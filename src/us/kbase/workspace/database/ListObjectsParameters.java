@@ -42,6 +42,7 @@ public class ListObjectsParameters {
 	private boolean excludeGlobal = false;
 	private boolean asAdmin = false;
 	private int limit = MAX_INFO_COUNT;
+	private Reference startAfter = null;
 	
 	/** Create a set of parameters for calling the list objects method.
 	 * @param user the user calling the method. If null, only globally
@@ -425,6 +426,27 @@ public class ListObjectsParameters {
 		return this;
 	}
 	
+	/** Get the object reference after which objects should be listed.
+	 * @return the reference, or null if objects should be listed from the start.
+	 */
+	public Reference getStartAfter() {
+		return startAfter;
+	}
+
+	/** Set the object reference after which objects should be listed. Objects are listed
+	 * in order of workspace ID, object ID, and version descending, and so setting the reference
+	 * to the last object returned from a previous call continues listing objects from where the
+	 * previous call left off. The reference is a plain object reference rather than an opaque
+	 * paging token. Cannot be used with the type, savers, metadata, after, or before
+	 * filters, as the results are not sorted when any of those filters are set.
+	 * @param startAfter the reference, or null to list objects from the start.
+	 * @return this ListObjectsParameters instance.
+	 */
+	public ListObjectsParameters withStartAfter(final Reference startAfter) {
+		this.startAfter = startAfter;
+		return this;
+	}
+	
 	/** Get whether the command should be run as an admin. If this is the case the user will always
 	 * be null.
 	 * @return whether the effective user is an admin.
@@ -438,10 +460,36 @@ public class ListObjectsParameters {
 		if (perms == null) {
 			throw new NullPointerException("perms cannot be null");
 		}
-		return new GetObjectInformationParameters(
+		final GetObjectInformationParameters params = new GetObjectInformationParameters(
 				perms, type, savers, meta, after, before, minObjectID,
 				maxObjectID, showHidden, showDeleted, showOnlyDeleted,
-				showAllVers, includeMetaData, limit, asAdmin);
-		
+				showAllVers, includeMetaData, limit, startAfter, asAdmin);
+		if (startAfter != null && !params.isObjectIDFiltersOnly()) {
+			throw new IllegalArgumentException(
+					"The start after reference cannot be used with the type, savers, " +
+					"metadata, after, or before filters. Filters set: " +
+					String.join(", ", getStartAfterConflicts()));
+		}
+		return params;
+	}
+	
+	private List<String> getStartAfterConflicts() {
+		final List<String> conflicts = new LinkedList<>();
+		if (type != null) {
+			conflicts.add("type");
+		}
+		if (!savers.isEmpty()) {
+			conflicts.add("savers");
+		}
+		if (!meta.isEmpty()) {
+			conflicts.add("metadata");
+		}
+		if (after != null) {
+			conflicts.add("after");
+		}
+		if (before != null) {
+			conflicts.add("before");
+		}
+		return conflicts;
 	}
 }
@@ -19,6 +19,7 @@ import us.kbase.workspace.database.exceptions.CorruptWorkspaceDBException;
 import us.kbase.workspace.database.exceptions.InaccessibleObjectException;
 import us.kbase.workspace.database.exceptions.NoSuchObjectException;
 import us.kbase.workspace.database.exceptions.NoSuchReferenceException;
+import us.kbase.workspace.database.exceptions.NoSuchWorkspaceException;
 import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
 import us.kbase.workspace.database.refsearch.ReferenceGraphSearch;
 import us.kbase.workspace.database.refsearch.ReferenceGraphTopologyProvider;
@@ -46,6 +47,10 @@ public class ObjectResolver {
 	private final boolean nullIfInaccessible;
 	private final boolean asAdmin;
 	private final int maximumObjectSearchCount;
+	// null if no caching
+	private final ReferenceSearchCache cache;
+	// null if no caching
+	private final PublicWorkspaceCache publicCache;
 	
 	/* only the below are accessible via the api. The variables above are only needed during the
 	 * object resolution process. 
@@ -65,7 +70,9 @@ public class ObjectResolver {
 			final List<ObjectIdentifier> objects,
 			final boolean nullIfInaccessible,
 			final boolean asAdmin,
-			final int maxSearch)
+			final int maxSearch,
+			final ReferenceSearchCache cache,
+			final PublicWorkspaceCache publicCache)
 			throws WorkspaceCommunicationException, InaccessibleObjectException,
 				CorruptWorkspaceDBException, NoSuchReferenceException,
 				ReferenceSearchMaximumSizeExceededException {
@@ -76,6 +83,8 @@ public class ObjectResolver {
 		this.nullIfInaccessible = nullIfInaccessible;
 		this.asAdmin = asAdmin;
 		this.maximumObjectSearchCount = maxSearch;
+		this.cache = cache;
+		this.publicCache = publicCache;
 		resolve();
 	}
 	
@@ -229,22 +238,79 @@ public class ObjectResolver {
 	}
 	
 
-	private Set<Long> getReadableWorkspaces()
+	/* The workspaces the user can read by virtue of the user's own permissions, not including
+	 * globally readable workspaces. Usually a small set compared to the public workspaces.
+	 */
+	private WorkspaceIDSet getUserReadableWorkspaces()
+			throws WorkspaceCommunicationException, CorruptWorkspaceDBException {
+		if (user == null) {
+			return WorkspaceIDSet.EMPTY;
+		}
+		return toIDSet(db.getPermissions(user, Permission.READ, true));
+	}
+	
+	/* The globally readable workspaces, from the cache if allowed. */
+	private WorkspaceIDSet getPublicWorkspaces(final boolean allowCached)
 			throws WorkspaceCommunicationException, CorruptWorkspaceDBException {
-		//could make a method to just get IDs of workspace with specific permission to save mem
-		final PermissionSet pset = db.getPermissions(user, Permission.READ, false);
-		return pset.getWorkspaces().stream()
+		if (allowCached) {
+			final WorkspaceIDSet cached = publicCache.getPublicWorkspaces();
+			if (cached != null) {
+				return cached;
+			}
+		}
+		// get the generation before reading from the DB so stale data isn't cached
+		final long generation = publicCache.getGeneration();
+		final WorkspaceIDSet ids = toIDSet(db.getPermissions(null, Permission.READ, false));
+		publicCache.putPublicWorkspaces(ids, generation);
+		return ids;
+	}
+	
+	private static WorkspaceIDSet toIDSet(final PermissionSet pset) {
+		return WorkspaceIDSet.of(pset.getWorkspaces().stream()
 				.filter(ws -> !ws.isDeleted())
 				.map(ws -> ws.getID())
-				.collect(Collectors.toSet());
+				.collect(Collectors.toList()));
+	}
+	
+	/* Checks that the workspaces are readable by the user and not deleted. Used to check
+	 * path heads found via the cached public workspaces, which may be stale if another
+	 * process changed the workspaces.
+	 */
+	private boolean isReadable(final Set<Long> workspaceIDs)
+			throws WorkspaceCommunicationException, CorruptWorkspaceDBException {
+		if (workspaceIDs.isEmpty()) {
+			return true;
+		}
+		final Set<WorkspaceIdentifier> wsis = workspaceIDs.stream()
+				.map(id -> new WorkspaceIdentifier(id)).collect(Collectors.toSet());
+		final Map<WorkspaceIdentifier, ResolvedWorkspaceID> rwsis;
+		try {
+			rwsis = db.resolveWorkspaces(wsis, true);
+		} catch (NoSuchWorkspaceException e) {
+			return false; // can't happen when suppressing errors
+		}
+		if (rwsis.size() != wsis.size()) {
+			return false;
+		}
+		final PermissionSet pset = db.getPermissions(user, new HashSet<>(rwsis.values()));
+		for (final ResolvedWorkspaceID rwsi: rwsis.values()) {
+			if (rwsi.isDeleted() || !pset.hasPermission(rwsi, Permission.READ)) {
+				return false;
+			}
+		}
+		return true;
 	}
 	
 	private class TopoProvider implements ReferenceGraphTopologyProvider {
 			
-		private final Set<Long> readableWorkspaceIDs;
+		private final WorkspaceIDSet readableWorkspaceIDs;
+		private final long cacheGeneration;
 		
-		private TopoProvider(final Set<Long> readableWorkspaceIDs) {
+		private TopoProvider(
+				final WorkspaceIDSet readableWorkspaceIDs,
+				final long cacheGeneration) {
 			this.readableWorkspaceIDs = readableWorkspaceIDs;
+			this.cacheGeneration = cacheGeneration;
 		}
 
 		@Override
@@ -252,8 +318,7 @@ public class ObjectResolver {
 				final Set<Reference> sourceRefs)
 				throws ReferenceProviderException {
 			try {
-				final Map<Reference, ObjectReferenceSet> refs =
-						db.getObjectIncomingReferences(sourceRefs);
+				final Map<Reference, ObjectReferenceSet> refs = getIncomingReferences(sourceRefs);
 				final Set<Reference> readable = new HashSet<>();
 				for (final ObjectReferenceSet refset: refs.values()) {
 					for (final Reference r: refset.getReferenceSet()) {
@@ -278,16 +343,73 @@ public class ObjectResolver {
 				throw new ReferenceProviderException("foo", e);
 			}
 		}
+		
+		/* the incoming references are cached without regard to permissions or deletion state,
+		 * which are always checked against the database above.
+		 */
+		private Map<Reference, ObjectReferenceSet> getIncomingReferences(
+				final Set<Reference> sourceRefs)
+				throws WorkspaceCommunicationException {
+			if (cache == null) {
+				return db.getObjectIncomingReferences(sourceRefs);
+			}
+			final Map<Reference, ObjectReferenceSet> refs =
+					cache.getIncomingReferences(sourceRefs);
+			final Set<Reference> missing = new HashSet<>(sourceRefs);
+			missing.removeAll(refs.keySet());
+			if (!missing.isEmpty()) {
+				final Map<Reference, ObjectReferenceSet> dbrefs =
+						db.getObjectIncomingReferences(missing);
+				cache.putIncomingReferences(dbrefs, cacheGeneration);
+				refs.putAll(dbrefs);
+			}
+			return refs;
+		}
 	}
 
-	//TODO REF LOOKUP positive and negative caches (?)
 	private void searchObjectDAG(final Set<ObjectIdentifier> lookup)
 			throws WorkspaceCommunicationException, ReferenceSearchMaximumSizeExceededException,
 				InaccessibleObjectException, CorruptWorkspaceDBException {
 		if (lookup.isEmpty()) {
 			return;
 		}
-		final Set<Long> readableWorkspaceIDs = asAdmin? new HashSet<>() : getReadableWorkspaces();
+		if (!searchObjectDAG(lookup, true)) {
+			// a cached public workspace is no longer readable, search again with fresh data
+			publicCache.invalidate();
+			for (final ObjectIdentifier o: lookup) {
+				withpath.remove(o);
+				withpathRefPath.remove(o);
+			}
+			searchObjectDAG(lookup, false);
+		}
+	}
+	
+	/* Returns false if any path heads found via the cached public workspaces are not readable.
+	 * Searches that fail due to stale public workspaces are not retried, as a search that
+	 * fails is far more expensive to repeat, and the staleness is bounded by the cache
+	 * expiration, as it is for the failed search cache.
+	 */
+	private boolean searchObjectDAG(
+			final Set<ObjectIdentifier> lookup,
+			final boolean allowCachedPublicWorkspaces)
+			throws WorkspaceCommunicationException, ReferenceSearchMaximumSizeExceededException,
+				InaccessibleObjectException, CorruptWorkspaceDBException {
+		// get the generation before reading from the DB so stale data isn't cached
+		final long cacheGeneration = cache == null ? 0 : cache.getGeneration();
+		final WorkspaceIDSet userWorkspaceIDs;
+		final WorkspaceIDSet readableWorkspaceIDs;
+		if (asAdmin) {
+			userWorkspaceIDs = WorkspaceIDSet.EMPTY;
+			readableWorkspaceIDs = WorkspaceIDSet.EMPTY;
+		} else if (publicCache == null) {
+			// no point splitting the ACL query if the public workspaces can't be cached
+			userWorkspaceIDs = toIDSet(db.getPermissions(user, Permission.READ, false));
+			readableWorkspaceIDs = userWorkspaceIDs;
+		} else {
+			userWorkspaceIDs = getUserReadableWorkspaces();
+			readableWorkspaceIDs = userWorkspaceIDs.union(
+					getPublicWorkspaces(allowCachedPublicWorkspaces));
+		}
 		final Map<ObjectIdentifier, ObjectIDResolvedWS> resobjs = permissionsFactory
 				.getObjectChecker(lookup, Permission.NONE)
 				.withIncludeDeletedWorkspaces().check();
@@ -296,7 +418,7 @@ public class ObjectResolver {
 		try {
 			if (!asAdmin && readableWorkspaceIDs.isEmpty()) {
 				if (nullIfInaccessible) {
-					return;
+					return true;
 				} else {
 					throw new ObjectDAGSearchFromObjectIDFailedException(lookup.iterator().next());
 				}
@@ -305,13 +427,18 @@ public class ObjectResolver {
 			// will throw an exception if can't find a ref for any object in lookup
 			final Set<Reference> startingRefs = searchObjectDAGGetStartingRefs(
 					readableWorkspaceIDs, lookup, resobjs, objrefs);
-			if (startingRefs.isEmpty()) {
-				return;
+			// removes any targets with cached results from the starting refs
+			final Map<Reference, List<Reference>> paths = searchObjectDAGGetCachedPaths(
+					readableWorkspaceIDs, startingRefs);
+			if (!startingRefs.isEmpty()) {
+				paths.putAll(searchObjectDAGRunSearch(
+						readableWorkspaceIDs, startingRefs, cacheGeneration));
 			}
-			final ReferenceGraphSearch search = new ReferenceGraphSearch(
-					startingRefs, new TopoProvider(readableWorkspaceIDs),
-					maximumObjectSearchCount, !nullIfInaccessible);
-			searchObjectDAGBuildResolvedObjectPaths(resobjs, objrefs, search);
+			searchObjectDAGBuildResolvedObjectPaths(resobjs, objrefs, paths);
+			if (!asAdmin && allowCachedPublicWorkspaces && publicCache != null) {
+				return isReadable(getPathHeadWorkspaces(lookup, userWorkspaceIDs));
+			}
+			return true;
 		} catch (final ReferenceSearchFailedException |
 				ObjectDAGSearchFromObjectIDFailedException e) {
 //			e.printStackTrace();
@@ -326,8 +453,24 @@ public class ObjectResolver {
 		}
 	}
 
+	// the workspaces of the heads of the paths found for the objects, excluding the given workspaces
+	private Set<Long> getPathHeadWorkspaces(
+			final Set<ObjectIdentifier> lookup,
+			final WorkspaceIDSet exclude) {
+		final Set<Long> ret = new HashSet<>();
+		for (final ObjectIdentifier o: lookup) {
+			if (withpathRefPath.containsKey(o)) {
+				final long wsid = withpathRefPath.get(o).get(0).getWorkspaceID();
+				if (!exclude.contains(wsid)) {
+					ret.add(wsid);
+				}
+			}
+		}
+		return ret;
+	}
+
 	private Set<Reference> searchObjectDAGGetStartingRefs(
-			final Set<Long> readableWorkspaceIDs,
+			final WorkspaceIDSet readableWorkspaceIDs,
 			final Set<ObjectIdentifier> lookup,
 			final Map<ObjectIdentifier, ObjectIDResolvedWS> resobjs,
 			final Map<ObjectIDResolvedWS, Reference> objrefs)
@@ -358,18 +501,100 @@ public class ObjectResolver {
 		return startingRefs;
 	}
 
+	/* Paths in the cache are only used if the head of the path is readable by the user and
+	 * the object exists. The references between objects never change, so this is sufficient to
+	 * ensure the path is valid.
+	 * Failed searches are keyed by the readable workspaces, and so a change to the permissions
+	 * or deletion state of any workspace causes a cache miss.
+	 */
+	private Map<Reference, List<Reference>> searchObjectDAGGetCachedPaths(
+			final WorkspaceIDSet readableWorkspaceIDs,
+			final Set<Reference> startingRefs)
+			throws WorkspaceCommunicationException, ReferenceSearchFailedException {
+		final Map<Reference, List<Reference>> paths = new HashMap<>();
+		if (cache == null || startingRefs.isEmpty()) {
+			return paths;
+		}
+		final Map<Reference, List<Reference>> cached = cache.getPaths(startingRefs);
+		final Set<Reference> heads = new HashSet<>();
+		for (final List<Reference> path: cached.values()) {
+			final Reference head = path.get(0);
+			if (asAdmin || readableWorkspaceIDs.contains(head.getWorkspaceID())) {
+				heads.add(head);
+			}
+		}
+		final Map<Reference, Boolean> exists = heads.isEmpty() ?
+				Collections.emptyMap() : db.getObjectExistsRef(heads);
+		for (final Entry<Reference, List<Reference>> e: cached.entrySet()) {
+			final Reference head = e.getValue().get(0);
+			if (exists.containsKey(head) && exists.get(head)) {
+				paths.put(e.getKey(), e.getValue());
+				startingRefs.remove(e.getKey());
+			}
+		}
+		final Set<Reference> failed = cache.getFailedSearches(
+				startingRefs, asAdmin ? null : readableWorkspaceIDs);
+		if (!failed.isEmpty() && !nullIfInaccessible) {
+			throw new ReferenceSearchFailedException(failed.iterator().next());
+		}
+		startingRefs.removeAll(failed);
+		return paths;
+	}
+	
+	private Map<Reference, List<Reference>> searchObjectDAGRunSearch(
+			final WorkspaceIDSet readableWorkspaceIDs,
+			final Set<Reference> startingRefs,
+			final long cacheGeneration)
+			throws ReferenceSearchFailedException, ReferenceSearchMaximumSizeExceededException,
+				ReferenceProviderException {
+		final ReferenceGraphSearch search;
+		try {
+			search = new ReferenceGraphSearch(
+					startingRefs, new TopoProvider(readableWorkspaceIDs, cacheGeneration),
+					maximumObjectSearchCount, !nullIfInaccessible);
+		} catch (ReferenceSearchFailedException e) {
+			cacheFailedSearches(readableWorkspaceIDs,
+					new HashSet<>(Arrays.asList(e.getFailedReference())), cacheGeneration);
+			throw e;
+		}
+		final Map<Reference, List<Reference>> paths = new HashMap<>();
+		final Set<Reference> failed = new HashSet<>();
+		for (final Reference r: startingRefs) {
+			if (search.isPathFound(r)) {
+				paths.put(r, search.getPath(r));
+				if (cache != null) {
+					cache.putPath(search.getPath(r));
+				}
+			} else if (search.isSearchFailed(r)) {
+				failed.add(r);
+			}
+		}
+		cacheFailedSearches(readableWorkspaceIDs, failed, cacheGeneration);
+		return paths;
+	}
+	
+	private void cacheFailedSearches(
+			final WorkspaceIDSet readableWorkspaceIDs,
+			final Set<Reference> failed,
+			final long cacheGeneration) {
+		if (cache != null) {
+			cache.putFailedSearches(
+					failed, asAdmin ? null : readableWorkspaceIDs, cacheGeneration);
+		}
+	}
+
 	private void searchObjectDAGBuildResolvedObjectPaths(
 			final Map<ObjectIdentifier, ObjectIDResolvedWS> resobjs,
 			final Map<ObjectIDResolvedWS, Reference> objrefs,
-			final ReferenceGraphSearch paths) {
+			final Map<Reference, List<Reference>> paths) {
 		
 		for (final Entry<ObjectIdentifier, ObjectIDResolvedWS> e: resobjs.entrySet()) {
 			final Reference r = objrefs.get(e.getValue());
-			if (paths.isPathFound(r)) { // objid was valid and path was found
+			if (paths.containsKey(r)) { // objid was valid and path was found
 				//absolutize the ObjectIDResolvedWS
 				withpath.put(e.getKey(), new ObjectIDResolvedWS(
 						e.getValue().getWorkspaceIdentifier(), r.getObjectID(), r.getVersion()));
-				withpathRefPath.put(e.getKey(), paths.getPath(r));
+				withpathRefPath.put(e.getKey(), paths.get(r));
 			}
 		}
 	}
@@ -566,6 +791,8 @@ public class ObjectResolver {
 		private boolean nullIfInaccessible = false;
 		private boolean asAdmin = false;
 		private int maxSearch = MAX_OBJECT_SEARCH_COUNT_DEFAULT;
+		private ReferenceSearchCache cache = null;
+		private PublicWorkspaceCache publicCache = null;
 		
 		private Builder(final WorkspaceDatabase db, final WorkspaceUser user) {
 			nonNull(db, "db");
@@ -590,7 +817,8 @@ public class ObjectResolver {
 			if (objects.isEmpty()) {
 				throw new IllegalArgumentException("No object identifiers provided");
 			}
-			return new ObjectResolver(db, user, objects, nullIfInaccessible, asAdmin, maxSearch);
+			return new ObjectResolver(db, user, objects, nullIfInaccessible, asAdmin, maxSearch,
+					cache, publicCache);
 		}
 		
 		/** Build an empty ObjectResolver containing no objects. Ignores any objects added to the
@@ -601,7 +829,7 @@ public class ObjectResolver {
 
 			try {
 				return new ObjectResolver(db, user, Collections.emptyList(), nullIfInaccessible,
-						asAdmin, maxSearch);
+						asAdmin, maxSearch, cache, publicCache);
 			} catch (WorkspaceCommunicationException | InaccessibleObjectException |
 					CorruptWorkspaceDBException | NoSuchReferenceException |
 					ReferenceSearchMaximumSizeExceededException e) {
@@ -642,6 +870,25 @@ public class ObjectResolver {
 			return this;
 		}
 		
+		/** Use a cache for the results of searches for reference paths to objects.
+		 * @param cache the cache, or null to not use a cache.
+		 * @return this builder.
+		 */
+		public Builder withReferenceSearchCache(final ReferenceSearchCache cache) {
+			this.cache = cache;
+			return this;
+		}
+		
+		/** Use a cache for the set of public workspaces when searching for reference paths to
+		 * objects.
+		 * @param cache the cache, or null to not use a cache.
+		 * @return this builder.
+		 */
+		public Builder withPublicWorkspaceCache(final PublicWorkspaceCache cache) {
+			this.publicCache = cache;
+			return this;
+		}
+		
 		/** Add an object to be resolved.
 		 * @param object the object.
 		 * @return this builder.
@@ -0,0 +1,89 @@
+package us.kbase.workspace.database;
+
+import static us.kbase.workspace.database.Util.nonNull;
+
+import java.util.concurrent.TimeUnit;
+
+/** Caches the set of globally readable, undeleted workspaces, which is shared by all users.
+ *
+ * The caller must update the set via {@link #setPublicWorkspace(long, boolean)} when a
+ * workspace's global readability or deletion state changes. Since changes made by other
+ * processes sharing the same database cannot be detected, the set expires after a fixed time,
+ * and the caller must check that any workspace that is only readable via the cached set is
+ * in fact readable before relying on it.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class PublicWorkspaceCache {
+
+	private final long expirationNanos;
+	// the public workspaces and the time they were loaded. Guarded by generation.
+	private WorkspaceIDSet publicWorkspaces = null;
+	private long loaded = 0;
+	private long generation = 0;
+
+	/** Create the cache.
+	 * @param expiration the time after which the set of public workspaces expires.
+	 * @param unit the unit of the expiration time.
+	 */
+	public PublicWorkspaceCache(final long expiration, final TimeUnit unit) {
+		if (expiration < 1) {
+			throw new IllegalArgumentException("expiration must be greater than zero");
+		}
+		nonNull(unit, "unit");
+		expirationNanos = unit.toNanos(expiration);
+	}
+
+	/** Get the current generation of the cache. The generation is incremented every time the
+	 * set is changed. Callers should get the generation before reading the set from the
+	 * database and pass it to {@link #putPublicWorkspaces(WorkspaceIDSet, long)}, which will
+	 * then discard a set that may have been read prior to a change.
+	 * @return the generation.
+	 */
+	public synchronized long getGeneration() {
+		return generation;
+	}
+
+	/** Get the set of IDs of the globally readable, undeleted workspaces.
+	 * @return the set, or null if the set is not cached or has expired.
+	 */
+	public synchronized WorkspaceIDSet getPublicWorkspaces() {
+		if (publicWorkspaces != null && System.nanoTime() - loaded > expirationNanos) {
+			publicWorkspaces = null;
+		}
+		return publicWorkspaces;
+	}
+
+	/** Add the set of IDs of the globally readable, undeleted workspaces to the cache.
+	 * @param ids the workspace IDs.
+	 * @param generation the generation of the cache when the IDs were read from the database.
+	 */
+	public synchronized void putPublicWorkspaces(final WorkspaceIDSet ids, final long generation) {
+		nonNull(ids, "ids");
+		if (generation != this.generation) {
+			return;
+		}
+		publicWorkspaces = ids;
+		loaded = System.nanoTime();
+	}
+
+	/** Update the set of public workspaces after a workspace is made globally readable or
+	 * unreadable, created, cloned, deleted, or undeleted.
+	 * @param id the ID of the workspace.
+	 * @param isPublic true if the workspace is now globally readable and not deleted.
+	 */
+	public synchronized void setPublicWorkspace(final long id, final boolean isPublic) {
+		generation++;
+		if (publicWorkspaces != null) {
+			publicWorkspaces = publicWorkspaces.with(id, isPublic);
+		}
+	}
+
+	/** Remove the set of public workspaces from the cache, for example when a workspace that
+	 * was thought to be readable is found not to be.
+	 */
+	public synchronized void invalidate() {
+		generation++;
+		publicWorkspaces = null;
+	}
+}
@@ -0,0 +1,312 @@
+package us.kbase.workspace.database;
+
+import static us.kbase.workspace.database.Util.nonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/** Caches the results of searching the reference graph for a path from an accessible object to
+ * an object that is otherwise inaccessible to a user. Three caches are maintained:
+ *
+ * <ul>
+ * <li>Paths found by a search, keyed by the target reference. Since the references between
+ * objects never change, a path is always a path. However, the object at the head of the path may
+ * be deleted or become inaccessible to a user, and so the caller must check that the head of the
+ * path is accessible each time a path is retrieved from the cache.</li>
+ * <li>Searches that were exhausted without finding a path, keyed by the target reference and the
+ * set of workspaces readable by the user. Any change to the set of readable workspaces, including
+ * permission changes and workspace deletion, results in a different key.</li>
+ * <li>The incoming references for objects, keyed by the referenced object.</li>
+ * </ul>
+ *
+ * Saving objects with references, copying and reverting objects, cloning workspaces, and
+ * undeleting objects can add new paths through the graph, and so the caller must invalidate
+ * the failed search and incoming reference caches via the invalidate* methods when these
+ * operations occur. Since operations performed by other processes sharing the same
+ * database cannot be detected, entries in these caches expire after a fixed time.
+ *
+ * Each cache is bounded by the number of references it holds and evicts the least recently used
+ * entries when full.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class ReferenceSearchCache {
+
+	private final Cache<Reference, List<Reference>> paths;
+	private final Cache<FailedSearchKey, Boolean> failed;
+	private final Cache<Reference, ObjectReferenceSet> incoming;
+	private final AtomicLong generation = new AtomicLong();
+
+	/** Create the cache.
+	 * @param maxSize the maximum number of references to hold in each of the caches.
+	 * @param expiration the time after which failed search and incoming reference entries
+	 * expire.
+	 * @param unit the unit of the expiration time.
+	 */
+	public ReferenceSearchCache(final long maxSize, final long expiration, final TimeUnit unit) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be greater than zero");
+		}
+		if (expiration < 1) {
+			throw new IllegalArgumentException("expiration must be greater than zero");
+		}
+		nonNull(unit, "unit");
+		paths = CacheBuilder.newBuilder()
+				.maximumWeight(maxSize)
+				.weigher(new Weigher<Reference, List<Reference>>() {
+
+					@Override
+					public int weigh(final Reference target, final List<Reference> path) {
+						return path.size();
+					}
+				})
+				.recordStats()
+				.build();
+		failed = CacheBuilder.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterWrite(expiration, unit)
+				.recordStats()
+				.build();
+		incoming = CacheBuilder.newBuilder()
+				.maximumWeight(maxSize)
+				.weigher(new Weigher<Reference, ObjectReferenceSet>() {
+
+					@Override
+					public int weigh(final Reference target, final ObjectReferenceSet refs) {
+						return 1 + refs.getReferenceSet().size();
+					}
+				})
+				.expireAfterWrite(expiration, unit)
+				.recordStats()
+				.build();
+	}
+
+	private static class FailedSearchKey {
+		private final Reference target;
+		private final HashCode readable;
+
+		private FailedSearchKey(final Reference target, final HashCode readable) {
+			this.target = target;
+			this.readable = readable;
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(new Object[] {target, readable});
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null || getClass() != obj.getClass()) {
+				return false;
+			}
+			final FailedSearchKey other = (FailedSearchKey) obj;
+			return target.equals(other.target) && readable.equals(other.readable);
+		}
+	}
+
+	// null means all workspaces are readable, e.g. an admin
+	private static HashCode hashReadable(final WorkspaceIDSet readableWorkspaceIDs) {
+		final Hasher h = Hashing.md5().newHasher();
+		if (readableWorkspaceIDs == null) {
+			return h.putBoolean(true).hash();
+		}
+		h.putBoolean(false);
+		for (final long word: readableWorkspaceIDs.toBitmap()) {
+			h.putLong(word);
+		}
+		return h.hash();
+	}
+
+	/** Get the current generation of the cache. The generation is incremented every time the
+	 * cache is invalidated. Callers should get the generation before reading the data to be
+	 * cached from the database and pass it to the put* methods, which will then discard
+	 * data that may have been read prior to an invalidation.
+	 * @return the generation.
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/** Get paths from the cache.
+	 * @param targets the target references of the paths.
+	 * @return the paths, keyed by target reference, for the targets that are in the cache. Each
+	 * path starts with the head of the path and ends with the target.
+	 */
+	public Map<Reference, List<Reference>> getPaths(final Set<Reference> targets) {
+		final Map<Reference, List<Reference>> ret = new HashMap<>();
+		for (final Reference t: targets) {
+			final List<Reference> path = paths.getIfPresent(t);
+			if (path != null) {
+				ret.put(t, path);
+			}
+		}
+		return ret;
+	}
+
+	/** Add a path to the cache. The target reference is the last reference in the path.
+	 * @param path the path, starting at the head of the path and ending with the target.
+	 */
+	public void putPath(final List<Reference> path) {
+		if (path == null || path.isEmpty()) {
+			throw new IllegalArgumentException("path cannot be null or empty");
+		}
+		paths.put(path.get(path.size() - 1), Collections.unmodifiableList(new ArrayList<>(path)));
+	}
+
+	/** Get the targets for which searches failed from the cache.
+	 * @param targets the target references to check.
+	 * @param readableWorkspaceIDs the IDs of the workspaces readable by the user, or null if all
+	 * workspaces are readable.
+	 * @return the targets for which searches failed with the same set of readable workspaces.
+	 */
+	public Set<Reference> getFailedSearches(
+			final Set<Reference> targets,
+			final WorkspaceIDSet readableWorkspaceIDs) {
+		final Set<Reference> ret = new HashSet<>();
+		if (targets.isEmpty()) {
+			return ret;
+		}
+		final HashCode readable = hashReadable(readableWorkspaceIDs);
+		for (final Reference t: targets) {
+			if (failed.getIfPresent(new FailedSearchKey(t, readable)) != null) {
+				ret.add(t);
+			}
+		}
+		return ret;
+	}
+
+	/** Add targets for which searches failed to the cache. Only searches that were exhausted
+	 * without finding a path should be added, not those that were halted early.
+	 * @param targets the target references.
+	 * @param readableWorkspaceIDs the IDs of the workspaces readable by the user, or null if all
+	 * workspaces are readable.
+	 * @param generation the generation of the cache when the search started.
+	 */
+	public void putFailedSearches(
+			final Set<Reference> targets,
+			final WorkspaceIDSet readableWorkspaceIDs,
+			final long generation) {
+		if (targets.isEmpty()) {
+			return;
+		}
+		final HashCode readable = hashReadable(readableWorkspaceIDs);
+		synchronized (this.generation) {
+			if (generation != this.generation.get()) {
+				return;
+			}
+			for (final Reference t: targets) {
+				failed.put(new FailedSearchKey(t, readable), true);
+			}
+		}
+	}
+
+	/** Get the incoming references for objects from the cache.
+	 * @param targets the references of the objects.
+	 * @return the incoming references, keyed by object reference, for the objects that are in
+	 * the cache.
+	 */
+	public Map<Reference, ObjectReferenceSet> getIncomingReferences(
+			final Set<Reference> targets) {
+		final Map<Reference, ObjectReferenceSet> ret = new HashMap<>();
+		for (final Reference t: targets) {
+			final ObjectReferenceSet refs = incoming.getIfPresent(t);
+			if (refs != null) {
+				ret.put(t, refs);
+			}
+		}
+		return ret;
+	}
+
+	/** Add the incoming references for objects to the cache.
+	 * @param refs the incoming references, keyed by object reference.
+	 * @param generation the generation of the cache when the references were read from the
+	 * database.
+	 */
+	public void putIncomingReferences(
+			final Map<Reference, ObjectReferenceSet> refs,
+			final long generation) {
+		synchronized (this.generation) {
+			if (generation != this.generation.get()) {
+				return;
+			}
+			incoming.putAll(refs);
+		}
+	}
+
+	/** Invalidate the cache after new references to objects have been created, for example when
+	 * saving objects.
+	 * @param targets the references of the objects that are now referenced by new objects.
+	 */
+	public void invalidateReferences(final Collection<Reference> targets) {
+		if (targets.isEmpty()) {
+			return;
+		}
+		synchronized (generation) {
+			generation.incrementAndGet();
+			incoming.invalidateAll(targets);
+			failed.invalidateAll();
+		}
+	}
+
+	/** Invalidate the cache after new references to unknown objects have been created, for
+	 * example when copying or reverting objects or cloning a workspace.
+	 */
+	public void invalidateAllReferences() {
+		synchronized (generation) {
+			generation.incrementAndGet();
+			incoming.invalidateAll();
+			failed.invalidateAll();
+		}
+	}
+
+	/** Invalidate the failed searches in the cache, for example when objects are undeleted.
+	 */
+	public void invalidateFailedSearches() {
+		synchronized (generation) {
+			generation.incrementAndGet();
+			failed.invalidateAll();
+		}
+	}
+
+	/** Get statistics about the path cache's performance.
+	 * @return the cache statistics.
+	 */
+	public CacheStats getPathStatistics() {
+		return paths.stats();
+	}
+
+	/** Get statistics about the failed search cache's performance.
+	 * @return the cache statistics.
+	 */
+	public CacheStats getFailedSearchStatistics() {
+		return failed.stats();
+	}
+
+	/** Get statistics about the incoming reference cache's performance.
+	 * @return the cache statistics.
+	 */
+	public CacheStats getIncomingReferenceStatistics() {
+		return incoming.stats();
+	}
+}
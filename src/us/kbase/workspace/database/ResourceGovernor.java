@@ -0,0 +1,186 @@
+package us.kbase.workspace.database;
+
+import java.util.concurrent.TimeUnit;
+
+/** Hands out memory and temporary disk reservations for typed object data from pools shared
+ * between all the method calls in a workspace server. The per call limits in the
+ * {@link ResourceUsageConfigurationBuilder.ResourceUsageConfiguration} bound a single call, but
+ * not the sum of many concurrent calls; the governor bounds the sum.
+ *
+ * Memory reservations never wait - a caller that cannot reserve memory is expected to degrade
+ * to storing the data on disk. Disk reservations wait for space to be released by other
+ * callers for a limited time, and fail if the space doesn't become available.
+ *
+ * This class is thread safe.
+ */
+public class ResourceGovernor {
+
+	private final long maxMemory;
+	private final long maxDisk;
+	private final long diskWaitMillis;
+
+	private long memory = 0;
+	private long disk = 0;
+	private long memoryShortfalls = 0;
+	private long diskWaits = 0;
+	private long diskRejections = 0;
+
+	/** Create a governor.
+	 * @param maxMemory the maximum memory that may be reserved at any one time, or 0 for no
+	 * limit.
+	 * @param maxDisk the maximum disk space that may be reserved at any one time, or 0 for no
+	 * limit.
+	 * @param diskWaitMillis the maximum time in milliseconds to wait for a disk reservation.
+	 */
+	public ResourceGovernor(final long maxMemory, final long maxDisk, final long diskWaitMillis) {
+		if (maxMemory < 0 || maxDisk < 0 || diskWaitMillis < 0) {
+			throw new IllegalArgumentException(
+					"Memory, disk, and disk wait limits must be at least zero");
+		}
+		this.maxMemory = maxMemory < 1 ? Long.MAX_VALUE : maxMemory;
+		this.maxDisk = maxDisk < 1 ? Long.MAX_VALUE : maxDisk;
+		this.diskWaitMillis = diskWaitMillis;
+	}
+
+	/** Get the maximum memory that may be reserved at any one time.
+	 * @return the memory limit, or {@link Long#MAX_VALUE} if there is no limit.
+	 */
+	public long getMaxMemory() {
+		return maxMemory;
+	}
+
+	/** Get the maximum disk space that may be reserved at any one time.
+	 * @return the disk limit, or {@link Long#MAX_VALUE} if there is no limit.
+	 */
+	public long getMaxDisk() {
+		return maxDisk;
+	}
+
+	/** Get the maximum time to wait for a disk reservation.
+	 * @return the wait time in milliseconds.
+	 */
+	public long getDiskWaitMillis() {
+		return diskWaitMillis;
+	}
+
+	/** Reserve up to the requested amount of memory without waiting.
+	 * @param bytes the amount of memory requested.
+	 * @return the amount of memory reserved, which may be less than the amount requested.
+	 */
+	public synchronized long reserveMemory(final long bytes) {
+		final long res = Math.max(0, Math.min(bytes, maxMemory - memory));
+		if (res < bytes) {
+			memoryShortfalls++;
+		}
+		memory += res;
+		return res;
+	}
+
+	/** Reserve the requested amount of memory without waiting, or nothing if the entire amount
+	 * is not available.
+	 * @param bytes the amount of memory requested.
+	 * @return true if the memory was reserved.
+	 */
+	public synchronized boolean tryReserveMemory(final long bytes) {
+		if (bytes > maxMemory - memory) {
+			memoryShortfalls++;
+			return false;
+		}
+		memory += bytes;
+		return true;
+	}
+
+	/** Release memory previously reserved.
+	 * @param bytes the amount of memory to release.
+	 */
+	public synchronized void releaseMemory(final long bytes) {
+		memory -= bytes;
+	}
+
+	/** Reserve the requested amount of disk space, waiting for other callers to release space
+	 * if necessary. If the amount requested exceeds the disk limit the reservation fails
+	 * immediately.
+	 * @param bytes the amount of disk space requested.
+	 * @return true if the disk space was reserved, false if the space did not become available
+	 * in time or the thread was interrupted while waiting.
+	 */
+	public synchronized boolean reserveDisk(final long bytes) {
+		if (bytes > maxDisk) {
+			diskRejections++;
+			return false;
+		}
+		if (bytes > maxDisk - disk) {
+			diskWaits++;
+			final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(diskWaitMillis);
+			while (bytes > maxDisk - disk) {
+				final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if (remaining < 1) {
+					diskRejections++;
+					return false;
+				}
+				try {
+					wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					diskRejections++;
+					return false;
+				}
+			}
+		}
+		disk += bytes;
+		return true;
+	}
+
+	/** Release disk space previously reserved.
+	 * @param bytes the amount of disk space to release.
+	 */
+	public synchronized void releaseDisk(final long bytes) {
+		disk -= bytes;
+		notifyAll();
+	}
+
+	/** Get the amount of memory currently reserved.
+	 * @return the reserved memory.
+	 */
+	public synchronized long getMemoryReserved() {
+		return memory;
+	}
+
+	/** Get the amount of disk space currently reserved.
+	 * @return the reserved disk space.
+	 */
+	public synchronized long getDiskReserved() {
+		return disk;
+	}
+
+	/** Get the number of memory reservations that could not be entirely granted, causing the
+	 * caller to degrade to disk, since the governor was created.
+	 * @return the number of memory shortfalls.
+	 */
+	public synchronized long getMemoryShortfalls() {
+		return memoryShortfalls;
+	}
+
+	/** Get the number of disk reservations that had to wait for space since the governor was
+	 * created.
+	 * @return the number of disk waits.
+	 */
+	public synchronized long getDiskWaits() {
+		return diskWaits;
+	}
+
+	/** Get the number of disk reservations that failed since the governor was created.
+	 * @return the number of failed disk reservations.
+	 */
+	public synchronized long getDiskRejections() {
+		return diskRejections;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ResourceGovernor [maxMemory=" + maxMemory + ", maxDisk=" + maxDisk
+				+ ", diskWaitMillis=" + diskWaitMillis + ", memory=" + memory + ", disk=" + disk
+				+ ", memoryShortfalls=" + memoryShortfalls + ", diskWaits=" + diskWaits
+				+ ", diskRejections=" + diskRejections + "]";
+	}
+}
@@ -14,12 +14,36 @@ public class ResourceUsageConfigurationBuilder {
 			200000000; // must be at least 1x max data
 	final public static int DEFAULT_MAX_RETURNED_DATA_MEMORY_USAGE = 300000000;
 	final public static long DEFAULT_MAX_RETURNED_DATA_SIZE = 1000000000L;
+	final public static int DEFAULT_SAVE_OBJECTS_THREADS = 1;
+	final public static int DEFAULT_BLOB_WRITE_THREADS = 1;
+	final public static int DEFAULT_BLOB_READ_THREADS = 1;
+	final public static long DEFAULT_SUBSET_CACHE_SIZE = 0;
+	final public static boolean DEFAULT_STREAM_RETURNED_DATA = false;
+	final public static int DEFAULT_REFERENCE_CACHE_SIZE = 0;
+	final public static int DEFAULT_VERSION_QUERY_BATCH_SIZE = 100;
+	final public static int DEFAULT_VERSION_QUERY_THREADS = 1;
+	final public static int DEFAULT_BULK_SAVE_THRESHOLD = 100;
+	final public static long DEFAULT_SERVER_DATA_MEMORY_LIMIT = 0;
+	final public static long DEFAULT_SERVER_DATA_DISK_LIMIT = 0;
+	final public static int DEFAULT_SERVER_DATA_DISK_WAIT_MS = 30000;
 	
 	private int maxObjectSize;
 	private int maxIncomingDataMemoryUsage;
 	private int maxRelabelAndSortMemoryUsage;
 	private int maxReturnedDataMemoryUsage;
 	private long maxReturnedDataSize;
+	private int saveObjectsThreads;
+	private int blobWriteThreads;
+	private int blobReadThreads;
+	private long subsetCacheSize;
+	private boolean streamReturnedData;
+	private int referenceCacheSize;
+	private int versionQueryBatchSize;
+	private int versionQueryThreads;
+	private int bulkSaveThreshold;
+	private long serverDataMemoryLimit;
+	private long serverDataDiskLimit;
+	private int serverDataDiskWaitMS;
 	
 	public ResourceUsageConfigurationBuilder() {
 		maxObjectSize = DEFAULT_MAX_OBJECT_SIZE;
@@ -27,6 +51,18 @@ public class ResourceUsageConfigurationBuilder {
 		maxRelabelAndSortMemoryUsage = DEFAULT_MAX_RELABEL_AND_SORT_MEMORY_USAGE;
 		maxReturnedDataMemoryUsage = DEFAULT_MAX_RETURNED_DATA_MEMORY_USAGE;
 		maxReturnedDataSize = DEFAULT_MAX_RETURNED_DATA_SIZE;
+		saveObjectsThreads = DEFAULT_SAVE_OBJECTS_THREADS;
+		blobWriteThreads = DEFAULT_BLOB_WRITE_THREADS;
+		blobReadThreads = DEFAULT_BLOB_READ_THREADS;
+		subsetCacheSize = DEFAULT_SUBSET_CACHE_SIZE;
+		streamReturnedData = DEFAULT_STREAM_RETURNED_DATA;
+		referenceCacheSize = DEFAULT_REFERENCE_CACHE_SIZE;
+		versionQueryBatchSize = DEFAULT_VERSION_QUERY_BATCH_SIZE;
+		versionQueryThreads = DEFAULT_VERSION_QUERY_THREADS;
+		bulkSaveThreshold = DEFAULT_BULK_SAVE_THRESHOLD;
+		serverDataMemoryLimit = DEFAULT_SERVER_DATA_MEMORY_LIMIT;
+		serverDataDiskLimit = DEFAULT_SERVER_DATA_DISK_LIMIT;
+		serverDataDiskWaitMS = DEFAULT_SERVER_DATA_DISK_WAIT_MS;
 	}
 	
 	public ResourceUsageConfigurationBuilder(ResourceUsageConfiguration cfg) {
@@ -35,6 +71,18 @@ public class ResourceUsageConfigurationBuilder {
 		maxRelabelAndSortMemoryUsage = cfg.getMaxRelabelAndSortMemoryUsage();
 		maxReturnedDataMemoryUsage = cfg.getMaxReturnedDataMemoryUsage();
 		maxReturnedDataSize = cfg.getMaxReturnedDataSize();
+		saveObjectsThreads = cfg.getSaveObjectsThreads();
+		blobWriteThreads = cfg.getBlobWriteThreads();
+		blobReadThreads = cfg.getBlobReadThreads();
+		subsetCacheSize = cfg.getSubsetCacheSize();
+		streamReturnedData = cfg.getStreamReturnedData();
+		referenceCacheSize = cfg.getReferenceCacheSize();
+		versionQueryBatchSize = cfg.getVersionQueryBatchSize();
+		versionQueryThreads = cfg.getVersionQueryThreads();
+		bulkSaveThreshold = cfg.getBulkSaveThreshold();
+		serverDataMemoryLimit = cfg.getServerDataMemoryLimit();
+		serverDataDiskLimit = cfg.getServerDataDiskLimit();
+		serverDataDiskWaitMS = cfg.getServerDataDiskWaitMS();
 	}
 	
 	public ResourceUsageConfigurationBuilder withMaxObjectSize(int maxObjectSize) {
@@ -66,10 +114,86 @@ public class ResourceUsageConfigurationBuilder {
 		return this;
 	}
 
+	public ResourceUsageConfigurationBuilder withSaveObjectsThreads(
+			int saveObjectsThreads) {
+		this.saveObjectsThreads = saveObjectsThreads;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withBlobWriteThreads(
+			int blobWriteThreads) {
+		this.blobWriteThreads = blobWriteThreads;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withBlobReadThreads(
+			int blobReadThreads) {
+		this.blobReadThreads = blobReadThreads;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withSubsetCacheSize(
+			long subsetCacheSize) {
+		this.subsetCacheSize = subsetCacheSize;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withStreamReturnedData(
+			boolean streamReturnedData) {
+		this.streamReturnedData = streamReturnedData;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withReferenceCacheSize(
+			int referenceCacheSize) {
+		this.referenceCacheSize = referenceCacheSize;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withVersionQueryBatchSize(
+			int versionQueryBatchSize) {
+		this.versionQueryBatchSize = versionQueryBatchSize;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withVersionQueryThreads(
+			int versionQueryThreads) {
+		this.versionQueryThreads = versionQueryThreads;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withBulkSaveThreshold(
+			int bulkSaveThreshold) {
+		this.bulkSaveThreshold = bulkSaveThreshold;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withServerDataMemoryLimit(
+			long serverDataMemoryLimit) {
+		this.serverDataMemoryLimit = serverDataMemoryLimit;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withServerDataDiskLimit(
+			long serverDataDiskLimit) {
+		this.serverDataDiskLimit = serverDataDiskLimit;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withServerDataDiskWaitMS(
+			int serverDataDiskWaitMS) {
+		this.serverDataDiskWaitMS = serverDataDiskWaitMS;
+		return this;
+	}
+
 	public ResourceUsageConfiguration build() {
 		return new ResourceUsageConfiguration(maxObjectSize, 
 				maxIncomingDataMemoryUsage, maxRelabelAndSortMemoryUsage,
-				maxReturnedDataMemoryUsage, maxReturnedDataSize);
+				maxReturnedDataMemoryUsage, maxReturnedDataSize,
+				saveObjectsThreads, blobWriteThreads, blobReadThreads, subsetCacheSize,
+				streamReturnedData, referenceCacheSize, versionQueryBatchSize,
+				versionQueryThreads, bulkSaveThreshold, serverDataMemoryLimit,
+				serverDataDiskLimit, serverDataDiskWaitMS);
 	}
 
 	public class ResourceUsageConfiguration {
@@ -79,17 +203,66 @@ public class ResourceUsageConfigurationBuilder {
 		final private int maxRelabelAndSortMemoryUsage;
 		final private int maxReturnedDataMemoryUsage;
 		final private long maxReturnedDataSize;
+		final private int saveObjectsThreads;
+		final private int blobWriteThreads;
+		final private int blobReadThreads;
+		final private long subsetCacheSize;
+		final private boolean streamReturnedData;
+		final private int referenceCacheSize;
+		final private int versionQueryBatchSize;
+		final private int versionQueryThreads;
+		final private int bulkSaveThreshold;
+		final private long serverDataMemoryLimit;
+		final private long serverDataDiskLimit;
+		final private int serverDataDiskWaitMS;
 
 		private ResourceUsageConfiguration(final int maxObjectSize,
 				final int maxIncomingDataMemoryUsage,
 				final int maxRelabelAndSortMemoryUsage,
 				final int maxReturnedDataMemoryUsage,
-				final long maxReturnedDataSize) {
+				final long maxReturnedDataSize,
+				final int saveObjectsThreads,
+				final int blobWriteThreads,
+				final int blobReadThreads,
+				final long subsetCacheSize,
+				final boolean streamReturnedData,
+				final int referenceCacheSize,
+				final int versionQueryBatchSize,
+				final int versionQueryThreads,
+				final int bulkSaveThreshold,
+				final long serverDataMemoryLimit,
+				final long serverDataDiskLimit,
+				final int serverDataDiskWaitMS) {
 			checkGTZero(maxObjectSize, "Maximum object size");
 			checkGTZero(maxIncomingDataMemoryUsage, "Maximum incoming data memory usage ");
 			checkGTZero(maxRelabelAndSortMemoryUsage, "Relabel and sort memory usage");
 			checkGTZero(maxReturnedDataMemoryUsage, "Returned data memory usage");
 			checkGTZero(maxReturnedDataSize, "Returned data size");
+			checkGTZero(saveObjectsThreads, "Save objects thread count");
+			checkGTZero(blobWriteThreads, "Blob write thread count");
+			checkGTZero(blobReadThreads, "Blob read thread count");
+			checkGTZero(versionQueryBatchSize, "Version query batch size");
+			checkGTZero(versionQueryThreads, "Version query thread count");
+			checkGTZero(bulkSaveThreshold, "Bulk save threshold");
+			if (subsetCacheSize < 0) {
+				throw new IllegalArgumentException("Subset cache size must be at least zero");
+			}
+			if (referenceCacheSize < 0) {
+				throw new IllegalArgumentException(
+						"Reference cache size must be at least zero");
+			}
+			if (serverDataMemoryLimit < 0) {
+				throw new IllegalArgumentException(
+						"Server data memory limit must be at least zero");
+			}
+			if (serverDataDiskLimit < 0) {
+				throw new IllegalArgumentException(
+						"Server data disk limit must be at least zero");
+			}
+			if (serverDataDiskWaitMS < 0) {
+				throw new IllegalArgumentException(
+						"Server data disk wait time must be at least zero");
+			}
 			
 			this.maxObjectSize = maxObjectSize;
 			this.maxIncomingDataMemoryUsage = maxIncomingDataMemoryUsage;
@@ -104,6 +277,18 @@ public class ResourceUsageConfigurationBuilder {
 						"Max returned data size must be greater than the max object size");
 			}
 			this.maxReturnedDataSize = maxReturnedDataSize;
+			this.saveObjectsThreads = saveObjectsThreads;
+			this.blobWriteThreads = blobWriteThreads;
+			this.blobReadThreads = blobReadThreads;
+			this.subsetCacheSize = subsetCacheSize;
+			this.streamReturnedData = streamReturnedData;
+			this.referenceCacheSize = referenceCacheSize;
+			this.versionQueryBatchSize = versionQueryBatchSize;
+			this.versionQueryThreads = versionQueryThreads;
+			this.bulkSaveThreshold = bulkSaveThreshold;
+			this.serverDataMemoryLimit = serverDataMemoryLimit;
+			this.serverDataDiskLimit = serverDataDiskLimit;
+			this.serverDataDiskWaitMS = serverDataDiskWaitMS;
 		}
 
 		private void checkGTZero(long maxReturnedDataDiskUsage, String name) {
@@ -164,6 +349,119 @@ public class ResourceUsageConfigurationBuilder {
 		public long getMaxReturnedDataSize() {
 			return maxReturnedDataSize;
 		}
+		
+		/** The maximum number of threads to use when validating, relabeling,
+		 * and sorting the typed objects in a single saveObjects call. Each
+		 * thread may use up to the relabel and sort memory allowance when
+		 * sorting, but only when all the incoming data fits in memory.
+		 * @return the number of threads to use per saveObjects call.
+		 */
+		public int getSaveObjectsThreads() {
+			return saveObjectsThreads;
+		}
+		
+		/** The maximum number of threads to use when writing the data for
+		 * the objects in a single saveObjects call to the blob store.
+		 * @return the number of threads to use per saveObjects call.
+		 */
+		public int getBlobWriteThreads() {
+			return blobWriteThreads;
+		}
+		
+		/** The maximum number of threads to use when reading the data for
+		 * the objects in a single getObjects call from the blob store. The
+		 * threads share the returned data memory and disk allowances for the
+		 * call.
+		 * @return the number of threads to use per getObjects call.
+		 */
+		public int getBlobReadThreads() {
+			return blobReadThreads;
+		}
+		
+		/** The maximum size of the cache of subsets extracted from typed
+		 * objects. The cache is shared between all method calls. 0 indicates
+		 * the cache is disabled.
+		 * @return the maximum size of the subset cache in bytes.
+		 */
+		public long getSubsetCacheSize() {
+			return subsetCacheSize;
+		}
+		
+		/** Whether whole objects are streamed from the blob store as they
+		 * are returned to the client rather than being stored in memory or on
+		 * disk first. Objects from which subsets are extracted are never
+		 * streamed. Streamed objects do not count against the returned data
+		 * memory usage.
+		 * @return true if returned data is streamed.
+		 */
+		public boolean getStreamReturnedData() {
+			return streamReturnedData;
+		}
+		
+		/** The maximum number of references held in each of the caches used
+		 * when searching the reference graph for a path from an accessible
+		 * object to an inaccessible object. The caches are shared between all
+		 * method calls. 0 indicates the caches are disabled.
+		 * @return the maximum number of references per reference cache.
+		 */
+		public int getReferenceCacheSize() {
+			return referenceCacheSize;
+		}
+		
+		/** The maximum number of objects for which versions are retrieved
+		 * from the database in a single query. 1 indicates a separate query
+		 * is made for each object.
+		 * @return the number of objects per version query.
+		 */
+		public int getVersionQueryBatchSize() {
+			return versionQueryBatchSize;
+		}
+		
+		/** The maximum number of threads to use when running the version
+		 * queries for a single method call.
+		 * @return the number of threads to use per method call.
+		 */
+		public int getVersionQueryThreads() {
+			return versionQueryThreads;
+		}
+		
+		/** The minimum number of objects in a single saveObjects call for
+		 * which the objects and versions are written to the database with
+		 * bulk writes rather than one at a time.
+		 * @return the minimum number of objects for a bulk save.
+		 */
+		public int getBulkSaveThreshold() {
+			return bulkSaveThreshold;
+		}
+		
+		/** The maximum memory to use for typed object data across all
+		 * concurrent method calls, both when saving and returning data. Calls
+		 * store data on disk rather than in memory when the limit is reached.
+		 * 0 indicates there is no limit other than the per call limits.
+		 * @return the maximum memory for typed object data across all calls.
+		 */
+		public long getServerDataMemoryLimit() {
+			return serverDataMemoryLimit;
+		}
+		
+		/** The maximum disk space to use for returned typed object data
+		 * across all concurrent method calls. Calls wait for other calls to
+		 * release disk space when the limit is reached. 0 indicates there is
+		 * no limit other than the per call limits.
+		 * @return the maximum disk space for returned typed object data
+		 * across all calls.
+		 */
+		public long getServerDataDiskLimit() {
+			return serverDataDiskLimit;
+		}
+		
+		/** The maximum time a method call waits for disk space when the
+		 * server data disk limit is reached before failing.
+		 * @return the maximum wait time in milliseconds.
+		 */
+		public int getServerDataDiskWaitMS() {
+			return serverDataDiskWaitMS;
+		}
 
 		@Override
 		public int hashCode() {
@@ -175,6 +473,18 @@ public class ResourceUsageConfigurationBuilder {
 			result = prime * result + maxRelabelAndSortMemoryUsage;
 			result = prime * result + maxReturnedDataMemoryUsage;
 			result = prime * result + (int) (maxReturnedDataSize ^ (maxReturnedDataSize >>> 32));
+			result = prime * result + saveObjectsThreads;
+			result = prime * result + blobWriteThreads;
+			result = prime * result + blobReadThreads;
+			result = prime * result + (int) (subsetCacheSize ^ (subsetCacheSize >>> 32));
+			result = prime * result + (streamReturnedData ? 1231 : 1237);
+			result = prime * result + referenceCacheSize;
+			result = prime * result + versionQueryBatchSize;
+			result = prime * result + versionQueryThreads;
+			result = prime * result + bulkSaveThreshold;
+			result = prime * result + (int) (serverDataMemoryLimit ^ (serverDataMemoryLimit >>> 32));
+			result = prime * result + (int) (serverDataDiskLimit ^ (serverDataDiskLimit >>> 32));
+			result = prime * result + serverDataDiskWaitMS;
 			return result;
 		}
 
@@ -208,6 +518,42 @@ public class ResourceUsageConfigurationBuilder {
 			if (maxReturnedDataSize != other.maxReturnedDataSize) {
 				return false;
 			}
+			if (saveObjectsThreads != other.saveObjectsThreads) {
+				return false;
+			}
+			if (blobWriteThreads != other.blobWriteThreads) {
+				return false;
+			}
+			if (blobReadThreads != other.blobReadThreads) {
+				return false;
+			}
+			if (subsetCacheSize != other.subsetCacheSize) {
+				return false;
+			}
+			if (streamReturnedData != other.streamReturnedData) {
+				return false;
+			}
+			if (referenceCacheSize != other.referenceCacheSize) {
+				return false;
+			}
+			if (versionQueryBatchSize != other.versionQueryBatchSize) {
+				return false;
+			}
+			if (versionQueryThreads != other.versionQueryThreads) {
+				return false;
+			}
+			if (bulkSaveThreshold != other.bulkSaveThreshold) {
+				return false;
+			}
+			if (serverDataMemoryLimit != other.serverDataMemoryLimit) {
+				return false;
+			}
+			if (serverDataDiskLimit != other.serverDataDiskLimit) {
+				return false;
+			}
+			if (serverDataDiskWaitMS != other.serverDataDiskWaitMS) {
+				return false;
+			}
 			return true;
 		}
 
@@ -0,0 +1,178 @@
+package us.kbase.workspace.database;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+import us.kbase.typedobj.core.MD5;
+import us.kbase.typedobj.core.SubsetSelection;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.exceptions.FileCacheIOException;
+import us.kbase.workspace.database.exceptions.FileCacheLimitExceededException;
+
+/** A cache of the results of extracting subsets of data from typed objects,
+ * keyed by the MD5 of the object data and the subset selection. Since object
+ * data is immutable, cached subsets never need to be refreshed.
+ *
+ * The cache is bounded by the total size of the cached subsets in bytes and
+ * evicts the least recently used subsets when full. A subset is only cached if
+ * its size is no more than 1/16 of the cache size.
+ *
+ * Data retrieved from the cache is copied into a
+ * {@link ByteArrayFileCacheManager}, and so counts against the manager's
+ * limits like any other data returned from the workspace.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class SubsetExtractionCache {
+
+	private static final int MAX_SUBSET_FRACTION = 16;
+
+	private final Cache<SubsetKey, CachedSubset> cache;
+	private final long maxSubsetSize;
+
+	/** Create the cache.
+	 * @param maxSize the maximum size of the cache in bytes.
+	 */
+	public SubsetExtractionCache(final long maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be greater than zero");
+		}
+		// subsets are stored in byte arrays
+		maxSubsetSize = Math.min(maxSize / MAX_SUBSET_FRACTION, Integer.MAX_VALUE - 8);
+		cache = CacheBuilder.newBuilder()
+				.maximumWeight(maxSize)
+				.weigher(new Weigher<SubsetKey, CachedSubset>() {
+
+					@Override
+					public int weigh(final SubsetKey key, final CachedSubset subset) {
+						return subset.data.length;
+					}
+				})
+				.recordStats()
+				.build();
+	}
+
+	private static class SubsetKey {
+		private final MD5 md5;
+		private final SubsetSelection paths;
+
+		private SubsetKey(final MD5 md5, final SubsetSelection paths) {
+			this.md5 = md5;
+			this.paths = paths;
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(new Object[] {md5, paths});
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null || getClass() != obj.getClass()) {
+				return false;
+			}
+			final SubsetKey other = (SubsetKey) obj;
+			return md5.equals(other.md5) && paths.equals(other.paths);
+		}
+	}
+
+	private static class CachedSubset {
+		private final byte[] data;
+		private final boolean trustedJson;
+		private final boolean sorted;
+
+		private CachedSubset(
+				final byte[] data,
+				final boolean trustedJson,
+				final boolean sorted) {
+			this.data = data;
+			this.trustedJson = trustedJson;
+			this.sorted = sorted;
+		}
+	}
+
+	/** Get a subset of object data from the cache.
+	 * @param md5 the MD5 of the object data from which the subset was
+	 * extracted.
+	 * @param paths the subset selection used to extract the subset.
+	 * @param bafcMan the file cache manager in which to store the subset.
+	 * @return the subset, or null if the subset is not in the cache.
+	 * @throws FileCacheLimitExceededException if the subset exceeds the
+	 * file cache manager's limits.
+	 * @throws FileCacheIOException if an IO error occurs storing the subset.
+	 */
+	public ByteArrayFileCache get(
+			final MD5 md5,
+			final SubsetSelection paths,
+			final ByteArrayFileCacheManager bafcMan)
+			throws FileCacheLimitExceededException, FileCacheIOException {
+		final CachedSubset s = cache.getIfPresent(new SubsetKey(md5, paths));
+		if (s == null) {
+			return null;
+		}
+		return bafcMan.createBAFC(new ByteArrayInputStream(s.data), s.trustedJson, s.sorted);
+	}
+
+	/** Add a subset of object data to the cache. The subset is ignored if
+	 * it is too large to be cached.
+	 * @param md5 the MD5 of the object data from which the subset was
+	 * extracted.
+	 * @param paths the subset selection used to extract the subset.
+	 * @param subset the subset. The subset is not altered or destroyed.
+	 * @throws FileCacheIOException if an IO error occurs reading the subset.
+	 */
+	public void put(
+			final MD5 md5,
+			final SubsetSelection paths,
+			final ByteArrayFileCache subset)
+			throws FileCacheIOException {
+		if (subset.getSize() > maxSubsetSize) {
+			return;
+		}
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream((int) subset.getSize());
+		// the extracted data is always UTF-8
+		try (final Reader r = subset.getJSON()) {
+			final Writer w = new OutputStreamWriter(baos, StandardCharsets.UTF_8);
+			IOUtils.copy(r, w);
+			w.flush();
+		} catch (IOException e) {
+			throw new FileCacheIOException(e.getLocalizedMessage(), e);
+		}
+		cache.put(new SubsetKey(md5, paths), new CachedSubset(baos.toByteArray(),
+				subset.containsTrustedJson(), subset.isSorted()));
+	}
+
+	/** Get statistics about the cache's performance.
+	 * @return the cache statistics.
+	 */
+	public CacheStats getStatistics() {
+		return cache.stats();
+	}
+
+	/** Get the total size of the subsets in the cache.
+	 * @return the size of the cache in bytes.
+	 */
+	public long getSize() {
+		long size = 0;
+		for (final CachedSubset s: cache.asMap().values()) {
+			size += s.data.length;
+		}
+		return size;
+	}
+}
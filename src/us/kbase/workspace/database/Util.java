@@ -1,6 +1,12 @@
 package us.kbase.workspace.database;
 
 import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class Util {
 	
@@ -41,5 +47,24 @@ public class Util {
 			}
 		}
 	}
+	
+	/** Create a fixed size pool of daemon threads. Idle threads, including core threads,
+	 * time out, so a pool that is replaced or no longer in use does not need to be shut down.
+	 * @param threads the number of threads in the pool.
+	 * @param nameFormat the thread name format, as for
+	 * {@link ThreadFactoryBuilder#setNameFormat(String)}.
+	 * @return the new thread pool.
+	 */
+	public static ExecutorService newDaemonThreadPool(
+			final int threads,
+			final String nameFormat) {
+		final ThreadPoolExecutor exe = new ThreadPoolExecutor(
+				threads, threads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactoryBuilder().setDaemon(true)
+						.setNameFormat(nameFormat).build());
+		exe.allowCoreThreadTimeOut(true);
+		return exe;
+	}
 
 }
@@ -13,14 +13,24 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.fasterxml.jackson.core.JsonParseException;
 import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -40,6 +50,7 @@ import us.kbase.typedobj.exceptions.TypeStorageException;
 import us.kbase.typedobj.exceptions.TypedObjectExtractionException;
 import us.kbase.typedobj.exceptions.TypedObjectSchemaException;
 import us.kbase.typedobj.exceptions.TypedObjectValidationException;
+import us.kbase.typedobj.idref.DeferredIdReferenceHandlerSet;
 import us.kbase.typedobj.idref.IdReference;
 import us.kbase.typedobj.idref.IdReferenceHandlerSet;
 import us.kbase.typedobj.idref.IdReferenceHandlerSet.IdParseException;
@@ -65,6 +76,8 @@ import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
 import us.kbase.workspace.database.exceptions.WorkspaceDBException;
 import us.kbase.workspace.exceptions.WorkspaceAuthorizationException;
 import us.kbase.workspace.listener.WorkspaceEventListener;
+import us.kbase.workspace.metrics.Metrics;
+import us.kbase.workspace.metrics.Timer;
 
 public class Workspace {
 	
@@ -85,14 +98,31 @@ public class Workspace {
 	 * for now this is low enough it's not really a concern.
 	 */
 	private final static int MAX_OBJECT_SEARCH_COUNT_DEFAULT = 10000;
+	/* failed reference searches, incoming references, and public workspaces are updated when
+	 * changes are made via this instance, but other instances using the same database can't
+	 * be detected.
+	 */
+	private final static int REFERENCE_CACHE_EXPIRATION_SEC = 60;
 	
 	private final static IdReferenceType WS_ID_TYPE = new IdReferenceType("ws");
 	
 	private final WorkspaceDatabase db;
 	private ResourceUsageConfiguration rescfg;
+	// null if objects should be processed in the calling thread
+	private ExecutorService saveExecutor;
+	// null if reference search results should not be cached
+	private ReferenceSearchCache refCache;
+	private final PublicWorkspaceCache publicCache = new PublicWorkspaceCache(
+			REFERENCE_CACHE_EXPIRATION_SEC, TimeUnit.SECONDS);
+	// null if there are no server wide data limits
+	private ResourceGovernor governor;
 	private final TypedObjectValidator validator;
 	private final List<WorkspaceEventListener> listeners;
 	private int maximumObjectSearchCount;
+	private final AtomicLong sortTempBytesWritten = new AtomicLong();
+	private final Metrics metrics;
+	private final Timer validateTimer;
+	private final Timer sortTimer;
 	
 	public Workspace(
 			final WorkspaceDatabase db,
@@ -106,6 +136,22 @@ public class Workspace {
 			final ResourceUsageConfiguration cfg,
 			final TypedObjectValidator validator,
 			final List<WorkspaceEventListener> listeners) {
+		this(db, cfg, validator, listeners, new Metrics());
+	}
+	
+	/** Create a workspace.
+	 * @param db the workspace database.
+	 * @param cfg the resource usage configuration.
+	 * @param validator the typed object validator.
+	 * @param listeners listeners for workspace events.
+	 * @param metrics the registry in which to record the workspace's performance metrics.
+	 */
+	public Workspace(
+			final WorkspaceDatabase db,
+			final ResourceUsageConfiguration cfg,
+			final TypedObjectValidator validator,
+			final List<WorkspaceEventListener> listeners,
+			final Metrics metrics) {
 		if (db == null) {
 			throw new NullPointerException("db cannot be null");
 		}
@@ -117,13 +163,51 @@ public class Workspace {
 		}
 		nonNull(listeners, "listeners");
 		noNulls(listeners, "null item in listeners");
+		nonNull(metrics, "metrics");
 		this.db = db;
 		//TODO DBCONSIST check that a few object types exist to make sure the type provider is ok.
 		this.validator = validator;
 		rescfg = cfg;
+		saveExecutor = buildSaveExecutor(rescfg);
+		refCache = buildReferenceSearchCache(rescfg);
+		governor = buildResourceGovernor(rescfg);
 		this.listeners = Collections.unmodifiableList(listeners);
 		db.setResourceUsageConfiguration(rescfg);
 		this.maximumObjectSearchCount = MAX_OBJECT_SEARCH_COUNT_DEFAULT;
+		this.metrics = metrics;
+		validateTimer = metrics.getTimer("workspace.saveObjects.validate");
+		sortTimer = metrics.getTimer("workspace.saveObjects.sort");
+		metrics.registerGauge("workspace.sortTempBytesWritten", () -> getSortTempBytesWritten());
+		metrics.registerGauge("workspace.referenceCache", () -> getReferenceCacheStatistics());
+		metrics.registerGauge("workspace.resourceGovernor", () -> getResourceGovernorStatistics());
+	}
+	
+	private Map<String, Object> getResourceGovernorStatistics() {
+		final ResourceGovernor gov = governor;
+		if (gov == null) {
+			return null;
+		}
+		final Map<String, Object> ret = new LinkedHashMap<>();
+		ret.put("memoryReserved", gov.getMemoryReserved());
+		ret.put("memoryLimit", gov.getMaxMemory());
+		ret.put("memoryShortfalls", gov.getMemoryShortfalls());
+		ret.put("diskReserved", gov.getDiskReserved());
+		ret.put("diskLimit", gov.getMaxDisk());
+		ret.put("diskWaits", gov.getDiskWaits());
+		ret.put("diskRejections", gov.getDiskRejections());
+		return ret;
+	}
+	
+	private Map<String, Object> getReferenceCacheStatistics() {
+		final ReferenceSearchCache cache = refCache;
+		if (cache == null) {
+			return null;
+		}
+		final Map<String, Object> ret = new LinkedHashMap<>();
+		ret.put("paths", Metrics.toMap(cache.getPathStatistics()));
+		ret.put("failedSearches", Metrics.toMap(cache.getFailedSearchStatistics()));
+		ret.put("incomingReferences", Metrics.toMap(cache.getIncomingReferenceStatistics()));
+		return ret;
 	}
 	
 	/* this is temporary until we have path returning code when searching for objects.
@@ -146,14 +230,76 @@ public class Workspace {
 		if (rescfg == null) {
 			throw new NullPointerException("rescfg cannot be null");
 		}
+		if (rescfg.getSaveObjectsThreads() !=
+				this.rescfg.getSaveObjectsThreads()) {
+			final ExecutorService old = saveExecutor;
+			saveExecutor = buildSaveExecutor(rescfg);
+			if (old != null) {
+				// saves in progress finish their tasks, see submitSaveTask()
+				old.shutdown();
+			}
+		}
+		if (rescfg.getReferenceCacheSize() != this.rescfg.getReferenceCacheSize()) {
+			refCache = buildReferenceSearchCache(rescfg);
+		}
+		if (rescfg.getServerDataMemoryLimit() != this.rescfg.getServerDataMemoryLimit() ||
+				rescfg.getServerDataDiskLimit() != this.rescfg.getServerDataDiskLimit() ||
+				rescfg.getServerDataDiskWaitMS() != this.rescfg.getServerDataDiskWaitMS()) {
+			governor = buildResourceGovernor(rescfg);
+		}
 		this.rescfg = rescfg;
 		db.setResourceUsageConfiguration(rescfg);
 	}
 	
+	private static ExecutorService buildSaveExecutor(
+			final ResourceUsageConfiguration rescfg) {
+		final int threads = rescfg.getSaveObjectsThreads();
+		if (threads < 2) {
+			return null;
+		}
+		return Util.newDaemonThreadPool(threads, "workspace-save-%d");
+	}
+	
+	private static ReferenceSearchCache buildReferenceSearchCache(
+			final ResourceUsageConfiguration rescfg) {
+		final int size = rescfg.getReferenceCacheSize();
+		if (size < 1) {
+			return null;
+		}
+		return new ReferenceSearchCache(size, REFERENCE_CACHE_EXPIRATION_SEC, TimeUnit.SECONDS);
+	}
+	
+	/* Reservations held in a governor replaced by setResourceConfig() are
+	 * released to that governor, so the new governor starts empty.
+	 */
+	private static ResourceGovernor buildResourceGovernor(
+			final ResourceUsageConfiguration rescfg) {
+		if (rescfg.getServerDataMemoryLimit() < 1 && rescfg.getServerDataDiskLimit() < 1) {
+			return null;
+		}
+		return new ResourceGovernor(rescfg.getServerDataMemoryLimit(),
+				rescfg.getServerDataDiskLimit(), rescfg.getServerDataDiskWaitMS());
+	}
+	
 	public TempFilesManager getTempFilesManager() {
 		return db.getTempFilesManager();
 	}
 	
+	/** Get the total number of bytes written to temporary files while relabeling and sorting
+	 * objects since this workspace instance was created.
+	 * @return the number of bytes written.
+	 */
+	public long getSortTempBytesWritten() {
+		return sortTempBytesWritten.get();
+	}
+	
+	/** Get the registry containing this workspace's performance metrics.
+	 * @return the metrics registry.
+	 */
+	public Metrics getMetrics() {
+		return metrics;
+	}
+	
 	public List<DependencyStatus> status() {
 		return db.status();
 	}
@@ -167,6 +313,9 @@ public class Workspace {
 		final WorkspaceInformation ret = db.createWorkspace(user, wsname, globalread,
 				pruneWorkspaceDescription(description),
 				meta == null ? new WorkspaceUserMetadata() : meta);
+		if (globalread) {
+			publicCache.setPublicWorkspace(ret.getId(), true);
+		}
 		for (final WorkspaceEventListener l: listeners) {
 			l.createWorkspace(ret.getId(), ret.getModDate());
 		}
@@ -238,6 +387,12 @@ public class Workspace {
 				pruneWorkspaceDescription(description),
 				meta == null ? new WorkspaceUserMetadata() : meta,
 				exclude);
+		if (refCache != null) {
+			refCache.invalidateAllReferences();
+		}
+		if (info.isGloballyReadable()) {
+			publicCache.setPublicWorkspace(info.getId(), true);
+		}
 		for (final WorkspaceEventListener l: listeners) {
 			l.cloneWorkspace(info.getId(), info.isGloballyReadable(), info.getModDate());
 		}
@@ -502,6 +657,7 @@ public class Workspace {
 					", is locked and may not be modified");
 		}
 		final Instant time = db.setGlobalPermission(rwsi, permission);
+		publicCache.setPublicWorkspace(rwsi.getID(), Permission.READ.equals(permission));
 		for (final WorkspaceEventListener l: listeners) {
 			l.setGlobalPermission(rwsi.getID(), permission, time);
 		}
@@ -690,11 +846,21 @@ public class Workspace {
 		idHandlerFac.addFactory(getHandlerFactory(user));
 		final IdReferenceHandlerSet<IDAssociation> idhandler =
 				idHandlerFac.createHandlers(IDAssociation.class);
+		// use the same executor for the entire call
+		final ExecutorService executor = saveExecutor;
 		
-		final Map<WorkspaceSaveObject, ValidatedTypedObject> reports = 
-				validateObjectsAndExtractReferences(objects, idhandler);
+		final long validateStart = Timer.start();
+		Map<WorkspaceSaveObject, ValidatedTypedObject> reports = null;
+		try {
+			reports = validateObjectsAndExtractReferences(objects, idhandler, executor);
+		} finally {
+			stop(validateTimer, validateStart, reports != null, 0);
+		}
 		
 		processIds(objects, idhandler, reports);
+		if (executor != null) {
+			calculateRelabeledSizes(objects, reports, executor);
+		}
 		
 		//handle references and calculate size with new references
 		final List<ResolvedSaveObject> saveobjs = new ArrayList<ResolvedSaveObject>();
@@ -744,8 +910,17 @@ public class Workspace {
 		
 		final WorkspaceInformation wsinfo = db.getWorkspaceInformation(user, rwsi);
 		
+		final ResourceGovernor gov = governor;
+		final boolean inMemory = reserveIncomingDataMemory(gov, ttlObjSize);
 		try {
-			sortObjects(saveobjs, ttlObjSize);
+			final long sortStart = Timer.start();
+			boolean sorted = false;
+			try {
+				sortObjects(saveobjs, inMemory, executor);
+				sorted = true;
+			} finally {
+				stop(sortTimer, sortStart, sorted, ttlObjSize);
+			}
 			final List<ObjectInformation> ret = db.saveObjects(user, rwsi, saveobjs);
 			for (final WorkspaceEventListener l: listeners) {
 				for (final ObjectInformation oi: ret) {
@@ -754,6 +929,10 @@ public class Workspace {
 			}
 			return ret;
 		} finally {
+			if (inMemory && gov != null) {
+				gov.releaseMemory(ttlObjSize);
+			}
+			invalidateReferenceSearchCache(saveobjs);
 			for (final ResolvedSaveObject wo: saveobjs) {
 				try {
 					wo.getRep().destroyCachedResources();
@@ -764,47 +943,205 @@ public class Workspace {
 		}
 	}
 
-	private void sortObjects(
-			final List<ResolvedSaveObject> saveobjs,
-			final long ttlObjSize)
-			throws IOException, TypedObjectValidationException {
-		int objcount = 1;
-		final TempFilesManager tempTFM;
-		if (ttlObjSize > rescfg.getMaxIncomingDataMemoryUsage()) {
-			tempTFM = getTempFilesManager();
+	private static void stop(
+			final Timer timer,
+			final long start,
+			final boolean succeeded,
+			final long bytes) {
+		if (succeeded) {
+			timer.stop(start, bytes);
 		} else {
-			tempTFM = null;
+			timer.fail(start);
+		}
+	}
+
+	/* Returns true if the incoming data may be processed in memory, in which
+	 * case the caller must release the reservation in the governor, if any.
+	 * Otherwise the data is processed on disk.
+	 */
+	private boolean reserveIncomingDataMemory(final ResourceGovernor gov, final long ttlObjSize) {
+		if (ttlObjSize > rescfg.getMaxIncomingDataMemoryUsage()) {
+			return false;
 		}
+		return gov == null || gov.tryReserveMemory(ttlObjSize);
+	}
+
+	// call after saving, even if the save failed, as some objects may have been saved
+	private void invalidateReferenceSearchCache(final List<ResolvedSaveObject> saveobjs) {
+		final ReferenceSearchCache cache = refCache;
+		if (cache == null) {
+			return;
+		}
+		final Set<Reference> targets = new HashSet<>();
+		for (final ResolvedSaveObject ro: saveobjs) {
+			targets.addAll(ro.getRefs());
+			targets.addAll(ro.getProvRefs());
+		}
+		cache.invalidateReferences(targets);
+	}
+
+	private void sortObjects(
+			final List<ResolvedSaveObject> saveobjs,
+			final boolean inMemory,
+			final ExecutorService executor)
+			throws IOException, TypedObjectValidationException,
+			TypeStorageException, TypedObjectSchemaException {
+		final TempFilesManager tempTFM = inMemory ? null : getTempFilesManager();
 		final UTF8JsonSorterFactory fac = new UTF8JsonSorterFactory(
 				rescfg.getMaxRelabelAndSortMemoryUsage());
-		for (final ResolvedSaveObject ro: saveobjs) {
-			try {
-				//modifies object in place
-				ro.getRep().sort(fac, tempTFM);
-			} catch (KeyDuplicationException kde) {
-				/* this occurs when two references in the same hash resolve
-				 * to the same reference, so one value would be lost
-				 */
-				throw new TypedObjectValidationException(String.format(
-						"Object %s: Two references in a single hash are identical when resolved, resulting in a loss of data: ",
-						getObjectErrorId(ro.getObjectIdentifier(), objcount))
-						+ kde.getLocalizedMessage(), kde);
-			} catch (TooManyKeysException tmke) {
-				throw new TypedObjectValidationException(String.format(
-						"Object %s: ",
-						getObjectErrorId(ro.getObjectIdentifier(), objcount))
-						+ tmke.getLocalizedMessage(), tmke);
+		/* Only sort concurrently when all the data is in memory. In that case
+		 * the total data size is less than the incoming data memory limit,
+		 * which is less than the relabel and sort limit, so running sorts
+		 * concurrently can't exceed the sort memory limit (as each sort's key
+		 * storage is bounded by the object's size) and each sort can keep the
+		 * full per sort limit. This means whether a sort fails is independent
+		 * of the number of threads.
+		 */
+		if (executor == null || tempTFM != null) {
+			int objcount = 1;
+			for (final ResolvedSaveObject ro: saveobjs) {
+				sortObject(ro, objcount, fac, tempTFM);
+				objcount++;
 			}
-			objcount++;
+		} else {
+			final List<Callable<Void>> tasks = new LinkedList<>();
+			int objcount = 1;
+			for (final ResolvedSaveObject ro: saveobjs) {
+				final int count = objcount;
+				tasks.add(() -> {
+					sortObject(ro, count, fac, null);
+					return null;
+				});
+				objcount++;
+			}
+			runSaveTasks(tasks, executor);
+		}
+	}
+	
+	private void sortObject(
+			final ResolvedSaveObject ro,
+			final int objcount,
+			final UTF8JsonSorterFactory fac,
+			final TempFilesManager tempTFM)
+			throws IOException, TypedObjectValidationException {
+		try {
+			//modifies object in place
+			if (tempTFM == null) {
+				ro.getRep().sort(fac, null);
+			} else {
+				// relabel, sort and digest in one streaming pass
+				ro.getRep().relabelAndSort(rescfg.getMaxRelabelAndSortMemoryUsage(), tempTFM);
+				sortTempBytesWritten.addAndGet(ro.getRep().getTempBytesWritten());
+			}
+		} catch (KeyDuplicationException kde) {
+			/* this occurs when two references in the same hash resolve
+			 * to the same reference, so one value would be lost
+			 */
+			throw new TypedObjectValidationException(String.format(
+					"Object %s: Two references in a single hash are identical when resolved, resulting in a loss of data: ",
+					getObjectErrorId(ro.getObjectIdentifier(), objcount))
+					+ kde.getLocalizedMessage(), kde);
+		} catch (TooManyKeysException tmke) {
+			throw new TypedObjectValidationException(String.format(
+					"Object %s: ",
+					getObjectErrorId(ro.getObjectIdentifier(), objcount))
+					+ tmke.getLocalizedMessage(), tmke);
+		}
+	}
+	
+	private void calculateRelabeledSizes(
+			final List<WorkspaceSaveObject> objects,
+			final Map<WorkspaceSaveObject, ValidatedTypedObject> reports,
+			final ExecutorService executor)
+			throws IOException, TypedObjectValidationException,
+			TypeStorageException, TypedObjectSchemaException {
+		final List<Callable<Long>> tasks = new LinkedList<>();
+		for (final WorkspaceSaveObject wo: objects) {
+			final ValidatedTypedObject rep = reports.get(wo);
+			tasks.add(() -> rep.calculateRelabeledSize());
+		}
+		runSaveTasks(tasks, executor);
+	}
+	
+	/* Runs the tasks in the executor and returns the results in task order.
+	 * If any tasks fail, the tasks that have not yet started are cancelled and
+	 * the exception from the first failed task in task order is thrown.
+	 */
+	private static <T> List<T> runSaveTasks(
+			final List<Callable<T>> tasks,
+			final ExecutorService executor)
+			throws IOException, TypedObjectValidationException,
+			TypeStorageException, TypedObjectSchemaException {
+		final List<Future<T>> futures = new LinkedList<>();
+		for (final Callable<T> task: tasks) {
+			futures.add(submitSaveTask(executor, task));
+		}
+		final List<T> ret = new ArrayList<>();
+		try {
+			for (final Future<T> f: futures) {
+				ret.add(getSaveTaskResult(f));
+			}
+		} finally {
+			cancelSaveTasks(futures);
+		}
+		return ret;
+	}
+	
+	/* A save uses the same executor for the entire call, so the executor may be shut down
+	 * by setResourceConfig() while the save is in progress. In that case the task is run
+	 * in the calling thread.
+	 */
+	private static <T> Future<T> submitSaveTask(
+			final ExecutorService executor,
+			final Callable<T> task) {
+		try {
+			return executor.submit(task);
+		} catch (RejectedExecutionException e) {
+			final FutureTask<T> f = new FutureTask<>(task);
+			f.run();
+			return f;
+		}
+	}
+	
+	private static void cancelSaveTasks(final List<? extends Future<?>> futures) {
+		for (final Future<?> f: futures) {
+			// no-op for completed tasks. Don't interrupt running tasks since
+			// they may be reading from shared resources.
+			f.cancel(false);
+		}
+	}
+	
+	private static <T> T getSaveTaskResult(final Future<T> future)
+			throws IOException, TypedObjectValidationException,
+			TypeStorageException, TypedObjectSchemaException {
+		try {
+			return future.get();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(
+					"Interrupted while processing objects to save", ie);
+		} catch (ExecutionException ee) {
+			final Throwable cause = ee.getCause();
+			Throwables.propagateIfPossible(cause,
+					IOException.class, TypedObjectValidationException.class);
+			Throwables.propagateIfInstanceOf(cause, TypeStorageException.class);
+			Throwables.propagateIfInstanceOf(cause,
+					TypedObjectSchemaException.class);
+			throw new RuntimeException("Unexpected exception processing objects to save: " +
+					cause.getMessage(), cause);
 		}
 	}
 
 	private Map<WorkspaceSaveObject, ValidatedTypedObject>
 			validateObjectsAndExtractReferences(
 			final List<WorkspaceSaveObject> objects,
-			final IdReferenceHandlerSet<IDAssociation> idhandler)
+			final IdReferenceHandlerSet<IDAssociation> idhandler,
+			final ExecutorService executor)
 			throws TypeStorageException, TypedObjectSchemaException,
-			TypedObjectValidationException {
+			TypedObjectValidationException, IOException {
+		if (executor != null) {
+			return validateObjectsConcurrently(objects, idhandler, executor);
+		}
 		final Map<WorkspaceSaveObject, ValidatedTypedObject> reports = 
 				new HashMap<WorkspaceSaveObject, ValidatedTypedObject>();
 		int objcount = 1;
@@ -812,28 +1149,117 @@ public class Workspace {
 			idhandler.associateObject(new IDAssociation(objcount, false));
 			final ValidatedTypedObject rep = validate(wo, idhandler, objcount);
 			reports.put(wo, rep);
-			idhandler.associateObject(new IDAssociation(objcount, true));
-			try {
-				for (final Provenance.ProvenanceAction action: wo.getProvenance().getActions()) {
-					for (final String pref: action.getWorkspaceObjects()) {
-						if (pref == null) {
-							throw new TypedObjectValidationException(String.format(
-									"Object %s has a null provenance reference",
-									getObjectErrorId(wo, objcount)));
-						}
-						idhandler.addStringId(new IdReference<String>(WS_ID_TYPE, pref, null));
+			addProvenanceIds(wo, objcount, idhandler);
+			objcount++;
+		}
+		return reports;
+	}
+	
+	/* Validates objects in parallel. The IDs found in each object are recorded
+	 * and then added to the ID handler in object order, such that the ID
+	 * handler sees exactly the same ID sequence as in the serial case.
+	 * Errors are also reported in object order, so (excepting the case
+	 * below) the same error is thrown for invalid input regardless of the
+	 * number of threads.
+	 * The exception is that, since IDs are not sent to the handlers during
+	 * validation, an invalid ID will be reported by itself rather than
+	 * with any other type checking errors in the same object.
+	 */
+	private Map<WorkspaceSaveObject, ValidatedTypedObject>
+			validateObjectsConcurrently(
+			final List<WorkspaceSaveObject> objects,
+			final IdReferenceHandlerSet<IDAssociation> idhandler,
+			final ExecutorService executor)
+			throws TypeStorageException, TypedObjectSchemaException,
+			TypedObjectValidationException, IOException {
+		final List<DeferredIdReferenceHandlerSet<IDAssociation>> deferred =
+				new ArrayList<>();
+		final List<Future<ValidatedTypedObject>> futures = new ArrayList<>();
+		int objcount = 1;
+		for (final WorkspaceSaveObject wo: objects) {
+			final int count = objcount;
+			final DeferredIdReferenceHandlerSet<IDAssociation> objhandler =
+					new DeferredIdReferenceHandlerSet<>(idhandler);
+			objhandler.associateObject(new IDAssociation(count, false));
+			deferred.add(objhandler);
+			futures.add(submitSaveTask(executor, () -> validate(wo, objhandler, count)));
+			objcount++;
+		}
+		final Map<WorkspaceSaveObject, ValidatedTypedObject> reports = 
+				new HashMap<WorkspaceSaveObject, ValidatedTypedObject>();
+		try {
+			objcount = 1;
+			for (final WorkspaceSaveObject wo: objects) {
+				final ValidatedTypedObject rep = getSaveTaskResult(
+						futures.get(objcount - 1));
+				reports.put(wo, rep);
+				addDeferredIds(wo, objcount, rep, deferred.get(objcount - 1),
+						idhandler);
+				addProvenanceIds(wo, objcount, idhandler);
+				objcount++;
+			}
+		} finally {
+			cancelSaveTasks(futures);
+		}
+		return reports;
+	}
+	
+	// messages match those from the validator when IDs are added during validation
+	private void addDeferredIds(
+			final WorkspaceSaveObject wo,
+			final int objcount,
+			final ValidatedTypedObject rep,
+			final DeferredIdReferenceHandlerSet<IDAssociation> objhandler,
+			final IdReferenceHandlerSet<IDAssociation> idhandler)
+			throws TypedObjectValidationException {
+		final String err;
+		try {
+			objhandler.addIdsToParent();
+			return;
+		} catch (TooManyIdsException e) {
+			throw wrapTooManyIDsException(objcount, idhandler, e);
+		} catch (IdParseException e) {
+			err = String.format("Unparseable id %s of type %s: %s at %s",
+					e.getId(), e.getIdType().getType(), e.getMessage(),
+					getIDPath(rep, e.getIdReference()));
+		} catch (IdReferenceException e) {
+			err = String.format("Invalid id %s of type %s: %s at %s",
+					e.getId(), e.getIdType().getType(), e.getMessage(),
+					getIDPath(rep, e.getIdReference()));
+		} catch (IdReferenceHandlerException e) {
+			// the ID, and therefore the location, is unknown
+			err = String.format("Id handling error for id type %s: %s",
+					e.getIdType().getType(), e.getMessage());
+		}
+		throw new TypedObjectValidationException(String.format(
+				"Object %s failed type checking:\n",
+				getObjectErrorId(wo, objcount)) + err);
+	}
+	
+	private void addProvenanceIds(
+			final WorkspaceSaveObject wo,
+			final int objcount,
+			final IdReferenceHandlerSet<IDAssociation> idhandler)
+			throws TypedObjectValidationException {
+		idhandler.associateObject(new IDAssociation(objcount, true));
+		try {
+			for (final Provenance.ProvenanceAction action: wo.getProvenance().getActions()) {
+				for (final String pref: action.getWorkspaceObjects()) {
+					if (pref == null) {
+						throw new TypedObjectValidationException(String.format(
+								"Object %s has a null provenance reference",
+								getObjectErrorId(wo, objcount)));
 					}
+					idhandler.addStringId(new IdReference<String>(WS_ID_TYPE, pref, null));
 				}
-			} catch (IdReferenceHandlerException ihre) {
-				throw new TypedObjectValidationException(String.format(
-						"Object %s has invalid provenance reference: ",
-						getObjectErrorId(wo, objcount)) + ihre.getMessage(), ihre);
-			} catch (TooManyIdsException tmie) {
-				throw wrapTooManyIDsException(objcount, idhandler, tmie);
 			}
-			objcount++;
+		} catch (IdReferenceHandlerException ihre) {
+			throw new TypedObjectValidationException(String.format(
+					"Object %s has invalid provenance reference: ",
+					getObjectErrorId(wo, objcount)) + ihre.getMessage(), ihre);
+		} catch (TooManyIdsException tmie) {
+			throw wrapTooManyIDsException(objcount, idhandler, tmie);
 		}
-		return reports;
 	}
 
 	private void processIds(
@@ -1064,7 +1490,9 @@ public class Workspace {
 		final ObjectResolver.Builder orb = ObjectResolver.getBuilder(db, user)
 				.withIgnoreInaccessible(nullIfInaccessible)
 				.withAsAdmin(asAdmin)
-				.withMaximumObjectsSearched(maximumObjectSearchCount);
+				.withMaximumObjectsSearched(maximumObjectSearchCount)
+				.withReferenceSearchCache(refCache)
+				.withPublicWorkspaceCache(publicCache);
 		for (final ObjectIdentifier oi: loi) {
 			orb.withObject(oi);
 		}
@@ -1075,7 +1503,6 @@ public class Workspace {
 		final Map<ObjectIDResolvedWS, Set<SubsetSelection>> stdpaths =
 				setupObjectPaths(res.getObjects(false), res);
 		
-		//TODO CODE make an overall resource manager that takes the config as an arg and handles returned data as well as mem & file limits 
 		final ByteArrayFileCacheManager dataMan = getDataManager(noData);
 		
 		//this is pretty gross, think about a better api here
@@ -1090,6 +1517,12 @@ public class Workspace {
 			
 			refpaths.clear();
 			stdpaths.clear();
+			if (dataMan != null) {
+				metrics.getHistogram("workspace.getObjects.memoryUsage")
+						.update(dataMan.getSizeInMem());
+				metrics.getHistogram("workspace.getObjects.diskUsage")
+						.update(dataMan.getSizeOnDisk());
+			}
 			
 			final List<WorkspaceObjectData> ret = new ArrayList<>();
 			for (final ObjectIdentifier o: loi) {
@@ -1179,7 +1612,8 @@ public class Workspace {
 					 * originals will then be discarded
 					 */
 					rescfg.getMaxReturnedDataSize() * 2L,
-					db.getTempFilesManager());
+					db.getTempFilesManager(),
+					governor);
 		}
 	}
 
@@ -1377,7 +1811,9 @@ public class Workspace {
 		final ObjectResolver.Builder orb = ObjectResolver.getBuilder(db, user)
 				.withIgnoreInaccessible(nullIfInaccessible)
 				.withAsAdmin(asAdmin)
-				.withMaximumObjectsSearched(maximumObjectSearchCount);
+				.withMaximumObjectsSearched(maximumObjectSearchCount)
+				.withReferenceSearchCache(refCache)
+				.withPublicWorkspaceCache(publicCache);
 		for (final ObjectIdentifier oi: loi) {
 			orb.withObject(oi);
 		}
@@ -1535,6 +1971,9 @@ public class Workspace {
 		final ObjectIDResolvedWS t = new PermissionsCheckerFactory(db, user)
 				.getObjectChecker(to, Permission.WRITE).check();
 		final CopyResult cr = db.copyObject(user, f, t);
+		if (refCache != null) {
+			refCache.invalidateAllReferences();
+		}
 		final ObjectInformation oi = cr.getObjectInformation();
 		final WorkspaceInformation wsinfo = db.getWorkspaceInformation(
 				user, t.getWorkspaceIdentifier());
@@ -1555,6 +1994,9 @@ public class Workspace {
 		final ObjectIDResolvedWS target = new PermissionsCheckerFactory(db, user)
 				.getObjectChecker(oi, Permission.WRITE).check();
 		final ObjectInformation objinfo = db.revertObject(user, target);
+		if (refCache != null) {
+			refCache.invalidateAllReferences();
+		}
 		final WorkspaceInformation wsinfo = db.getWorkspaceInformation(
 				user, target.getWorkspaceIdentifier());
 		for (final WorkspaceEventListener l: listeners) {
@@ -1589,6 +2031,9 @@ public class Workspace {
 						.check();
 		final Map<ResolvedObjectIDNoVer, Instant> objs = db.setObjectsDeleted(
 				new HashSet<ObjectIDResolvedWS>(ws.values()), delete);
+		if (!delete && refCache != null) {
+			refCache.invalidateFailedSearches();
+		}
 		for (final WorkspaceEventListener l: listeners) {
 			for (final ResolvedObjectIDNoVer o: objs.keySet()) {
 				l.setObjectDeleted(o.getWorkspaceIdentifier().getID(), o.getId(), delete,
@@ -1653,7 +2098,12 @@ public class Workspace {
 		// once a workpace is locked, it's locked. Period.
 		PermissionsCheckerFactory.checkLocked(Permission.ADMIN, wsid);
 		final Instant time = db.setWorkspaceDeleted(wsid, delete);
+		// admin searches don't depend on the readable workspaces
+		if (!delete && refCache != null) {
+			refCache.invalidateFailedSearches();
+		}
 		final WorkspaceInformation wsinfo = db.getWorkspaceInformation(user, wsid);
+		publicCache.setPublicWorkspace(wsid.getID(), !delete && wsinfo.isGloballyReadable());
 		for (final WorkspaceEventListener l: listeners) {
 			l.setWorkspaceDeleted(wsid.getID(), delete, wsinfo.getMaximumObjectID(), time);
 		}
@@ -1904,7 +2354,9 @@ public class Workspace {
 				final Set<ObjectIdentifier> idset)
 				throws IdReferenceHandlerException {
 			final ObjectResolver.Builder orb = ObjectResolver.getBuilder(db, user)
-					.withMaximumObjectsSearched(maximumObjectSearchCount);
+					.withMaximumObjectsSearched(maximumObjectSearchCount)
+					.withReferenceSearchCache(refCache)
+					.withPublicWorkspaceCache(publicCache);
 			if (!idset.isEmpty()) {
 				try {
 					for (final ObjectIdentifier oi: idset) {
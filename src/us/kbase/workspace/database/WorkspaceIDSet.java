@@ -0,0 +1,128 @@
+package us.kbase.workspace.database;
+
+import static us.kbase.workspace.database.Util.nonNull;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+/** An immutable set of workspace IDs stored as a bitmap. Workspace IDs are assigned
+ * sequentially, so a bitmap stores large sets, such as the set of all globally readable
+ * workspaces, in a fraction of the memory of a set of boxed IDs, and unions and membership
+ * tests require no boxing or hashing.
+ */
+public class WorkspaceIDSet {
+
+	/** The empty set. */
+	public static final WorkspaceIDSet EMPTY = new WorkspaceIDSet(new BitSet());
+
+	private final BitSet ids;
+
+	private WorkspaceIDSet(final BitSet ids) {
+		this.ids = ids;
+	}
+
+	/** Create a set of workspace IDs.
+	 * @param ids the workspace IDs.
+	 * @return the new set.
+	 */
+	public static WorkspaceIDSet of(final Collection<Long> ids) {
+		nonNull(ids, "ids");
+		final BitSet bits = new BitSet();
+		for (final Long id: ids) {
+			bits.set(checkID(id));
+		}
+		return new WorkspaceIDSet(bits);
+	}
+
+	private static int checkID(final Long id) {
+		nonNull(id, "null id");
+		if (id < 0 || id > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Illegal workspace ID: " + id);
+		}
+		return (int) (long) id;
+	}
+
+	/** Check whether the set contains a workspace ID.
+	 * @param id the workspace ID.
+	 * @return true if the set contains the ID.
+	 */
+	public boolean contains(final long id) {
+		return id >= 0 && id <= Integer.MAX_VALUE && ids.get((int) id);
+	}
+
+	/** Get the number of workspace IDs in the set.
+	 * @return the size of the set.
+	 */
+	public int size() {
+		return ids.cardinality();
+	}
+
+	/** Check whether the set is empty.
+	 * @return true if the set contains no IDs.
+	 */
+	public boolean isEmpty() {
+		return ids.isEmpty();
+	}
+
+	/** Get the union of this set and another set.
+	 * @param other the other set.
+	 * @return a set containing the IDs in either set.
+	 */
+	public WorkspaceIDSet union(final WorkspaceIDSet other) {
+		nonNull(other, "other");
+		if (other.isEmpty()) {
+			return this;
+		}
+		if (isEmpty()) {
+			return other;
+		}
+		final BitSet bits = (BitSet) ids.clone();
+		bits.or(other.ids);
+		return new WorkspaceIDSet(bits);
+	}
+
+	/** Get a copy of this set with a workspace ID added or removed.
+	 * @param id the workspace ID.
+	 * @param present true to add the ID, false to remove it.
+	 * @return the new set, or this set if it already contains or lacks the ID as requested.
+	 */
+	public WorkspaceIDSet with(final long id, final boolean present) {
+		if (contains(id) == present) {
+			return this;
+		}
+		final BitSet bits = (BitSet) ids.clone();
+		bits.set(checkID(id), present);
+		return new WorkspaceIDSet(bits);
+	}
+
+	/** Get the set as a bitmap, where bit n of word n / 64 is set if ID n is in the set. Equal
+	 * sets have equal bitmaps.
+	 * @return the bitmap.
+	 */
+	public long[] toBitmap() {
+		return ids.toLongArray();
+	}
+
+	@Override
+	public int hashCode() {
+		return ids.hashCode();
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		return ids.equals(((WorkspaceIDSet) obj).ids);
+	}
+
+	@Override
+	public String toString() {
+		return "WorkspaceIDSet [size=" + size() + ", ids=" +
+				(size() > 20 ? "..." : Arrays.toString(ids.stream().toArray())) + "]";
+	}
+}
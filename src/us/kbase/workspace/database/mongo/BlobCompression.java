@@ -0,0 +1,101 @@
+package us.kbase.workspace.database.mongo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** Codecs for compressing blobs in a blob store. The codec used for a blob is recorded with the
+ * blob so that blobs saved with one codec can be read after the blob store's codec is changed.
+ * Blobs saved before codecs were supported have no codec recorded and are uncompressed.
+ * @author gaprice@lbl.gov
+ *
+ */
+public enum BlobCompression {
+
+	/** No compression. */
+	NONE ("none", 0),
+	/** Deflate compression at the default compression level. */
+	DEFLATE ("deflate", Deflater.DEFAULT_COMPRESSION),
+	/** Deflate compression at the fastest compression level. Compresses less than
+	 * {@link #DEFLATE} at a much lower CPU cost.
+	 */
+	DEFLATE_FAST ("deflate-fast", Deflater.BEST_SPEED);
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final String name;
+	private final int level;
+
+	private BlobCompression(final String name, final int level) {
+		this.name = name;
+		this.level = level;
+	}
+
+	/** Get the name of the codec, which is recorded with each blob.
+	 * @return the codec name.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/** Get a codec by its name.
+	 * @param name the name of the codec. If null, {@link #NONE} is returned.
+	 * @return the codec.
+	 */
+	public static BlobCompression fromName(final String name) {
+		if (name == null) {
+			return NONE;
+		}
+		for (final BlobCompression c: values()) {
+			if (c.name.equals(name)) {
+				return c;
+			}
+		}
+		throw new IllegalArgumentException("Unknown blob compression codec: " + name);
+	}
+
+	/** Compress data as it is read.
+	 * @param data the uncompressed data.
+	 * @return a stream of the compressed data. Closing the stream closes the data stream.
+	 */
+	public InputStream compress(final InputStream data) {
+		if (this == NONE) {
+			return data;
+		}
+		return new DeflaterInputStream(data, new Deflater(level), BUFFER_SIZE) {
+
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					def.end();
+				}
+			}
+		};
+	}
+
+	/** Decompress data as it is read.
+	 * @param data the compressed data.
+	 * @return a stream of the uncompressed data. Closing the stream closes the data stream.
+	 */
+	public InputStream decompress(final InputStream data) {
+		if (this == NONE) {
+			return data;
+		}
+		return new InflaterInputStream(data, new Inflater(), BUFFER_SIZE) {
+
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					inf.end();
+				}
+			}
+		};
+	}
+}
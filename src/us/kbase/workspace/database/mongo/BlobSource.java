@@ -0,0 +1,40 @@
+package us.kbase.workspace.database.mongo;
+
+import us.kbase.workspace.database.ByteArrayFileCacheManager.DataSource;
+
+/** A source for a blob's data that retrieves the data from the blob store
+ * each time the source is opened, along with whether the data is sorted.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class BlobSource {
+	
+	private final DataSource source;
+	private final boolean sorted;
+	
+	/** Create a blob source.
+	 * @param source the source of the blob data.
+	 * @param sorted true if the blob data is sorted.
+	 */
+	public BlobSource(final DataSource source, final boolean sorted) {
+		if (source == null) {
+			throw new NullPointerException("source cannot be null");
+		}
+		this.source = source;
+		this.sorted = sorted;
+	}
+	
+	/** Get the source of the blob data.
+	 * @return the data source.
+	 */
+	public DataSource getSource() {
+		return source;
+	}
+	
+	/** Returns whether the blob data is sorted.
+	 * @return true if the data is sorted.
+	 */
+	public boolean isSorted() {
+		return sorted;
+	}
+}
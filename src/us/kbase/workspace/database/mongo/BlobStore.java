@@ -1,6 +1,7 @@
 package us.kbase.workspace.database.mongo;
 
 import java.util.List;
+import java.util.Set;
 
 import us.kbase.typedobj.core.MD5;
 import us.kbase.typedobj.core.Restreamable;
@@ -30,6 +31,16 @@ public interface BlobStore {
 			throws BlobStoreAuthorizationException,
 			BlobStoreCommunicationException;
 	
+	/** Determine which of a set of blobs are already saved in the Blob
+	 * Store in a single operation. Blobs that exist need not be saved again.
+	 * @param md5s the md5s of the blobs to check.
+	 * @return the subset of the md5s for which blobs exist.
+	 * @throws BlobStoreCommunicationException if a communication error with
+	 * the blob store backend occurs.
+	 */
+	public Set<MD5> getExistingBlobs(Set<MD5> md5s)
+			throws BlobStoreCommunicationException;
+	
 	/** Get a blob.
 	 * @param md5 the md5 of the blob.
 	 * @param bafcMan a data manager to manage the blob data.
@@ -50,6 +61,60 @@ public interface BlobStore {
 			BlobStoreCommunicationException, NoSuchBlobException,
 			FileCacheLimitExceededException, FileCacheIOException;
 	
+	/** Get a source for a blob's data. The data is not retrieved until the
+	 * source is opened, and is retrieved from the blob store backend each
+	 * time the source is opened.
+	 * @param md5 the md5 of the blob.
+	 * @return the blob source.
+	 * @throws BlobStoreAuthorizationException if the blobstore is not
+	 * authorized to read from the blob store backend. 
+	 * @throws BlobStoreCommunicationException if a communication error with
+	 * the blob store backend occurs. 
+	 * @throws NoSuchBlobException if there is no blob matching the md5
+	 */
+	public BlobSource getBlobSource(MD5 md5)
+			throws BlobStoreAuthorizationException,
+			BlobStoreCommunicationException, NoSuchBlobException;
+	
+	/** Returns whether the blob store can store structural indexes of blobs
+	 * and read byte ranges of blobs. If false, {@link #saveBlobIndex(MD5,
+	 * byte[])} does nothing and {@link #getIndexedBlob(MD5)} always returns
+	 * null.
+	 * @return true if blob indexes are supported.
+	 */
+	public boolean supportsBlobIndexes();
+	
+	/** Save a structural index of a blob. The blob must already be saved.
+	 * Indexes are derived from the blob data and so are never updated; if an
+	 * index already exists for the blob the new index is ignored.
+	 * @param md5 the md5 of the blob.
+	 * @param index the serialized index.
+	 * @throws BlobStoreAuthorizationException if the blobstore is not
+	 * authorized to write to the blob store backend. 
+	 * @throws BlobStoreCommunicationException if a communication error with
+	 * the blob store backend occurs.
+	 * @see us.kbase.typedobj.core.JsonStructureIndex
+	 */
+	public void saveBlobIndex(MD5 md5, byte[] index)
+			throws BlobStoreAuthorizationException,
+			BlobStoreCommunicationException;
+	
+	/** Get a blob's structural index and a source for byte ranges of the
+	 * blob's data. As with {@link #getBlobSource(MD5)}, the data is not
+	 * retrieved until a range is opened.
+	 * @param md5 the md5 of the blob.
+	 * @return the indexed blob, or null if the blob or its index does not
+	 * exist, or if byte ranges of the blob cannot be read, for example
+	 * because the blob is compressed.
+	 * @throws BlobStoreAuthorizationException if the blobstore is not
+	 * authorized to read from the blob store backend. 
+	 * @throws BlobStoreCommunicationException if a communication error with
+	 * the blob store backend occurs. 
+	 */
+	public IndexedBlob getIndexedBlob(MD5 md5)
+			throws BlobStoreAuthorizationException,
+			BlobStoreCommunicationException;
+	
 	/**
 	 * Do not call removeBlob when saveBlob could be run by other threads or
 	 * applications. Doing so could result in an inconsistent state in the
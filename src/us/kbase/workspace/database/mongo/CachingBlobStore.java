@@ -0,0 +1,545 @@
+package us.kbase.workspace.database.mongo;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+import us.kbase.typedobj.core.MD5;
+import us.kbase.typedobj.core.Restreamable;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.DataSource;
+import us.kbase.workspace.database.DependencyStatus;
+import us.kbase.workspace.database.exceptions.FileCacheIOException;
+import us.kbase.workspace.database.exceptions.FileCacheLimitExceededException;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreAuthorizationException;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreCommunicationException;
+import us.kbase.workspace.database.mongo.exceptions.NoSuchBlobException;
+
+/** A blob store that caches blobs retrieved from another blob store. Since
+ * blobs are immutable and addressed by their MD5, cached blobs never need to
+ * be refreshed.
+ *
+ * The cache has two tiers, each bounded by a total size in bytes. The memory
+ * tier holds the blob data on the heap and the disk tier holds the blob data
+ * in files in a directory. Both tiers evict the least recently used blobs
+ * when full. A blob is only cached in a tier if its size is no more than
+ * 1/16 of that tier's size, so that a single large blob cannot flush the
+ * tier. Either tier may be disabled by setting its size to zero.
+ *
+ * The disk cache directory must not be used for any other purpose, as any
+ * cache files in the directory are deleted on startup.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class CachingBlobStore implements BlobStore {
+
+	private static final int MAX_BLOB_FRACTION = 16;
+	private static final String FILE_PREFIX = "blob_";
+	private static final String FILE_SUFFIX = ".json";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private final BlobStore store;
+	private final Cache<MD5, MemoryBlob> memCache; // null if disabled
+	private final long maxMemBlobSize;
+	private final DiskCache diskCache; // null if disabled
+
+	/** Create the cache.
+	 * @param store the blob store to cache.
+	 * @param memoryCacheSize the maximum size of the memory cache in bytes.
+	 * Pass 0 to disable the memory cache.
+	 * @param diskCacheDirectory the directory in which to store cached blobs.
+	 * May be null if the disk cache is disabled.
+	 * @param diskCacheSize the maximum size of the disk cache in bytes.
+	 * Pass 0 to disable the disk cache.
+	 * @throws IOException if the disk cache directory could not be created or
+	 * cleaned.
+	 */
+	public CachingBlobStore(
+			final BlobStore store,
+			final long memoryCacheSize,
+			final File diskCacheDirectory,
+			final long diskCacheSize)
+			throws IOException {
+		if (store == null) {
+			throw new NullPointerException("store cannot be null");
+		}
+		if (memoryCacheSize < 0 || diskCacheSize < 0) {
+			throw new IllegalArgumentException("Cache sizes must be at least 0");
+		}
+		this.store = store;
+		if (memoryCacheSize > 0) {
+			memCache = CacheBuilder.newBuilder()
+					.maximumWeight(memoryCacheSize)
+					.weigher(new Weigher<MD5, MemoryBlob>() {
+
+						@Override
+						public int weigh(final MD5 md5, final MemoryBlob blob) {
+							return blob.data.length;
+						}
+					})
+					.recordStats()
+					.build();
+		} else {
+			memCache = null;
+		}
+		// blobs in memory are stored in byte arrays
+		maxMemBlobSize = Math.min(
+				memoryCacheSize / MAX_BLOB_FRACTION, Integer.MAX_VALUE - 8);
+		if (diskCacheSize > 0) {
+			if (diskCacheDirectory == null) {
+				throw new NullPointerException(
+						"diskCacheDirectory cannot be null if the disk cache is enabled");
+			}
+			diskCache = new DiskCache(diskCacheDirectory, diskCacheSize);
+		} else {
+			diskCache = null;
+		}
+	}
+
+	private static class MemoryBlob {
+		private final byte[] data;
+		private final boolean sorted;
+
+		private MemoryBlob(final byte[] data, final boolean sorted) {
+			this.data = data;
+			this.sorted = sorted;
+		}
+	}
+
+	private static class DiskBlob {
+		private final File file;
+		private final long size;
+		private final boolean sorted;
+
+		private DiskBlob(final File file, final long size, final boolean sorted) {
+			this.file = file;
+			this.size = size;
+			this.sorted = sorted;
+		}
+	}
+
+	private static class DiskCache {
+
+		private final File dir;
+		private final long maxSize;
+		// access ordered, so iteration starts at the least recently used blob
+		private final LinkedHashMap<MD5, DiskBlob> blobs =
+				new LinkedHashMap<>(16, 0.75f, true);
+		private long size = 0;
+		private long hits = 0;
+		private long misses = 0;
+		private long evictions = 0;
+
+		private DiskCache(final File dir, final long maxSize) throws IOException {
+			this.dir = dir;
+			this.maxSize = maxSize;
+			Files.createDirectories(dir.toPath());
+			final File[] old = dir.listFiles();
+			if (old == null) {
+				throw new IOException("Could not list the contents of " + dir);
+			}
+			for (final File f: old) {
+				if (f.getName().startsWith(FILE_PREFIX)) {
+					Files.delete(f.toPath());
+				}
+			}
+		}
+
+		/* Returns an open stream on the blob file, or null if the blob is not
+		 * in the cache. The stream is opened while holding the lock so the
+		 * data remains readable even if the blob is evicted before it's read.
+		 */
+		private synchronized DiskBlobStream get(final MD5 md5) {
+			final DiskBlob b = blobs.get(md5);
+			if (b == null) {
+				misses++;
+				return null;
+			}
+			try {
+				final InputStream is = new FileInputStream(b.file);
+				hits++;
+				return new DiskBlobStream(is, b.size, b.sorted);
+			} catch (FileNotFoundException e) {
+				// someone deleted the file
+				blobs.remove(md5);
+				size -= b.size;
+				misses++;
+				return null;
+			}
+		}
+
+		private synchronized boolean contains(final MD5 md5) {
+			return blobs.containsKey(md5);
+		}
+
+		private File getTempFile() {
+			return new File(dir, FILE_PREFIX + UUID.randomUUID() + TEMP_SUFFIX);
+		}
+
+		private synchronized void put(
+				final MD5 md5,
+				final File tempFile,
+				final long blobSize,
+				final boolean sorted)
+				throws IOException {
+			if (blobs.containsKey(md5)) {
+				// another thread got here first
+				Files.delete(tempFile.toPath());
+				return;
+			}
+			final File f = new File(dir, FILE_PREFIX + md5.getMD5() + FILE_SUFFIX);
+			Files.move(tempFile.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			blobs.put(md5, new DiskBlob(f, blobSize, sorted));
+			size += blobSize;
+			final Iterator<DiskBlob> iter = blobs.values().iterator();
+			while (size > maxSize && iter.hasNext()) {
+				final DiskBlob b = iter.next();
+				iter.remove();
+				size -= b.size;
+				evictions++;
+				deleteQuietly(b.file);
+			}
+		}
+
+		private synchronized void remove(final MD5 md5) {
+			final DiskBlob b = blobs.remove(md5);
+			if (b != null) {
+				size -= b.size;
+				deleteQuietly(b.file);
+			}
+		}
+	}
+
+	private static class DiskBlobStream {
+		private final InputStream is;
+		private final long size;
+		private final boolean sorted;
+
+		private DiskBlobStream(final InputStream is, final long size, final boolean sorted) {
+			this.is = is;
+			this.size = size;
+			this.sorted = sorted;
+		}
+	}
+
+	private static void deleteQuietly(final File f) {
+		if (!f.delete() && f.exists()) {
+			LoggerFactory.getLogger(CachingBlobStore.class).error(
+					"Could not delete blob cache file " + f);
+		}
+	}
+
+	@Override
+	public void saveBlob(final MD5 md5, final Restreamable data, final boolean sorted)
+			throws BlobStoreAuthorizationException,
+			BlobStoreCommunicationException {
+		store.saveBlob(md5, data, sorted);
+	}
+
+	@Override
+	public Set<MD5> getExistingBlobs(final Set<MD5> md5s)
+			throws BlobStoreCommunicationException {
+		return store.getExistingBlobs(md5s);
+	}
+
+	@Override
+	public ByteArrayFileCache getBlob(
+			final MD5 md5,
+			final ByteArrayFileCacheManager bafcMan)
+			throws BlobStoreAuthorizationException,
+			BlobStoreCommunicationException, NoSuchBlobException,
+			FileCacheLimitExceededException, FileCacheIOException {
+		if (memCache != null) {
+			final MemoryBlob b = memCache.getIfPresent(md5);
+			if (b != null) {
+				return bafcMan.createBAFC(new ByteArrayInputStream(b.data), true, b.sorted);
+			}
+		}
+		if (diskCache != null) {
+			final DiskBlobStream b = diskCache.get(md5);
+			if (b != null) {
+				try {
+					if (memCache != null && b.size <= maxMemBlobSize) {
+						final byte[] data = toByteArray(b.is);
+						memCache.put(md5, new MemoryBlob(data, b.sorted));
+						return bafcMan.createBAFC(
+								new ByteArrayInputStream(data), true, b.sorted);
+					}
+					return bafcMan.createBAFC(b.is, true, b.sorted);
+				} finally {
+					IOUtils.closeQuietly(b.is);
+				}
+			}
+		}
+		final ByteArrayFileCache bafc = store.getBlob(md5, bafcMan);
+		try {
+			cache(md5, bafc);
+		} catch (IOException | RuntimeException e) {
+			// the cache is an optimization, so don't fail the request
+			LoggerFactory.getLogger(getClass()).error(
+					"Failed to cache blob " + md5.getMD5(), e);
+		}
+		return bafc;
+	}
+
+	/* Only blobs in the memory cache are served from the cache, since disk
+	 * cache files may be evicted before the source is opened. Streamed blobs
+	 * are never added to the cache.
+	 */
+	@Override
+	public BlobSource getBlobSource(final MD5 md5)
+			throws BlobStoreAuthorizationException,
+			BlobStoreCommunicationException, NoSuchBlobException {
+		if (memCache != null) {
+			final MemoryBlob b = memCache.getIfPresent(md5);
+			if (b != null) {
+				return new BlobSource(new DataSource() {
+					
+					@Override
+					public InputStream open() {
+						return new ByteArrayInputStream(b.data);
+					}
+				}, b.sorted);
+			}
+		}
+		return store.getBlobSource(md5);
+	}
+
+	private byte[] toByteArray(final InputStream is) throws FileCacheIOException {
+		try {
+			return IOUtils.toByteArray(is);
+		} catch (IOException e) {
+			throw new FileCacheIOException(e.getLocalizedMessage(), e);
+		}
+	}
+
+	private void cache(final MD5 md5, final ByteArrayFileCache bafc)
+			throws IOException {
+		final long size = bafc.getSize();
+		final boolean toMem = memCache != null && size <= maxMemBlobSize;
+		final boolean toDisk = diskCache != null && size <= diskCache.maxSize / MAX_BLOB_FRACTION
+				&& !diskCache.contains(md5);
+		if (toMem) {
+			final ByteArrayOutputStream baos = new ByteArrayOutputStream((int) size);
+			writeBlob(bafc, baos);
+			final byte[] data = baos.toByteArray();
+			memCache.put(md5, new MemoryBlob(data, bafc.isSorted()));
+			if (toDisk) {
+				final File f = diskCache.getTempFile();
+				try {
+					Files.write(f.toPath(), data);
+					diskCache.put(md5, f, size, bafc.isSorted());
+				} finally {
+					f.delete(); // no-op if the file was moved into the cache
+				}
+			}
+		} else if (toDisk) {
+			final File f = diskCache.getTempFile();
+			try {
+				try (final OutputStream os = new FileOutputStream(f)) {
+					writeBlob(bafc, os);
+				}
+				diskCache.put(md5, f, size, bafc.isSorted());
+			} finally {
+				f.delete(); // no-op if the file was moved into the cache
+			}
+		}
+	}
+
+	// blobs are always stored as UTF-8
+	private void writeBlob(final ByteArrayFileCache bafc, final OutputStream os)
+			throws IOException {
+		try (final Reader r = bafc.getJSON()) {
+			final Writer w = new BufferedWriter(new OutputStreamWriter(
+					os, StandardCharsets.UTF_8));
+			IOUtils.copy(r, w);
+			w.flush();
+		}
+	}
+
+	/* Indexed blobs are never cached, since only small parts of the blob
+	 * are read.
+	 */
+	@Override
+	public boolean supportsBlobIndexes() {
+		return store.supportsBlobIndexes();
+	}
+
+	@Override
+	public void saveBlobIndex(final MD5 md5, final byte[] index)
+			throws BlobStoreAuthorizationException,
+			BlobStoreCommunicationException {
+		store.saveBlobIndex(md5, index);
+	}
+
+	@Override
+	public IndexedBlob getIndexedBlob(final MD5 md5)
+			throws BlobStoreAuthorizationException,
+			BlobStoreCommunicationException {
+		return store.getIndexedBlob(md5);
+	}
+
+	@Override
+	public void removeBlob(final MD5 md5)
+			throws BlobStoreAuthorizationException,
+			BlobStoreCommunicationException {
+		if (memCache != null) {
+			memCache.invalidate(md5);
+		}
+		if (diskCache != null) {
+			diskCache.remove(md5);
+		}
+		store.removeBlob(md5);
+	}
+
+	@Override
+	public String getExternalIdentifier(final MD5 md5)
+			throws BlobStoreCommunicationException, NoSuchBlobException {
+		return store.getExternalIdentifier(md5);
+	}
+
+	@Override
+	public List<DependencyStatus> status() {
+		return store.status();
+	}
+
+	/** Get statistics about the cache's performance.
+	 * @return the cache statistics.
+	 */
+	public CacheStatistics getStatistics() {
+		final CacheStatistics s = new CacheStatistics();
+		if (memCache != null) {
+			final CacheStats ms = memCache.stats();
+			s.memoryHits = ms.hitCount();
+			s.memoryMisses = ms.missCount();
+			s.memoryEvictions = ms.evictionCount();
+			long size = 0;
+			for (final MemoryBlob b: memCache.asMap().values()) {
+				size += b.data.length;
+			}
+			s.memorySize = size;
+		}
+		if (diskCache != null) {
+			synchronized (diskCache) {
+				s.diskHits = diskCache.hits;
+				s.diskMisses = diskCache.misses;
+				s.diskEvictions = diskCache.evictions;
+				s.diskSize = diskCache.size;
+			}
+		}
+		return s;
+	}
+
+	/** Statistics about a blob cache's performance. All statistics are
+	 * zero for disabled tiers.
+	 */
+	public static class CacheStatistics {
+
+		private long memoryHits = 0;
+		private long memoryMisses = 0;
+		private long memoryEvictions = 0;
+		private long memorySize = 0;
+		private long diskHits = 0;
+		private long diskMisses = 0;
+		private long diskEvictions = 0;
+		private long diskSize = 0;
+
+		private CacheStatistics() {}
+
+		/** Get the number of blob requests served from the memory cache.
+		 * @return the memory cache hit count.
+		 */
+		public long getMemoryHits() {
+			return memoryHits;
+		}
+
+		/** Get the number of blob requests not found in the memory cache.
+		 * @return the memory cache miss count.
+		 */
+		public long getMemoryMisses() {
+			return memoryMisses;
+		}
+
+		/** Get the number of blobs evicted from the memory cache.
+		 * @return the memory cache eviction count.
+		 */
+		public long getMemoryEvictions() {
+			return memoryEvictions;
+		}
+
+		/** Get the total size of the blobs in the memory cache.
+		 * @return the size of the memory cache in bytes.
+		 */
+		public long getMemorySize() {
+			return memorySize;
+		}
+
+		/** Get the number of blob requests served from the disk cache.
+		 * @return the disk cache hit count.
+		 */
+		public long getDiskHits() {
+			return diskHits;
+		}
+
+		/** Get the number of blob requests not found in the disk cache.
+		 * @return the disk cache miss count.
+		 */
+		public long getDiskMisses() {
+			return diskMisses;
+		}
+
+		/** Get the number of blobs evicted from the disk cache.
+		 * @return the disk cache eviction count.
+		 */
+		public long getDiskEvictions() {
+			return diskEvictions;
+		}
+
+		/** Get the total size of the blobs in the disk cache.
+		 * @return the size of the disk cache in bytes.
+		 */
+		public long getDiskSize() {
+			return diskSize;
+		}
+
+		@Override
+		public String toString() {
+			return "CacheStatistics [memoryHits=" + memoryHits +
+					", memoryMisses=" + memoryMisses +
+					", memoryEvictions=" + memoryEvictions +
+					", memorySize=" + memorySize +
+					", diskHits=" + diskHits +
+					", diskMisses=" + diskMisses +
+					", diskEvictions=" + diskEvictions +
+					", diskSize=" + diskSize + "]";
+		}
+	}
+}
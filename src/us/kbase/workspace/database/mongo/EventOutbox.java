@@ -0,0 +1,697 @@
+package us.kbase.workspace.database.mongo;
+
+import static us.kbase.workspace.database.mongo.ObjectInfoUtils.metaHashToMongoArray;
+import static us.kbase.workspace.database.mongo.ObjectInfoUtils.metaMongoArrayToHash;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.base.Optional;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.DuplicateKeyException;
+import com.mongodb.MongoException;
+import com.mongodb.WriteResult;
+
+import us.kbase.workspace.database.ObjectInformation;
+import us.kbase.workspace.database.Permission;
+import us.kbase.workspace.database.ResolvedWorkspaceID;
+import us.kbase.workspace.database.UncheckedUserMetadata;
+import us.kbase.workspace.database.WorkspaceUser;
+import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
+import us.kbase.workspace.listener.WorkspaceEvent;
+import us.kbase.workspace.listener.WorkspaceEventListener;
+
+/** A durable, ordered log of the events in a workspace database, stored in a MongoDB
+ * collection.
+ *
+ * The workspace database appends an event for each new object version immediately after the
+ * version is saved, so events are not lost if the server fails before notifying the event
+ * listeners. All other events are appended by the listener returned by {@link #getRecorder()}
+ * when the workspace notifies its listeners. Each event is assigned a unique, increasing
+ * sequence number, stored as the document ID, which allows consumers to replay events from any
+ * point. Events are deleted from the log by a TTL index after the retention period.
+ *
+ * Whether an object or workspace is public is recorded along with the event, so consumers
+ * receive the state at the time of the event rather than when the event is read.
+ *
+ * Sequence numbers are allocated before the events are written, so when multiple servers or
+ * threads write to the log concurrently an event may briefly appear before an event with a
+ * lower sequence number. Consumers should only process events older than a few seconds to
+ * avoid skipping events. Sequence numbers allocated by a server that fails before writing the
+ * events are never used.
+ * @author gaprice@lbl.gov
+ *
+ * @see EventOutboxDispatcher
+ *
+ */
+public class EventOutbox {
+
+	/** The types of event recorded in the log. */
+	public static enum EventType {
+
+		/** An object version was saved. */
+		SAVE ("save", true),
+		/** A single object version was copied. */
+		COPY ("copy", true),
+		/** All the versions of an object were copied. The event contains the latest version. */
+		COPY_ALL_VERSIONS ("copyall", true),
+		/** An object was reverted to a prior version. */
+		REVERT ("revert", true),
+		/** An object was renamed. */
+		RENAME_OBJECT ("renameobj", false),
+		/** An object was deleted or undeleted. */
+		DELETE_OBJECT ("deleteobj", false),
+		/** A workspace was created. */
+		CREATE_WORKSPACE ("createws", false),
+		/** A workspace was cloned. */
+		CLONE_WORKSPACE ("clonews", false),
+		/** A workspace's metadata was altered. */
+		WORKSPACE_METADATA ("wsmeta", false),
+		/** A workspace was locked. */
+		LOCK_WORKSPACE ("lockws", false),
+		/** A workspace was renamed. */
+		RENAME_WORKSPACE ("renamews", false),
+		/** A workspace's global permission was altered. */
+		GLOBAL_PERMISSION ("globalperm", false),
+		/** A workspace's permissions were altered. */
+		PERMISSIONS ("perms", false),
+		/** A workspace's description was altered. */
+		WORKSPACE_DESCRIPTION ("wsdesc", false),
+		/** A workspace's owner was changed. */
+		WORKSPACE_OWNER ("wsowner", false),
+		/** A workspace was deleted or undeleted. */
+		DELETE_WORKSPACE ("deletews", false);
+
+		private final String name;
+		private final boolean version;
+
+		private EventType(final String name, final boolean version) {
+			this.name = name;
+			this.version = version;
+		}
+
+		/** Check whether the event type is an object version event, which are recorded by the
+		 * workspace database when the version is saved.
+		 * @return true if the type is an object version event type.
+		 */
+		public boolean isVersionEvent() {
+			return version;
+		}
+
+		/** Get the name of the event type as stored in the log.
+		 * @return the name.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/** Get an event type by its name.
+		 * @param name the name of the event type.
+		 * @return the event type.
+		 */
+		public static EventType fromName(final String name) {
+			for (final EventType t: values()) {
+				if (t.name.equals(name)) {
+					return t;
+				}
+			}
+			throw new IllegalArgumentException("Unknown event type: " + name);
+		}
+	}
+
+	/** An event recorded in the log. */
+	public static class OutboxEvent {
+
+		private final long sequence;
+		private final EventType type;
+		private final Instant time;
+		private final ObjectInformation object;
+		private final WorkspaceEvent event;
+
+		private OutboxEvent(
+				final long sequence,
+				final EventType type,
+				final Instant time,
+				final ObjectInformation object,
+				final WorkspaceEvent event) {
+			this.sequence = sequence;
+			this.type = type;
+			this.time = time;
+			this.object = object;
+			this.event = event;
+		}
+
+		/** Get the sequence number of the event.
+		 * @return the sequence number.
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
+		/** Get the type of the event.
+		 * @return the event type.
+		 */
+		public EventType getType() {
+			return type;
+		}
+
+		/** Get the time the event was recorded.
+		 * @return the event time.
+		 */
+		public Instant getTime() {
+			return time;
+		}
+
+		/** Get information about the object version that was saved, copied or reverted.
+		 * @return the object information, or null if the event is not an object version event.
+		 */
+		public ObjectInformation getObjectInformation() {
+			return object;
+		}
+
+		/** Get the event for delivery to a listener.
+		 * @return the event.
+		 */
+		public WorkspaceEvent getEvent() {
+			return event;
+		}
+	}
+
+	// the log and the document holding the sequence counter and dispatcher checkpoints
+	public static final String COL_EVENT_OUTBOX = CollectionNames.COL_EVENT_OUTBOX;
+	public static final String COL_EVENT_OUTBOX_STATE = CollectionNames.COL_EVENT_OUTBOX_STATE;
+
+	private static final String SEQUENCE_ID = "sequence";
+	private static final String CHECKPOINT_PREFIX = "checkpoint-";
+	private static final String STATE_VALUE = "val";
+
+	private static final String EV_TYPE = "type";
+	private static final String EV_TIME = "time";
+	private static final String EV_WS_ID = "wsid";
+	private static final String EV_WS_NAME = "wsname";
+	private static final String EV_ID = "id";
+	private static final String EV_NAME = "name";
+	private static final String EV_VER = "ver";
+	private static final String EV_OBJ_TYPE = "objtype";
+	private static final String EV_SAVED = "saved";
+	private static final String EV_SAVEDBY = "savedby";
+	private static final String EV_CHKSUM = "chksum";
+	private static final String EV_SIZE = "size";
+	private static final String EV_META = "meta";
+	private static final String EV_PUBLIC = "pub";
+	private static final String EV_EVENT_TIME = "evtime";
+	private static final String EV_NEW_NAME = "newname";
+	private static final String EV_PERM = "perm";
+	private static final String EV_USERS = "users";
+	private static final String EV_OWNER = "owner";
+	private static final String EV_DELETE = "del";
+	private static final String EV_MAX_ID = "maxid";
+
+	private static final int INDEX_OPTIONS_CONFLICT = 85;
+
+	private final DB db;
+	private final DBCollection outbox;
+	private final DBCollection state;
+
+	/** Create the event log.
+	 * @param workspaceDB the workspace database.
+	 * @param retentionDays the number of days to keep events in the log.
+	 * @throws WorkspaceCommunicationException if the TTL index could not be created.
+	 */
+	public EventOutbox(final DB workspaceDB, final int retentionDays)
+			throws WorkspaceCommunicationException {
+		if (workspaceDB == null) {
+			throw new NullPointerException("workspaceDB");
+		}
+		if (retentionDays < 1) {
+			throw new IllegalArgumentException("retentionDays must be greater than zero");
+		}
+		db = workspaceDB;
+		outbox = db.getCollection(COL_EVENT_OUTBOX);
+		state = db.getCollection(COL_EVENT_OUTBOX_STATE);
+		ensureTTLIndex(retentionDays * 24L * 3600L);
+	}
+
+	private void ensureTTLIndex(final long expireSeconds) throws WorkspaceCommunicationException {
+		try {
+			try {
+				outbox.createIndex(new BasicDBObject(EV_TIME, 1),
+						new BasicDBObject("expireAfterSeconds", expireSeconds));
+			} catch (MongoException me) {
+				if (me.getCode() != INDEX_OPTIONS_CONFLICT) {
+					throw me;
+				}
+				// the retention period was changed
+				db.command(new BasicDBObject("collMod", COL_EVENT_OUTBOX)
+						.append("index", new BasicDBObject(
+								"keyPattern", new BasicDBObject(EV_TIME, 1))
+								.append("expireAfterSeconds", expireSeconds)))
+						.throwOnError();
+			}
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+	}
+
+	/** Record events for a set of object versions. Whether each object is public is determined
+	 * from the workspace permissions when the events are recorded.
+	 * @param type the type of the events.
+	 * @param objects information about the object versions, in the order the events occurred.
+	 * @throws WorkspaceCommunicationException if the events could not be recorded.
+	 */
+	public void append(final EventType type, final List<ObjectInformation> objects)
+			throws WorkspaceCommunicationException {
+		if (type == null) {
+			throw new NullPointerException("type");
+		}
+		if (objects == null) {
+			throw new NullPointerException("objects");
+		}
+		if (!type.isVersionEvent()) {
+			throw new IllegalArgumentException("Not an object version event type: " + type);
+		}
+		if (objects.isEmpty()) {
+			return;
+		}
+		final Set<Long> wsids = new HashSet<>();
+		for (final ObjectInformation oi: objects) {
+			wsids.add(oi.getWorkspaceId());
+		}
+		final Set<Long> pub = getPublicWorkspaces(wsids);
+		try {
+			long seq = allocateSequence(objects.size());
+			final Date now = new Date();
+			final List<DBObject> docs = new ArrayList<>(objects.size());
+			for (final ObjectInformation oi: objects) {
+				docs.add(toDBObject(seq++, type, now, oi,
+						pub.contains(oi.getWorkspaceId())));
+			}
+			outbox.insert(docs);
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+	}
+
+	/* Records a single event other than an object version event. The listener interface does
+	 * not allow checked exceptions, so failures are rethrown as runtime exceptions.
+	 */
+	private void record(final EventType type, final long workspaceID, final DBObject fields) {
+		try {
+			final DBObject dbo = new BasicDBObject(Fields.MONGO_ID, allocateSequence(1));
+			dbo.put(EV_TYPE, type.getName());
+			dbo.put(EV_TIME, new Date());
+			dbo.put(EV_WS_ID, workspaceID);
+			dbo.putAll(fields);
+			outbox.insert(dbo);
+		} catch (MongoException me) {
+			throw new RuntimeException("Unexpected exception recording an event in the " +
+					"event outbox: " + me.getMessage(), me);
+		}
+	}
+
+	/** Get a listener that records workspace events, other than object version events, in the
+	 * log. Object version events are ignored, as they are recorded by the workspace database
+	 * when the versions are saved. When the log is in use, register this listener with the
+	 * workspace in place of the listeners that receive events from the log, so that every
+	 * event reaches those listeners in a single ordered stream.
+	 *
+	 * The listener throws a runtime exception if an event cannot be recorded.
+	 * @return the listener.
+	 */
+	public WorkspaceEventListener getRecorder() {
+		return new WorkspaceEventListener() {
+
+			@Override
+			public void createWorkspace(final long id, final Instant time) {
+				record(EventType.CREATE_WORKSPACE, id, fields(time));
+			}
+
+			@Override
+			public void cloneWorkspace(final long id, final boolean isPublic, final Instant time) {
+				record(EventType.CLONE_WORKSPACE, id, fields(time).append(EV_PUBLIC, isPublic));
+			}
+
+			@Override
+			public void setWorkspaceMetadata(final long id, final Instant time) {
+				record(EventType.WORKSPACE_METADATA, id, fields(time));
+			}
+
+			@Override
+			public void lockWorkspace(final long id, final Instant time) {
+				record(EventType.LOCK_WORKSPACE, id, fields(time));
+			}
+
+			@Override
+			public void renameWorkspace(final long id, final String newname, final Instant time) {
+				record(EventType.RENAME_WORKSPACE, id, fields(time).append(EV_NEW_NAME, newname));
+			}
+
+			@Override
+			public void setGlobalPermission(
+					final long id,
+					final Permission permission,
+					final Instant time) {
+				record(EventType.GLOBAL_PERMISSION, id, fields(time)
+						.append(EV_PERM, permission.getPermission()));
+			}
+
+			@Override
+			public void setPermissions(
+					final long id,
+					final Permission permission,
+					final List<WorkspaceUser> users,
+					final Instant time) {
+				final List<String> u = new ArrayList<>();
+				for (final WorkspaceUser wu: users) {
+					u.add(wu.getUser());
+				}
+				record(EventType.PERMISSIONS, id, fields(time)
+						.append(EV_PERM, permission.getPermission()).append(EV_USERS, u));
+			}
+
+			@Override
+			public void setWorkspaceDescription(final long id, final Instant time) {
+				record(EventType.WORKSPACE_DESCRIPTION, id, fields(time));
+			}
+
+			@Override
+			public void setWorkspaceOwner(
+					final long id,
+					final WorkspaceUser newUser,
+					final Optional<String> newName,
+					final Instant time) {
+				record(EventType.WORKSPACE_OWNER, id, fields(time)
+						.append(EV_OWNER, newUser.getUser())
+						.append(EV_NEW_NAME, newName.orNull()));
+			}
+
+			@Override
+			public void setWorkspaceDeleted(
+					final long id,
+					final boolean delete,
+					final long maxObjectID,
+					final Instant time) {
+				record(EventType.DELETE_WORKSPACE, id, fields(time)
+						.append(EV_DELETE, delete).append(EV_MAX_ID, maxObjectID));
+			}
+
+			@Override
+			public void renameObject(
+					final long workspaceId,
+					final long objectId,
+					final String newName,
+					final Instant time) {
+				record(EventType.RENAME_OBJECT, workspaceId, fields(time)
+						.append(EV_ID, objectId).append(EV_NEW_NAME, newName));
+			}
+
+			@Override
+			public void setObjectDeleted(
+					final long workspaceId,
+					final long objectId,
+					final boolean delete,
+					final Instant time) {
+				record(EventType.DELETE_OBJECT, workspaceId, fields(time)
+						.append(EV_ID, objectId).append(EV_DELETE, delete));
+			}
+
+			@Override
+			public void revertObject(final ObjectInformation object, final boolean isPublic) {
+				// recorded by the workspace database
+			}
+
+			@Override
+			public void copyObject(final ObjectInformation object, final boolean isPublic) {
+				// recorded by the workspace database
+			}
+
+			@Override
+			public void copyObject(
+					final long workspaceId,
+					final long objectId,
+					final int latestVersion,
+					final Instant time,
+					final boolean isPublic) {
+				// recorded by the workspace database
+			}
+
+			@Override
+			public void saveObject(final ObjectInformation object, final boolean isPublic) {
+				// recorded by the workspace database
+			}
+		};
+	}
+
+	private static BasicDBObject fields(final Instant time) {
+		return new BasicDBObject(EV_EVENT_TIME, Date.from(time));
+	}
+
+	// returns the first sequence number in the allocated block
+	private long allocateSequence(final int count) {
+		final DBObject seq = state.findAndModify(
+				new BasicDBObject(Fields.MONGO_ID, SEQUENCE_ID),
+				new BasicDBObject(STATE_VALUE, 1),
+				null,
+				false,
+				new BasicDBObject("$inc", new BasicDBObject(STATE_VALUE, (long) count)),
+				true,
+				true);
+		return ((Number) seq.get(STATE_VALUE)).longValue() - count + 1;
+	}
+
+	private static DBObject toDBObject(
+			final long seq,
+			final EventType type,
+			final Date time,
+			final ObjectInformation oi,
+			final boolean isPublic) {
+		final DBObject dbo = new BasicDBObject(Fields.MONGO_ID, seq);
+		dbo.put(EV_TYPE, type.getName());
+		dbo.put(EV_TIME, time);
+		dbo.put(EV_WS_ID, oi.getWorkspaceId());
+		dbo.put(EV_WS_NAME, oi.getWorkspaceName());
+		dbo.put(EV_ID, oi.getObjectId());
+		dbo.put(EV_NAME, oi.getObjectName());
+		dbo.put(EV_VER, oi.getVersion());
+		dbo.put(EV_OBJ_TYPE, oi.getTypeString());
+		dbo.put(EV_SAVED, oi.getSavedDate());
+		dbo.put(EV_SAVEDBY, oi.getSavedBy().getUser());
+		dbo.put(EV_CHKSUM, oi.getCheckSum());
+		dbo.put(EV_SIZE, oi.getSize());
+		dbo.put(EV_META, oi.getUserMetaData() == null ? null :
+				metaHashToMongoArray(oi.getUserMetaData().getMetadata()));
+		dbo.put(EV_PUBLIC, isPublic);
+		return dbo;
+	}
+
+	/** Get events from the log in sequence order.
+	 * @param afterSequence get events with sequence numbers greater than this number. Pass 0 to
+	 * get events from the start of the log.
+	 * @param limit the maximum number of events to return.
+	 * @return the events.
+	 * @throws WorkspaceCommunicationException if the events could not be retrieved.
+	 */
+	public List<OutboxEvent> getEvents(final long afterSequence, final int limit)
+			throws WorkspaceCommunicationException {
+		if (limit < 1) {
+			throw new IllegalArgumentException("limit must be greater than zero");
+		}
+		final List<OutboxEvent> ret = new ArrayList<>();
+		try (final DBCursor cur = outbox.find(new BasicDBObject(Fields.MONGO_ID,
+					new BasicDBObject("$gt", afterSequence)))
+				.sort(new BasicDBObject(Fields.MONGO_ID, 1))
+				.limit(limit)) {
+			for (final DBObject dbo: cur) {
+				ret.add(toEvent(dbo));
+			}
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+		return ret;
+	}
+
+	private static OutboxEvent toEvent(final DBObject dbo) {
+		final long seq = ((Number) dbo.get(Fields.MONGO_ID)).longValue();
+		final EventType type = EventType.fromName((String) dbo.get(EV_TYPE));
+		final Instant time = ((Date) dbo.get(EV_TIME)).toInstant();
+		if (type.isVersionEvent()) {
+			final ObjectInformation oi = toObjectInfo(dbo);
+			return new OutboxEvent(seq, type, time, oi,
+					toVersionEvent(type, oi, (Boolean) dbo.get(EV_PUBLIC)));
+		}
+		return new OutboxEvent(seq, type, time, null, toEvent(type, dbo));
+	}
+
+	private static WorkspaceEvent toVersionEvent(
+			final EventType type,
+			final ObjectInformation oi,
+			final boolean isPublic) {
+		switch (type) {
+			case SAVE:
+				return l -> l.saveObject(oi, isPublic);
+			case COPY:
+				return l -> l.copyObject(oi, isPublic);
+			case COPY_ALL_VERSIONS:
+				return l -> l.copyObject(oi.getWorkspaceId(), oi.getObjectId(),
+						oi.getVersion(), oi.getSavedDate().toInstant(), isPublic);
+			case REVERT:
+				return l -> l.revertObject(oi, isPublic);
+			default:
+				// can't happen
+				throw new IllegalStateException("Unexpected event type: " + type);
+		}
+	}
+
+	private static WorkspaceEvent toEvent(final EventType type, final DBObject dbo) {
+		final long wsid = ((Number) dbo.get(EV_WS_ID)).longValue();
+		final Instant time = ((Date) dbo.get(EV_EVENT_TIME)).toInstant();
+		final String newName = (String) dbo.get(EV_NEW_NAME);
+		switch (type) {
+			case RENAME_OBJECT:
+				final long renameID = ((Number) dbo.get(EV_ID)).longValue();
+				return l -> l.renameObject(wsid, renameID, newName, time);
+			case DELETE_OBJECT:
+				final long delID = ((Number) dbo.get(EV_ID)).longValue();
+				final boolean delObj = (Boolean) dbo.get(EV_DELETE);
+				return l -> l.setObjectDeleted(wsid, delID, delObj, time);
+			case CREATE_WORKSPACE:
+				return l -> l.createWorkspace(wsid, time);
+			case CLONE_WORKSPACE:
+				final boolean isPublic = (Boolean) dbo.get(EV_PUBLIC);
+				return l -> l.cloneWorkspace(wsid, isPublic, time);
+			case WORKSPACE_METADATA:
+				return l -> l.setWorkspaceMetadata(wsid, time);
+			case LOCK_WORKSPACE:
+				return l -> l.lockWorkspace(wsid, time);
+			case RENAME_WORKSPACE:
+				return l -> l.renameWorkspace(wsid, newName, time);
+			case GLOBAL_PERMISSION:
+				final Permission gperm = Permission.fromInt((Integer) dbo.get(EV_PERM));
+				return l -> l.setGlobalPermission(wsid, gperm, time);
+			case PERMISSIONS:
+				final Permission perm = Permission.fromInt((Integer) dbo.get(EV_PERM));
+				final List<WorkspaceUser> users = new ArrayList<>();
+				@SuppressWarnings("unchecked")
+				final List<String> u = (List<String>) dbo.get(EV_USERS);
+				for (final String user: u) {
+					users.add(new WorkspaceUser(user));
+				}
+				return l -> l.setPermissions(wsid, perm, users, time);
+			case WORKSPACE_DESCRIPTION:
+				return l -> l.setWorkspaceDescription(wsid, time);
+			case WORKSPACE_OWNER:
+				final WorkspaceUser owner = new WorkspaceUser((String) dbo.get(EV_OWNER));
+				return l -> l.setWorkspaceOwner(wsid, owner, Optional.fromNullable(newName), time);
+			case DELETE_WORKSPACE:
+				final boolean delWS = (Boolean) dbo.get(EV_DELETE);
+				final long maxID = ((Number) dbo.get(EV_MAX_ID)).longValue();
+				return l -> l.setWorkspaceDeleted(wsid, delWS, maxID, time);
+			default:
+				// can't happen
+				throw new IllegalStateException("Unexpected event type: " + type);
+		}
+	}
+
+	private static ObjectInformation toObjectInfo(final DBObject dbo) {
+		@SuppressWarnings("unchecked")
+		final List<Object> meta = (List<Object>) dbo.get(EV_META);
+		return new ObjectInformation(
+				((Number) dbo.get(EV_ID)).longValue(),
+				(String) dbo.get(EV_NAME),
+				(String) dbo.get(EV_OBJ_TYPE),
+				(Date) dbo.get(EV_SAVED),
+				((Number) dbo.get(EV_VER)).intValue(),
+				new WorkspaceUser((String) dbo.get(EV_SAVEDBY)),
+				new ResolvedWorkspaceID(((Number) dbo.get(EV_WS_ID)).longValue(),
+						(String) dbo.get(EV_WS_NAME), false, false),
+				(String) dbo.get(EV_CHKSUM),
+				((Number) dbo.get(EV_SIZE)).longValue(),
+				meta == null ? null : new UncheckedUserMetadata(metaMongoArrayToHash(meta)));
+	}
+
+	/** Get the IDs of the workspaces in a set that are currently publicly readable.
+	 * @param workspaceIDs the workspace IDs to check.
+	 * @return the IDs of the publicly readable workspaces.
+	 * @throws WorkspaceCommunicationException if the workspaces could not be checked.
+	 */
+	public Set<Long> getPublicWorkspaces(final Set<Long> workspaceIDs)
+			throws WorkspaceCommunicationException {
+		if (workspaceIDs.isEmpty()) {
+			return Collections.emptySet();
+		}
+		final Set<Long> ret = new HashSet<>();
+		try (final DBCursor cur = db.getCollection(CollectionNames.COL_WS_ACLS).find(
+				new BasicDBObject(Fields.ACL_WSID, new BasicDBObject("$in", workspaceIDs))
+						.append(Fields.ACL_USER, MongoWorkspaceDB.ALL_USERS.getUser())
+						.append(Fields.ACL_PERM, new BasicDBObject(
+								"$gte", Permission.READ.getPermission())),
+				new BasicDBObject(Fields.ACL_WSID, 1).append(Fields.MONGO_ID, 0))) {
+			for (final DBObject dbo: cur) {
+				ret.add(((Number) dbo.get(Fields.ACL_WSID)).longValue());
+			}
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+		return ret;
+	}
+
+	/** Get the sequence number of the last event processed by a consumer of the log.
+	 * @param consumer the name of the consumer.
+	 * @return the sequence number, or 0 if the consumer has not recorded a checkpoint.
+	 * @throws WorkspaceCommunicationException if the checkpoint could not be retrieved.
+	 */
+	public long getCheckpoint(final String consumer) throws WorkspaceCommunicationException {
+		try {
+			final DBObject cp = state.findOne(
+					new BasicDBObject(Fields.MONGO_ID, CHECKPOINT_PREFIX + consumer));
+			return cp == null ? 0 : ((Number) cp.get(STATE_VALUE)).longValue();
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+	}
+
+	/** Record the sequence number of the last event processed by a consumer of the log. The
+	 * checkpoint never moves backwards; a sequence number lower than the stored checkpoint is
+	 * ignored.
+	 * @param consumer the name of the consumer.
+	 * @param sequence the sequence number.
+	 * @throws WorkspaceCommunicationException if the checkpoint could not be recorded.
+	 */
+	public void setCheckpoint(final String consumer, final long sequence)
+			throws WorkspaceCommunicationException {
+		final String id = CHECKPOINT_PREFIX + consumer;
+		try {
+			// only update a lower checkpoint, since $max requires MongoDB 2.6
+			final WriteResult wr = state.update(
+					new BasicDBObject(Fields.MONGO_ID, id)
+							.append(STATE_VALUE, new BasicDBObject("$lt", sequence)),
+					new BasicDBObject("$set", new BasicDBObject(STATE_VALUE, sequence)));
+			if (wr.getN() < 1) {
+				try {
+					state.insert(new BasicDBObject(Fields.MONGO_ID, id)
+							.append(STATE_VALUE, sequence));
+				} catch (DuplicateKeyException dk) {
+					// the checkpoint exists and is at or past the sequence number
+				}
+			}
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+	}
+}
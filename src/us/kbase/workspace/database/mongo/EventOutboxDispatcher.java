@@ -0,0 +1,314 @@
+package us.kbase.workspace.database.mongo;
+
+import static us.kbase.workspace.database.Util.nonNull;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.LoggerFactory;
+
+import us.kbase.workspace.database.Util;
+import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
+import us.kbase.workspace.database.mongo.EventOutbox.OutboxEvent;
+import us.kbase.workspace.listener.BatchWorkspaceEventListener;
+import us.kbase.workspace.listener.WorkspaceEvent;
+import us.kbase.workspace.listener.WorkspaceEventListener;
+
+/** Delivers the events recorded in an {@link EventOutbox} to a listener in a background thread.
+ *
+ * The dispatcher stores a checkpoint in the outbox after each batch of events is delivered and
+ * resumes from the checkpoint when it is restarted, so events are delivered at least once even
+ * if the server stops between saving an object and notifying the listener. If the listener
+ * throws an exception, the checkpoint is not advanced and the batch is redelivered after the
+ * retry delay, which doubles after each failure up to {@link #MAX_RETRY_DELAY}. After the
+ * maximum number of attempts, the events in the batch are delivered one at a time and any event
+ * the listener still fails to handle is logged and skipped, so a single bad event cannot block
+ * the stream indefinitely.
+ *
+ * All events, including workspace events, are delivered from the dispatcher's single thread in
+ * sequence order, so the listener receives one ordered stream and is never called concurrently.
+ *
+ * Sequence numbers are allocated before the events are written, so a concurrent save may leave
+ * a temporary gap in the log. The dispatcher stops at a gap until the gap is filled or the event
+ * following the gap is older than the settle time, after which the gap is assumed to be
+ * permanent (e.g. the server failed while writing the events) and is skipped.
+ *
+ * Only one dispatcher per consumer name should run against an outbox at once. Otherwise
+ * events are delivered more than once, although the stored checkpoint never moves backwards.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class EventOutboxDispatcher {
+
+	/** The default maximum number of events delivered to a batch listener at once. */
+	public static final int DEFAULT_BATCH_SIZE = 100;
+	/** The default time between checks for new events. */
+	public static final Duration DEFAULT_POLL_INTERVAL = Duration.ofSeconds(1);
+	/** The default time after which a gap in the event sequence is skipped. */
+	public static final Duration DEFAULT_SETTLE_TIME = Duration.ofSeconds(30);
+	/** The default number of attempts to deliver a batch of events before events the listener
+	 * fails to handle are skipped.
+	 */
+	public static final int DEFAULT_MAX_ATTEMPTS = 10;
+	/** The maximum time between attempts to deliver a failed batch of events. */
+	public static final Duration MAX_RETRY_DELAY = Duration.ofMinutes(5);
+
+	private static final Set<EventOutboxDispatcher> OPEN = ConcurrentHashMap.newKeySet();
+
+	private final EventOutbox outbox;
+	private final String consumer;
+	private final WorkspaceEventListener listener;
+	private final int batchSize;
+	private final Duration pollInterval;
+	private final Duration settleTime;
+	private final int maxAttempts;
+	private final ExecutorService dispatcher;
+	private final AtomicLong checkpoint = new AtomicLong();
+	private final AtomicLong delivered = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong skipped = new AtomicLong();
+	// consecutive failed attempts to deliver the batch following the checkpoint
+	private int attempts = 0;
+	private volatile boolean closed = false;
+
+	/** Create the dispatcher with the default poll interval, settle time, and maximum delivery
+	 * attempts and start the delivery thread.
+	 * @param outbox the outbox from which events will be read.
+	 * @param consumer the name under which the dispatcher's checkpoint is stored.
+	 * @param listener the listener to which events will be delivered.
+	 * @throws WorkspaceCommunicationException if the checkpoint could not be read.
+	 */
+	public EventOutboxDispatcher(
+			final EventOutbox outbox,
+			final String consumer,
+			final WorkspaceEventListener listener)
+			throws WorkspaceCommunicationException {
+		this(outbox, consumer, listener, DEFAULT_BATCH_SIZE, DEFAULT_POLL_INTERVAL,
+				DEFAULT_SETTLE_TIME, DEFAULT_MAX_ATTEMPTS);
+	}
+
+	/** Create the dispatcher and start the delivery thread.
+	 * @param outbox the outbox from which events will be read.
+	 * @param consumer the name under which the dispatcher's checkpoint is stored.
+	 * @param listener the listener to which events will be delivered.
+	 * @param batchSize the maximum number of events read from the outbox and delivered to a
+	 * {@link BatchWorkspaceEventListener} at once.
+	 * @param pollInterval the time between checks for new events.
+	 * @param settleTime the time after which a gap in the event sequence is skipped.
+	 * @param maxAttempts the number of attempts to deliver a batch of events before events the
+	 * listener fails to handle are skipped.
+	 * @throws WorkspaceCommunicationException if the checkpoint could not be read.
+	 */
+	public EventOutboxDispatcher(
+			final EventOutbox outbox,
+			final String consumer,
+			final WorkspaceEventListener listener,
+			final int batchSize,
+			final Duration pollInterval,
+			final Duration settleTime,
+			final int maxAttempts)
+			throws WorkspaceCommunicationException {
+		nonNull(outbox, "outbox");
+		nonNull(consumer, "consumer");
+		nonNull(listener, "listener");
+		nonNull(pollInterval, "pollInterval");
+		nonNull(settleTime, "settleTime");
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be greater than zero");
+		}
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("maxAttempts must be greater than zero");
+		}
+		this.outbox = outbox;
+		this.consumer = consumer;
+		this.listener = listener;
+		this.batchSize = batchSize;
+		this.pollInterval = pollInterval;
+		this.settleTime = settleTime;
+		this.maxAttempts = maxAttempts;
+		checkpoint.set(outbox.getCheckpoint(consumer));
+		dispatcher = Util.newDaemonThreadPool(1, "outbox-" + consumer + "-%d");
+		dispatcher.execute(() -> dispatchLoop());
+		OPEN.add(this);
+	}
+
+	/** Get the listener to which events are delivered.
+	 * @return the listener.
+	 */
+	public WorkspaceEventListener getListener() {
+		return listener;
+	}
+
+	/** Get the sequence number of the last event delivered to the listener.
+	 * @return the checkpoint.
+	 */
+	public long getCheckpoint() {
+		return checkpoint.get();
+	}
+
+	/** Get the number of events delivered to the listener since the dispatcher started,
+	 * including redeliveries.
+	 * @return the number of delivered events.
+	 */
+	public long getDeliveredCount() {
+		return delivered.get();
+	}
+
+	/** Get the number of events for which the listener threw an exception since the
+	 * dispatcher started. For batch listeners, all the events in a failed batch are counted.
+	 * @return the number of failed events.
+	 */
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/** Get the number of events skipped since the dispatcher started because the listener
+	 * failed to handle them after the maximum number of delivery attempts.
+	 * @return the number of skipped events.
+	 */
+	public long getSkippedCount() {
+		return skipped.get();
+	}
+
+	/** Stop the delivery thread, waiting for the batch in progress, if any, to be delivered.
+	 * Undelivered events remain in the outbox and are delivered when a dispatcher with the same
+	 * consumer name is next started.
+	 * @param timeout the maximum time to wait.
+	 * @param unit the unit of the timeout.
+	 * @return true if the delivery thread stopped, false if the timeout elapsed first.
+	 */
+	public boolean close(final long timeout, final TimeUnit unit) {
+		closed = true;
+		OPEN.remove(this);
+		dispatcher.shutdown();
+		try {
+			return dispatcher.awaitTermination(timeout, unit);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/** Close all running dispatchers. Intended to be called when the server shuts down.
+	 * @param timeout the maximum time to wait for each dispatcher.
+	 * @param unit the unit of the timeout.
+	 */
+	public static void closeAll(final long timeout, final TimeUnit unit) {
+		for (final EventOutboxDispatcher d: new ArrayList<>(OPEN)) {
+			d.close(timeout, unit);
+		}
+	}
+
+	private void dispatchLoop() {
+		while (!closed) {
+			boolean more = false;
+			Duration wait = pollInterval;
+			try {
+				more = dispatchBatch();
+			} catch (Throwable t) {
+				wait = retryDelay();
+				LoggerFactory.getLogger(getClass()).error(String.format(
+						"Could not deliver outbox events to listener %s after sequence %s",
+						listener.getClass().getName(), checkpoint.get()), t);
+			}
+			if (!more) {
+				try {
+					Thread.sleep(wait.toMillis());
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+
+	private Duration retryDelay() {
+		// the cap avoids overflow, MAX_RETRY_DELAY is reached long before it
+		final Duration d = pollInterval.multipliedBy(
+				1L << Math.min(Math.max(attempts, 1) - 1, 20));
+		return d.compareTo(MAX_RETRY_DELAY) > 0 ? MAX_RETRY_DELAY : d;
+	}
+
+	// returns true if a full batch was delivered and more events may be waiting
+	private boolean dispatchBatch() throws WorkspaceCommunicationException {
+		final List<OutboxEvent> events = ready(outbox.getEvents(checkpoint.get(), batchSize));
+		if (events.isEmpty()) {
+			return false;
+		}
+		if (attempts >= maxAttempts) {
+			deliverSkippingFailures(events);
+		} else {
+			final List<WorkspaceEvent> wsevents = new ArrayList<>(events.size());
+			for (final OutboxEvent e: events) {
+				wsevents.add(e.getEvent());
+			}
+			try {
+				deliver(wsevents);
+			} catch (RuntimeException e) {
+				attempts++;
+				throw e;
+			}
+		}
+		attempts = 0;
+		final long last = events.get(events.size() - 1).getSequence();
+		outbox.setCheckpoint(consumer, last);
+		checkpoint.set(last);
+		return events.size() == batchSize;
+	}
+
+	private void deliver(final List<WorkspaceEvent> events) {
+		try {
+			if (listener instanceof BatchWorkspaceEventListener) {
+				((BatchWorkspaceEventListener) listener).handleEvents(events);
+			} else {
+				for (final WorkspaceEvent e: events) {
+					e.dispatch(listener);
+				}
+			}
+		} catch (RuntimeException e) {
+			failed.addAndGet(events.size());
+			throw e;
+		} finally {
+			delivered.addAndGet(events.size());
+		}
+	}
+
+	/* Delivers the events one at a time, logging and skipping any event the listener fails to
+	 * handle. Used once a batch has failed the maximum number of times.
+	 */
+	private void deliverSkippingFailures(final List<OutboxEvent> events) {
+		for (final OutboxEvent e: events) {
+			try {
+				deliver(Collections.singletonList(e.getEvent()));
+			} catch (RuntimeException ex) {
+				skipped.incrementAndGet();
+				LoggerFactory.getLogger(getClass()).error(String.format(
+						"Skipping outbox event %s of type %s for listener %s after %s failed " +
+						"delivery attempts",
+						e.getSequence(), e.getType().getName(), listener.getClass().getName(),
+						attempts), ex);
+			}
+		}
+	}
+
+	// returns the events up to the first unsettled gap in the sequence
+	private List<OutboxEvent> ready(final List<OutboxEvent> events) {
+		final Instant settled = Instant.now().minus(settleTime);
+		long expected = checkpoint.get() + 1;
+		for (int i = 0; i < events.size(); i++) {
+			final OutboxEvent e = events.get(i);
+			if (e.getSequence() != expected && e.getTime().isAfter(settled)) {
+				return events.subList(0, i);
+			}
+			expected = e.getSequence() + 1;
+		}
+		return events;
+	}
+}
@@ -78,10 +78,14 @@ public class Fields {
 	public static final String SHOCK_VER = "ver";
 	// since 0.2.0, if missing assume false
 	public static final String SHOCK_SORTED = "sorted";
+	// since 0.8.3, if missing assume none
+	public static final String SHOCK_COMPRESSION = "compression";
 	
 	// GridFS fields
 	// since 0.2.0, if missing assume false
 	public static final String GFS_SORTED = "sorted";
+	// since 0.8.3, if missing assume none
+	public static final String GFS_COMPRESSION = "compression";
 	
 	// admin fields
 	public static final String ADMIN_NAME = "user";
@@ -0,0 +1,362 @@
+package us.kbase.workspace.database.mongo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.slf4j.LoggerFactory;
+
+import us.kbase.typedobj.core.JsonStructureIndex.RangeSource;
+import us.kbase.typedobj.core.MD5;
+import us.kbase.typedobj.core.Restreamable;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.DataSource;
+import us.kbase.workspace.database.DependencyStatus;
+import us.kbase.workspace.database.exceptions.FileCacheIOException;
+import us.kbase.workspace.database.exceptions.FileCacheLimitExceededException;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreCommunicationException;
+import us.kbase.workspace.database.mongo.exceptions.NoSuchBlobException;
+
+/** A blob store that keeps blobs in files in a directory on a local or network file system.
+ * Blobs are addressed by their MD5 and stored in a two level directory tree sharded by the
+ * first four characters of the MD5, e.g. the blob with MD5 0123456789abcdef0123456789abcdef is
+ * stored at 01/23/0123456789abcdef0123456789abcdef.
+ *
+ * Each blob file starts with a small header recording whether the blob is sorted and the codec
+ * with which the blob is compressed, followed by the blob data.
+ *
+ * Blobs are written to a temporary file in the same directory tree and then atomically moved
+ * into place, so a blob file is either absent or complete. Any number of servers may share the
+ * same directory.
+ *
+ * If new blobs are not compressed, structural indexes of blobs are supported and are stored
+ * next to the blob file with the suffix .index.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class FileSystemBlobStore implements BlobStore {
+
+	private static final String TEMP_DIR = "tmp";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final String INDEX_SUFFIX = ".index";
+	private static final byte[] MAGIC = "KBWSBLOB".getBytes(StandardCharsets.US_ASCII);
+	private static final byte HEADER_VERSION = 1;
+	private static final byte SORTED = 1;
+	// magic, version, sorted, compression name length
+	private static final int HEADER_PREFIX_SIZE = MAGIC.length + 3;
+
+	private final Path root;
+	private final Path tempDir;
+	private final BlobCompression compression;
+
+	/** Create the blob store.
+	 * @param directory the root directory of the blob store. The directory is created if it does
+	 * not exist.
+	 * @param compression the codec with which to compress new blobs. Existing blobs are read
+	 * with the codec with which they were saved.
+	 * @throws IOException if the directory could not be created.
+	 */
+	public FileSystemBlobStore(final File directory, final BlobCompression compression)
+			throws IOException {
+		if (directory == null || compression == null) {
+			throw new NullPointerException("Arguments cannot be null");
+		}
+		root = directory.toPath().toAbsolutePath();
+		tempDir = root.resolve(TEMP_DIR);
+		Files.createDirectories(tempDir);
+		this.compression = compression;
+	}
+
+	private Path getPath(final MD5 md5) {
+		final String m = md5.getMD5();
+		return root.resolve(m.substring(0, 2)).resolve(m.substring(2, 4)).resolve(m);
+	}
+
+	private Path getIndexPath(final MD5 md5) {
+		return getPath(md5).resolveSibling(md5.getMD5() + INDEX_SUFFIX);
+	}
+
+	private static class Header {
+		private final boolean sorted;
+		private final BlobCompression compression;
+		private final int size;
+
+		private Header(final boolean sorted, final BlobCompression compression, final int size) {
+			this.sorted = sorted;
+			this.compression = compression;
+			this.size = size;
+		}
+	}
+
+	private static byte[] buildHeader(final boolean sorted, final BlobCompression compression) {
+		final byte[] name = compression.getName().getBytes(StandardCharsets.US_ASCII);
+		final ByteBuffer b = ByteBuffer.allocate(HEADER_PREFIX_SIZE + name.length);
+		b.put(MAGIC);
+		b.put(HEADER_VERSION);
+		b.put(sorted ? SORTED : 0);
+		b.put((byte) name.length);
+		b.put(name);
+		return b.array();
+	}
+
+	// leaves the channel positioned at the start of the blob data
+	private static Header readHeader(final FileChannel ch, final MD5 md5)
+			throws IOException {
+		final ByteBuffer prefix = ByteBuffer.allocate(HEADER_PREFIX_SIZE);
+		readFully(ch, prefix, md5);
+		final byte[] magic = new byte[MAGIC.length];
+		prefix.get(magic);
+		final byte version = prefix.get();
+		if (!Arrays.equals(magic, MAGIC) || version != HEADER_VERSION) {
+			throw new IOException("Invalid header for blob " + md5.getMD5());
+		}
+		final boolean sorted = prefix.get() == SORTED;
+		final ByteBuffer name = ByteBuffer.allocate(prefix.get());
+		readFully(ch, name, md5);
+		final BlobCompression comp;
+		try {
+			comp = BlobCompression.fromName(new String(
+					name.array(), StandardCharsets.US_ASCII));
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid header for blob " + md5.getMD5() + ": " +
+					e.getMessage(), e);
+		}
+		return new Header(sorted, comp, HEADER_PREFIX_SIZE + name.capacity());
+	}
+
+	private static void readFully(final FileChannel ch, final ByteBuffer buf, final MD5 md5)
+			throws IOException {
+		while (buf.hasRemaining()) {
+			if (ch.read(buf) < 0) {
+				throw new IOException("Truncated header for blob " + md5.getMD5());
+			}
+		}
+		buf.flip();
+	}
+
+	@Override
+	public void saveBlob(final MD5 md5, final Restreamable data, final boolean sorted)
+			throws BlobStoreCommunicationException {
+		if (data == null || md5 == null) {
+			throw new NullPointerException("Arguments cannot be null");
+		}
+		final Path target = getPath(md5);
+		if (Files.exists(target)) {
+			return; //already exists
+		}
+		final Path temp = tempDir.resolve(md5.getMD5() + "." + UUID.randomUUID() + TEMP_SUFFIX);
+		try {
+			try (final FileChannel ch = FileChannel.open(temp,
+						StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+					final InputStream is = compression.compress(data.getInputStream())) {
+				final OutputStream os = Channels.newOutputStream(ch);
+				os.write(buildHeader(sorted, compression));
+				IOUtils.copy(is, os);
+				ch.force(true);
+			}
+			Files.createDirectories(target.getParent());
+			try {
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+			} catch (FileAlreadyExistsException e) {
+				// another process saved the same blob, done
+			} catch (AtomicMoveNotSupportedException e) {
+				// should be impossible since the temp dir is in the same tree
+				throw new IOException("The file system does not support atomic moves", e);
+			}
+		} catch (IOException e) {
+			throw new BlobStoreCommunicationException(
+					"Could not write to the blob directory: " + e.getMessage(), e);
+		} finally {
+			try {
+				Files.deleteIfExists(temp); // no-op if the file was moved into place
+			} catch (IOException e) {
+				LoggerFactory.getLogger(getClass()).error(
+						"Could not delete temporary file " + temp, e);
+			}
+		}
+	}
+
+	@Override
+	public Set<MD5> getExistingBlobs(final Set<MD5> md5s) {
+		if (md5s == null) {
+			throw new NullPointerException("md5s cannot be null");
+		}
+		final Set<MD5> ret = new HashSet<>();
+		for (final MD5 md5: md5s) {
+			if (Files.exists(getPath(md5))) {
+				ret.add(md5);
+			}
+		}
+		return ret;
+	}
+
+	private FileChannel open(final MD5 md5) throws NoSuchBlobException, IOException {
+		try {
+			return FileChannel.open(getPath(md5), StandardOpenOption.READ);
+		} catch (NoSuchFileException e) {
+			throw new NoSuchBlobException(
+					"Attempt to retrieve non-existant blob with chksum " + md5.getMD5());
+		}
+	}
+
+	@Override
+	public ByteArrayFileCache getBlob(
+			final MD5 md5,
+			final ByteArrayFileCacheManager bafcMan)
+			throws BlobStoreCommunicationException, NoSuchBlobException,
+			FileCacheLimitExceededException, FileCacheIOException {
+		try (final FileChannel ch = open(md5)) {
+			final Header h = readHeader(ch, md5);
+			return bafcMan.createBAFC(
+					h.compression.decompress(Channels.newInputStream(ch)), true, h.sorted);
+		} catch (IOException e) {
+			throw new BlobStoreCommunicationException(
+					"Could not read from the blob directory: " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public BlobSource getBlobSource(final MD5 md5)
+			throws BlobStoreCommunicationException, NoSuchBlobException {
+		final Header h;
+		try (final FileChannel ch = open(md5)) {
+			h = readHeader(ch, md5);
+		} catch (IOException e) {
+			throw new BlobStoreCommunicationException(
+					"Could not read from the blob directory: " + e.getMessage(), e);
+		}
+		final Path path = getPath(md5);
+		return new BlobSource(new DataSource() {
+
+			@Override
+			public InputStream open() throws IOException {
+				final FileChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+				ch.position(h.size);
+				return h.compression.decompress(Channels.newInputStream(ch));
+			}
+		}, h.sorted);
+	}
+
+	/* Compressed blobs can't be read from an arbitrary offset, so indexes
+	 * are only supported when new blobs are not compressed.
+	 */
+	@Override
+	public boolean supportsBlobIndexes() {
+		return BlobCompression.NONE.equals(compression);
+	}
+
+	@Override
+	public void saveBlobIndex(final MD5 md5, final byte[] index)
+			throws BlobStoreCommunicationException {
+		if (md5 == null || index == null) {
+			throw new NullPointerException("Arguments cannot be null");
+		}
+		final Path target = getIndexPath(md5);
+		if (!supportsBlobIndexes() || Files.exists(target)) {
+			return;
+		}
+		final Path temp = tempDir.resolve(md5.getMD5() + "." + UUID.randomUUID() + TEMP_SUFFIX);
+		try {
+			Files.write(temp, index, StandardOpenOption.CREATE_NEW);
+			Files.createDirectories(target.getParent());
+			try {
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+			} catch (FileAlreadyExistsException e) {
+				// another process saved the same index, done
+			}
+		} catch (IOException e) {
+			throw new BlobStoreCommunicationException(
+					"Could not write to the blob directory: " + e.getMessage(), e);
+		} finally {
+			try {
+				Files.deleteIfExists(temp); // no-op if the file was moved into place
+			} catch (IOException e) {
+				LoggerFactory.getLogger(getClass()).error(
+						"Could not delete temporary file " + temp, e);
+			}
+		}
+	}
+
+	@Override
+	public IndexedBlob getIndexedBlob(final MD5 md5) throws BlobStoreCommunicationException {
+		final byte[] index;
+		final Header h;
+		try {
+			index = Files.readAllBytes(getIndexPath(md5));
+			try (final FileChannel ch = open(md5)) {
+				h = readHeader(ch, md5);
+			}
+		} catch (NoSuchFileException | NoSuchBlobException e) {
+			return null;
+		} catch (IOException e) {
+			throw new BlobStoreCommunicationException(
+					"Could not read from the blob directory: " + e.getMessage(), e);
+		}
+		if (!BlobCompression.NONE.equals(h.compression)) {
+			return null;
+		}
+		final Path path = getPath(md5);
+		return new IndexedBlob(index, new RangeSource() {
+
+			@Override
+			public InputStream open(final long offset, final long length) throws IOException {
+				final FileChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+				try {
+					ch.position(h.size + offset);
+				} catch (IOException | RuntimeException e) {
+					ch.close();
+					throw e;
+				}
+				return new BoundedInputStream(Channels.newInputStream(ch), length);
+			}
+		}, h.sorted);
+	}
+
+	@Override
+	public void removeBlob(final MD5 md5) throws BlobStoreCommunicationException {
+		try {
+			Files.deleteIfExists(getPath(md5));
+			Files.deleteIfExists(getIndexPath(md5));
+		} catch (IOException e) {
+			throw new BlobStoreCommunicationException(
+					"Could not delete from the blob directory: " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public String getExternalIdentifier(final MD5 md5) {
+		return null;
+	}
+
+	@Override
+	public List<DependencyStatus> status() {
+		if (!Files.isDirectory(tempDir) || !Files.isWritable(tempDir)) {
+			LoggerFactory.getLogger(getClass()).error(
+					"Blob directory is missing or not writable: " + root);
+			return Arrays.asList(new DependencyStatus(false,
+					"Blob directory is missing or not writable: " + root,
+					"FileSystem", "Unknown"));
+		}
+		return Arrays.asList(new DependencyStatus(true, "OK", "FileSystem", "N/A"));
+	}
+}
@@ -3,14 +3,21 @@ package us.kbase.workspace.database.mongo;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.slf4j.LoggerFactory;
 
+import us.kbase.typedobj.core.JsonStructureIndex.RangeSource;
 import us.kbase.typedobj.core.MD5;
 import us.kbase.typedobj.core.Restreamable;
 import us.kbase.workspace.database.ByteArrayFileCacheManager;
 import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.DataSource;
 import us.kbase.workspace.database.DependencyStatus;
 import us.kbase.workspace.database.exceptions.FileCacheIOException;
 import us.kbase.workspace.database.exceptions.FileCacheLimitExceededException;
@@ -29,10 +36,29 @@ import com.mongodb.gridfs.GridFSInputFile;
 
 public class GridFSBlobStore implements BlobStore {
 	
+	// structural indexes of blobs are stored in a separate bucket, keyed by the blob md5
+	private static final String INDEX_BUCKET = "fsindex";
+	
 	private final GridFS gfs;
+	private final GridFS indexfs;
+	private final BlobCompression compression;
 	
 	public GridFSBlobStore(final DB mongodb) {
+		this(mongodb, BlobCompression.NONE);
+	}
+	
+	/** Create a GridFS blob store.
+	 * @param mongodb the MongoDB database in which to store the blobs.
+	 * @param compression the codec with which to compress new blobs. Existing blobs are read
+	 * with the codec with which they were saved.
+	 */
+	public GridFSBlobStore(final DB mongodb, final BlobCompression compression) {
+		if (compression == null) {
+			throw new NullPointerException("compression");
+		}
 		gfs = new GridFS(mongodb);
+		indexfs = new GridFS(mongodb, INDEX_BUCKET);
+		this.compression = compression;
 	}
 
 	@Override
@@ -44,10 +70,14 @@ public class GridFSBlobStore implements BlobStore {
 		if (getFile(md5) != null) {
 			return; //already exists
 		}
-		final GridFSInputFile gif = gfs.createFile(data.getInputStream(), true);
+		final GridFSInputFile gif = gfs.createFile(
+				compression.compress(data.getInputStream()), true);
 		gif.setId(md5.getMD5());
 		gif.setFilename(md5.getMD5());
 		gif.put(Fields.GFS_SORTED, sorted);
+		if (!BlobCompression.NONE.equals(compression)) {
+			gif.put(Fields.GFS_COMPRESSION, compression.getName());
+		}
 		try {
 			gif.save();
 		} catch (DuplicateKeyException dk) {
@@ -58,6 +88,34 @@ public class GridFSBlobStore implements BlobStore {
 		}
 	}
 
+	@Override
+	public Set<MD5> getExistingBlobs(final Set<MD5> md5s)
+			throws BlobStoreCommunicationException {
+		if (md5s == null) {
+			throw new NullPointerException("md5s cannot be null");
+		}
+		final Set<MD5> ret = new HashSet<>();
+		if (md5s.isEmpty()) {
+			return ret;
+		}
+		final List<String> ids = new LinkedList<>();
+		for (final MD5 md5: md5s) {
+			ids.add(md5.getMD5());
+		}
+		try {
+			for (final DBObject dbo: gfs.getDB().getCollection(
+					gfs.getBucketName() + ".files").find(
+					new BasicDBObject(Fields.MONGO_ID, new BasicDBObject("$in", ids)),
+					new BasicDBObject(Fields.MONGO_ID, 1))) {
+				ret.add(new MD5((String) dbo.get(Fields.MONGO_ID)));
+			}
+		} catch (MongoException me) {
+			throw new BlobStoreCommunicationException(
+					"Could not read from the mongo database", me);
+		}
+		return ret;
+	}
+
 	@Override
 	public ByteArrayFileCache getBlob(final MD5 md5,
 			final ByteArrayFileCacheManager bafcMan)
@@ -77,7 +135,7 @@ public class GridFSBlobStore implements BlobStore {
 			} else {
 				sorted = (Boolean)out.get(Fields.GFS_SORTED);
 			}
-			final InputStream file = out.getInputStream();
+			final InputStream file = getCompression(out).decompress(out.getInputStream());
 			try {
 				return bafcMan.createBAFC(file, true, sorted);
 			} finally {
@@ -93,6 +151,129 @@ public class GridFSBlobStore implements BlobStore {
 		}
 	}
 
+	@Override
+	public BlobSource getBlobSource(final MD5 md5)
+			throws NoSuchBlobException, BlobStoreCommunicationException {
+		final GridFSDBFile out;
+		try {
+			out = getFile(md5);
+		} catch (MongoException me) {
+			throw new BlobStoreCommunicationException(
+					"Could not read from the mongo database", me);
+		}
+		if (out == null) {
+			throw new NoSuchBlobException(
+					"Attempt to retrieve non-existant blob with chksum " + 
+							md5.getMD5());
+		}
+		final boolean sorted;
+		if (!out.containsField(Fields.GFS_SORTED)) {
+			sorted = false;
+		} else {
+			sorted = (Boolean)out.get(Fields.GFS_SORTED);
+		}
+		final BlobCompression comp = getCompression(out);
+		return new BlobSource(new DataSource() {
+			
+			@Override
+			public InputStream open() throws IOException {
+				try {
+					return comp.decompress(out.getInputStream());
+				} catch (MongoException me) {
+					throw new IOException("Could not read from the mongo database", me);
+				}
+			}
+		}, sorted);
+	}
+
+	/* Compressed blobs can't be read from an arbitrary offset, so indexes
+	 * are only supported when new blobs are not compressed.
+	 */
+	@Override
+	public boolean supportsBlobIndexes() {
+		return BlobCompression.NONE.equals(compression);
+	}
+
+	@Override
+	public void saveBlobIndex(final MD5 md5, final byte[] index)
+			throws BlobStoreCommunicationException {
+		if (md5 == null || index == null) {
+			throw new NullPointerException("Arguments cannot be null");
+		}
+		if (!supportsBlobIndexes()) {
+			return;
+		}
+		final GridFSInputFile gif = indexfs.createFile(index);
+		gif.setId(md5.getMD5());
+		gif.setFilename(md5.getMD5());
+		try {
+			gif.save();
+		} catch (DuplicateKeyException dk) {
+			// already here, done
+		} catch (MongoException me) {
+			throw new BlobStoreCommunicationException(
+					"Could not write to the mongo database", me);
+		}
+	}
+
+	@Override
+	public IndexedBlob getIndexedBlob(final MD5 md5)
+			throws BlobStoreCommunicationException {
+		final GridFSDBFile out;
+		final byte[] index;
+		try {
+			final GridFSDBFile idx = indexfs.findOne(
+					new BasicDBObject(Fields.MONGO_ID, md5.getMD5()));
+			if (idx == null) {
+				return null;
+			}
+			out = getFile(md5);
+			if (out == null || !BlobCompression.NONE.equals(getCompression(out))) {
+				return null;
+			}
+			try (final InputStream is = idx.getInputStream()) {
+				index = IOUtils.toByteArray(is);
+			}
+		} catch (MongoException | IOException e) {
+			throw new BlobStoreCommunicationException(
+					"Could not read from the mongo database", e);
+		}
+		final boolean sorted;
+		if (!out.containsField(Fields.GFS_SORTED)) {
+			sorted = false;
+		} else {
+			sorted = (Boolean)out.get(Fields.GFS_SORTED);
+		}
+		return new IndexedBlob(index, new RangeSource() {
+			
+			@Override
+			public InputStream open(final long offset, final long length)
+					throws IOException {
+				try {
+					final InputStream is = out.getInputStream();
+					// skipping moves directly to the chunk containing the offset
+					long remaining = offset;
+					while (remaining > 0) {
+						final long skipped = is.skip(remaining);
+						if (skipped < 1) {
+							throw new IOException(String.format(
+									"Offset %s is past the end of blob %s",
+									offset, md5.getMD5()));
+						}
+						remaining -= skipped;
+					}
+					return new BoundedInputStream(is, length);
+				} catch (MongoException me) {
+					throw new IOException("Could not read from the mongo database", me);
+				}
+			}
+		}, sorted);
+	}
+
+	private BlobCompression getCompression(final GridFSDBFile file) {
+		return BlobCompression.fromName((String) file.get(Fields.GFS_COMPRESSION));
+	}
+
 	private GridFSDBFile getFile(final MD5 md5) {
 		final GridFSDBFile out;
 		final DBObject query = new BasicDBObject();
@@ -107,6 +288,7 @@ public class GridFSBlobStore implements BlobStore {
 		query.put(Fields.MONGO_ID, md5.getMD5());
 		try {
 			gfs.remove(query);
+			indexfs.remove(query);
 		} catch (MongoException me) {
 			throw new BlobStoreCommunicationException(
 					"Could not write to the mongo database", me);
@@ -0,0 +1,51 @@
+package us.kbase.workspace.database.mongo;
+
+import us.kbase.typedobj.core.JsonStructureIndex.RangeSource;
+
+/** A blob's structural index, along with a source for byte ranges of the blob's data and
+ * whether the data is sorted.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class IndexedBlob {
+	
+	private final byte[] index;
+	private final RangeSource source;
+	private final boolean sorted;
+	
+	/** Create an indexed blob.
+	 * @param index the serialized structural index of the blob.
+	 * @param source the source of byte ranges of the blob data.
+	 * @param sorted true if the blob data is sorted.
+	 */
+	public IndexedBlob(final byte[] index, final RangeSource source, final boolean sorted) {
+		if (index == null || source == null) {
+			throw new NullPointerException("index and source cannot be null");
+		}
+		this.index = index;
+		this.source = source;
+		this.sorted = sorted;
+	}
+	
+	/** Get the serialized structural index of the blob.
+	 * @return the index.
+	 * @see us.kbase.typedobj.core.JsonStructureIndex#fromBytes(byte[])
+	 */
+	public byte[] getIndex() {
+		return index;
+	}
+	
+	/** Get the source of byte ranges of the blob data.
+	 * @return the range source.
+	 */
+	public RangeSource getSource() {
+		return source;
+	}
+	
+	/** Returns whether the blob data is sorted.
+	 * @return true if the data is sorted.
+	 */
+	public boolean isSorted() {
+		return sorted;
+	}
+}
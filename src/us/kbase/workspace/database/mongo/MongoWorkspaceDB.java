@@ -4,6 +4,7 @@ import static us.kbase.workspace.database.mongo.ObjectInfoUtils.metaMongoArrayTo
 import static us.kbase.workspace.database.mongo.ObjectInfoUtils.metaHashToMongoArray;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -12,12 +13,16 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.regex.Pattern;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang3.StringUtils;
 import org.bson.types.ObjectId;
@@ -29,9 +34,11 @@ import us.kbase.common.utils.Counter;
 import us.kbase.common.utils.CountingOutputStream;
 import us.kbase.typedobj.core.AbsoluteTypeDefId;
 import us.kbase.typedobj.core.ExtractedMetadata;
+import us.kbase.typedobj.core.JsonStructureIndex;
 import us.kbase.typedobj.core.MD5;
 import us.kbase.typedobj.core.SubsetSelection;
 import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.typedobj.core.ValidatedTypedObject;
 import us.kbase.typedobj.exceptions.ExceededMaxMetadataSizeException;
 import us.kbase.typedobj.exceptions.TypedObjectExtractionException;
 import us.kbase.typedobj.idref.IdReferenceType;
@@ -58,9 +65,11 @@ import us.kbase.workspace.database.ResolvedObjectIDNoVer;
 import us.kbase.workspace.database.ResolvedSaveObject;
 import us.kbase.workspace.database.ResolvedWorkspaceID;
 import us.kbase.workspace.database.ResourceUsageConfigurationBuilder;
+import us.kbase.workspace.database.SubsetExtractionCache;
 import us.kbase.workspace.database.TypeAndReference;
 import us.kbase.workspace.database.UncheckedUserMetadata;
 import us.kbase.workspace.database.User;
+import us.kbase.workspace.database.Util;
 import us.kbase.workspace.database.Workspace;
 import us.kbase.workspace.database.WorkspaceDatabase;
 import us.kbase.workspace.database.WorkspaceIdentifier;
@@ -78,13 +87,19 @@ import us.kbase.workspace.database.exceptions.NoSuchWorkspaceException;
 import us.kbase.workspace.database.exceptions.PreExistingWorkspaceException;
 import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
 import us.kbase.workspace.database.exceptions.WorkspaceDBInitializationException;
+import us.kbase.workspace.database.mongo.EventOutbox.EventType;
 import us.kbase.workspace.database.mongo.exceptions.BlobStoreAuthorizationException;
 import us.kbase.workspace.database.mongo.exceptions.BlobStoreCommunicationException;
 import us.kbase.workspace.database.mongo.exceptions.NoSuchBlobException;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
 import com.mongodb.CommandResult;
 import com.mongodb.DB;
 import com.mongodb.DBCursor;
@@ -111,8 +126,15 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 	//TODO CONFIG this should really be configurable
 	private static final long MAX_PROV_SIZE = 1000000;
 	private static final int SCHEMA_VERSION = 1;
+	// smaller blobs are fast enough to scan in their entirety
+	private static final long MIN_INDEXED_BLOB_SIZE = 10 * 1024 * 1024;
 	
 	private ResourceUsageConfiguration rescfg;
+	// null if blobs should be written in the calling thread
+	private ExecutorService blobWriteExecutor = null;
+	// null if blobs should be read in the calling thread
+	private ExecutorService blobReadExecutor = null;
+	private SubsetExtractionCache subsetCache = null;
 	private final DB wsmongo;
 	private final Jongo wsjongo;
 	private final BlobStore blob;
@@ -121,6 +143,8 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 	private final FindAndModify updateWScounter;
 	
 	private final TempFilesManager tfm;
+	// null if events are not recorded
+	private final EventOutbox outbox;
 	
 	private static final String IDX_UNIQ = "unique";
 	private static final String IDX_SPARSE = "sparse";
@@ -207,15 +231,35 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			final TempFilesManager tfm)
 			throws WorkspaceCommunicationException,
 			WorkspaceDBInitializationException, CorruptWorkspaceDBException {
+		this(workspaceDB, blobStore, tfm, null);
+	}
+	
+	/** Create the workspace database.
+	 * @param workspaceDB the MongoDB database in which to store workspace data.
+	 * @param blobStore the store for object data.
+	 * @param tfm the temporary file manager.
+	 * @param outbox the log in which to record an event for each new object version, or null
+	 * to not record events.
+	 * @throws WorkspaceCommunicationException if the database could not be contacted.
+	 * @throws WorkspaceDBInitializationException if the database could not be initialized.
+	 * @throws CorruptWorkspaceDBException if the database is corrupt.
+	 */
+	public MongoWorkspaceDB(final DB workspaceDB, final BlobStore blobStore,
+			final TempFilesManager tfm, final EventOutbox outbox)
+			throws WorkspaceCommunicationException,
+			WorkspaceDBInitializationException, CorruptWorkspaceDBException {
 		if (workspaceDB == null || blobStore == null || tfm == null) {
 			throw new NullPointerException("No arguments can be null");
 		}
+		this.outbox = outbox;
 		rescfg = new ResourceUsageConfigurationBuilder().build();
 		this.tfm = tfm;
 		wsmongo = workspaceDB;
 		wsjongo = new Jongo(wsmongo);
 		query = new QueryMethods(wsmongo, (AllUsers) ALL_USERS, COL_WORKSPACES,
 				COL_WORKSPACE_OBJS, COL_WORKSPACE_VERS, COL_WS_ACLS);
+		query.setVersionQueryBatching(rescfg.getVersionQueryBatchSize(),
+				buildVersionQueryExecutor(rescfg));
 		objutils = new ObjectInfoUtils(query);
 		blob = blobStore;
 		updateWScounter = buildCounterQuery(wsjongo);
@@ -297,14 +341,44 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 	@Override
 	public void setResourceUsageConfiguration(
 			final ResourceUsageConfiguration rescfg) {
+		if (rescfg.getBlobWriteThreads() != this.rescfg.getBlobWriteThreads()) {
+			blobWriteExecutor = rescfg.getBlobWriteThreads() < 2 ? null :
+				Util.newDaemonThreadPool(rescfg.getBlobWriteThreads(), "blob-write-%d");
+		}
+		if (rescfg.getBlobReadThreads() != this.rescfg.getBlobReadThreads()) {
+			blobReadExecutor = rescfg.getBlobReadThreads() < 2 ? null :
+				Util.newDaemonThreadPool(rescfg.getBlobReadThreads(), "blob-read-%d");
+		}
+		if (rescfg.getSubsetCacheSize() != this.rescfg.getSubsetCacheSize()) {
+			subsetCache = rescfg.getSubsetCacheSize() < 1 ? null :
+				new SubsetExtractionCache(rescfg.getSubsetCacheSize());
+		}
+		if (rescfg.getVersionQueryBatchSize() != this.rescfg.getVersionQueryBatchSize() ||
+				rescfg.getVersionQueryThreads() != this.rescfg.getVersionQueryThreads()) {
+			query.setVersionQueryBatching(rescfg.getVersionQueryBatchSize(),
+					buildVersionQueryExecutor(rescfg));
+		}
 		this.rescfg = rescfg;
 	}
 	
+	private static ExecutorService buildVersionQueryExecutor(
+			final ResourceUsageConfiguration rescfg) {
+		return rescfg.getVersionQueryThreads() < 2 ? null :
+			Util.newDaemonThreadPool(rescfg.getVersionQueryThreads(), "version-query-%d");
+	}
+	
 	@Override
 	public TempFilesManager getTempFilesManager() {
 		return tfm;
 	}
 	
+	/** Get the cache of extracted object subsets.
+	 * @return the subset cache, or null if subsets are not cached.
+	 */
+	public SubsetExtractionCache getSubsetExtractionCache() {
+		return subsetCache;
+	}
+	
 	private void checkConfig() throws WorkspaceCommunicationException,
 			WorkspaceDBInitializationException, CorruptWorkspaceDBException {
 		final DBObject cfg = new BasicDBObject(
@@ -867,6 +941,8 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		updateWorkspaceModifiedDate(toWS);
 		final ObjectInformation oi = ObjectInfoUtils.generateObjectInfo(toWS, objid,
 				rto == null ? to.getName() : rto.getName(), info);
+		recordEvents(revert ? EventType.REVERT :
+				copyAll ? EventType.COPY_ALL_VERSIONS : EventType.COPY, Arrays.asList(oi));
 		return new CopyResult(oi, copyAll);
 	}
 	
@@ -1456,6 +1532,15 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			final ResolvedWorkspaceID wsid, final long objectid,
 			final ObjectSavePackage pkg)
 			throws WorkspaceCommunicationException {
+		final Map<String, Object> version = buildVersion(user, pkg);
+		saveObjectVersions(user, wsid, objectid, Arrays.asList(version),
+				pkg.wo.isHidden());
+		return buildObjectInformation(user, wsid, objectid, pkg, version);
+	}
+	
+	private Map<String, Object> buildVersion(
+			final WorkspaceUser user,
+			final ObjectSavePackage pkg) {
 		final Map<String, Object> version = new HashMap<String, Object>();
 		version.put(Fields.VER_SAVEDBY, user.getUser());
 		version.put(Fields.VER_CHKSUM, pkg.wo.getRep().getMD5().getMD5());
@@ -1471,10 +1556,16 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		version.put(Fields.VER_COPIED, null);
 		version.put(Fields.VER_EXT_IDS, extractedIDsToStrings(
 				pkg.wo.getExtractedIDs()));
-		
-		saveObjectVersions(user, wsid, objectid, Arrays.asList(version),
-				pkg.wo.isHidden());
-		
+		return version;
+	}
+	
+	// the version must have been saved
+	private ObjectInformation buildObjectInformation(
+			final WorkspaceUser user,
+			final ResolvedWorkspaceID wsid,
+			final long objectid,
+			final ObjectSavePackage pkg,
+			final Map<String, Object> version) {
 		return new ObjectInformation(
 				objectid,
 				pkg.name,
@@ -1533,43 +1624,12 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		 * None of the above addresses the object w/ 0 versions failure. Not sure what to do about that.
 		 * 
 		*/
-		int ver;
-		final List<Integer> zeros = new LinkedList<Integer>();
-		for (int i = 0; i < versions.size(); i++) {
-			zeros.add(0);
-		}
 		final Date saved = new Date();
-		try {
-			final FindAndModify q = wsjongo.getCollection(COL_WORKSPACE_OBJS)
-					.findAndModify(M_SAVEINS_QRY, wsid.getID(), objectid)
-					.returnNew();
-			if (hidden == null) {
-				q.with(M_SAVEINS_NO_HIDE_WTH, versions.size(),
-						saved, zeros);
-			} else {
-				q.with(M_SAVEINS_WTH, versions.size(), saved,
-						hidden, zeros);
-			}
-			ver = (Integer) q
-					.projection(M_SAVEINS_PROJ).as(DBObject.class)
-					.get(Fields.OBJ_VCNT)
-					- versions.size() + 1;
-		} catch (MongoException me) {
-			throw new WorkspaceCommunicationException(
-					"There was a problem communicating with the database", me);
-		}
+		int ver = incrementVersionCount(wsid, objectid, versions.size(), hidden, saved);
 		//TODO look into why saving array of maps via List.ToArray() /w Jongo makes Lazy?Objects return, which screw up everything
 		final List<DBObject> dbo = new LinkedList<DBObject>();
 		for (final Map<String, Object> v: versions) {
-			v.put(Fields.VER_SAVEDATE, saved);
-			v.put(Fields.VER_WS_ID, wsid.getID());
-			v.put(Fields.VER_ID, objectid);
-			v.put(Fields.VER_VER, ver++);
-			final DBObject d = new BasicDBObject();
-			for (final Entry<String, Object> e: v.entrySet()) {
-				d.put(e.getKey(), e.getValue());
-			}
-			dbo.add(d);
+			dbo.add(toVersionDBObject(v, wsid, objectid, ver++, saved));
 		}
 
 		try {
@@ -1580,6 +1640,23 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		}
 	}
 	
+	private DBObject toVersionDBObject(
+			final Map<String, Object> version,
+			final ResolvedWorkspaceID wsid,
+			final long objectid,
+			final int ver,
+			final Date saved) {
+		version.put(Fields.VER_SAVEDATE, saved);
+		version.put(Fields.VER_WS_ID, wsid.getID());
+		version.put(Fields.VER_ID, objectid);
+		version.put(Fields.VER_VER, ver);
+		final DBObject d = new BasicDBObject();
+		for (final Entry<String, Object> e: version.entrySet()) {
+			d.put(e.getKey(), e.getValue());
+		}
+		return d;
+	}
+	
 	//save brand new object - create container
 	//objectid *must not exist* in the workspace otherwise this method will recurse indefinitely
 	//the workspace must exist
@@ -1727,6 +1804,10 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		}
 	}
 	
+	private static final int DUPLICATE_KEY_CODE = 11000;
+	// MongoDB 2.4 reports duplicate keys caused by an update with a different code
+	private static final int DUPLICATE_KEY_ON_UPDATE_CODE = 11001;
+	
 	private static final String M_SAVE_WTH = String.format("{$inc: {%s: #}}",
 					Fields.WS_NUMOBJ);
 	private static final String M_SAVE_PROJ = String.format("{%s: 1, %s: 0}",
@@ -1790,22 +1871,20 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		saveProvenance(packages);
 		updateReferenceCounts(packages);
 		long newid = incrementWorkspaceCounter(rwsi, newobjects);
-		/*  alternate impl: 1) make all save objects 2) increment all version
-		 *  counters 3) batch save versions
-		 *  This probably won't help much. Firstly, saving the same object
-		 *  multiple times (e.g. save over the same object in the same
-		 *  saveObjects call) is going to be a rare op - who wants to do that?
-		 *  Hence batching up the version increments is probably not going to
-		 *  help much.
-		 *  Secondly, the write lock is on a per document basis, so batching
-		 *  writes has no effect on write locking.
-		 *  That means that the gain from batching writes is removal of the 
-		 *  flight time to/from the server between each object. This may
-		 *  be significant for many small objects, but is probably
-		 *  insignificant for a few objects, or many large objects.
-		 *  Summary: probably not worth the trouble and increase in code
-		 *  complexity.
+		/* The write lock is on a per document basis, so batching writes has
+		 * no effect on write locking. The gain from batching writes is
+		 * removal of the flight time to/from the server between each object,
+		 * which is significant for many small objects but insignificant for
+		 * a few objects or many large objects. Hence only large saves use
+		 * bulk writes.
 		 */
+		if (packages.size() >= rescfg.getBulkSaveThreshold()) {
+			final List<ObjectInformation> ret = saveObjectsBulk(
+					user, rwsi, packages, objIDs, newid);
+			recordEvents(EventType.SAVE, ret);
+			updateWorkspaceModifiedDate(rwsi);
+			return ret;
+		}
 		final List<ObjectInformation> ret = new ArrayList<ObjectInformation>();
 		final Map<String, Long> seenNames = new HashMap<String, Long>();
 		for (final ObjectSavePackage p: packages) {
@@ -1824,9 +1903,289 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 				ret.add(saveObjectVersion(user, rwsi, obj.id, p));
 			}
 		}
+		recordEvents(EventType.SAVE, ret);
 		updateWorkspaceModifiedDate(rwsi);
 		return ret;
 	}
+	
+	/* Events are recorded as soon as the versions are saved so that they survive a failure
+	 * before the workspace notifies the event listeners.
+	 */
+	private void recordEvents(final EventType type, final List<ObjectInformation> objects)
+			throws WorkspaceCommunicationException {
+		if (outbox != null) {
+			outbox.append(type, objects);
+		}
+	}
+
+	/* Saves the object versions with as few round trips to the DB as possible:
+	 * 1) create the new objects, with their version counts already set, in one
+	 * unordered bulk insert. Any names that were claimed by another process in the
+	 * meantime fall back to the standard path.
+	 * 2) increment the version counts for existing objects with one find and
+	 * one unordered bulk update (see incrementVersionCountsBulk).
+	 * 3) save all the versions in one unordered bulk insert.
+	 * The crash failure modes are the same as for saving objects one by one
+	 * (see saveObjectVersions).
+	 */
+	private List<ObjectInformation> saveObjectsBulk(
+			final WorkspaceUser user,
+			final ResolvedWorkspaceID rwsi,
+			final List<ObjectSavePackage> packages,
+			final Map<ObjectIDNoWSNoVer, ResolvedObjectID> objIDs,
+			long newid)
+			throws WorkspaceCommunicationException {
+		final List<Long> ids = new ArrayList<Long>();
+		final Map<String, Long> newNames = new LinkedHashMap<String, Long>();
+		for (final ObjectSavePackage p: packages) {
+			final ObjectIDNoWSNoVer oi = p.wo.getObjectIdentifier();
+			if (oi.getId().isPresent()) { //confirmed ok id
+				ids.add(oi.getId().get());
+			} else if (objIDs.get(oi) != null) {//given name translated to id
+				ids.add(objIDs.get(oi).getId());
+			} else {
+				final String name = oi.getName().get();
+				if (!newNames.containsKey(name)) {
+					newNames.put(name, newid++);
+				}
+				ids.add(newNames.get(name));
+			}
+		}
+		final Date saved = new Date();
+		final Set<Long> created = saveWorkspaceObjectsBulk(rwsi, packages, ids, newNames, saved);
+		for (final String name: newNames.keySet()) {
+			final long id = newNames.get(name);
+			if (!created.contains(id)) {
+				// someone else took the name. Create the object or find the new id as usual
+				final IDName obj = saveWorkspaceObject(rwsi, id, name);
+				for (int i = 0; i < packages.size(); i++) {
+					if (ids.get(i) == id) {
+						ids.set(i, obj.id);
+						packages.get(i).name = obj.name;
+					}
+				}
+			}
+		}
+		// group the versions for pre-existing objects by object id
+		final Map<Long, List<Integer>> existing = new LinkedHashMap<Long, List<Integer>>();
+		for (int i = 0; i < packages.size(); i++) {
+			if (!created.contains(ids.get(i))) {
+				if (!existing.containsKey(ids.get(i))) {
+					existing.put(ids.get(i), new LinkedList<Integer>());
+				}
+				existing.get(ids.get(i)).add(i);
+			}
+		}
+		final Map<Long, Integer> nextver = incrementVersionCountsBulk(
+				rwsi, packages, existing, saved);
+		for (final Long id: created) {
+			nextver.put(id, 1);
+		}
+		final List<Map<String, Object>> versions = new ArrayList<Map<String, Object>>();
+		final BulkWriteOperation bulk = wsmongo.getCollection(COL_WORKSPACE_VERS)
+				.initializeUnorderedBulkOperation();
+		for (int i = 0; i < packages.size(); i++) {
+			final long id = ids.get(i);
+			final int ver = nextver.get(id);
+			nextver.put(id, ver + 1);
+			final Map<String, Object> v = buildVersion(user, packages.get(i));
+			bulk.insert(toVersionDBObject(v, rwsi, id, ver, saved));
+			versions.add(v);
+		}
+		try {
+			bulk.execute();
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+		final List<ObjectInformation> ret = new ArrayList<ObjectInformation>();
+		for (int i = 0; i < packages.size(); i++) {
+			ret.add(buildObjectInformation(user, rwsi, ids.get(i), packages.get(i),
+					versions.get(i)));
+		}
+		return ret;
+	}
+	
+	// returns the ids of the objects that were created. Objects that weren't created
+	// failed because the name already exists.
+	private Set<Long> saveWorkspaceObjectsBulk(
+			final ResolvedWorkspaceID rwsi,
+			final List<ObjectSavePackage> packages,
+			final List<Long> ids,
+			final Map<String, Long> newNames,
+			final Date saved)
+			throws WorkspaceCommunicationException {
+		final Set<Long> created = new HashSet<Long>();
+		if (newNames.isEmpty()) {
+			return created;
+		}
+		final Map<Long, Integer> vercounts = new HashMap<Long, Integer>();
+		final Map<Long, Boolean> hidden = new HashMap<Long, Boolean>();
+		for (int i = 0; i < packages.size(); i++) {
+			final Long id = ids.get(i);
+			vercounts.put(id, vercounts.containsKey(id) ? vercounts.get(id) + 1 : 1);
+			hidden.put(id, packages.get(i).wo.isHidden());
+		}
+		final BulkWriteOperation bulk = wsmongo.getCollection(COL_WORKSPACE_OBJS)
+				.initializeUnorderedBulkOperation();
+		final List<Long> order = new ArrayList<Long>();
+		for (final String name: newNames.keySet()) {
+			final long id = newNames.get(name);
+			final int vercount = vercounts.get(id);
+			final List<Integer> zeros = new LinkedList<Integer>();
+			for (int i = 0; i < vercount; i++) {
+				zeros.add(0);
+			}
+			final DBObject dbo = new BasicDBObject();
+			dbo.put(Fields.OBJ_WS_ID, rwsi.getID());
+			dbo.put(Fields.OBJ_ID, id);
+			dbo.put(Fields.OBJ_VCNT, vercount); //Integer
+			dbo.put(Fields.OBJ_REFCOUNTS, zeros);
+			dbo.put(Fields.OBJ_NAME, name);
+			dbo.put(Fields.OBJ_LATEST, null);
+			dbo.put(Fields.OBJ_DEL, false);
+			dbo.put(Fields.OBJ_HIDE, hidden.get(id));
+			dbo.put(Fields.OBJ_MODDATE, saved);
+			bulk.insert(dbo);
+			order.add(id);
+			created.add(id);
+		}
+		try {
+			bulk.execute();
+		} catch (BulkWriteException bwe) {
+			if (bwe.getWriteConcernError() != null) {
+				throw new WorkspaceCommunicationException(
+						"There was a problem communicating with the database", bwe);
+			}
+			for (final BulkWriteError err: bwe.getWriteErrors()) {
+				if (err.getCode() != DUPLICATE_KEY_CODE) {
+					throw new WorkspaceCommunicationException(
+							"There was a problem communicating with the database", bwe);
+				}
+				created.remove(order.get(err.getIndex()));
+			}
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+		return created;
+	}
+	
+	/* Saves don't lock the workspace, so a plain $inc followed by a read could return
+	 * counts that include versions saved concurrently by another process. Instead the
+	 * current counts are read and each object is updated only if its count is unchanged.
+	 * The update is an upsert so that an object whose count changed fails on the
+	 * unique workspace / object id index, which identifies the object in the bulk
+	 * write errors. Those objects fall back to one findAndModify each.
+	 * Returns the first new version number for each object.
+	 */
+	private Map<Long, Integer> incrementVersionCountsBulk(
+			final ResolvedWorkspaceID rwsi,
+			final List<ObjectSavePackage> packages,
+			final Map<Long, List<Integer>> existing,
+			final Date saved)
+			throws WorkspaceCommunicationException {
+		final Map<Long, Integer> nextver = new HashMap<Long, Integer>();
+		if (existing.isEmpty()) {
+			return nextver;
+		}
+		final Map<Long, Integer> vercounts = new HashMap<Long, Integer>();
+		try {
+			final DBCursor cur = wsmongo.getCollection(COL_WORKSPACE_OBJS).find(
+					new BasicDBObject(Fields.OBJ_WS_ID, rwsi.getID())
+							.append(Fields.OBJ_ID, new BasicDBObject(
+									"$in", new ArrayList<Long>(existing.keySet()))),
+					new BasicDBObject(Fields.OBJ_ID, 1).append(Fields.OBJ_VCNT, 1));
+			for (final DBObject o: cur) {
+				vercounts.put(((Number) o.get(Fields.OBJ_ID)).longValue(),
+						((Number) o.get(Fields.OBJ_VCNT)).intValue());
+			}
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+		final BulkWriteOperation bulk = wsmongo.getCollection(COL_WORKSPACE_OBJS)
+				.initializeUnorderedBulkOperation();
+		final List<Long> order = new ArrayList<Long>();
+		for (final Long id: existing.keySet()) {
+			final List<Integer> indexes = existing.get(id);
+			final int count = indexes.size();
+			final List<Integer> zeros = new LinkedList<Integer>();
+			for (int i = 0; i < count; i++) {
+				zeros.add(0);
+			}
+			// the last version saved determines whether the object is hidden
+			final boolean hidden = packages.get(indexes.get(count - 1)).wo.isHidden();
+			bulk.find(new BasicDBObject(Fields.OBJ_WS_ID, rwsi.getID())
+					.append(Fields.OBJ_ID, id)
+					.append(Fields.OBJ_VCNT, vercounts.get(id)))
+					.upsert().updateOne(new BasicDBObject(
+							"$inc", new BasicDBObject(Fields.OBJ_VCNT, count))
+					.append("$set", new BasicDBObject(Fields.OBJ_DEL, false)
+							.append(Fields.OBJ_MODDATE, saved)
+							.append(Fields.OBJ_LATEST, null)
+							.append(Fields.OBJ_HIDE, hidden))
+					.append("$push", new BasicDBObject(Fields.OBJ_REFCOUNTS,
+							new BasicDBObject("$each", zeros))));
+			order.add(id);
+			nextver.put(id, vercounts.get(id) + 1);
+		}
+		final List<Long> changed = new LinkedList<Long>();
+		try {
+			bulk.execute();
+		} catch (BulkWriteException bwe) {
+			if (bwe.getWriteConcernError() != null) {
+				throw new WorkspaceCommunicationException(
+						"There was a problem communicating with the database", bwe);
+			}
+			for (final BulkWriteError err: bwe.getWriteErrors()) {
+				if (err.getCode() != DUPLICATE_KEY_CODE &&
+						err.getCode() != DUPLICATE_KEY_ON_UPDATE_CODE) {
+					throw new WorkspaceCommunicationException(
+							"There was a problem communicating with the database", bwe);
+				}
+				changed.add(order.get(err.getIndex()));
+			}
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+		for (final Long id: changed) {
+			final List<Integer> indexes = existing.get(id);
+			final boolean hidden = packages.get(indexes.get(indexes.size() - 1)).wo.isHidden();
+			nextver.put(id, incrementVersionCount(rwsi, id, indexes.size(), hidden, saved));
+		}
+		return nextver;
+	}
+	
+	// returns the first new version number
+	private int incrementVersionCount(
+			final ResolvedWorkspaceID wsid,
+			final long objectid,
+			final int count,
+			final Boolean hidden,
+			final Date saved)
+			throws WorkspaceCommunicationException {
+		final List<Integer> zeros = new LinkedList<Integer>();
+		for (int i = 0; i < count; i++) {
+			zeros.add(0);
+		}
+		try {
+			final FindAndModify q = wsjongo.getCollection(COL_WORKSPACE_OBJS)
+					.findAndModify(M_SAVEINS_QRY, wsid.getID(), objectid)
+					.returnNew();
+			if (hidden == null) {
+				q.with(M_SAVEINS_NO_HIDE_WTH, count, saved, zeros);
+			} else {
+				q.with(M_SAVEINS_WTH, count, saved, hidden, zeros);
+			}
+			return ((Number) q.projection(M_SAVEINS_PROJ).as(DBObject.class)
+					.get(Fields.OBJ_VCNT)).intValue() - count + 1;
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+	}
 
 	//returns starting object number
 	private long incrementWorkspaceCounter(final ResolvedWorkspaceID wsidmongo,
@@ -2042,20 +2401,30 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			final ResolvedWorkspaceID workspaceid,
 			final List<ObjectSavePackage> data)
 			throws WorkspaceCommunicationException {
+		// use the same executor for the entire call
+		final ExecutorService executor = blobWriteExecutor;
 		try {
-			for (ObjectSavePackage p: data) {
-				final String md5 = p.wo.getRep().getMD5().getMD5();
-				try {
-					blob.saveBlob(new MD5(md5), p.wo.getRep(), true); //always sorted in 0.2.0+
-				} catch (BlobStoreCommunicationException e) {
-					throw new WorkspaceCommunicationException(
-							e.getLocalizedMessage(), e);
-				} catch (BlobStoreAuthorizationException e) {
-					throw new WorkspaceCommunicationException(
-							"Authorization error communicating with the backend storage system",
-							e);
+			// save each blob once, and skip blobs that are already stored
+			final Map<MD5, ObjectSavePackage> toSave = new LinkedHashMap<>();
+			for (final ObjectSavePackage p: data) {
+				final MD5 md5 = new MD5(p.wo.getRep().getMD5().getMD5());
+				if (!toSave.containsKey(md5)) {
+					toSave.put(md5, p);
 				}
 			}
+			try {
+				toSave.keySet().removeAll(blob.getExistingBlobs(toSave.keySet()));
+			} catch (BlobStoreCommunicationException e) {
+				throw new WorkspaceCommunicationException(
+						e.getLocalizedMessage(), e);
+			}
+			if (executor == null || toSave.size() < 2) {
+				for (final Entry<MD5, ObjectSavePackage> e: toSave.entrySet()) {
+					saveBlob(e.getKey(), e.getValue());
+				}
+			} else {
+				saveBlobsConcurrently(toSave, executor);
+			}
 		} finally {
 			for (final ObjectSavePackage o: data) {
 				try {
@@ -2068,6 +2437,81 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		}
 	}
 
+	/* Any running writes are allowed to complete before returning or
+	 * throwing an exception, since the caller destroys the data caches that
+	 * the writes are reading from once this method is complete.
+	 * If any writes fail, the writes that have not yet started are cancelled
+	 * and the exception from the first failed write in save order is thrown.
+	 */
+	private void saveBlobsConcurrently(
+			final Map<MD5, ObjectSavePackage> toSave,
+			final ExecutorService executor)
+			throws WorkspaceCommunicationException {
+		final List<Future<Void>> writes = new LinkedList<>();
+		for (final Entry<MD5, ObjectSavePackage> e: toSave.entrySet()) {
+			writes.add(executor.submit(() -> {
+				saveBlob(e.getKey(), e.getValue());
+				return null;
+			}));
+		}
+		Throwable failure = null;
+		for (final Future<Void> w: writes) {
+			if (failure != null) {
+				if (!w.cancel(false)) { // already running or done
+					try {
+						Uninterruptibles.getUninterruptibly(w);
+					} catch (ExecutionException ee) {
+						// only the first failure is reported
+					}
+				}
+			} else {
+				try {
+					Uninterruptibles.getUninterruptibly(w);
+				} catch (ExecutionException ee) {
+					failure = ee.getCause();
+				}
+			}
+		}
+		if (failure != null) {
+			Throwables.propagateIfPossible(failure, WorkspaceCommunicationException.class);
+			throw new RuntimeException("Unexpected exception writing to the blob store: " +
+					failure.getMessage(), failure);
+		}
+	}
+
+	private void saveBlob(final MD5 md5, final ObjectSavePackage p)
+			throws WorkspaceCommunicationException {
+		try {
+			blob.saveBlob(md5, p.wo.getRep(), true); //always sorted in 0.2.0+
+		} catch (BlobStoreCommunicationException e) {
+			throw new WorkspaceCommunicationException(
+					e.getLocalizedMessage(), e);
+		} catch (BlobStoreAuthorizationException e) {
+			throw new WorkspaceCommunicationException(
+					"Authorization error communicating with the backend storage system",
+					e);
+		}
+		saveBlobIndex(md5, p.wo.getRep());
+	}
+	
+	/* The index is built from the exact bytes stored in the blob store. Since
+	 * the index is only an optimization for subset extraction, failing to
+	 * build or save it does not fail the save - subsets of a blob without an
+	 * index are extracted from the entire blob.
+	 */
+	private void saveBlobIndex(final MD5 md5, final ValidatedTypedObject data) {
+		if (data.getRelabeledSize() < MIN_INDEXED_BLOB_SIZE || !blob.supportsBlobIndexes()) {
+			return;
+		}
+		try (final InputStream is = data.getInputStream()) {
+			blob.saveBlobIndex(md5, JsonStructureIndex.build(is).toBytes());
+		} catch (IOException | BlobStoreCommunicationException |
+				BlobStoreAuthorizationException | RuntimeException e) {
+			LoggerFactory.getLogger(getClass()).error(
+					"Failed to save structural index for blob " + md5.getMD5(), e);
+		}
+	}
+
 	private static final Set<String> FLDS_VER_GET_OBJECT = newHashSet(
 			Fields.VER_VER, Fields.VER_META, Fields.VER_TYPE,
 			Fields.VER_SAVEDATE, Fields.VER_SAVEDBY,
@@ -2099,8 +2543,13 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		final Map<ObjectId, MongoProvenance> provs = getProvenance(vers);
 		final Map<String, ByteArrayFileCache> chksumToData =
 				new HashMap<String, ByteArrayFileCache>();
+		final Set<String> subsetChksums = rescfg.getStreamReturnedData() ?
+				getSubsetChecksums(objs, resobjs, vers) : null;
 		final Map<ObjectIDResolvedWS, Map<SubsetSelection, WorkspaceObjectData>> ret =
 				new HashMap<ObjectIDResolvedWS, Map<SubsetSelection, WorkspaceObjectData>>();
+		if (dataMan != null) {
+			prefetchBlobs(objs, resobjs, vers, subsetChksums, dataMan, chksumToData);
+		}
 		for (final ObjectIDResolvedWS o: objs.keySet()) {
 			final ResolvedObjectID roi = resobjs.get(o);
 			if (!vers.containsKey(roi)) {
@@ -2130,11 +2579,9 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 						throw new IllegalStateException(
 								"At least one SubsetSelection must be provided");
 					} else {
-						for (final SubsetSelection op: objs.get(o)) {
-							buildReturnedObjectData(
-									o, op, prov, refs, copied, extIDs, info,
-									chksumToData, dataMan, ret);
-						}
+						buildReturnedObjectData(
+								o, objs.get(o), prov, refs, copied, extIDs, info,
+								chksumToData, subsetChksums, dataMan, ret);
 					}
 				} catch (TypedObjectExtractionException |
 						WorkspaceCommunicationException |
@@ -2149,6 +2596,115 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		return ret;
 	}
 
+	/* Reads the blobs that will be read in their entirety for the call
+	 * concurrently and adds them to chksumToData. Blobs that are streamed, or
+	 * for which the subsets may be available from the subset cache or via a
+	 * structural index, are left for the calling thread. The reads share the
+	 * data manager's memory and disk limits.
+	 * All the reads are allowed to complete before returning or throwing an
+	 * exception so that no data is created after the clean up. If any reads
+	 * fail, the data that was read is destroyed, the reads that have not yet
+	 * started are cancelled, and the exception from the first failed read in
+	 * object order is thrown.
+	 */
+	private void prefetchBlobs(
+			final Map<ObjectIDResolvedWS, Set<SubsetSelection>> objs,
+			final Map<ObjectIDResolvedWS, ResolvedObjectID> resobjs,
+			final Map<ResolvedObjectID, Map<String, Object>> vers,
+			final Set<String> subsetChksums,
+			final ByteArrayFileCacheManager dataMan,
+			final Map<String, ByteArrayFileCache> chksumToData)
+			throws WorkspaceCommunicationException, CorruptWorkspaceDBException {
+		// use the same executor for the entire call
+		final ExecutorService executor = blobReadExecutor;
+		if (executor == null) {
+			return;
+		}
+		final Map<String, ObjectInformation> toRead = new LinkedHashMap<>();
+		for (final ObjectIDResolvedWS o: objs.keySet()) {
+			final ResolvedObjectID roi = resobjs.get(o);
+			// works if roi is null or vers doesn't have the key
+			if (vers.containsKey(roi)) {
+				final ObjectInformation info = ObjectInfoUtils.generateObjectInfo(
+						roi, vers.get(roi));
+				if (!toRead.containsKey(info.getCheckSum()) &&
+						isBlobRead(info, objs.get(o), subsetChksums)) {
+					toRead.put(info.getCheckSum(), info);
+				}
+			}
+		}
+		if (toRead.size() < 2) {
+			return;
+		}
+		final Map<String, Future<ByteArrayFileCache>> reads = new LinkedHashMap<>();
+		for (final ObjectInformation info: toRead.values()) {
+			reads.put(info.getCheckSum(), executor.submit(() -> getBlobData(info, dataMan)));
+		}
+		Throwable failure = null;
+		for (final Entry<String, Future<ByteArrayFileCache>> r: reads.entrySet()) {
+			if (failure != null && r.getValue().cancel(false)) {
+				continue;
+			}
+			try {
+				chksumToData.put(r.getKey(), Uninterruptibles.getUninterruptibly(r.getValue()));
+			} catch (ExecutionException ee) {
+				if (failure == null) {
+					failure = ee.getCause();
+				}
+			}
+		}
+		if (failure != null) {
+			destroy(chksumToData.values());
+			chksumToData.clear();
+			Throwables.propagateIfPossible(failure, WorkspaceCommunicationException.class,
+					CorruptWorkspaceDBException.class);
+			throw new RuntimeException("Unexpected exception reading from the blob store: " +
+					failure.getMessage(), failure);
+		}
+	}
+	
+	/* Whether the entire blob for an object will be read from the blob store
+	 * when building the returned data.
+	 */
+	private boolean isBlobRead(
+			final ObjectInformation info,
+			final Set<SubsetSelection> ops,
+			final Set<String> subsetChksums) {
+		if (subsetChksums != null && !subsetChksums.contains(info.getCheckSum())) {
+			return false; // streamed
+		}
+		for (final SubsetSelection op: ops) {
+			if (op.isEmpty()) {
+				return true;
+			}
+		}
+		return subsetCache == null &&
+				(info.getSize() < MIN_INDEXED_BLOB_SIZE || !blob.supportsBlobIndexes());
+	}
+
+	/* Returns the checksums of the objects from which subsets will be
+	 * extracted. Streamed data can't be subsetted, so these objects must be
+	 * fetched from the blob store in their entirety.
+	 */
+	private Set<String> getSubsetChecksums(
+			final Map<ObjectIDResolvedWS, Set<SubsetSelection>> paths,
+			final Map<ObjectIDResolvedWS, ResolvedObjectID> resobjs,
+			final Map<ResolvedObjectID, Map<String, Object>> vers) {
+		final Set<String> chksums = new HashSet<>();
+		for (final ObjectIDResolvedWS o: paths.keySet()) {
+			// works if resobjs.get(o) is null or vers doesn't contain
+			if (vers.containsKey(resobjs.get(o))) {
+				for (final SubsetSelection op: paths.get(o)) {
+					if (!op.isEmpty()) {
+						chksums.add((String) vers.get(resobjs.get(o))
+								.get(Fields.VER_CHKSUM));
+					}
+				}
+			}
+		}
+		return chksums;
+	}
+
 	private void checkTotalFileSize(
 			final long usedDataAllocation,
 			final Map<ObjectIDResolvedWS, Set<SubsetSelection>> paths,
@@ -2202,13 +2758,14 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 	//yuck. Think more about the interface here
 	private void buildReturnedObjectData(
 			final ObjectIDResolvedWS o,
-			final SubsetSelection op,
+			final Set<SubsetSelection> ops,
 			final MongoProvenance prov,
 			final List<String> refs,
 			final Reference copied,
 			final Map<String, List<String>> extIDs,
 			final ObjectInformation info,
 			final Map<String, ByteArrayFileCache> chksumToData,
+			final Set<String> subsetChksums,
 			final ByteArrayFileCacheManager bafcMan,
 			final Map<ObjectIDResolvedWS,
 					Map<SubsetSelection, WorkspaceObjectData>> ret)
@@ -2217,55 +2774,173 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		if (!ret.containsKey(o)) {
 			ret.put(o, new HashMap<SubsetSelection, WorkspaceObjectData>());
 		}
-		if (chksumToData.containsKey(info.getCheckSum())) {
-			/* might be subsetting the same object the same way multiple
-			 * times, but probably unlikely. If it becomes a problem
-			 * memoize the subset
-			 */
-			ret.get(o).put(op, new WorkspaceObjectData(getDataSubSet(
-					chksumToData.get(info.getCheckSum()), op, bafcMan),
-					info, prov, refs, copied, extIDs));
-		} else {
-			final ByteArrayFileCache data;
-			try {
-				data = blob.getBlob(new MD5(info.getCheckSum()), bafcMan);
-			} catch (FileCacheIOException e) {
-				throw new WorkspaceCommunicationException(
-						e.getLocalizedMessage(), e);
-			} catch (FileCacheLimitExceededException e) {
-				throw new IllegalArgumentException( //shouldn't happen if size was checked correctly beforehand
-						"Too much data requested from the workspace at once; " +
-						"data requested including subsets exceeds maximum of "
-						+ bafcMan.getMaxSizeOnDisk());
-			} catch (BlobStoreCommunicationException e) {
-				throw new WorkspaceCommunicationException(
-						e.getLocalizedMessage(), e);
-			} catch (BlobStoreAuthorizationException e) {
-				throw new WorkspaceCommunicationException(
-						"Authorization error communicating with the backend storage system",
-						e);
-			} catch (NoSuchBlobException e) {
-				throw new CorruptWorkspaceDBException(String.format(
-						"No data present for valid object %s.%s.%s",
-						info.getWorkspaceId(), info.getObjectId(),
-						info.getVersion()), e);
+		final Map<SubsetSelection, WorkspaceObjectData> objdata = ret.get(o);
+		final List<SubsetSelection> remaining = new LinkedList<>();
+		for (final SubsetSelection op: ops) {
+			final ByteArrayFileCache cached = getCachedSubset(info, op, bafcMan);
+			if (cached != null) {
+				objdata.put(op, new WorkspaceObjectData(
+						cached, info, prov, refs, copied, extIDs));
+			} else {
+				remaining.add(op);
+			}
+		}
+		if (remaining.isEmpty()) {
+			return;
+		}
+		if (!chksumToData.containsKey(info.getCheckSum())) {
+			if (subsetChksums != null && !subsetChksums.contains(info.getCheckSum())) {
+				// stream the data directly from the blob store when it's returned
+				chksumToData.put(info.getCheckSum(), getStreamedData(info, bafcMan));
+			} else {
+				for (final Entry<SubsetSelection, ByteArrayFileCache> e:
+						getIndexedSubsets(info, remaining, bafcMan).entrySet()) {
+					objdata.put(e.getKey(), new WorkspaceObjectData(
+							e.getValue(), info, prov, refs, copied, extIDs));
+					remaining.remove(e.getKey());
+				}
+				if (remaining.isEmpty()) {
+					return;
+				}
+				chksumToData.put(info.getCheckSum(), getBlobData(info, bafcMan));
 			}
-			chksumToData.put(info.getCheckSum(), data);
-			ret.get(o).put(op, new WorkspaceObjectData(
-					getDataSubSet(data, op, bafcMan),
-					info, prov, refs, copied, extIDs));
+		}
+		// all the subsets are extracted in a single pass over the data
+		for (final Entry<SubsetSelection, ByteArrayFileCache> e: getDataSubSets(
+				chksumToData.get(info.getCheckSum()), remaining, bafcMan, info).entrySet()) {
+			objdata.put(e.getKey(), new WorkspaceObjectData(
+					e.getValue(), info, prov, refs, copied, extIDs));
+		}
+	}
+	
+	private ByteArrayFileCache getBlobData(
+			final ObjectInformation info,
+			final ByteArrayFileCacheManager bafcMan)
+			throws WorkspaceCommunicationException, CorruptWorkspaceDBException {
+		try {
+			return blob.getBlob(new MD5(info.getCheckSum()), bafcMan);
+		} catch (FileCacheIOException e) {
+			throw new WorkspaceCommunicationException(
+					e.getLocalizedMessage(), e);
+		} catch (FileCacheLimitExceededException e) {
+			throw new IllegalArgumentException( //shouldn't happen if size was checked correctly beforehand
+					"Too much data requested from the workspace at once; " +
+					"data requested including subsets exceeds maximum of "
+					+ bafcMan.getMaxSizeOnDisk());
+		} catch (BlobStoreCommunicationException e) {
+			throw new WorkspaceCommunicationException(
+					e.getLocalizedMessage(), e);
+		} catch (BlobStoreAuthorizationException e) {
+			throw new WorkspaceCommunicationException(
+					"Authorization error communicating with the backend storage system",
+					e);
+		} catch (NoSuchBlobException e) {
+			throw new CorruptWorkspaceDBException(String.format(
+					"No data present for valid object %s.%s.%s",
+					info.getWorkspaceId(), info.getObjectId(),
+					info.getVersion()), e);
 		}
 	}
 	
-	private ByteArrayFileCache getDataSubSet(final ByteArrayFileCache data,
-			final SubsetSelection paths, final ByteArrayFileCacheManager bafcMan)
+	private ByteArrayFileCache getStreamedData(
+			final ObjectInformation info,
+			final ByteArrayFileCacheManager bafcMan)
+			throws WorkspaceCommunicationException, CorruptWorkspaceDBException {
+		final BlobSource src;
+		try {
+			src = blob.getBlobSource(new MD5(info.getCheckSum()));
+		} catch (BlobStoreCommunicationException e) {
+			throw new WorkspaceCommunicationException(
+					e.getLocalizedMessage(), e);
+		} catch (BlobStoreAuthorizationException e) {
+			throw new WorkspaceCommunicationException(
+					"Authorization error communicating with the backend storage system",
+					e);
+		} catch (NoSuchBlobException e) {
+			throw new CorruptWorkspaceDBException(String.format(
+					"No data present for valid object %s.%s.%s",
+					info.getWorkspaceId(), info.getObjectId(),
+					info.getVersion()), e);
+		}
+		return bafcMan.createStreamingBAFC(src.getSource(), info.getSize(), src.isSorted());
+	}
+	
+	private ByteArrayFileCache getCachedSubset(
+			final ObjectInformation info,
+			final SubsetSelection paths,
+			final ByteArrayFileCacheManager bafcMan)
+			throws WorkspaceCommunicationException {
+		final SubsetExtractionCache cache = subsetCache;
+		if (cache == null || paths.isEmpty()) {
+			return null;
+		}
+		try {
+			return cache.get(new MD5(info.getCheckSum()), paths, bafcMan);
+		} catch (FileCacheIOException e) {
+			throw new WorkspaceCommunicationException(
+					e.getLocalizedMessage(), e);
+		} catch (FileCacheLimitExceededException e) {
+			throw new IllegalArgumentException( //shouldn't happen if size was checked correctly beforehand
+					"Too much data requested from the workspace at once; " +
+					"data requested including subsets exceeds maximum of "
+					+ bafcMan.getMaxSizeOnDisk());
+		}
+	}
+	
+	/* Returns the subsets that can be extracted efficiently via the blob's
+	 * index. The map is empty if the blob has no index.
+	 */
+	private Map<SubsetSelection, ByteArrayFileCache> getIndexedSubsets(
+			final ObjectInformation info,
+			final List<SubsetSelection> paths,
+			final ByteArrayFileCacheManager bafcMan)
 			throws TypedObjectExtractionException,
 			WorkspaceCommunicationException {
-		if (paths.isEmpty()) {
-			return data;
+		final Map<SubsetSelection, ByteArrayFileCache> ret = new HashMap<>();
+		if (info.getSize() < MIN_INDEXED_BLOB_SIZE || !hasNonEmpty(paths)) {
+			return ret;
+		}
+		final MD5 md5 = new MD5(info.getCheckSum());
+		final IndexedBlob ib;
+		try {
+			ib = blob.getIndexedBlob(md5);
+		} catch (BlobStoreCommunicationException e) {
+			throw new WorkspaceCommunicationException(
+					e.getLocalizedMessage(), e);
+		} catch (BlobStoreAuthorizationException e) {
+			throw new WorkspaceCommunicationException(
+					"Authorization error communicating with the backend storage system",
+					e);
+		}
+		if (ib == null) {
+			return ret;
+		}
+		final JsonStructureIndex index;
+		try {
+			index = JsonStructureIndex.fromBytes(ib.getIndex());
+		} catch (IOException e) {
+			LoggerFactory.getLogger(getClass()).error(
+					"Invalid structural index for blob " + md5.getMD5(), e);
+			return ret;
 		}
+		boolean complete = false;
 		try {
-			return bafcMan.getSubdataExtraction(data, paths);
+			final SubsetExtractionCache cache = subsetCache;
+			for (final SubsetSelection op: paths) {
+				if (op.isEmpty()) {
+					continue;
+				}
+				final ByteArrayFileCache subset = bafcMan.getSubdataExtraction(
+						index, ib.getSource(), ib.isSorted(), op);
+				if (subset != null) {
+					ret.put(op, subset);
+					if (cache != null) {
+						cache.put(md5, op, subset);
+					}
+				}
+			}
+			complete = true;
+			return ret;
 		} catch (FileCacheIOException e) {
 			throw new WorkspaceCommunicationException(
 					e.getLocalizedMessage(), e);
@@ -2274,6 +2949,88 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 					"Too much data requested from the workspace at once; " +
 					"data requested including subsets exceeds maximum of "
 					+ bafcMan.getMaxSizeOnDisk());
+		} finally {
+			if (!complete) {
+				destroy(ret.values());
+			}
+		}
+	}
+	
+	private static boolean hasNonEmpty(final List<SubsetSelection> paths) {
+		for (final SubsetSelection op: paths) {
+			if (!op.isEmpty()) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static void destroy(final Collection<ByteArrayFileCache> data) {
+		for (final ByteArrayFileCache d: data) {
+			try {
+				d.destroy();
+			} catch (RuntimeException | Error e) {
+				//continue
+			}
+		}
+	}
+	
+	/* Extracts all the subsets in a single pass over the data. Empty
+	 * selections map to the data itself.
+	 */
+	private Map<SubsetSelection, ByteArrayFileCache> getDataSubSets(
+			final ByteArrayFileCache data,
+			final List<SubsetSelection> paths,
+			final ByteArrayFileCacheManager bafcMan,
+			final ObjectInformation info)
+			throws TypedObjectExtractionException,
+			WorkspaceCommunicationException {
+		final Map<SubsetSelection, ByteArrayFileCache> ret = new HashMap<>();
+		final List<SubsetSelection> nonEmpty = new ArrayList<>();
+		for (final SubsetSelection op: paths) {
+			if (op.isEmpty()) {
+				ret.put(op, data);
+			} else {
+				nonEmpty.add(op);
+			}
+		}
+		if (nonEmpty.isEmpty()) {
+			return ret;
+		}
+		final List<ByteArrayFileCache> subsets;
+		try {
+			if (nonEmpty.size() == 1) {
+				subsets = Arrays.asList(bafcMan.getSubdataExtraction(data, nonEmpty.get(0)));
+			} else {
+				subsets = bafcMan.getSubdataExtractions(data, nonEmpty);
+			}
+		} catch (FileCacheLimitExceededException e) {
+			throw new IllegalArgumentException( //shouldn't happen if size was checked correctly beforehand
+					"Too much data requested from the workspace at once; " +
+					"data requested including subsets exceeds maximum of "
+					+ bafcMan.getMaxSizeOnDisk());
+		} catch (FileCacheIOException e) {
+			throw new WorkspaceCommunicationException(
+					e.getLocalizedMessage(), e);
+		}
+		boolean complete = false;
+		try {
+			final SubsetExtractionCache cache = subsetCache;
+			for (int i = 0; i < nonEmpty.size(); i++) {
+				ret.put(nonEmpty.get(i), subsets.get(i));
+				if (cache != null) {
+					cache.put(new MD5(info.getCheckSum()), nonEmpty.get(i), subsets.get(i));
+				}
+			}
+			complete = true;
+			return ret;
+		} catch (FileCacheIOException e) {
+			throw new WorkspaceCommunicationException(
+					e.getLocalizedMessage(), e);
+		} finally {
+			if (!complete) {
+				destroy(subsets);
+			}
 		}
 	}
 	
@@ -16,12 +16,14 @@ import us.kbase.workspace.database.GetObjectInformationParameters;
 import us.kbase.workspace.database.ObjectInformation;
 import us.kbase.workspace.database.Permission;
 import us.kbase.workspace.database.PermissionSet;
+import us.kbase.workspace.database.Reference;
 import us.kbase.workspace.database.ResolvedObjectID;
 import us.kbase.workspace.database.ResolvedWorkspaceID;
 import us.kbase.workspace.database.UncheckedUserMetadata;
 import us.kbase.workspace.database.WorkspaceUser;
 import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
 
+import com.google.common.collect.Iterators;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
@@ -59,12 +61,13 @@ public class ObjectInfoUtils {
 	List<ObjectInformation> filter(
 			final GetObjectInformationParameters params)
 			throws WorkspaceCommunicationException {
-		/* Could make this method more efficient by doing different queries
-		 * based on the filters. If there's no filters except the workspace,
-		 * for example, just grab all the objects for the workspaces,
-		 * filtering out hidden and deleted in the query and pull the most
-		 * recent versions for the remaining objects. For now, just go
-		 * with a dumb general method and add smarter heuristics as needed.
+		/* There are two query plans. If the only filters are on the object
+		 * records (e.g. workspace, object ID, hidden and deleted) the objects
+		 * are queried first, filtering out hidden and deleted objects in the
+		 * query, and then only the versions to be returned are pulled for the
+		 * remaining objects. Otherwise the version filters are likely to be
+		 * more selective, so the versions are queried first and the object
+		 * records are checked afterwards. Add smarter heuristics as needed.
 		 */
 		
 		// if the limit = 1 don't want to keep querying for 1 object
@@ -75,6 +78,9 @@ public class ObjectInfoUtils {
 		if (pset.isEmpty()) {
 			return new LinkedList<ObjectInformation>();
 		}
+		if (params.isObjectIDFiltersOnly()) {
+			return filterByObjects(params, querysize);
+		}
 		final DBObject verq = buildQuery(params);
 		final DBObject projection = buildProjection(params);
 		final DBObject sort = buildSortSpec(params);
@@ -112,6 +118,201 @@ public class ObjectInfoUtils {
 		return ret;
 	}
 
+	/* Returns results in the same order as the version sort in
+	 * buildSortSpec(): workspace ID and object ID ascending, then version
+	 * descending.
+	 */
+	private List<ObjectInformation> filterByObjects(
+			final GetObjectInformationParameters params,
+			final int querysize)
+			throws WorkspaceCommunicationException {
+		final PermissionSet pset = params.getPermissionSet();
+		final Map<Long, ResolvedWorkspaceID> ids = getWorkspaceIDs(pset);
+		final Iterator<DBObject> cur = buildObjectCursors(params, ids.keySet());
+		final List<ObjectInformation> ret = new LinkedList<>();
+		while (cur.hasNext() && ret.size() < params.getLimit()) {
+			final List<Map<String, Object>> objs = new ArrayList<>();
+			while (cur.hasNext() && objs.size() < querysize) {
+				final Map<String, Object> obj;
+				try {
+					obj = QueryMethods.dbObjectToMap(cur.next());
+				} catch (MongoException me) {
+					throw new WorkspaceCommunicationException(
+							"There was a problem communicating with the database", me);
+				}
+				// the query only excludes deleted objects for the common cases
+				if (isListable(pset, ids.get((Long) obj.get(Fields.OBJ_WS_ID)), obj,
+						params.isShowHidden(), params.isShowDeleted(),
+						params.isShowOnlyDeleted(), params.asAdmin())) {
+					objs.add(obj);
+				}
+			}
+			if (params.isShowAllVersions()) {
+				addAllVersions(params, ids, objs, ret);
+			} else {
+				addLatestVersions(params, ids, objs, ret);
+			}
+		}
+		return ret;
+	}
+
+	private Iterator<DBObject> buildObjectCursors(
+			final GetObjectInformationParameters params,
+			final Set<Long> wsids)
+			throws WorkspaceCommunicationException {
+		final Reference start = params.getStartAfter();
+		if (start == null) {
+			return buildObjectCursor(params, wsids, 1);
+		}
+		/* The objects in the start workspace and the following workspaces are queried
+		 * separately so that each query is a range scan on the index that also provides
+		 * the sort.
+		 */
+		final List<Iterator<DBObject>> curs = new LinkedList<>();
+		if (wsids.contains(start.getWorkspaceID())) {
+			// the remaining versions of the start object are listed if listing all versions
+			curs.add(buildObjectCursor(params, newHashSet(start.getWorkspaceID()),
+					start.getObjectID() + (params.isShowAllVersions() ? 0 : 1)));
+		}
+		final Set<Long> following = new HashSet<>();
+		for (final Long wsid: wsids) {
+			if (wsid > start.getWorkspaceID()) {
+				following.add(wsid);
+			}
+		}
+		if (!following.isEmpty()) {
+			curs.add(buildObjectCursor(params, following, 1));
+		}
+		return Iterators.concat(curs.iterator());
+	}
+	
+	private DBCursor buildObjectCursor(
+			final GetObjectInformationParameters params,
+			final Set<Long> wsids,
+			final long minObjectID)
+			throws WorkspaceCommunicationException {
+		final DBObject objq = new BasicDBObject();
+		objq.put(Fields.OBJ_WS_ID, new BasicDBObject("$in", wsids));
+		if (!params.isShowHidden()) {
+			objq.put(Fields.OBJ_HIDE, false);
+		}
+		if (params.isShowOnlyDeleted()) {
+			objq.put(Fields.OBJ_DEL, true);
+		} else if (!params.isShowDeleted()) {
+			objq.put(Fields.OBJ_DEL, false);
+		}
+		addObjectIDRange(params, objq, Fields.OBJ_ID, minObjectID);
+		final DBObject projection = new BasicDBObject();
+		for (final String field: FLDS_LIST_OBJ) {
+			projection.put(field, 1);
+		}
+		// uses the workspace id / object id index
+		final DBObject sort = new BasicDBObject(Fields.OBJ_WS_ID, 1);
+		sort.put(Fields.OBJ_ID, 1);
+		try {
+			return query.getDatabase().getCollection(query.getObjectCollection())
+					.find(objq, projection).sort(sort);
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+	}
+	
+	private void addLatestVersions(
+			final GetObjectInformationParameters params,
+			final Map<Long, ResolvedWorkspaceID> ids,
+			final List<Map<String, Object>> objs,
+			final List<ObjectInformation> ret)
+			throws WorkspaceCommunicationException {
+		if (objs.isEmpty()) {
+			return;
+		}
+		final List<DBObject> orquery = new LinkedList<DBObject>();
+		for (final Map<String, Object> obj: objs) {
+			final DBObject verq = new BasicDBObject(
+					Fields.VER_WS_ID, obj.get(Fields.OBJ_WS_ID));
+			verq.put(Fields.VER_ID, obj.get(Fields.OBJ_ID));
+			verq.put(Fields.VER_VER, obj.get(Fields.OBJ_VCNT));
+			orquery.add(verq);
+		}
+		final Set<String> fields = new HashSet<>(FLDS_LIST_OBJ_VER);
+		if (params.isIncludeMetaData()) {
+			fields.add(Fields.VER_META);
+		}
+		// the version records use the same field names for the ws and object ids
+		final Map<Long, Map<Long, Map<String, Object>>> verdata = organizeObjData(
+				query.queryCollection(query.getVersionCollection(),
+						new BasicDBObject("$or", orquery), fields));
+		//maintain the ordering
+		final Iterator<Map<String, Object>> objiter = objs.iterator();
+		while (objiter.hasNext() && ret.size() < params.getLimit()) {
+			final Map<String, Object> obj = objiter.next();
+			final long wsid = (Long) obj.get(Fields.OBJ_WS_ID);
+			final long id = (Long) obj.get(Fields.OBJ_ID);
+			// see the comment in generateObjectInfo re missing versions
+			if (verdata.containsKey(wsid) && verdata.get(wsid).containsKey(id)) {
+				ret.add(generateObjectInfo(ids.get(wsid), id,
+						(String) obj.get(Fields.OBJ_NAME), verdata.get(wsid).get(id)));
+			}
+		}
+	}
+	
+	private void addAllVersions(
+			final GetObjectInformationParameters params,
+			final Map<Long, ResolvedWorkspaceID> ids,
+			final List<Map<String, Object>> objs,
+			final List<ObjectInformation> ret)
+			throws WorkspaceCommunicationException {
+		// objects are sorted by workspace id, then object id
+		final Map<Long, Map<Long, Map<String, Object>>> wsToObjs = new LinkedHashMap<>();
+		for (final Map<String, Object> obj: objs) {
+			final long wsid = (Long) obj.get(Fields.OBJ_WS_ID);
+			if (!wsToObjs.containsKey(wsid)) {
+				wsToObjs.put(wsid, new LinkedHashMap<Long, Map<String, Object>>());
+			}
+			wsToObjs.get(wsid).put((Long) obj.get(Fields.OBJ_ID), obj);
+		}
+		final DBObject projection = buildProjection(params);
+		final DBObject sort = buildSortSpec(params);
+		final Reference start = params.getStartAfter();
+		for (final Long wsid: wsToObjs.keySet()) {
+			if (ret.size() >= params.getLimit()) {
+				return;
+			}
+			final Map<Long, Map<String, Object>> wsobjs = wsToObjs.get(wsid);
+			/* querying on an object id range, rather than a list of ids, means
+			 * the sort is provided by the index. The range may include hidden
+			 * or deleted objects, the versions of which are skipped below.
+			 */
+			final List<Long> objids = new ArrayList<>(wsobjs.keySet());
+			final DBObject verq = new BasicDBObject(Fields.VER_WS_ID, wsid);
+			final DBObject idrange = new BasicDBObject("$gte", objids.get(0));
+			idrange.put("$lte", objids.get(objids.size() - 1));
+			verq.put(Fields.VER_ID, idrange);
+			final DBCursor cur = buildCursor(verq, projection, sort);
+			while (cur.hasNext() && ret.size() < params.getLimit()) {
+				final Map<String, Object> ver;
+				try {
+					ver = QueryMethods.dbObjectToMap(cur.next());
+				} catch (MongoException me) {
+					throw new WorkspaceCommunicationException(
+							"There was a problem communicating with the database", me);
+				}
+				final long id = (Long) ver.get(Fields.VER_ID);
+				if (start != null && start.getWorkspaceID() == wsid &&
+						start.getObjectID() == id &&
+						start.getVersion() <= (Integer) ver.get(Fields.VER_VER)) {
+					continue; // already listed in a previous call
+				}
+				final Map<String, Object> obj = wsobjs.get(id);
+				if (obj != null) {
+					ret.add(generateObjectInfo(ids.get(wsid), (Long) obj.get(Fields.OBJ_ID),
+							(String) obj.get(Fields.OBJ_NAME), ver));
+				}
+			}
+		}
+	}
+
 	private DBCursor buildCursor(
 			final DBObject verq,
 			final DBObject projection,
@@ -192,18 +393,53 @@ public class ObjectInfoUtils {
 			}
 			verq.put(Fields.VER_SAVEDATE, d);
 		}
-		if (params.getMinObjectID() > 1 || params.getMaxObjectID() > 0) {
+		addObjectIDRange(params, verq, Fields.VER_ID, 1);
+		return verq;
+	}
+	
+	private void addObjectIDRange(
+			final GetObjectInformationParameters params,
+			final DBObject query,
+			final String idField,
+			final long minObjectID) {
+		final long min = Math.max(params.getMinObjectID(), minObjectID);
+		if (min > 1 || params.getMaxObjectID() > 0) {
 			final DBObject id = new BasicDBObject();
-			if (params.getMinObjectID() > 1) {
-				id.put("$gte", params.getMinObjectID());
+			if (min > 1) {
+				id.put("$gte", min);
 			}
 			if (params.getMaxObjectID() > 0) {
 				id.put("$lte", params.getMaxObjectID());
 			}
-			verq.put(Fields.VER_ID, id);
+			query.put(idField, id);
 		}
-		
-		return verq;
+	}
+	
+	private Map<Long, ResolvedWorkspaceID> getWorkspaceIDs(final PermissionSet pset) {
+		final Map<Long, ResolvedWorkspaceID> ids = new HashMap<>();
+		for (final ResolvedWorkspaceID rwsi: pset.getWorkspaces()) {
+			ids.put(rwsi.getID(), rwsi);
+		}
+		return ids;
+	}
+	
+	private boolean isListable(
+			final PermissionSet pset,
+			final ResolvedWorkspaceID rwsi,
+			final Map<String, Object> obj,
+			final boolean includeHidden,
+			final boolean includeDeleted,
+			final boolean onlyIncludeDeleted,
+			final boolean asAdmin) {
+		if ((Boolean) obj.get(Fields.OBJ_HIDE) && !includeHidden) {
+			return false;
+		}
+		final boolean isDeleted = (Boolean) obj.get(Fields.OBJ_DEL);
+		final boolean canSeeDeleted = asAdmin || pset.hasPermission(rwsi, Permission.WRITE);
+		if (onlyIncludeDeleted) {
+			return isDeleted && canSeeDeleted;
+		}
+		return !isDeleted || (includeDeleted && canSeeDeleted);
 	}
 	
 	Map<Map<String, Object>, ObjectInformation> generateObjectInfo(
@@ -220,10 +456,7 @@ public class ObjectInfoUtils {
 		if (verobjs.isEmpty()) {
 			return ret;
 		}
-		final Map<Long, ResolvedWorkspaceID> ids = new HashMap<>();
-		for (final ResolvedWorkspaceID rwsi: pset.getWorkspaces()) {
-			ids.put(rwsi.getID(), rwsi);
-		}
+		final Map<Long, ResolvedWorkspaceID> ids = getWorkspaceIDs(pset);
 		final Map<Long, Set<Long>> verdata = getObjectIDsFromVersions(verobjs);
 		//TODO PERFORMANCE This $or query might be better as multiple individual queries, test
 		final List<DBObject> orquery = new LinkedList<DBObject>();
@@ -247,7 +480,6 @@ public class ObjectInfoUtils {
 			final Map<String, Object> obj = objdata.get(wsid).get(id);
 			final int lastver = (Integer) obj.get(Fields.OBJ_VCNT);
 			final ResolvedWorkspaceID rwsi = ids.get(wsid);
-			boolean isDeleted = (Boolean) obj.get(Fields.OBJ_DEL);
 			if (!includeAllVers && lastver != ver) {
 				/* this is tricky. As is, if there's a failure between incrementing
 				 * an object ver count and saving the object version no latest
@@ -260,21 +492,10 @@ public class ObjectInfoUtils {
 				 */
 				continue;
 			}
-			if ((Boolean) obj.get(Fields.OBJ_HIDE) && !includeHidden) {
-				continue;
-			}
-			if (onlyIncludeDeleted) {
-				if (isDeleted && (asAdmin || pset.hasPermission(rwsi, Permission.WRITE))) {
-					ret.put(vo, generateObjectInfo(rwsi, id,
-							(String) obj.get(Fields.OBJ_NAME), vo));
-				}
-				continue;
-			}
-			if (isDeleted && (!includeDeleted ||
-					(!asAdmin && !pset.hasPermission(rwsi, Permission.WRITE)))) {
-				continue;
+			if (isListable(pset, rwsi, obj, includeHidden, includeDeleted,
+					onlyIncludeDeleted, asAdmin)) {
+				ret.put(vo, generateObjectInfo(rwsi, id, (String) obj.get(Fields.OBJ_NAME), vo));
 			}
-			ret.put(vo, generateObjectInfo(rwsi, id, (String) obj.get(Fields.OBJ_NAME), vo));
 		}
 		return ret;
 	}
@@ -9,6 +9,9 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import us.kbase.workspace.database.AllUsers;
 import us.kbase.workspace.database.Permission;
@@ -21,6 +24,9 @@ import us.kbase.workspace.database.WorkspaceUser;
 import us.kbase.workspace.database.exceptions.CorruptWorkspaceDBException;
 import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
 import com.mongodb.DBCursor;
@@ -38,6 +44,9 @@ public class QueryMethods {
 	private final String objectCollection;
 	private final String versionCollection;
 	private final String workspaceACLCollection;
+	private int versionBatchSize = 1;
+	// null if version queries should be run in the calling thread
+	private ExecutorService versionQueryExecutor = null;
 	
 	QueryMethods(
 			final DB wsmongo,
@@ -74,6 +83,19 @@ public class QueryMethods {
 	DB getDatabase() {
 		return wsmongo;
 	}
+	
+	/** Set how queries for object versions are batched.
+	 * @param batchSize the maximum number of objects to query for in a single query.
+	 * @param executor the executor to use to run the queries for multiple batches concurrently,
+	 * or null to run the queries in the calling thread.
+	 */
+	void setVersionQueryBatching(final int batchSize, final ExecutorService executor) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be at least 1");
+		}
+		versionBatchSize = batchSize;
+		versionQueryExecutor = executor;
+	}
 
 	String getWorkspaceCollection() {
 		return workspaceCollection;
@@ -387,44 +409,110 @@ public class QueryMethods {
 	private Map<ResolvedWorkspaceID, Map<Long, Map<Integer, Map<String, Object>>>>
 			queryVersions(final Map<ResolvedWorkspaceID, Map<Long, List<Integer>>> ids,
 			final Set<String> fields) throws WorkspaceCommunicationException {
+		fields.add(Fields.VER_WS_ID);
 		fields.add(Fields.VER_ID);
 		fields.add(Fields.VER_VER);
-		//disgusting. need to do better.
-		//nested or queries are slow per the mongo docs so just query one
-		//workspace at a time. If profiling shows this is slow investigate
-		//further
-		//actually, $or queries just suck it seems. Way faster to do single queries
-		final Map<ResolvedWorkspaceID, Map<Long, Map<Integer, Map<String, Object>>>>
-			ret = new HashMap<ResolvedWorkspaceID, Map<Long,Map<Integer,Map<String,Object>>>>();
+		/* Each object gets a query clause, and the clauses are batched together into $or
+		 * queries, trading round trips to the database for the overhead of planning each $or
+		 * clause. A batch size of 1 means one query per object. Batches may be run concurrently.
+		 */
+		final List<DBObject> clauses = new ArrayList<DBObject>();
+		// ws id, obj id, obj version, version data map
+		final Map<Long, Map<Long, Map<Integer, Map<String, Object>>>> byWsID =
+				new HashMap<Long, Map<Long, Map<Integer, Map<String, Object>>>>();
 		for (final ResolvedWorkspaceID rwsi: ids.keySet()) {
-			ret.put(rwsi, new HashMap<Long, Map<Integer, Map<String,Object>>>());
+			if (!byWsID.containsKey(rwsi.getID())) {
+				byWsID.put(rwsi.getID(), new HashMap<Long, Map<Integer, Map<String, Object>>>());
+			}
 			for (final Long objectID: ids.get(rwsi).keySet()) {
-				ret.get(rwsi).put(objectID,
-						new HashMap<Integer, Map<String, Object>>());
-				final DBObject q;
-				if (ids.get(rwsi).get(objectID).size() == 0) {
-					q = new BasicDBObject();
-				} else if (ids.get(rwsi).get(objectID).size() == 1) {
-					q = new BasicDBObject(Fields.VER_VER,
-							ids.get(rwsi).get(objectID).get(0));
-				} else {
-					q = new BasicDBObject(Fields.VER_VER,
-						new BasicDBObject("$in", ids.get(rwsi).get(objectID)));
+				if (!byWsID.get(rwsi.getID()).containsKey(objectID)) {
+					byWsID.get(rwsi.getID()).put(objectID,
+							new HashMap<Integer, Map<String, Object>>());
+					clauses.add(getVersionQuery(rwsi.getID(), objectID,
+							ids.get(rwsi).get(objectID)));
 				}
-				q.put(Fields.VER_ID, objectID);
-				q.put(Fields.VER_WS_ID, rwsi.getID());
-				final List<Map<String, Object>> res = queryCollection(
-						versionCollection, q, fields);
-				for (final Map<String, Object> r: res) {
-					final Long id = (Long) r.get(Fields.VER_ID);
-					final Integer ver = (Integer) r.get(Fields.VER_VER);
-					ret.get(rwsi).get(id).put(ver, r);
+			}
+		}
+		for (final List<Map<String, Object>> res: queryVersionBatches(
+				Lists.partition(clauses, versionBatchSize), fields)) {
+			for (final Map<String, Object> r: res) {
+				final Long wsid = (Long) r.get(Fields.VER_WS_ID);
+				final Long id = (Long) r.get(Fields.VER_ID);
+				final Integer ver = (Integer) r.get(Fields.VER_VER);
+				byWsID.get(wsid).get(id).put(ver, r);
+			}
+		}
+		final Map<ResolvedWorkspaceID, Map<Long, Map<Integer, Map<String, Object>>>>
+			ret = new HashMap<ResolvedWorkspaceID, Map<Long,Map<Integer,Map<String,Object>>>>();
+		for (final ResolvedWorkspaceID rwsi: ids.keySet()) {
+			ret.put(rwsi, byWsID.get(rwsi.getID()));
+		}
+		return ret;
+	}
+	
+	// an empty version list means all versions
+	private DBObject getVersionQuery(
+			final long workspaceID,
+			final long objectID,
+			final List<Integer> versions) {
+		final DBObject q = new BasicDBObject(Fields.VER_WS_ID, workspaceID);
+		q.put(Fields.VER_ID, objectID);
+		if (versions.size() == 1) {
+			q.put(Fields.VER_VER, versions.get(0));
+		} else if (versions.size() > 1) {
+			q.put(Fields.VER_VER, new BasicDBObject("$in", versions));
+		}
+		return q;
+	}
+	
+	private List<List<Map<String, Object>>> queryVersionBatches(
+			final List<List<DBObject>> batches,
+			final Set<String> fields)
+			throws WorkspaceCommunicationException {
+		// use the same executor for the entire call
+		final ExecutorService executor = versionQueryExecutor;
+		final List<List<Map<String, Object>>> ret = new LinkedList<List<Map<String, Object>>>();
+		if (executor == null || batches.size() < 2) {
+			for (final List<DBObject> batch: batches) {
+				ret.add(queryVersionBatch(batch, fields));
+			}
+			return ret;
+		}
+		final List<Future<List<Map<String, Object>>>> queries =
+				new LinkedList<Future<List<Map<String, Object>>>>();
+		for (final List<DBObject> batch: batches) {
+			queries.add(executor.submit(() -> queryVersionBatch(batch, fields)));
+		}
+		// if a query fails, cancel the queries that haven't started and throw the first failure
+		Throwable failure = null;
+		for (final Future<List<Map<String, Object>>> q: queries) {
+			if (failure != null) {
+				q.cancel(false);
+			} else {
+				try {
+					ret.add(Uninterruptibles.getUninterruptibly(q));
+				} catch (ExecutionException ee) {
+					failure = ee.getCause();
 				}
 			}
 		}
+		if (failure != null) {
+			Throwables.propagateIfPossible(failure, WorkspaceCommunicationException.class);
+			throw new RuntimeException("Unexpected exception querying the database: " +
+					failure.getMessage(), failure);
+		}
 		return ret;
 	}
 	
+	private List<Map<String, Object>> queryVersionBatch(
+			final List<DBObject> batch,
+			final Set<String> fields)
+			throws WorkspaceCommunicationException {
+		final DBObject q = batch.size() == 1 ?
+				batch.get(0) : new BasicDBObject("$or", batch);
+		return queryCollection(versionCollection, q, fields);
+	}
+	
 	List<Map<String, Object>> queryCollection(final String collection,
 			final DBObject query, final Set<String> fields)
 			throws WorkspaceCommunicationException {
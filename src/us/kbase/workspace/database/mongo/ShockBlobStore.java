@@ -2,8 +2,14 @@ package us.kbase.workspace.database.mongo;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 import org.slf4j.LoggerFactory;
 
@@ -16,6 +22,7 @@ import us.kbase.typedobj.core.MD5;
 import us.kbase.typedobj.core.Restreamable;
 import us.kbase.workspace.database.ByteArrayFileCacheManager;
 import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.DataSource;
 import us.kbase.workspace.database.DependencyStatus;
 import us.kbase.workspace.database.exceptions.FileCacheIOException;
 import us.kbase.workspace.database.exceptions.FileCacheLimitExceededException;
@@ -34,15 +41,31 @@ public class ShockBlobStore implements BlobStore {
 	
 	private final BasicShockClient client;
 	private final DBCollection mongoCol;
+	private final BlobCompression compression;
 	
 	private static final String IDX_UNIQ = "unique";
 	
 	public ShockBlobStore(final DBCollection mongoCollection, final BasicShockClient client) {
-		if (mongoCollection == null || client == null) {
+		this(mongoCollection, client, BlobCompression.NONE);
+	}
+	
+	/** Create a Shock blob store.
+	 * @param mongoCollection the MongoDB collection in which to store the mapping of blob MD5s
+	 * to Shock nodes.
+	 * @param client the Shock client.
+	 * @param compression the codec with which to compress new blobs. Existing blobs are read
+	 * with the codec with which they were saved.
+	 */
+	public ShockBlobStore(
+			final DBCollection mongoCollection,
+			final BasicShockClient client,
+			final BlobCompression compression) {
+		if (mongoCollection == null || client == null || compression == null) {
 			throw new NullPointerException("Arguments cannot be null");
 		}
 		this.mongoCol = mongoCollection;
 		this.client = client;
+		this.compression = compression;
 		final DBObject dbo = new BasicDBObject();
 		dbo.put(Fields.SHOCK_CHKSUM, 1);
 		final DBObject opts = new BasicDBObject();
@@ -86,9 +109,12 @@ public class ShockBlobStore implements BlobStore {
 		} catch (NoSuchBlobException nb) {
 			//go ahead, need to save
 		}
-		ShockNode sn = saveNode(md5, data);
+		// Shock's md5 is of the compressed data, if compressed
+		final MessageDigest digest = getMD5Digest();
+		ShockNode sn = saveNode(md5, data, digest);
+		String expected = getStoredMD5(md5, digest);
 		int count = 1; // already saved once ^^^
-		while (!md5.getMD5().equals(sn.getFileInformation().getChecksum("md5"))) {
+		while (!expected.equals(sn.getFileInformation().getChecksum("md5"))) {
 			/* As of 18/4/2 there's a bug somewhere in the workspace or Shock such that
 			 * the data in shock is very rarely (~1/100000) appended with a MIME header, which
 			 * corrupts the data. This is a hack to fix that.
@@ -96,15 +122,16 @@ public class ShockBlobStore implements BlobStore {
 			LoggerFactory.getLogger(getClass()).error(String.format(
 					"Blob save failed with non-matching " +
 					"md5. Workspace: %s, Shock: %s",
-					md5.getMD5(), sn.getFileInformation().getChecksum("md5")));
+					expected, sn.getFileInformation().getChecksum("md5")));
 			deleteNode(sn.getId());
 			if (count >= 5) {
 				throw new BlobStoreCommunicationException(String.format(
 						"Blob save failed with non-matching " +
 						"md5 five times. Workspace: %s, Shock: %s",
-						md5.getMD5(), sn.getFileInformation().getChecksum("md5")));
+						expected, sn.getFileInformation().getChecksum("md5")));
 			}
-			sn = saveNode(md5, data);
+			sn = saveNode(md5, data, digest);
+			expected = getStoredMD5(md5, digest);
 			count++;
 		}
 		final DBObject dbo = new BasicDBObject();
@@ -112,6 +139,9 @@ public class ShockBlobStore implements BlobStore {
 		dbo.put(Fields.SHOCK_NODE, sn.getId().getId());
 		dbo.put(Fields.SHOCK_VER, sn.getVersion().getVersion());
 		dbo.put(Fields.SHOCK_SORTED, sorted);
+		if (!BlobCompression.NONE.equals(compression)) {
+			dbo.put(Fields.SHOCK_COMPRESSION, compression.getName());
+		}
 		final DBObject query = new BasicDBObject();
 		query.put(Fields.SHOCK_CHKSUM, md5.getMD5());
 		try {
@@ -124,9 +154,62 @@ public class ShockBlobStore implements BlobStore {
 		}
 	}
 
-	private ShockNode saveNode(final MD5 md5, final Restreamable data)
+	@Override
+	public Set<MD5> getExistingBlobs(final Set<MD5> md5s)
+			throws BlobStoreCommunicationException {
+		if (md5s == null) {
+			throw new NullPointerException("md5s cannot be null");
+		}
+		final Set<MD5> ret = new HashSet<>();
+		if (md5s.isEmpty()) {
+			return ret;
+		}
+		final List<String> chksums = new LinkedList<>();
+		for (final MD5 md5: md5s) {
+			chksums.add(md5.getMD5());
+		}
+		try {
+			for (final DBObject dbo: mongoCol.find(
+					new BasicDBObject(Fields.SHOCK_CHKSUM, new BasicDBObject("$in", chksums)),
+					new BasicDBObject(Fields.SHOCK_CHKSUM, 1))) {
+				ret.add(new MD5((String) dbo.get(Fields.SHOCK_CHKSUM)));
+			}
+		} catch (MongoException me) {
+			throw new BlobStoreCommunicationException(
+					"Could not read from the mongo database", me);
+		}
+		return ret;
+	}
+
+	private MessageDigest getMD5Digest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException nsae) {
+			throw new RuntimeException("There definitely should be an MD5 digest", nsae);
+		}
+	}
+	
+	// the md5 of the data as stored in Shock. The digest is reset.
+	private String getStoredMD5(final MD5 md5, final MessageDigest digest) {
+		if (BlobCompression.NONE.equals(compression)) {
+			return md5.getMD5();
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (final byte b: digest.digest()) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+	
+	private ShockNode saveNode(
+			final MD5 md5,
+			final Restreamable data,
+			final MessageDigest digest)
 			throws BlobStoreCommunicationException {
-		try (final InputStream is = data.getInputStream()) {
+		digest.reset();
+		try (final InputStream is = BlobCompression.NONE.equals(compression) ?
+				data.getInputStream() :
+				new DigestInputStream(compression.compress(data.getInputStream()), digest)) {
 			return client.addNode(is, "workspace_" + md5.getMD5(), "JSON");
 		} catch (JsonProcessingException jpe) {
 			//this should be impossible
@@ -166,6 +249,10 @@ public class ShockBlobStore implements BlobStore {
 		return ret;
 	}
 
+	private BlobCompression getCompression(final DBObject entry) {
+		return BlobCompression.fromName((String) entry.get(Fields.SHOCK_COMPRESSION));
+	}
+
 	@Override
 	public ByteArrayFileCache getBlob(final MD5 md5,
 			final ByteArrayFileCacheManager bafcMan)
@@ -174,6 +261,7 @@ public class ShockBlobStore implements BlobStore {
 			FileCacheLimitExceededException, FileCacheIOException {
 		final DBObject entry = getBlobEntry(md5);
 		final String node = (String)entry.get(Fields.SHOCK_NODE);
+		final BlobCompression comp = getCompression(entry);
 		final boolean sorted;
 		if (!entry.containsField(Fields.SHOCK_SORTED)) {
 			sorted = false;
@@ -181,7 +269,7 @@ public class ShockBlobStore implements BlobStore {
 			sorted = (Boolean)entry.get(Fields.SHOCK_SORTED);
 		}
 		try {
-			return bafcMan.createBAFC(client.getFile(new ShockNodeId(node)),
+			return bafcMan.createBAFC(comp.decompress(client.getFile(new ShockNodeId(node))),
 					true, sorted);
 		} catch (IOException ioe) {
 			if (ioe.getCause() instanceof FileCacheLimitExceededException) {
@@ -200,6 +288,32 @@ public class ShockBlobStore implements BlobStore {
 		}
 	}
 
+	@Override
+	public BlobSource getBlobSource(final MD5 md5)
+			throws BlobStoreCommunicationException, NoSuchBlobException {
+		final DBObject entry = getBlobEntry(md5);
+		final ShockNodeId node = new ShockNodeId((String)entry.get(Fields.SHOCK_NODE));
+		final BlobCompression comp = getCompression(entry);
+		final boolean sorted;
+		if (!entry.containsField(Fields.SHOCK_SORTED)) {
+			sorted = false;
+		} else {
+			sorted = (Boolean)entry.get(Fields.SHOCK_SORTED);
+		}
+		return new BlobSource(new DataSource() {
+			
+			@Override
+			public InputStream open() throws IOException {
+				try {
+					return comp.decompress(client.getFile(node));
+				} catch (ShockHttpException she) {
+					throw new IOException("Failed to retrieve shock node: " +
+							she.getLocalizedMessage(), she);
+				}
+			}
+		}, sorted);
+	}
+
 	@Override
 	public void removeBlob(final MD5 md5)
 			throws BlobStoreAuthorizationException, BlobStoreCommunicationException {
@@ -247,6 +361,24 @@ public class ShockBlobStore implements BlobStore {
 		}
 	}
 
+	/* The Shock client can't read byte ranges of a node's file, so Shock
+	 * blobs are always read in their entirety.
+	 */
+	@Override
+	public boolean supportsBlobIndexes() {
+		return false;
+	}
+
+	@Override
+	public void saveBlobIndex(final MD5 md5, final byte[] index) {
+		// indexes are not supported
+	}
+
+	@Override
+	public IndexedBlob getIndexedBlob(final MD5 md5) {
+		return null;
+	}
+
 	@Override
 	public String getExternalIdentifier(final MD5 md5) throws
 			BlobStoreCommunicationException, NoSuchBlobException {
@@ -0,0 +1,257 @@
+package us.kbase.workspace.database.mongo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.io.input.CountingInputStream;
+
+import us.kbase.typedobj.core.MD5;
+import us.kbase.typedobj.core.Restreamable;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.DataSource;
+import us.kbase.workspace.database.DependencyStatus;
+import us.kbase.workspace.database.exceptions.FileCacheIOException;
+import us.kbase.workspace.database.exceptions.FileCacheLimitExceededException;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreAuthorizationException;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreCommunicationException;
+import us.kbase.workspace.database.mongo.exceptions.NoSuchBlobException;
+import us.kbase.workspace.metrics.Metrics;
+import us.kbase.workspace.metrics.Timer;
+
+/** A blob store that records the latency and throughput of the operations of another blob
+ * store.
+ *
+ * Each operation is recorded in a timer named blobstore.&lt;method name&gt;. Saved and
+ * retrieved blob sizes are recorded as the bytes processed by the saveBlob and getBlob timers.
+ * Data streamed from a blob source is recorded in the blobstore.readBlobSource timer, from
+ * when the source is opened until the stream is closed.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class TimedBlobStore implements BlobStore {
+
+	private static final String PREFIX = "blobstore.";
+
+	private final BlobStore store;
+	private final Timer saveTimer;
+	private final Timer existsTimer;
+	private final Timer getTimer;
+	private final Timer sourceTimer;
+	private final Timer readSourceTimer;
+	private final Timer removeTimer;
+	private final Timer saveIndexTimer;
+	private final Timer getIndexedTimer;
+	private final Timer extIDTimer;
+
+	/** Create the blob store.
+	 * @param store the blob store to time.
+	 * @param metrics the registry in which to record the operations.
+	 */
+	public TimedBlobStore(final BlobStore store, final Metrics metrics) {
+		if (store == null) {
+			throw new NullPointerException("store");
+		}
+		if (metrics == null) {
+			throw new NullPointerException("metrics");
+		}
+		this.store = store;
+		saveTimer = metrics.getTimer(PREFIX + "saveBlob");
+		existsTimer = metrics.getTimer(PREFIX + "getExistingBlobs");
+		getTimer = metrics.getTimer(PREFIX + "getBlob");
+		sourceTimer = metrics.getTimer(PREFIX + "getBlobSource");
+		readSourceTimer = metrics.getTimer(PREFIX + "readBlobSource");
+		removeTimer = metrics.getTimer(PREFIX + "removeBlob");
+		saveIndexTimer = metrics.getTimer(PREFIX + "saveBlobIndex");
+		getIndexedTimer = metrics.getTimer(PREFIX + "getIndexedBlob");
+		extIDTimer = metrics.getTimer(PREFIX + "getExternalIdentifier");
+	}
+
+	@Override
+	public void saveBlob(final MD5 md5, final Restreamable data, final boolean sorted)
+			throws BlobStoreAuthorizationException, BlobStoreCommunicationException {
+		// the store may read the data more than once, so take the longest read as the size
+		final List<CountingInputStream> streams = new CopyOnWriteArrayList<>();
+		final Restreamable counted = new Restreamable() {
+
+			@Override
+			public InputStream getInputStream() {
+				final CountingInputStream cis = new CountingInputStream(data.getInputStream());
+				streams.add(cis);
+				return cis;
+			}
+		};
+		final long start = Timer.start();
+		boolean ok = false;
+		try {
+			store.saveBlob(md5, counted, sorted);
+			ok = true;
+		} finally {
+			if (ok) {
+				long size = 0;
+				for (final CountingInputStream cis: streams) {
+					size = Math.max(size, cis.getByteCount());
+				}
+				saveTimer.stop(start, size);
+			} else {
+				saveTimer.fail(start);
+			}
+		}
+	}
+
+	@Override
+	public Set<MD5> getExistingBlobs(final Set<MD5> md5s)
+			throws BlobStoreCommunicationException {
+		final long start = Timer.start();
+		boolean ok = false;
+		try {
+			final Set<MD5> ret = store.getExistingBlobs(md5s);
+			ok = true;
+			return ret;
+		} finally {
+			stop(existsTimer, start, ok);
+		}
+	}
+
+	@Override
+	public ByteArrayFileCache getBlob(final MD5 md5, final ByteArrayFileCacheManager bafcMan)
+			throws BlobStoreAuthorizationException, BlobStoreCommunicationException,
+			NoSuchBlobException, FileCacheLimitExceededException, FileCacheIOException {
+		final long start = Timer.start();
+		boolean ok = false;
+		try {
+			final ByteArrayFileCache ret = store.getBlob(md5, bafcMan);
+			getTimer.stop(start, ret.getSize());
+			ok = true;
+			return ret;
+		} finally {
+			if (!ok) {
+				getTimer.fail(start);
+			}
+		}
+	}
+
+	@Override
+	public BlobSource getBlobSource(final MD5 md5)
+			throws BlobStoreAuthorizationException, BlobStoreCommunicationException,
+			NoSuchBlobException {
+		final long start = Timer.start();
+		boolean ok = false;
+		final BlobSource source;
+		try {
+			source = store.getBlobSource(md5);
+			ok = true;
+		} finally {
+			stop(sourceTimer, start, ok);
+		}
+		final DataSource ds = source.getSource();
+		return new BlobSource(new DataSource() {
+
+			@Override
+			public InputStream open() throws IOException {
+				final long openStart = Timer.start();
+				final InputStream is;
+				try {
+					is = ds.open();
+				} catch (IOException | RuntimeException e) {
+					readSourceTimer.fail(openStart);
+					throw e;
+				}
+				return new CountingInputStream(is) {
+
+					private boolean closed = false;
+
+					@Override
+					public void close() throws IOException {
+						try {
+							super.close();
+						} finally {
+							if (!closed) {
+								closed = true;
+								readSourceTimer.stop(openStart, getByteCount());
+							}
+						}
+					}
+				};
+			}
+		}, source.isSorted());
+	}
+
+	@Override
+	public boolean supportsBlobIndexes() {
+		return store.supportsBlobIndexes();
+	}
+
+	@Override
+	public void saveBlobIndex(final MD5 md5, final byte[] index)
+			throws BlobStoreAuthorizationException, BlobStoreCommunicationException {
+		final long start = Timer.start();
+		boolean ok = false;
+		try {
+			store.saveBlobIndex(md5, index);
+			saveIndexTimer.stop(start, index.length);
+			ok = true;
+		} finally {
+			if (!ok) {
+				saveIndexTimer.fail(start);
+			}
+		}
+	}
+
+	@Override
+	public IndexedBlob getIndexedBlob(final MD5 md5)
+			throws BlobStoreAuthorizationException, BlobStoreCommunicationException {
+		final long start = Timer.start();
+		boolean ok = false;
+		try {
+			final IndexedBlob ret = store.getIndexedBlob(md5);
+			ok = true;
+			return ret;
+		} finally {
+			stop(getIndexedTimer, start, ok);
+		}
+	}
+
+	@Override
+	public void removeBlob(final MD5 md5)
+			throws BlobStoreAuthorizationException, BlobStoreCommunicationException {
+		final long start = Timer.start();
+		boolean ok = false;
+		try {
+			store.removeBlob(md5);
+			ok = true;
+		} finally {
+			stop(removeTimer, start, ok);
+		}
+	}
+
+	@Override
+	public String getExternalIdentifier(final MD5 md5)
+			throws BlobStoreCommunicationException, NoSuchBlobException {
+		final long start = Timer.start();
+		boolean ok = false;
+		try {
+			final String ret = store.getExternalIdentifier(md5);
+			ok = true;
+			return ret;
+		} finally {
+			stop(extIDTimer, start, ok);
+		}
+	}
+
+	private static void stop(final Timer timer, final long start, final boolean ok) {
+		if (ok) {
+			timer.stop(start);
+		} else {
+			timer.fail(start);
+		}
+	}
+
+	@Override
+	public List<DependencyStatus> status() {
+		return store.status();
+	}
+}
@@ -20,6 +20,7 @@ public class ReferenceGraphSearch {
 	
 	private final int maximumReferenceSearchCount;
 	private final Map<Reference, List<Reference>> paths = new HashMap<>();
+	private final Set<Reference> failed = new HashSet<>();
 	private final ReferenceGraphTopologyProvider refProvider;
 	private final boolean throwExceptionOnFail;
 	
@@ -98,8 +99,10 @@ public class ReferenceGraphSearch {
 					treeiter.remove();
 					if (tree.isPathFound()) {
 						paths.put(tree.getRoot(), tree.getPath());
-					} else if (throwExceptionOnFail) { // otherwise do nothing
+					} else if (throwExceptionOnFail) {
 						throw new ReferenceSearchFailedException(tree.getRoot());
+					} else {
+						failed.add(tree.getRoot());
 					}
 				}
 			}
@@ -129,6 +132,17 @@ public class ReferenceGraphSearch {
 		return paths.containsKey(ref);
 	}
 	
+	/** Determine if a search completed for a particular source reference without finding a
+	 * reference that meets the termination criteria. Searches that were halted because the
+	 * maximum search size was exceeded are not considered to have failed. If
+	 * throwExceptionOnFail is set to true in the constructor, this method always returns false.
+	 * @param ref the ref to check for failure.
+	 * @return true if the search for the provided ref failed, false otherwise.
+	 */
+	public boolean isSearchFailed(final Reference ref) {
+		return failed.contains(ref);
+	}
+	
 	/** Get the path found for a particular source reference.
 	 * @param ref the reference for which the path should be returned.
 	 * @return the path from a search terminating reference to the source reference, inclusive.
@@ -1,9 +1,13 @@
 package us.kbase.workspace.kbase;
 
+import java.util.concurrent.TimeUnit;
+
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 
 import us.kbase.common.mongo.GetMongoDB;
+import us.kbase.workspace.database.mongo.EventOutboxDispatcher;
+import us.kbase.workspace.listener.AsyncWorkspaceEventListener;
 
 public class AppEventListener implements ServletContextListener {
 	
@@ -14,6 +18,9 @@ public class AppEventListener implements ServletContextListener {
 	
 	@Override
 	public void contextDestroyed(ServletContextEvent arg0) {
+		// listeners may need their mongo connections to deliver queued events
+		EventOutboxDispatcher.closeAll(30, TimeUnit.SECONDS);
+		AsyncWorkspaceEventListener.closeAll(30, TimeUnit.SECONDS);
 		GetMongoDB.closeAllConnections();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,104 @@
+package us.kbase.workspace.kbase;
+
+import java.io.IOException;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/** A response wrapper that counts the bytes written to the response output stream and records
+ * the response status code.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class CountingHttpServletResponse extends HttpServletResponseWrapper {
+
+	private int status = SC_OK;
+	private CountingOutputStream out = null;
+
+	/** Create the wrapper.
+	 * @param response the response to wrap.
+	 */
+	public CountingHttpServletResponse(final HttpServletResponse response) {
+		super(response);
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() throws IOException {
+		if (out == null) {
+			out = new CountingOutputStream(super.getOutputStream());
+		}
+		return out;
+	}
+
+	@Override
+	public void setStatus(final int sc) {
+		status = sc;
+		super.setStatus(sc);
+	}
+
+	@SuppressWarnings("deprecation")
+	@Override
+	public void setStatus(final int sc, final String sm) {
+		status = sc;
+		super.setStatus(sc, sm);
+	}
+
+	@Override
+	public void sendError(final int sc) throws IOException {
+		status = sc;
+		super.sendError(sc);
+	}
+
+	@Override
+	public void sendError(final int sc, final String msg) throws IOException {
+		status = sc;
+		super.sendError(sc, msg);
+	}
+
+	/** Get the status code set on the response.
+	 * @return the status code.
+	 */
+	public int getStatusCode() {
+		return status;
+	}
+
+	/** Get the number of bytes written to the response output stream.
+	 * @return the number of bytes written.
+	 */
+	public long getByteCount() {
+		return out == null ? 0 : out.count;
+	}
+
+	private static class CountingOutputStream extends ServletOutputStream {
+
+		private final ServletOutputStream out;
+		private long count = 0;
+
+		private CountingOutputStream(final ServletOutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+}
@@ -8,8 +8,10 @@ import java.net.URL;
 import java.net.UnknownHostException;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.jongo.Jongo;
@@ -40,19 +42,28 @@ import us.kbase.typedobj.db.MongoTypeStorage;
 import us.kbase.typedobj.db.TypeDefinitionDB;
 import us.kbase.typedobj.exceptions.TypeStorageException;
 import us.kbase.workspace.database.ResourceUsageConfigurationBuilder;
+import us.kbase.workspace.database.SubsetExtractionCache;
 import us.kbase.workspace.database.Types;
 import us.kbase.workspace.database.Workspace;
 import us.kbase.workspace.database.WorkspaceDatabase;
 import us.kbase.workspace.database.exceptions.CorruptWorkspaceDBException;
+import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
 import us.kbase.workspace.database.exceptions.WorkspaceDBException;
 import us.kbase.workspace.database.mongo.BlobStore;
+import us.kbase.workspace.database.mongo.CachingBlobStore;
+import us.kbase.workspace.database.mongo.FileSystemBlobStore;
 import us.kbase.workspace.database.mongo.GridFSBlobStore;
+import us.kbase.workspace.database.mongo.EventOutbox;
+import us.kbase.workspace.database.mongo.EventOutboxDispatcher;
 import us.kbase.workspace.database.mongo.MongoWorkspaceDB;
 import us.kbase.workspace.database.mongo.ShockBlobStore;
+import us.kbase.workspace.database.mongo.TimedBlobStore;
 import us.kbase.workspace.kbase.KBaseWorkspaceConfig.ListenerConfig;
+import us.kbase.workspace.listener.AsyncWorkspaceEventListener;
 import us.kbase.workspace.listener.ListenerInitializationException;
 import us.kbase.workspace.listener.WorkspaceEventListener;
 import us.kbase.workspace.listener.WorkspaceEventListenerFactory;
+import us.kbase.workspace.metrics.Metrics;
 
 public class InitWorkspaceServer {
 	
@@ -169,9 +180,10 @@ public class InitWorkspaceServer {
 				cfg.getParamReport());
 		rep.reportInfo("Temporary file location: " + tfm.getTempDir());
 
+		final Metrics metrics = new Metrics();
 		final WorkspaceDependencies wsdeps;
 		try {
-			wsdeps = getDependencies(cfg, tfm, auth);
+			wsdeps = getDependencies(cfg, tfm, auth, metrics);
 		} catch (WorkspaceInitException wie) {
 			rep.reportFail(wie.getLocalizedMessage());
 			rep.reportFail(
@@ -180,9 +192,59 @@ public class InitWorkspaceServer {
 		}
 		rep.reportInfo(String.format("Initialized %s backend",
 				wsdeps.backendType));
+		rep.reportInfo("Save objects thread count: " + cfg.getSaveObjectsThreads());
+		rep.reportInfo("Blob write thread count: " + cfg.getBlobWriteThreads());
+		rep.reportInfo("Blob read thread count: " + cfg.getBlobReadThreads());
+		rep.reportInfo("Blob compression: " + cfg.getBlobCompression().getName());
+		rep.reportInfo(String.format("Blob cache size: memory %s bytes, disk %s bytes",
+				cfg.getBlobCacheMemorySize(), cfg.getBlobCacheDiskSize()));
+		rep.reportInfo("Subset cache size: " + cfg.getSubsetCacheSize() + " bytes");
+		rep.reportInfo("Stream returned data: " + cfg.getStreamReturnedData());
+		rep.reportInfo("Reference cache size: " + cfg.getReferenceCacheSize() + " references");
+		rep.reportInfo(String.format("Version query batch size: %s, thread count: %s",
+				cfg.getVersionQueryBatchSize(), cfg.getVersionQueryThreads()));
+		rep.reportInfo("Bulk save threshold: " + cfg.getBulkSaveThreshold() + " objects");
+		if (cfg.getServerDataMemoryLimit() > 0 || cfg.getServerDataDiskLimit() > 0) {
+			rep.reportInfo(String.format(
+					"Server data limits: memory %s bytes, disk %s bytes, disk wait %s ms",
+					cfg.getServerDataMemoryLimit(), cfg.getServerDataDiskLimit(),
+					cfg.getServerDataDiskWaitMS()));
+		}
+		if (cfg.getListenerQueueSize() > 0) {
+			rep.reportInfo(String.format(
+					"Listener queue size: %s events, batch size: %s, overflow policy: %s",
+					cfg.getListenerQueueSize(), cfg.getListenerBatchSize(),
+					cfg.getListenerOverflowPolicy().getName()));
+		}
+		if (cfg.getEventOutboxRetentionDays() > 0) {
+			rep.reportInfo(String.format("Event outbox retention: %s days, dispatch: %s",
+					cfg.getEventOutboxRetentionDays(), cfg.getEventOutboxDispatch()));
+			if (!cfg.getEventOutboxDispatch() && !cfg.getListenerConfigs().isEmpty()) {
+				rep.reportInfo("Warning - event listeners are configured but this server " +
+						"does not dispatch events from the event outbox. The listeners will " +
+						"only receive events if another server sharing the database " +
+						"dispatches them.");
+			}
+		}
 		Workspace ws = new Workspace(
-				wsdeps.mongoWS, new ResourceUsageConfigurationBuilder().build(), wsdeps.validator,
-				wsdeps.listeners);
+				wsdeps.mongoWS,
+				new ResourceUsageConfigurationBuilder()
+						.withSaveObjectsThreads(cfg.getSaveObjectsThreads())
+						.withBlobWriteThreads(cfg.getBlobWriteThreads())
+						.withBlobReadThreads(cfg.getBlobReadThreads())
+						.withSubsetCacheSize(cfg.getSubsetCacheSize())
+						.withStreamReturnedData(cfg.getStreamReturnedData())
+						.withReferenceCacheSize(cfg.getReferenceCacheSize())
+						.withVersionQueryBatchSize(cfg.getVersionQueryBatchSize())
+						.withVersionQueryThreads(cfg.getVersionQueryThreads())
+						.withBulkSaveThreshold(cfg.getBulkSaveThreshold())
+						.withServerDataMemoryLimit(cfg.getServerDataMemoryLimit())
+						.withServerDataDiskLimit(cfg.getServerDataDiskLimit())
+						.withServerDataDiskWaitMS(cfg.getServerDataDiskWaitMS())
+						.build(),
+				wsdeps.validator,
+				wsdeps.listeners,
+				metrics);
 		Types types = new Types(wsdeps.typeDB);
 		WorkspaceServerMethods wsmeth = new WorkspaceServerMethods(
 				ws, types, cfg.getHandleServiceURL(), cfg.getHandleManagerURL(),
@@ -211,7 +273,8 @@ public class InitWorkspaceServer {
 	private static WorkspaceDependencies getDependencies(
 			final KBaseWorkspaceConfig cfg,
 			final TempFilesManager tfm,
-			final ConfigurableAuthService auth)
+			final ConfigurableAuthService auth,
+			final Metrics metrics)
 			throws WorkspaceInitException {
 		
 		final WorkspaceDependencies deps = new WorkspaceDependencies();
@@ -221,10 +284,22 @@ public class InitWorkspaceServer {
 				cfg.getMongoReconnectAttempts());
 		
 		final Settings settings = getSettings(db);
-		deps.backendType = settings.isGridFSBackend() ? "GridFS" : "Shock";
+		if (settings.isGridFSBackend()) {
+			deps.backendType = "GridFS";
+		} else if (settings.isFileSystemBackend()) {
+			deps.backendType = "FileSystem";
+		} else {
+			deps.backendType = "Shock";
+		}
 		
-		final BlobStore bs = setupBlobStore(db, deps.backendType, settings.getShockUrl(),
-				settings.getShockUser(), cfg, auth);
+		// time the backend rather than the cache so the timers show the backend throughput
+		final BlobStore bs = setupBlobCache(new TimedBlobStore(setupBlobStore(db,
+				deps.backendType, settings.getShockUrl(), settings.getShockUser(), cfg, auth),
+				metrics), cfg);
+		if (bs instanceof CachingBlobStore) {
+			final CachingBlobStore cbs = (CachingBlobStore) bs;
+			metrics.registerGauge("blobstore.cache", () -> toMap(cbs.getStatistics()));
+		}
 		
 		final DB typeDB = getMongoDBInstance(cfg.getHost(),
 				settings.getTypeDatabase(), cfg.getMongoUser(),
@@ -238,33 +313,117 @@ public class InitWorkspaceServer {
 		}
 		deps.validator = new TypedObjectValidator(
 				new LocalTypeProvider(deps.typeDB));
+		final EventOutbox outbox;
 		try {
-			deps.mongoWS = new MongoWorkspaceDB(db, bs, tfm);
+			outbox = cfg.getEventOutboxRetentionDays() > 0 ?
+					new EventOutbox(db, cfg.getEventOutboxRetentionDays()) : null;
+			final MongoWorkspaceDB mongoWS = new MongoWorkspaceDB(db, bs, tfm, outbox);
+			metrics.registerGauge("database.subsetCache", () -> {
+				final SubsetExtractionCache cache = mongoWS.getSubsetExtractionCache();
+				if (cache == null) {
+					return null;
+				}
+				final Map<String, Object> ret = Metrics.toMap(cache.getStatistics());
+				ret.put("size", cache.getSize());
+				return ret;
+			});
+			deps.mongoWS = metrics.timed(WorkspaceDatabase.class, mongoWS, "database.");
 		} catch (WorkspaceDBException wde) {
 			throw new WorkspaceInitException(
 					"Error initializing the workspace database: " +
 					wde.getLocalizedMessage(), wde);
 		}
-		deps.listeners = loadListeners(cfg);
+		deps.listeners = loadListeners(cfg, outbox, metrics);
 		return deps;
 	}
 	
-	private static List<WorkspaceEventListener> loadListeners(final KBaseWorkspaceConfig cfg)
+	private static Map<String, Object> toMap(final CachingBlobStore.CacheStatistics stats) {
+		final Map<String, Object> ret = new LinkedHashMap<>();
+		ret.put("memoryHits", stats.getMemoryHits());
+		ret.put("memoryMisses", stats.getMemoryMisses());
+		ret.put("memoryEvictions", stats.getMemoryEvictions());
+		ret.put("memorySize", stats.getMemorySize());
+		ret.put("diskHits", stats.getDiskHits());
+		ret.put("diskMisses", stats.getDiskMisses());
+		ret.put("diskEvictions", stats.getDiskEvictions());
+		ret.put("diskSize", stats.getDiskSize());
+		return ret;
+	}
+	
+	/* If the outbox is enabled, every event is recorded in the outbox and delivered to each
+	 * listener by a dispatcher, if this server dispatches, so each listener receives a single
+	 * ordered stream of events from one thread. The listeners are not registered with the
+	 * workspace directly.
+	 */
+	private static List<WorkspaceEventListener> loadListeners(
+			final KBaseWorkspaceConfig cfg,
+			final EventOutbox outbox,
+			final Metrics metrics)
 			throws WorkspaceInitException {
 		final List<WorkspaceEventListener> wels = new LinkedList<>();
 		for (final ListenerConfig lc: cfg.getListenerConfigs()) {
 			final WorkspaceEventListenerFactory fac = loadFac(lc.getListenerClass());
+			final WorkspaceEventListener wel;
 			try {
-				wels.add(fac.configure(lc.getConfig()));
+				wel = fac.configure(lc.getConfig());
 			} catch (ListenerInitializationException e) {
 				throw new WorkspaceInitException(String.format(
 						"Error initializing listener %s: %s",
 						lc.getListenerClass(), e.getMessage()), e);
 			}
+			if (outbox != null) {
+				if (cfg.getEventOutboxDispatch()) {
+					startDispatcher(outbox, lc, wel, metrics);
+				}
+				continue;
+			}
+			WorkspaceEventListener direct = wel;
+			if (cfg.getListenerQueueSize() > 0) {
+				final AsyncWorkspaceEventListener async = new AsyncWorkspaceEventListener(
+						wel, cfg.getListenerQueueSize(), cfg.getListenerBatchSize(),
+						cfg.getListenerOverflowPolicy());
+				metrics.registerGauge("listener." + lc.getName() + ".queue", () -> {
+					final Map<String, Object> ret = new LinkedHashMap<>();
+					ret.put("depth", async.getQueueDepth());
+					ret.put("lag_ms", async.getLag().toMillis());
+					ret.put("delivered", async.getDeliveredCount());
+					ret.put("dropped", async.getDroppedCount());
+					ret.put("failed", async.getFailedCount());
+					return ret;
+				});
+				direct = async;
+			}
+			wels.add(direct);
+		}
+		if (outbox != null) {
+			wels.add(outbox.getRecorder());
 		}
 		return wels;
 	}
 
+	private static void startDispatcher(
+			final EventOutbox outbox,
+			final ListenerConfig lc,
+			final WorkspaceEventListener wel,
+			final Metrics metrics)
+			throws WorkspaceInitException {
+		try {
+			final EventOutboxDispatcher d = new EventOutboxDispatcher(outbox, lc.getName(), wel);
+			metrics.registerGauge("listener." + lc.getName() + ".outbox", () -> {
+				final Map<String, Object> ret = new LinkedHashMap<>();
+				ret.put("checkpoint", d.getCheckpoint());
+				ret.put("delivered", d.getDeliveredCount());
+				ret.put("failed", d.getFailedCount());
+				ret.put("skipped", d.getSkippedCount());
+				return ret;
+			});
+		} catch (WorkspaceCommunicationException e) {
+			throw new WorkspaceInitException(String.format(
+					"Error starting event outbox dispatcher for listener %s: %s",
+					lc.getListenerClass(), e.getMessage()), e);
+		}
+	}
+
 	private static WorkspaceEventListenerFactory loadFac(final String className)
 			throws WorkspaceInitException {
 		final Class<?> cls;
@@ -321,6 +480,24 @@ public class InitWorkspaceServer {
 		}
 	}
 
+	private static BlobStore setupBlobCache(
+			final BlobStore store,
+			final KBaseWorkspaceConfig cfg)
+			throws WorkspaceInitException {
+		if (cfg.getBlobCacheMemorySize() < 1 && cfg.getBlobCacheDiskSize() < 1) {
+			return store;
+		}
+		final File dir = cfg.getBlobCacheDir() == null ? null : new File(cfg.getBlobCacheDir());
+		try {
+			return new CachingBlobStore(store, cfg.getBlobCacheMemorySize(), dir,
+					cfg.getBlobCacheDiskSize());
+		} catch (IOException e) {
+			throw new WorkspaceInitException(
+					"Could not set up the blob cache directory " + dir + ": " +
+					e.getLocalizedMessage(), e);
+		}
+	}
+
 	private static BlobStore setupBlobStore(
 			final DB db,
 			final String blobStoreType,
@@ -331,7 +508,22 @@ public class InitWorkspaceServer {
 			throws WorkspaceInitException {
 		
 		if (blobStoreType.equals("GridFS")) {
-			return new GridFSBlobStore(db);
+			return new GridFSBlobStore(db, cfg.getBlobCompression());
+		}
+		if (blobStoreType.equals("FileSystem")) {
+			if (cfg.getFileSystemBackendDir() == null) {
+				throw new WorkspaceInitException(
+						"The workspace database uses the filesystem backend but the " +
+						"filesystem-backend-dir parameter is not set");
+			}
+			final File dir = new File(cfg.getFileSystemBackendDir());
+			try {
+				return new FileSystemBlobStore(dir, cfg.getBlobCompression());
+			} catch (IOException e) {
+				throw new WorkspaceInitException(
+						"Could not set up the filesystem backend directory " + dir + ": " +
+						e.getLocalizedMessage(), e);
+			}
 		}
 		if (blobStoreType.equals("Shock")) {
 			final URL shockurl;
@@ -344,8 +536,8 @@ public class InitWorkspaceServer {
 			}
 			final AuthToken token = getBackendToken(shockUserFromSettings, cfg, auth);
 			try {
-				return new ShockBlobStore(
-						db.getCollection(COL_SHOCK_NODES), new BasicShockClient(shockurl, token));
+				return new ShockBlobStore(db.getCollection(COL_SHOCK_NODES),
+						new BasicShockClient(shockurl, token), cfg.getBlobCompression());
 			} catch (InvalidShockUrlException isue) {
 				throw new WorkspaceInitException(
 						"The shock url " + shockurl + " is invalid", isue);
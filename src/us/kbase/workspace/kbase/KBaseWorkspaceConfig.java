@@ -11,6 +11,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
+import us.kbase.workspace.database.ResourceUsageConfigurationBuilder;
+import us.kbase.workspace.database.mongo.BlobCompression;
+import us.kbase.workspace.listener.AsyncWorkspaceEventListener;
+import us.kbase.workspace.listener.AsyncWorkspaceEventListener.OverflowPolicy;
+
 public class KBaseWorkspaceConfig {
 	
 	//TODO TEST unit tests
@@ -44,10 +49,50 @@ public class KBaseWorkspaceConfig {
 	private static final String LISTENER_PREFIX = "listener-";
 	private static final String LISTENER_CLASS = "-class";
 	private static final String LISTENER_CONFIG = "-config-";
+	//size of the per listener event queue, batch size, and policy when the queue is full
+	private static final String LISTENER_QUEUE_SIZE = "listener-queue-size";
+	private static final String LISTENER_BATCH_SIZE = "listener-batch-size";
+	private static final String LISTENER_OVERFLOW_POLICY = "listener-overflow-policy";
+	//days to keep events in the event outbox, 0 to disable the outbox
+	private static final String EVENT_OUTBOX_RETENTION_DAYS = "event-outbox-retention-days";
+	//whether this server delivers events from the outbox to the listeners
+	private static final String EVENT_OUTBOX_DISPATCH = "event-outbox-dispatch";
 	
 	//directory for temp files
 	private static final String TEMP_DIR = "temp-dir";
 	
+	//number of threads for processing objects in a single save call
+	private static final String SAVE_OBJECTS_THREADS = "save-objects-threads";
+	//number of threads for writing data to the blob store in a single save call
+	private static final String BLOB_WRITE_THREADS = "blob-write-threads";
+	//number of threads for reading data from the blob store in a single get call
+	private static final String BLOB_READ_THREADS = "blob-read-threads";
+	
+	//blob cache sizes in bytes and the directory for the disk cache
+	private static final String BLOB_CACHE_MEMORY_SIZE = "blob-cache-memory-size";
+	private static final String BLOB_CACHE_DISK_SIZE = "blob-cache-disk-size";
+	private static final String BLOB_CACHE_DIR = "blob-cache-dir";
+	//directory in which to store blobs when the database uses the filesystem backend
+	private static final String FILESYSTEM_BACKEND_DIR = "filesystem-backend-dir";
+	//codec for compressing new blobs - none, deflate, or deflate-fast
+	private static final String BLOB_COMPRESSION = "blob-compression";
+	//size in bytes of the cache of subsets extracted from objects
+	private static final String SUBSET_CACHE_SIZE = "subset-cache-size";
+	//stream whole objects from the blob store when returning them - set to 'true' to enable
+	private static final String STREAM_RETURNED_DATA = "stream-returned-data";
+	//maximum number of references held in each of the reference search caches
+	private static final String REFERENCE_CACHE_SIZE = "reference-cache-size";
+	//number of objects per query and number of concurrent queries when retrieving versions
+	private static final String VERSION_QUERY_BATCH_SIZE = "version-query-batch-size";
+	private static final String VERSION_QUERY_THREADS = "version-query-threads";
+	//minimum number of objects in a save_objects call to save with bulk writes
+	private static final String BULK_SAVE_THRESHOLD = "bulk-save-threshold";
+	//memory and temp disk limits in bytes for object data across all calls, 0 for no limit
+	private static final String SERVER_DATA_MEMORY_LIMIT = "server-data-memory-limit";
+	private static final String SERVER_DATA_DISK_LIMIT = "server-data-disk-limit";
+	//milliseconds to wait for disk space when the server disk limit is reached
+	private static final String SERVER_DATA_DISK_WAIT_MS = "server-data-disk-wait-ms";
+	
 	private static final List<String> REQUIRED_PARAMS = Arrays.asList(
 			HOST, DB, TEMP_DIR, GLOBUS_AUTH_URL, KBASE_AUTH_URL);
 	
@@ -61,6 +106,23 @@ public class KBaseWorkspaceConfig {
 	private final URL authURL;
 	private final URL globusURL;
 	private final int mongoReconnectAttempts;
+	private final int saveObjectsThreads;
+	private final int blobWriteThreads;
+	private final int blobReadThreads;
+	private final long blobCacheMemorySize;
+	private final long blobCacheDiskSize;
+	private final String blobCacheDir;
+	private final String fileSystemBackendDir;
+	private final BlobCompression blobCompression;
+	private final long subsetCacheSize;
+	private final boolean streamReturnedData;
+	private final int referenceCacheSize;
+	private final int versionQueryBatchSize;
+	private final int versionQueryThreads;
+	private final int bulkSaveThreshold;
+	private final long serverDataMemoryLimit;
+	private final long serverDataDiskLimit;
+	private final int serverDataDiskWaitMS;
 	private final boolean ignoreHandleService;
 	private final URL handleServiceURL;
 	private final URL handleManagerURL;
@@ -69,19 +131,31 @@ public class KBaseWorkspaceConfig {
 	private final List<String> infoMessages;
 	private final String paramReport;
 	private final List<ListenerConfig> listenerConfigs;
+	private final int listenerQueueSize;
+	private final int listenerBatchSize;
+	private final OverflowPolicy listenerOverflowPolicy;
+	private final int eventOutboxRetentionDays;
+	private final boolean eventOutboxDispatch;
 	
 	public static class ListenerConfig {
 		
+		private final String name;
 		private final String listenerClass;
 		private final Map<String, String> config;
 		
 		private ListenerConfig(
+				final String name,
 				final String listenerClass,
 				final Map<String, String> config) {
+			this.name = name;
 			this.listenerClass = listenerClass;
 			this.config = Collections.unmodifiableMap(config);
 		}
 
+		public String getName() {
+			return name;
+		}
+
 		public String getListenerClass() {
 			return listenerClass;
 		}
@@ -165,7 +239,52 @@ public class KBaseWorkspaceConfig {
 		}
 		
 		mongoReconnectAttempts = getReconnectCount(config, infoMsgs);
+		saveObjectsThreads = getPositiveInteger(config, SAVE_OBJECTS_THREADS,
+				ResourceUsageConfigurationBuilder.DEFAULT_SAVE_OBJECTS_THREADS, paramErrors);
+		blobWriteThreads = getPositiveInteger(config, BLOB_WRITE_THREADS,
+				ResourceUsageConfigurationBuilder.DEFAULT_BLOB_WRITE_THREADS, paramErrors);
+		blobReadThreads = getPositiveInteger(config, BLOB_READ_THREADS,
+				ResourceUsageConfigurationBuilder.DEFAULT_BLOB_READ_THREADS, paramErrors);
+		blobCacheMemorySize = getCacheSize(config, BLOB_CACHE_MEMORY_SIZE, paramErrors);
+		blobCacheDiskSize = getCacheSize(config, BLOB_CACHE_DISK_SIZE, paramErrors);
+		if (blobCacheDiskSize > 0 && nullOrEmpty(config.get(BLOB_CACHE_DIR))) {
+			paramErrors.add(String.format("Must provide param %s in config file if %s > 0",
+					BLOB_CACHE_DIR, BLOB_CACHE_DISK_SIZE));
+			blobCacheDir = null;
+		} else {
+			blobCacheDir = nullOrEmpty(config.get(BLOB_CACHE_DIR)) ?
+					null : config.get(BLOB_CACHE_DIR).trim();
+		}
+		fileSystemBackendDir = nullOrEmpty(config.get(FILESYSTEM_BACKEND_DIR)) ?
+				null : config.get(FILESYSTEM_BACKEND_DIR).trim();
+		blobCompression = getBlobCompression(config, paramErrors);
+		subsetCacheSize = getCacheSize(config, SUBSET_CACHE_SIZE, paramErrors);
+		final String stream = config.get(STREAM_RETURNED_DATA);
+		streamReturnedData = stream != null && "true".equals(stream.trim());
+		referenceCacheSize = (int) Math.min(Integer.MAX_VALUE,
+				getCacheSize(config, REFERENCE_CACHE_SIZE, paramErrors));
+		versionQueryBatchSize = getPositiveInteger(config, VERSION_QUERY_BATCH_SIZE,
+				ResourceUsageConfigurationBuilder.DEFAULT_VERSION_QUERY_BATCH_SIZE, paramErrors);
+		versionQueryThreads = getPositiveInteger(config, VERSION_QUERY_THREADS,
+				ResourceUsageConfigurationBuilder.DEFAULT_VERSION_QUERY_THREADS, paramErrors);
+		bulkSaveThreshold = getPositiveInteger(config, BULK_SAVE_THRESHOLD,
+				ResourceUsageConfigurationBuilder.DEFAULT_BULK_SAVE_THRESHOLD, paramErrors);
+		serverDataMemoryLimit = getCacheSize(config, SERVER_DATA_MEMORY_LIMIT, paramErrors);
+		serverDataDiskLimit = getCacheSize(config, SERVER_DATA_DISK_LIMIT, paramErrors);
+		serverDataDiskWaitMS = nullOrEmpty(config.get(SERVER_DATA_DISK_WAIT_MS)) ?
+				ResourceUsageConfigurationBuilder.DEFAULT_SERVER_DATA_DISK_WAIT_MS :
+				(int) Math.min(Integer.MAX_VALUE,
+						getCacheSize(config, SERVER_DATA_DISK_WAIT_MS, paramErrors));
 		listenerConfigs = getListenerConfigs(config, paramErrors);
+		listenerQueueSize = (int) Math.min(Integer.MAX_VALUE,
+				getCacheSize(config, LISTENER_QUEUE_SIZE, paramErrors));
+		listenerBatchSize = getPositiveInteger(config, LISTENER_BATCH_SIZE,
+				AsyncWorkspaceEventListener.DEFAULT_BATCH_SIZE, paramErrors);
+		listenerOverflowPolicy = getOverflowPolicy(config, paramErrors);
+		eventOutboxRetentionDays = (int) Math.min(Integer.MAX_VALUE,
+				getCacheSize(config, EVENT_OUTBOX_RETENTION_DAYS, paramErrors));
+		final String dispatch = config.get(EVENT_OUTBOX_DISPATCH);
+		eventOutboxDispatch = dispatch != null && "true".equals(dispatch.trim());
 		errors = Collections.unmodifiableList(paramErrors);
 		infoMessages = Collections.unmodifiableList(infoMsgs);
 		paramReport = generateParamReport(config);
@@ -188,7 +307,7 @@ public class KBaseWorkspaceConfig {
 			}
 			final Map<String, String> cfg = getListenerConfig(
 					config, listenerStart + LISTENER_CONFIG, paramErrors);
-			ret.add(new ListenerConfig(classStr, cfg));
+			ret.add(new ListenerConfig(name, classStr, cfg));
 		}
 		return Collections.unmodifiableList(ret);
 	}
@@ -282,6 +401,92 @@ public class KBaseWorkspaceConfig {
 		return recint;
 	}
 
+	private static BlobCompression getBlobCompression(
+			final Map<String, String> wsConfig,
+			final List<String> errors) {
+		final String value = wsConfig.get(BLOB_COMPRESSION);
+		if (value == null || value.trim().isEmpty()) {
+			return BlobCompression.NONE;
+		}
+		try {
+			return BlobCompression.fromName(value.trim());
+		} catch (IllegalArgumentException e) {
+			final List<String> names = new LinkedList<>();
+			for (final BlobCompression c: BlobCompression.values()) {
+				names.add(c.getName());
+			}
+			errors.add(String.format("Parameter %s must be one of %s: %s",
+					BLOB_COMPRESSION, String.join(", ", names), value));
+			return BlobCompression.NONE;
+		}
+	}
+	
+	private static OverflowPolicy getOverflowPolicy(
+			final Map<String, String> wsConfig,
+			final List<String> errors) {
+		final String value = wsConfig.get(LISTENER_OVERFLOW_POLICY);
+		if (value == null || value.trim().isEmpty()) {
+			return OverflowPolicy.BLOCK;
+		}
+		try {
+			return OverflowPolicy.fromName(value.trim());
+		} catch (IllegalArgumentException e) {
+			final List<String> names = new LinkedList<>();
+			for (final OverflowPolicy p: OverflowPolicy.values()) {
+				names.add(p.getName());
+			}
+			errors.add(String.format("Parameter %s must be one of %s: %s",
+					LISTENER_OVERFLOW_POLICY, String.join(", ", names), value));
+			return OverflowPolicy.BLOCK;
+		}
+	}
+	
+	private static int getPositiveInteger(
+			final Map<String, String> wsConfig,
+			final String configKey,
+			final int defaultValue,
+			final List<String> errors) {
+		final String value = wsConfig.get(configKey);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			final int t = Integer.parseInt(value.trim());
+			if (t < 1) {
+				errors.add("Parameter " + configKey +
+						" must be at least 1: " + value);
+			}
+			return t;
+		} catch (NumberFormatException nfe) {
+			errors.add("Couldn't parse parameter " + configKey +
+					" to an integer: " + value);
+			return defaultValue;
+		}
+	}
+	
+	private static long getCacheSize(
+			final Map<String, String> wsConfig,
+			final String configKey,
+			final List<String> errors) {
+		final String size = wsConfig.get(configKey);
+		if (size == null || size.trim().isEmpty()) {
+			return 0;
+		}
+		try {
+			final long s = Long.parseLong(size.trim());
+			if (s < 0) {
+				errors.add("Parameter " + configKey +
+						" must be at least 0: " + size);
+				return 0;
+			}
+			return s;
+		} catch (NumberFormatException nfe) {
+			errors.add("Couldn't parse parameter " + configKey +
+					" to an integer: " + size);
+			return 0;
+		}
+	}
+
 	public String getHost() {
 		return host;
 	}
@@ -322,6 +527,133 @@ public class KBaseWorkspaceConfig {
 		return mongoReconnectAttempts;
 	}
 
+	/** Get the number of threads to use when validating, relabeling, and
+	 * sorting the objects in a single save call.
+	 * @return the number of threads.
+	 */
+	public int getSaveObjectsThreads() {
+		return saveObjectsThreads;
+	}
+
+	/** Get the number of threads to use when writing data to the blob store
+	 * in a single save call.
+	 * @return the number of threads.
+	 */
+	public int getBlobWriteThreads() {
+		return blobWriteThreads;
+	}
+
+	/** Get the number of threads to use when reading data from the blob store
+	 * in a single get call.
+	 * @return the number of threads.
+	 */
+	public int getBlobReadThreads() {
+		return blobReadThreads;
+	}
+
+	/** Get the maximum size of the in memory blob cache.
+	 * @return the cache size in bytes, or 0 if the memory cache is disabled.
+	 */
+	public long getBlobCacheMemorySize() {
+		return blobCacheMemorySize;
+	}
+
+	/** Get the maximum size of the on disk blob cache.
+	 * @return the cache size in bytes, or 0 if the disk cache is disabled.
+	 */
+	public long getBlobCacheDiskSize() {
+		return blobCacheDiskSize;
+	}
+
+	/** Get the directory in which to store the disk blob cache.
+	 * @return the cache directory, or null if not provided.
+	 */
+	public String getBlobCacheDir() {
+		return blobCacheDir;
+	}
+
+	/** Get the directory in which to store blobs when the workspace database is configured
+	 * to use the filesystem backend.
+	 * @return the blob directory, or null if not provided.
+	 */
+	public String getFileSystemBackendDir() {
+		return fileSystemBackendDir;
+	}
+
+	/** Get the codec with which to compress new blobs in the blob store.
+	 * @return the compression codec.
+	 */
+	public BlobCompression getBlobCompression() {
+		return blobCompression;
+	}
+
+	/** Get the maximum size of the cache of subsets extracted from objects.
+	 * @return the cache size in bytes, or 0 if the cache is disabled.
+	 */
+	public long getSubsetCacheSize() {
+		return subsetCacheSize;
+	}
+
+	/** Get whether whole objects are streamed from the blob store when
+	 * returned to the user.
+	 * @return true if returned data is streamed.
+	 */
+	public boolean getStreamReturnedData() {
+		return streamReturnedData;
+	}
+
+	/** Get the maximum number of references held in each of the caches used
+	 * when searching for reference paths to objects.
+	 * @return the number of references, or 0 if the caches are disabled.
+	 */
+	public int getReferenceCacheSize() {
+		return referenceCacheSize;
+	}
+
+	/** Get the maximum number of objects for which versions are retrieved in a single query.
+	 * @return the number of objects per query.
+	 */
+	public int getVersionQueryBatchSize() {
+		return versionQueryBatchSize;
+	}
+
+	/** Get the number of threads to use when retrieving versions for a single method call.
+	 * @return the number of threads.
+	 */
+	public int getVersionQueryThreads() {
+		return versionQueryThreads;
+	}
+
+	/** Get the minimum number of objects in a single save for which the objects are saved to
+	 * the database with bulk writes.
+	 * @return the minimum number of objects.
+	 */
+	public int getBulkSaveThreshold() {
+		return bulkSaveThreshold;
+	}
+
+	/** Get the maximum memory to use for object data across all concurrent calls.
+	 * @return the memory limit in bytes, or 0 if there is no server wide limit.
+	 */
+	public long getServerDataMemoryLimit() {
+		return serverDataMemoryLimit;
+	}
+
+	/** Get the maximum temporary disk space to use for returned object data across all
+	 * concurrent calls.
+	 * @return the disk limit in bytes, or 0 if there is no server wide limit.
+	 */
+	public long getServerDataDiskLimit() {
+		return serverDataDiskLimit;
+	}
+
+	/** Get the maximum time a call waits for disk space when the server disk limit is reached.
+	 * @return the wait time in milliseconds.
+	 */
+	public int getServerDataDiskWaitMS() {
+		return serverDataDiskWaitMS;
+	}
+
 	public boolean ignoreHandleService() {
 		return ignoreHandleService;
 	}
@@ -342,6 +674,41 @@ public class KBaseWorkspaceConfig {
 		return listenerConfigs;
 	}
 
+	/** Get the maximum number of events queued for each listener.
+	 * @return the queue size, or 0 if events are delivered to listeners synchronously.
+	 */
+	public int getListenerQueueSize() {
+		return listenerQueueSize;
+	}
+
+	/** Get the maximum number of queued events delivered to a listener at once.
+	 * @return the batch size.
+	 */
+	public int getListenerBatchSize() {
+		return listenerBatchSize;
+	}
+
+	/** Get the action to take when an event is received and a listener's queue is full.
+	 * @return the overflow policy.
+	 */
+	public OverflowPolicy getListenerOverflowPolicy() {
+		return listenerOverflowPolicy;
+	}
+
+	/** Get the number of days events are kept in the event outbox.
+	 * @return the retention time in days, or 0 if the outbox is disabled.
+	 */
+	public int getEventOutboxRetentionDays() {
+		return eventOutboxRetentionDays;
+	}
+
+	/** Get whether this server delivers events from the event outbox to the listeners.
+	 * @return true if this server delivers outbox events.
+	 */
+	public boolean getEventOutboxDispatch() {
+		return eventOutboxDispatch;
+	}
+
 	public List<String> getErrors() {
 		return errors;
 	}
@@ -14,6 +14,7 @@ public class Settings {
 	
 	private static final String SHOCK = "shock";
 	private static final String GFS = "gridFS";
+	private static final String FS = "filesystem";
 	// settings fields
 	public static final String SET_TYPE_DB = "type_db";
 	public static final String SET_BACKEND = "backend";
@@ -28,7 +29,8 @@ public class Settings {
 			CorruptWorkspaceDBException {
 		this.shockUrl = shockUrl;
 		this.shockUser = shockUser;
-		if(!(backendType.equals(SHOCK) || backendType.equals(GFS))) {
+		if(!(backendType.equals(SHOCK) || backendType.equals(GFS) ||
+				backendType.equals(FS))) {
 			throw new CorruptWorkspaceDBException(
 					"Illegal backend type: " + backendType);
 		}
@@ -54,6 +56,10 @@ public class Settings {
 		return backendType.equals(GFS);
 	}
 	
+	public boolean isFileSystemBackend() {
+		return backendType.equals(FS);
+	}
+	
 	public String getTypeDatabase() {
 		return typeDatabase;
 	}
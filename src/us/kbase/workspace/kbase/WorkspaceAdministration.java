@@ -82,6 +82,7 @@ public class WorkspaceAdministration {
 	private static final String CREATE_WORKSPACE = "createWorkspace";
 	private static final String DELETE_WS = "deleteWorkspace";
 	private static final String UNDELETE_WS = "undeleteWorkspace";
+	private static final String GET_METRICS = "getMetrics";
 
 	private final static ObjectMapper MAPPER = new ObjectMapper()
 			.registerModule(new JacksonTupleModule());
@@ -308,6 +309,10 @@ public class WorkspaceAdministration {
 			getLogger().info(LIST_WORKSPACE_OWNERS);
 			return usersToStrings(ws.getAllWorkspaceOwners());
 		}
+		if (GET_METRICS.equals(fn)) {
+			getLogger().info(GET_METRICS);
+			return ws.getMetrics().getSnapshot();
+		}
 		if (GRANT_MODULE_OWNERSHIP.equals(fn)) {
 			final GrantModuleOwnershipParams params = getParams(cmd,
 					GrantModuleOwnershipParams.class);
@@ -69,6 +69,7 @@ import us.kbase.workspace.database.ObjectIdentifier;
 import us.kbase.workspace.database.ObjectInformation;
 import us.kbase.workspace.database.Permission;
 import us.kbase.workspace.database.Provenance;
+import us.kbase.workspace.database.Reference;
 import us.kbase.workspace.database.Types;
 import us.kbase.workspace.database.User;
 import us.kbase.workspace.database.UserWorkspaceIDs;
@@ -597,6 +598,8 @@ public class WorkspaceServerMethods {
 			.withShowDeleted(longToBoolean(params.getShowDeleted()))
 			.withShowOnlyDeleted(longToBoolean(params.getShowOnlyDeleted()))
 			.withShowAllVersions(longToBoolean(params.getShowAllVersions()))
+			.withStartAfter(params.getStartafter() == null ? null :
+					new Reference(params.getStartafter()))
 			.withIncludeMetaData(longToBoolean(params.getIncludeMetadata()))
 			.withExcludeGlobal(longToBoolean(params.getExcludeGlobal()))
 			.withLimit(longToInt(params.getLimit(), "Limit", -1));
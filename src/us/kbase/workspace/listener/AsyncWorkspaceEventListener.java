@@ -0,0 +1,481 @@
+package us.kbase.workspace.listener;
+
+import static us.kbase.workspace.database.Util.nonNull;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+
+import us.kbase.workspace.database.ObjectInformation;
+import us.kbase.workspace.database.Permission;
+import us.kbase.workspace.database.Util;
+import us.kbase.workspace.database.WorkspaceUser;
+
+/** A workspace event listener that queues events and delivers them to another listener in a
+ * separate thread, so that slow or stalled listeners do not delay workspace operations.
+ *
+ * Events are delivered in the order they were received. If the wrapped listener is a
+ * {@link BatchWorkspaceEventListener}, queued events are delivered in batches of up to the
+ * configured batch size; otherwise they are delivered one at a time. Exceptions thrown by the
+ * wrapped listener are logged and the event is discarded.
+ *
+ * When the queue is full, the {@link OverflowPolicy} determines whether the caller waits or an
+ * event is discarded.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class AsyncWorkspaceEventListener implements WorkspaceEventListener {
+
+	/** The default maximum number of events delivered to a batch listener at once. */
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	private static final int POLL_INTERVAL_MS = 100;
+	private static final int DROP_LOG_INTERVAL = 1000;
+
+	private static final Set<AsyncWorkspaceEventListener> OPEN = ConcurrentHashMap.newKeySet();
+
+	/** The action to take when an event is received and the queue is full. */
+	public static enum OverflowPolicy {
+
+		/** Wait for space in the queue. No events are lost, but the workspace operation
+		 * generating the event is delayed until the listener catches up.
+		 */
+		BLOCK ("block"),
+		/** Discard the new event. */
+		DROP_NEWEST ("drop-newest"),
+		/** Discard the oldest event in the queue. */
+		DROP_OLDEST ("drop-oldest");
+
+		private final String name;
+
+		private OverflowPolicy(final String name) {
+			this.name = name;
+		}
+
+		/** Get the name of the policy.
+		 * @return the policy name.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/** Get a policy by its name.
+		 * @param name the name of the policy.
+		 * @return the policy.
+		 */
+		public static OverflowPolicy fromName(final String name) {
+			for (final OverflowPolicy p: values()) {
+				if (p.name.equals(name)) {
+					return p;
+				}
+			}
+			throw new IllegalArgumentException("Unknown overflow policy: " + name);
+		}
+	}
+
+	private static class QueuedEvent {
+
+		private final WorkspaceEvent event;
+		private final long enqueued = System.nanoTime();
+
+		private QueuedEvent(final WorkspaceEvent event) {
+			this.event = event;
+		}
+	}
+
+	private final WorkspaceEventListener listener;
+	private final int batchSize;
+	private final OverflowPolicy policy;
+	private final ArrayBlockingQueue<QueuedEvent> queue;
+	private final ExecutorService dispatcher;
+	private final AtomicLong delivered = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private volatile boolean closed = false;
+	// true once the delivery thread has stopped taking events from the queue
+	private volatile boolean stopped = false;
+	// held when events are delivered from the queue by any thread other than the delivery thread
+	private final Object deliveryLock = new Object();
+
+	/** Create the listener and start the delivery thread.
+	 * @param listener the listener to which events will be delivered.
+	 * @param queueSize the maximum number of events that may be queued.
+	 * @param batchSize the maximum number of events delivered to a
+	 * {@link BatchWorkspaceEventListener} at once.
+	 * @param policy the action to take when an event is received and the queue is full.
+	 */
+	public AsyncWorkspaceEventListener(
+			final WorkspaceEventListener listener,
+			final int queueSize,
+			final int batchSize,
+			final OverflowPolicy policy) {
+		nonNull(listener, "listener");
+		nonNull(policy, "policy");
+		if (queueSize < 1) {
+			throw new IllegalArgumentException("queueSize must be greater than zero");
+		}
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be greater than zero");
+		}
+		this.listener = listener;
+		this.batchSize = batchSize;
+		this.policy = policy;
+		queue = new ArrayBlockingQueue<>(queueSize);
+		dispatcher = Util.newDaemonThreadPool(1,
+				"listener-" + listener.getClass().getSimpleName() + "-%d");
+		dispatcher.execute(() -> dispatchLoop());
+		OPEN.add(this);
+	}
+
+	/** Get the listener to which events are delivered.
+	 * @return the listener.
+	 */
+	public WorkspaceEventListener getListener() {
+		return listener;
+	}
+
+	/** Get the number of events waiting to be delivered.
+	 * @return the queue depth.
+	 */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	/** Get how far behind the wrapped listener is, measured as the time the oldest event
+	 * waiting in the queue has been waiting.
+	 * @return the lag, or zero if the queue is empty.
+	 */
+	public Duration getLag() {
+		final QueuedEvent e = queue.peek();
+		return e == null ? Duration.ZERO : Duration.ofNanos(System.nanoTime() - e.enqueued);
+	}
+
+	/** Get the number of events delivered to the wrapped listener, including events for which
+	 * the listener threw an exception.
+	 * @return the number of delivered events.
+	 */
+	public long getDeliveredCount() {
+		return delivered.get();
+	}
+
+	/** Get the number of events discarded because the queue was full.
+	 * @return the number of discarded events.
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/** Get the number of events for which the wrapped listener threw an exception. For batch
+	 * listeners, all the events in a failed batch are counted.
+	 * @return the number of failed events.
+	 */
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/** Stop accepting events and wait for the queued events to be delivered. Events received
+	 * after this method is called are queued behind the events already in the queue until the
+	 * delivery thread stops, after which any remaining queued events and then the new event are
+	 * delivered in the calling thread.
+	 * @param timeout the maximum time to wait.
+	 * @param unit the unit of the timeout.
+	 * @return true if all queued events were delivered, false if the timeout elapsed first.
+	 */
+	public boolean close(final long timeout, final TimeUnit unit) {
+		closed = true;
+		OPEN.remove(this);
+		dispatcher.shutdown();
+		boolean drained;
+		try {
+			drained = dispatcher.awaitTermination(timeout, unit);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			drained = false;
+		}
+		if (!drained) {
+			LoggerFactory.getLogger(getClass()).error(
+					"Timed out delivering events to listener {}. {} events were not delivered",
+					listener.getClass().getName(), queue.size());
+		}
+		return drained;
+	}
+
+	/** Close all open asynchronous listeners, waiting for each to deliver its queued events.
+	 * Intended to be called when the server shuts down.
+	 * @param timeout the maximum time to wait for each listener.
+	 * @param unit the unit of the timeout.
+	 */
+	public static void closeAll(final long timeout, final TimeUnit unit) {
+		for (final AsyncWorkspaceEventListener l: new ArrayList<>(OPEN)) {
+			l.close(timeout, unit);
+		}
+	}
+
+	private void dispatchLoop() {
+		try {
+			final List<QueuedEvent> batch = new ArrayList<>(batchSize);
+			while (true) {
+				final QueuedEvent first;
+				try {
+					first = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					return;
+				}
+				if (first == null) {
+					if (closed) {
+						return;
+					}
+					continue;
+				}
+				batch.add(first);
+				if (listener instanceof BatchWorkspaceEventListener) {
+					queue.drainTo(batch, batchSize - 1);
+				}
+				deliver(batch);
+				batch.clear();
+			}
+		} finally {
+			stopped = true;
+			// events may have been queued after the last poll. Callers that queued an event
+			// and then saw the stop flag deliver the queue themselves.
+			deliverQueued(null);
+		}
+	}
+
+	/* Deliver all queued events, and then the event, if any, in order. Only called once the
+	 * delivery thread has stopped.
+	 */
+	private void deliverQueued(final WorkspaceEvent event) {
+		synchronized (deliveryLock) {
+			final List<QueuedEvent> events = new ArrayList<>();
+			queue.drainTo(events);
+			if (event != null) {
+				events.add(new QueuedEvent(event));
+			}
+			final int step = listener instanceof BatchWorkspaceEventListener ? batchSize : 1;
+			for (int i = 0; i < events.size(); i += step) {
+				deliver(events.subList(i, Math.min(i + step, events.size())));
+			}
+		}
+	}
+
+	private void deliver(final List<QueuedEvent> batch) {
+		if (!(listener instanceof BatchWorkspaceEventListener)) {
+			deliver(batch.get(0).event);
+		} else {
+			final List<WorkspaceEvent> events = new ArrayList<>(batch.size());
+			for (final QueuedEvent e: batch) {
+				events.add(e.event);
+			}
+			try {
+				((BatchWorkspaceEventListener) listener).handleEvents(events);
+			} catch (Throwable t) {
+				failed.addAndGet(events.size());
+				LoggerFactory.getLogger(getClass()).error(String.format(
+						"Listener %s failed to handle a batch of %s events",
+						listener.getClass().getName(), events.size()), t);
+			}
+			delivered.addAndGet(events.size());
+		}
+	}
+
+	private void deliver(final WorkspaceEvent event) {
+		try {
+			event.dispatch(listener);
+		} catch (Throwable t) {
+			failed.incrementAndGet();
+			LoggerFactory.getLogger(getClass()).error(String.format(
+					"Listener %s failed to handle an event", listener.getClass().getName()), t);
+		}
+		delivered.incrementAndGet();
+	}
+
+	private void enqueue(final WorkspaceEvent event) {
+		if (stopped) {
+			deliverQueued(event);
+			return;
+		}
+		final QueuedEvent e = new QueuedEvent(event);
+		switch (policy) {
+			case BLOCK:
+				if (!offerUntilStopped(e)) {
+					deliverQueued(event);
+					return;
+				}
+				break;
+			case DROP_NEWEST:
+				if (!queue.offer(e)) {
+					dropped();
+				}
+				break;
+			case DROP_OLDEST:
+				while (!queue.offer(e)) {
+					if (queue.poll() != null) {
+						dropped();
+					}
+				}
+				break;
+			default:
+				throw new IllegalStateException("Unexpected overflow policy: " + policy);
+		}
+		if (stopped) {
+			// the delivery thread may have stopped before the event was queued
+			deliverQueued(null);
+		}
+	}
+
+	/* Wait for space in the queue. Returns false without queuing the event if the delivery
+	 * thread stops, since the queue will then never drain.
+	 */
+	private boolean offerUntilStopped(final QueuedEvent e) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					if (queue.offer(e, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+						return true;
+					}
+				} catch (InterruptedException ie) {
+					interrupted = true;
+				}
+				if (stopped) {
+					return false;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void dropped() {
+		final long count = dropped.incrementAndGet();
+		// don't flood the logs when the listener is stalled
+		if (count == 1 || count % DROP_LOG_INTERVAL == 0) {
+			LoggerFactory.getLogger(getClass()).error(
+					"Event queue for listener {} is full, dropped event. Total dropped: {}",
+					listener.getClass().getName(), count);
+		}
+	}
+
+	@Override
+	public void createWorkspace(final long id, final Instant time) {
+		enqueue(l -> l.createWorkspace(id, time));
+	}
+
+	@Override
+	public void cloneWorkspace(final long id, final boolean isPublic, final Instant time) {
+		enqueue(l -> l.cloneWorkspace(id, isPublic, time));
+	}
+
+	@Override
+	public void setWorkspaceMetadata(final long id, final Instant time) {
+		enqueue(l -> l.setWorkspaceMetadata(id, time));
+	}
+
+	@Override
+	public void lockWorkspace(final long id, final Instant time) {
+		enqueue(l -> l.lockWorkspace(id, time));
+	}
+
+	@Override
+	public void renameWorkspace(final long id, final String newname, final Instant time) {
+		enqueue(l -> l.renameWorkspace(id, newname, time));
+	}
+
+	@Override
+	public void setGlobalPermission(
+			final long id,
+			final Permission permission,
+			final Instant time) {
+		enqueue(l -> l.setGlobalPermission(id, permission, time));
+	}
+
+	@Override
+	public void setPermissions(
+			final long id,
+			final Permission permission,
+			final List<WorkspaceUser> users,
+			final Instant time) {
+		final List<WorkspaceUser> u = users == null ? null : new ArrayList<>(users);
+		enqueue(l -> l.setPermissions(id, permission, u, time));
+	}
+
+	@Override
+	public void setWorkspaceDescription(final long id, final Instant time) {
+		enqueue(l -> l.setWorkspaceDescription(id, time));
+	}
+
+	@Override
+	public void setWorkspaceOwner(
+			final long id,
+			final WorkspaceUser newUser,
+			final Optional<String> newName,
+			final Instant time) {
+		enqueue(l -> l.setWorkspaceOwner(id, newUser, newName, time));
+	}
+
+	@Override
+	public void setWorkspaceDeleted(
+			final long id,
+			final boolean delete,
+			final long maxObjectID,
+			final Instant time) {
+		enqueue(l -> l.setWorkspaceDeleted(id, delete, maxObjectID, time));
+	}
+
+	@Override
+	public void renameObject(
+			final long workspaceId,
+			final long objectId,
+			final String newName,
+			final Instant time) {
+		enqueue(l -> l.renameObject(workspaceId, objectId, newName, time));
+	}
+
+	@Override
+	public void revertObject(final ObjectInformation object, final boolean isPublic) {
+		enqueue(l -> l.revertObject(object, isPublic));
+	}
+
+	@Override
+	public void setObjectDeleted(
+			final long workspaceId,
+			final long objectId,
+			final boolean delete,
+			final Instant time) {
+		enqueue(l -> l.setObjectDeleted(workspaceId, objectId, delete, time));
+	}
+
+	@Override
+	public void copyObject(final ObjectInformation object, final boolean isPublic) {
+		enqueue(l -> l.copyObject(object, isPublic));
+	}
+
+	@Override
+	public void copyObject(
+			final long workspaceId,
+			final long objectId,
+			final int latestVersion,
+			final Instant time,
+			final boolean isPublic) {
+		enqueue(l -> l.copyObject(workspaceId, objectId, latestVersion, time, isPublic));
+	}
+
+	@Override
+	public void saveObject(final ObjectInformation object, final boolean isPublic) {
+		enqueue(l -> l.saveObject(object, isPublic));
+	}
+}
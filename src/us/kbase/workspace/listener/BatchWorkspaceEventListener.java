@@ -0,0 +1,21 @@
+package us.kbase.workspace.listener;
+
+import java.util.List;
+
+/** A workspace event listener that can process multiple events at once, for example with a
+ * single bulk write to a database.
+ * 
+ * When wrapped in an {@link AsyncWorkspaceEventListener}, queued events are delivered to
+ * {@link #handleEvents(List)} in batches rather than to the individual event methods.
+ * @author gaprice@lbl.gov
+ *
+ */
+public interface BatchWorkspaceEventListener extends WorkspaceEventListener {
+
+	/** Process a batch of events. Each event may be passed to
+	 * {@link WorkspaceEvent#dispatch(WorkspaceEventListener)} to call the listener method
+	 * corresponding to the event.
+	 * @param events the events, in the order in which they occurred.
+	 */
+	void handleEvents(List<WorkspaceEvent> events);
+}
@@ -0,0 +1,17 @@
+package us.kbase.workspace.listener;
+
+/** A workspace event that has been recorded for later delivery to a listener.
+ * @author gaprice@lbl.gov
+ *
+ * @see AsyncWorkspaceEventListener
+ * @see BatchWorkspaceEventListener
+ *
+ */
+public interface WorkspaceEvent {
+
+	/** Deliver the event to a listener by calling the listener method corresponding to the
+	 * event.
+	 * @param listener the listener to which the event will be delivered.
+	 */
+	void dispatch(WorkspaceEventListener listener);
+}
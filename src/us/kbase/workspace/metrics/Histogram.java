@@ -0,0 +1,127 @@
+package us.kbase.workspace.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** A thread safe histogram of non-negative long values, for example latencies in nanoseconds
+ * or sizes in bytes.
+ *
+ * Values are counted in logarithmic buckets - each power of two is split into four
+ * equally sized buckets - so the histogram uses a small, fixed amount of memory regardless
+ * of how many values are recorded. Percentiles are reported as the upper bound of the
+ * bucket containing the percentile, and so overestimate the true value by at most 25%.
+ * Values are never removed, so the statistics cover the lifetime of the histogram.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/* values less than SUB_BUCKETS get a bucket each, and the largest non-negative long has
+	 * an exponent of 62.
+	 */
+	private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/** Record a value.
+	 * @param value the value. Negative values are recorded as zero.
+	 */
+	public void update(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		buckets.incrementAndGet(getBucket(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long m = max.get();
+		while (value > m && !max.compareAndSet(m, value)) {
+			m = max.get();
+		}
+	}
+
+	private static int getBucket(final long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		final int exp = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		final int sub = (int) (value >>> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exp - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	// the largest value that falls in the bucket
+	private static long getBucketUpperBound(final int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		final int exp = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		final long sub = bucket % SUB_BUCKETS;
+		final long lower = (SUB_BUCKETS + sub) << (exp - SUB_BUCKET_BITS);
+		final long width = 1L << (exp - SUB_BUCKET_BITS);
+		// add the width last to avoid overflow for the topmost bucket
+		return lower + (width - 1);
+	}
+
+	/** Get the number of values recorded.
+	 * @return the value count.
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/** Get the sum of the values recorded.
+	 * @return the sum of the values.
+	 */
+	public long getSum() {
+		return sum.get();
+	}
+
+	/** Get the largest value recorded.
+	 * @return the maximum value, or zero if no values have been recorded.
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/** Get the mean of the values recorded.
+	 * @return the mean value, or zero if no values have been recorded.
+	 */
+	public double getMean() {
+		final long c = count.get();
+		return c == 0 ? 0 : sum.get() / (double) c;
+	}
+
+	/** Get an estimate of a percentile of the recorded values. The estimate is never greater
+	 * than the maximum value recorded.
+	 * @param percentile the percentile, from 0 to 100.
+	 * @return the estimated percentile, or zero if no values have been recorded.
+	 */
+	public long getPercentile(final double percentile) {
+		if (percentile < 0 || percentile > 100 || Double.isNaN(percentile)) {
+			throw new IllegalArgumentException("percentile must be between 0 and 100");
+		}
+		final long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long seen = 0;
+		int bucket = 0;
+		for (; bucket < BUCKETS; bucket++) {
+			seen += counts[bucket];
+			if (seen >= rank) {
+				break;
+			}
+		}
+		return Math.min(getBucketUpperBound(bucket), max.get());
+	}
+}
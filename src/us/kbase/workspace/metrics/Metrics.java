@@ -0,0 +1,205 @@
+package us.kbase.workspace.metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import com.google.common.cache.CacheStats;
+
+/** A registry of named timers, histograms, and gauges describing the performance of a
+ * workspace instance.
+ *
+ * Timers and histograms are created on first use and accumulate statistics for the lifetime of
+ * the registry. Gauges are registered with a function that is called each time a
+ * snapshot of the metrics is taken.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class Metrics {
+
+	private static final double NANOS_PER_MS = 1000000.0;
+
+	private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Supplier<?>> gauges = new ConcurrentHashMap<>();
+
+	/** Get a timer, creating it if necessary.
+	 * @param name the name of the timer.
+	 * @return the timer.
+	 */
+	public Timer getTimer(final String name) {
+		checkName(name);
+		final Timer t = timers.get(name);
+		if (t != null) {
+			return t;
+		}
+		timers.putIfAbsent(name, new Timer());
+		return timers.get(name);
+	}
+
+	/** Get a histogram, creating it if necessary.
+	 * @param name the name of the histogram.
+	 * @return the histogram.
+	 */
+	public Histogram getHistogram(final String name) {
+		checkName(name);
+		final Histogram h = histograms.get(name);
+		if (h != null) {
+			return h;
+		}
+		histograms.putIfAbsent(name, new Histogram());
+		return histograms.get(name);
+	}
+
+	/** Register a gauge, replacing any gauge with the same name.
+	 * @param name the name of the gauge.
+	 * @param gauge a function returning the current value of the gauge. The value must be
+	 * serializable to JSON.
+	 */
+	public void registerGauge(final String name, final Supplier<?> gauge) {
+		checkName(name);
+		if (gauge == null) {
+			throw new NullPointerException("gauge");
+		}
+		gauges.put(name, gauge);
+	}
+
+	private static void checkName(final String name) {
+		if (name == null || name.trim().isEmpty()) {
+			throw new IllegalArgumentException("name cannot be null or whitespace only");
+		}
+	}
+
+	/** Get a snapshot of the current metrics, suitable for serializing to JSON.
+	 *
+	 * The snapshot contains three maps, keyed by metric name and sorted by name:
+	 * <ul>
+	 * <li>timers - the operation count, error count, bytes processed, and the total, mean, 50th,
+	 * 95th, and 99th percentile, and maximum latencies in milliseconds.</li>
+	 * <li>histograms - the count, sum, mean, 50th, 95th, and 99th percentile, and maximum of the
+	 * recorded values.</li>
+	 * <li>gauges - the current value of each gauge. If a gauge throws an exception, the value is
+	 * the exception message.</li>
+	 * </ul>
+	 * @return the metrics snapshot.
+	 */
+	public Map<String, Object> getSnapshot() {
+		final Map<String, Object> tret = new TreeMap<>();
+		for (final String name: timers.keySet()) {
+			final Timer t = timers.get(name);
+			final Histogram h = t.getLatency();
+			final Map<String, Object> m = new LinkedHashMap<>();
+			m.put("count", t.getCount());
+			m.put("errors", t.getErrors());
+			m.put("bytes", t.getBytes());
+			m.put("total_ms", h.getSum() / NANOS_PER_MS);
+			m.put("mean_ms", h.getMean() / NANOS_PER_MS);
+			m.put("p50_ms", h.getPercentile(50) / NANOS_PER_MS);
+			m.put("p95_ms", h.getPercentile(95) / NANOS_PER_MS);
+			m.put("p99_ms", h.getPercentile(99) / NANOS_PER_MS);
+			m.put("max_ms", h.getMax() / NANOS_PER_MS);
+			tret.put(name, m);
+		}
+		final Map<String, Object> hret = new TreeMap<>();
+		for (final String name: histograms.keySet()) {
+			final Histogram h = histograms.get(name);
+			final Map<String, Object> m = new LinkedHashMap<>();
+			m.put("count", h.getCount());
+			m.put("sum", h.getSum());
+			m.put("mean", h.getMean());
+			m.put("p50", h.getPercentile(50));
+			m.put("p95", h.getPercentile(95));
+			m.put("p99", h.getPercentile(99));
+			m.put("max", h.getMax());
+			hret.put(name, m);
+		}
+		final Map<String, Object> gret = new TreeMap<>();
+		for (final String name: gauges.keySet()) {
+			Object value;
+			try {
+				value = gauges.get(name).get();
+			} catch (RuntimeException e) {
+				value = "Error getting gauge value: " + e.getMessage();
+			}
+			gret.put(name, value);
+		}
+		final Map<String, Object> ret = new LinkedHashMap<>();
+		ret.put("timers", tret);
+		ret.put("histograms", hret);
+		ret.put("gauges", gret);
+		return ret;
+	}
+
+	/** Convert cache statistics to a map suitable for use as a gauge value.
+	 * @param stats the cache statistics, or null if the cache is disabled.
+	 * @return the cache hit, miss, and eviction counts, or null if the statistics are null.
+	 */
+	public static Map<String, Object> toMap(final CacheStats stats) {
+		if (stats == null) {
+			return null;
+		}
+		final Map<String, Object> ret = new LinkedHashMap<>();
+		ret.put("hits", stats.hitCount());
+		ret.put("misses", stats.missCount());
+		ret.put("evictions", stats.evictionCount());
+		return ret;
+	}
+
+	/** Wrap an object such that every call to a method of an interface it implements is timed.
+	 * Each method is recorded in a timer named with the prefix followed by the method name.
+	 * Calls that throw an exception are recorded as failures.
+	 * @param <T> the type of the interface.
+	 * @param iface the interface to time.
+	 * @param target the object to wrap.
+	 * @param prefix the prefix for the timer names.
+	 * @return the wrapped object.
+	 */
+	public <T> T timed(final Class<T> iface, final T target, final String prefix) {
+		if (iface == null || target == null || prefix == null) {
+			throw new NullPointerException("iface, target, and prefix cannot be null");
+		}
+		final Map<Method, Timer> methodTimers = new ConcurrentHashMap<>();
+		final InvocationHandler handler = new InvocationHandler() {
+
+			@Override
+			public Object invoke(final Object proxy, final Method method, final Object[] args)
+					throws Throwable {
+				if (method.getDeclaringClass().equals(Object.class)) {
+					return invokeTarget(method, args);
+				}
+				Timer t = methodTimers.get(method);
+				if (t == null) {
+					t = getTimer(prefix + method.getName());
+					methodTimers.put(method, t);
+				}
+				final long start = Timer.start();
+				try {
+					final Object ret = invokeTarget(method, args);
+					t.stop(start);
+					return ret;
+				} catch (Throwable e) {
+					t.fail(start);
+					throw e;
+				}
+			}
+
+			private Object invokeTarget(final Method method, final Object[] args)
+					throws Throwable {
+				try {
+					return method.invoke(target, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		};
+		return iface.cast(Proxy.newProxyInstance(
+				iface.getClassLoader(), new Class<?>[] {iface}, handler));
+	}
+}
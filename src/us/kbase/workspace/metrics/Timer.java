@@ -0,0 +1,92 @@
+package us.kbase.workspace.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Records the latency of, the number of failures of, and the number of bytes processed by
+ * an operation.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class Timer {
+
+	private final Histogram latency = new Histogram();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+
+	/** Get the current time for use as the start time of an operation.
+	 * @return the current time in nanoseconds.
+	 */
+	public static long start() {
+		return System.nanoTime();
+	}
+
+	/** Record the completion of an operation.
+	 * @param startNanos the start time of the operation as returned by {@link #start()}.
+	 */
+	public void stop(final long startNanos) {
+		latency.update(System.nanoTime() - startNanos);
+	}
+
+	/** Record the completion of an operation that processed data.
+	 * @param startNanos the start time of the operation as returned by {@link #start()}.
+	 * @param bytes the number of bytes processed by the operation.
+	 */
+	public void stop(final long startNanos, final long bytes) {
+		stop(startNanos);
+		addBytes(bytes);
+	}
+
+	/** Record the completion of an operation that failed.
+	 * @param startNanos the start time of the operation as returned by {@link #start()}.
+	 */
+	public void fail(final long startNanos) {
+		stop(startNanos);
+		errors.incrementAndGet();
+	}
+
+	/** Record bytes processed by an operation.
+	 * @param bytes the number of bytes. Values less than 1 are ignored.
+	 */
+	public void addBytes(final long bytes) {
+		if (bytes > 0) {
+			this.bytes.addAndGet(bytes);
+		}
+	}
+
+	/** Get the histogram of operation latencies in nanoseconds.
+	 * @return the latency histogram.
+	 */
+	public Histogram getLatency() {
+		return latency;
+	}
+
+	/** Get the number of operations recorded, including failures.
+	 * @return the operation count.
+	 */
+	public long getCount() {
+		return latency.getCount();
+	}
+
+	/** Get the number of failed operations recorded.
+	 * @return the failure count.
+	 */
+	public long getErrors() {
+		return errors.get();
+	}
+
+	/** Get the total number of bytes processed by the recorded operations.
+	 * @return the byte count.
+	 */
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	/** Get the total time spent in the recorded operations.
+	 * @param unit the unit of the returned time.
+	 * @return the total time.
+	 */
+	public long getTotalTime(final TimeUnit unit) {
+		return unit.convert(latency.getSum(), TimeUnit.NANOSECONDS);
+	}
+}
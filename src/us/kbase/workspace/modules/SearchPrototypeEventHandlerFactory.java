@@ -3,6 +3,7 @@ package us.kbase.workspace.modules;
 import java.io.IOException;
 import java.net.UnknownHostException;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -22,8 +23,10 @@ import us.kbase.common.mongo.exceptions.MongoAuthException;
 import us.kbase.workspace.database.ObjectInformation;
 import us.kbase.workspace.database.Permission;
 import us.kbase.workspace.database.WorkspaceUser;
+import us.kbase.workspace.listener.BatchWorkspaceEventListener;
 import us.kbase.workspace.listener.ListenerInitializationException;
 import us.kbase.workspace.listener.WorkspaceEventListener;
+import us.kbase.workspace.listener.WorkspaceEvent;
 import us.kbase.workspace.listener.WorkspaceEventListenerFactory;
 
 /** A prototype event handler that emits workspace events in a format understood by the KBase
@@ -53,7 +56,7 @@ public class SearchPrototypeEventHandlerFactory implements WorkspaceEventListene
 		return new SearthPrototypeEventHandler(mongoHost, mongoDatabase, mongoUser, mongoPwd);
 	}
 	
-	public class SearthPrototypeEventHandler implements WorkspaceEventListener {
+	public class SearthPrototypeEventHandler implements BatchWorkspaceEventListener {
 		
 		private static final String TRUE = "true";
 		private static final String IS_TEMP_NARRATIVE = "is_temporary";
@@ -73,6 +76,8 @@ public class SearchPrototypeEventHandlerFactory implements WorkspaceEventListene
 		private static final String COLLECTION = "searchEvents";
 		
 		private final DB db;
+		// non-null while handling a batch of events in the current thread
+		private final ThreadLocal<List<DBObject>> batch = new ThreadLocal<>();
 
 		public SearthPrototypeEventHandler(
 				final String mongoHost,
@@ -115,6 +120,29 @@ public class SearchPrototypeEventHandlerFactory implements WorkspaceEventListene
 			}
 		}
 
+		@Override
+		public void handleEvents(final List<WorkspaceEvent> events) {
+			final List<DBObject> dobjs = new ArrayList<>();
+			batch.set(dobjs);
+			try {
+				for (final WorkspaceEvent e: events) {
+					e.dispatch(this);
+				}
+			} finally {
+				batch.remove();
+			}
+			if (dobjs.isEmpty()) {
+				return;
+			}
+			try {
+				db.getCollection(COLLECTION).insert(dobjs);
+			} catch (MongoException me) {
+				LoggerFactory.getLogger(getClass()).error(String.format(
+						"RESKE save batch of %s events: Failed to connect to MongoDB",
+						dobjs.size()), me);
+			}
+		}
+
 		@Override
 		public void createWorkspace(final long id, final Instant time) {
 			// no action
@@ -288,6 +316,11 @@ public class SearchPrototypeEventHandlerFactory implements WorkspaceEventListene
 					null : Integer.parseInt(type.split("-")[1].split("\\.")[0]));
 			dobj.put("public", isPublic);
 			dobj.put("status", "UNPROC");
+			final List<DBObject> b = batch.get();
+			if (b != null) {
+				b.add(dobj);
+				return;
+			}
 			try {
 				db.getCollection(COLLECTION).insert(dobj);
 			} catch (MongoException me) {
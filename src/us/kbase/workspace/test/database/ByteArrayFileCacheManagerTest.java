@@ -0,0 +1,429 @@
+package us.kbase.workspace.test.database;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import us.kbase.common.service.UObject;
+import us.kbase.common.test.TestCommon;
+import us.kbase.typedobj.core.SubsetSelection;
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.typedobj.exceptions.TypedObjectExtractionException;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.DataSource;
+import us.kbase.workspace.database.ResourceGovernor;
+import us.kbase.workspace.database.exceptions.FileCacheLimitExceededException;
+
+public class ByteArrayFileCacheManagerTest {
+
+	private static TempFilesManager tfm;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		tfm = new TempFilesManager(new File(TestCommon.getTempDir()));
+		tfm.cleanup();
+	}
+
+	private static String makeData(final int size) {
+		final StringBuilder sb = new StringBuilder("{\"a\":\"");
+		final int padding = size - sb.length() - "\",\"b\":[1,2,3]}".length();
+		for (int i = 0; i < padding; i++) {
+			sb.append((char) ('a' + i % 26));
+		}
+		sb.append("\",\"b\":[1,2,3]}");
+		return sb.toString();
+	}
+
+	private ByteArrayFileCache create(final ByteArrayFileCacheManager man, final String data)
+			throws Exception {
+		return man.createBAFC(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)),
+				true, true);
+	}
+
+	private void checkBAFC(final ByteArrayFileCache bafc, final String expected)
+			throws Exception {
+		assertThat("incorrect data", IOUtils.toString(bafc.getJSON()), is(expected));
+		assertThat("incorrect size", bafc.getSize(), is((long) expected.length()));
+	}
+
+	@Test
+	public void inMemory() throws Exception {
+		// larger than the initial buffer size to force the buffer to grow
+		final String data = makeData(50000);
+		final ByteArrayFileCacheManager man = new ByteArrayFileCacheManager(50000, 0, tfm);
+
+		final ByteArrayFileCache bafc = create(man, data);
+
+		checkBAFC(bafc, data);
+		assertThat("incorrect mem size", man.getSizeInMem(), is(50000));
+		assertThat("incorrect disk size", man.getSizeOnDisk(), is(0L));
+		assertThat("temp files created", tfm.getTempFileList().size(), is(0));
+		bafc.destroy();
+	}
+
+	@Test
+	public void spillToDisk() throws Exception {
+		final String data = makeData(250000);
+		final ByteArrayFileCacheManager man = new ByteArrayFileCacheManager(
+				20000, 250000, tfm);
+
+		final ByteArrayFileCache bafc = create(man, data);
+
+		checkBAFC(bafc, data);
+		assertThat("incorrect mem size", man.getSizeInMem(), is(0));
+		assertThat("incorrect disk size", man.getSizeOnDisk(), is(250000L));
+		assertThat("incorrect temp files", tfm.getTempFileList().size(), is(1));
+		bafc.destroy();
+		assertThat("temp files remain", tfm.getTempFileList().size(), is(0));
+	}
+
+	@Test
+	public void spillToDiskLimitExceeded() throws Exception {
+		final String data = makeData(250000);
+		final ByteArrayFileCacheManager man = new ByteArrayFileCacheManager(
+				20000, 249999, tfm);
+		try {
+			create(man, data);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new FileCacheLimitExceededException(
+					"Disk limit exceeded for file cache: 249999"));
+		}
+		assertThat("temp files remain", tfm.getTempFileList().size(), is(0));
+	}
+
+	private List<Future<ByteArrayFileCache>> createConcurrently(
+			final ByteArrayFileCacheManager man,
+			final String data,
+			final int count)
+			throws Exception {
+		final ExecutorService exe = Executors.newFixedThreadPool(count);
+		try {
+			final CountDownLatch start = new CountDownLatch(1);
+			final List<Future<ByteArrayFileCache>> ret = new ArrayList<>();
+			for (int i = 0; i < count; i++) {
+				ret.add(exe.submit(() -> {
+					start.await();
+					return create(man, data);
+				}));
+			}
+			start.countDown();
+			for (final Future<ByteArrayFileCache> f: ret) {
+				try {
+					f.get();
+				} catch (ExecutionException e) {
+					// checked by the caller
+				}
+			}
+			return ret;
+		} finally {
+			exe.shutdown();
+		}
+	}
+
+	@Test
+	public void concurrentCreateSharesLimits() throws Exception {
+		final String data = makeData(50000);
+		final ByteArrayFileCacheManager man = new ByteArrayFileCacheManager(
+				120000, 1000000, tfm);
+
+		final List<Future<ByteArrayFileCache>> got = createConcurrently(man, data, 8);
+
+		for (final Future<ByteArrayFileCache> f: got) {
+			checkBAFC(f.get(), data);
+		}
+		// at most 2 fit in memory
+		final int inMem = man.getSizeInMem() / 50000;
+		assertThat("incorrect mem size", man.getSizeInMem() % 50000, is(0));
+		assertThat("incorrect in memory count", inMem > 0 && inMem <= 2, is(true));
+		assertThat("incorrect disk size", man.getSizeOnDisk(), is((8L - inMem) * 50000));
+		assertThat("incorrect temp files", tfm.getTempFileList().size(), is(8 - inMem));
+		for (final Future<ByteArrayFileCache> f: got) {
+			f.get().destroy();
+		}
+		assertThat("temp files remain", tfm.getTempFileList().size(), is(0));
+	}
+
+	@Test
+	public void concurrentCreateDiskLimitExceeded() throws Exception {
+		final String data = makeData(100000);
+		final ByteArrayFileCacheManager man = new ByteArrayFileCacheManager(1, 250000, tfm);
+
+		final List<Future<ByteArrayFileCache>> got = createConcurrently(man, data, 4);
+
+		int succeeded = 0;
+		for (final Future<ByteArrayFileCache> f: got) {
+			try {
+				checkBAFC(f.get(), data);
+				succeeded++;
+			} catch (ExecutionException e) {
+				TestCommon.assertExceptionCorrect((Exception) e.getCause(),
+						new FileCacheLimitExceededException(
+								"Disk limit exceeded for file cache: 250000"));
+			}
+		}
+		assertThat("incorrect successes", succeeded <= 2 && succeeded > 0, is(true));
+		assertThat("incorrect mem size", man.getSizeInMem(), is(0));
+		assertThat("incorrect disk size", man.getSizeOnDisk(), is(succeeded * 100000L));
+		assertThat("incorrect temp files", tfm.getTempFileList().size(), is(succeeded));
+		for (final Future<ByteArrayFileCache> f: got) {
+			try {
+				f.get().destroy();
+			} catch (ExecutionException e) {
+				// failed
+			}
+		}
+		assertThat("temp files remain", tfm.getTempFileList().size(), is(0));
+	}
+
+	@Test
+	public void governorSharedBetweenManagers() throws Exception {
+		final String data = makeData(50000);
+		final ResourceGovernor gov = new ResourceGovernor(60000, 0, 0);
+		final ByteArrayFileCacheManager man1 = new ByteArrayFileCacheManager(
+				100000, 100000, tfm, gov);
+		final ByteArrayFileCacheManager man2 = new ByteArrayFileCacheManager(
+				100000, 100000, tfm, gov);
+
+		final ByteArrayFileCache bafc1 = create(man1, data);
+		// the server memory pool is exhausted, so the data goes to disk
+		final ByteArrayFileCache bafc2 = create(man2, data);
+
+		checkBAFC(bafc1, data);
+		checkBAFC(bafc2, data);
+		assertThat("incorrect mem size", man1.getSizeInMem(), is(50000));
+		assertThat("incorrect mem size", man2.getSizeInMem(), is(0));
+		assertThat("incorrect disk size", man2.getSizeOnDisk(), is(50000L));
+		assertThat("incorrect server mem", gov.getMemoryReserved(), is(50000L));
+		assertThat("incorrect server disk", gov.getDiskReserved(), is(50000L));
+		assertThat("incorrect temp files", tfm.getTempFileList().size(), is(1));
+
+		bafc1.destroy();
+		assertThat("incorrect server mem", gov.getMemoryReserved(), is(0L));
+		bafc2.destroy();
+		bafc2.destroy(); // no effect
+		assertThat("incorrect server disk", gov.getDiskReserved(), is(0L));
+		assertThat("temp files remain", tfm.getTempFileList().size(), is(0));
+		// the managers' sizes are totals over their lifetimes
+		assertThat("incorrect mem size", man1.getSizeInMem(), is(50000));
+		assertThat("incorrect disk size", man2.getSizeOnDisk(), is(50000L));
+	}
+
+	@Test
+	public void governorDiskLimitExceeded() throws Exception {
+		final String data = makeData(50000);
+		final ResourceGovernor gov = new ResourceGovernor(1, 100000, 0);
+		final ByteArrayFileCacheManager man = new ByteArrayFileCacheManager(
+				100000, 1000000, tfm, gov);
+
+		final ByteArrayFileCache bafc1 = create(man, data);
+		final ByteArrayFileCache bafc2 = create(man, data);
+		try {
+			create(man, data);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new FileCacheLimitExceededException(
+					"Server disk limit exceeded for file cache: 100000"));
+		}
+		assertThat("incorrect disk size", man.getSizeOnDisk(), is(100000L));
+		assertThat("incorrect server mem", gov.getMemoryReserved(), is(0L));
+		assertThat("incorrect server disk", gov.getDiskReserved(), is(100000L));
+		assertThat("incorrect temp files", tfm.getTempFileList().size(), is(2));
+
+		bafc1.destroy();
+		// space is available again
+		final ByteArrayFileCache bafc3 = create(man, data);
+		checkBAFC(bafc3, data);
+		bafc2.destroy();
+		bafc3.destroy();
+		assertThat("incorrect server disk", gov.getDiskReserved(), is(0L));
+		assertThat("temp files remain", tfm.getTempFileList().size(), is(0));
+	}
+
+	@Test
+	public void governorSubset() throws Exception {
+		final String data = makeData(50000);
+		final SubsetSelection paths = new SubsetSelection(Arrays.asList("/a"));
+		final String expected = data.substring(0, data.indexOf(",\"b\"")) + "}";
+		final ResourceGovernor gov = new ResourceGovernor(60000, 0, 0);
+		final ByteArrayFileCacheManager man = new ByteArrayFileCacheManager(
+				200000, 200000, tfm, gov);
+
+		// the parent fits in server memory but the subset spills to disk
+		final ByteArrayFileCache sub = man.getSubdataExtraction(create(man, data), paths);
+		checkBAFC(sub, expected);
+		assertThat("incorrect server mem", gov.getMemoryReserved(), is(50000L));
+		assertThat("incorrect server disk", gov.getDiskReserved(),
+				is((long) expected.length()));
+		assertThat("incorrect temp files", tfm.getTempFileList().size(), is(1));
+
+		// destroys the parent as well
+		sub.destroy();
+		assertThat("incorrect server mem", gov.getMemoryReserved(), is(0L));
+		assertThat("incorrect server disk", gov.getDiskReserved(), is(0L));
+		assertThat("temp files remain", tfm.getTempFileList().size(), is(0));
+	}
+
+	@Test
+	public void subsetInMemoryAndSpilled() throws Exception {
+		final String data = makeData(50000);
+		final SubsetSelection paths = new SubsetSelection(Arrays.asList("/a"));
+		final String expected = data.substring(0, data.indexOf(",\"b\"")) + "}";
+
+		// the subset fits in memory
+		final ByteArrayFileCacheManager man = new ByteArrayFileCacheManager(
+				100000, 100000, tfm);
+		final ByteArrayFileCache sub = man.getSubdataExtraction(create(man, data), paths);
+		checkBAFC(sub, expected);
+		assertThat("temp files created", tfm.getTempFileList().size(), is(0));
+		sub.destroy();
+
+		// the parent fits in memory but the subset spills to disk
+		final ByteArrayFileCacheManager man2 = new ByteArrayFileCacheManager(
+				50000 + 20000, 100000, tfm);
+		final ByteArrayFileCache sub2 = man2.getSubdataExtraction(create(man2, data), paths);
+		checkBAFC(sub2, expected);
+		assertThat("incorrect disk size", man2.getSizeOnDisk(), is((long) expected.length()));
+		assertThat("incorrect temp files", tfm.getTempFileList().size(), is(1));
+		sub2.destroy();
+		assertThat("temp files remain", tfm.getTempFileList().size(), is(0));
+	}
+
+	@Test
+	public void multipleSubsets() throws Exception {
+		final String data = makeData(50000);
+		final String expectedA = data.substring(0, data.indexOf(",\"b\"")) + "}";
+		final List<SubsetSelection> paths = Arrays.asList(
+				new SubsetSelection(Arrays.asList("/a")),
+				new SubsetSelection(Arrays.asList("/a", "/b")),
+				new SubsetSelection(Arrays.asList("/b/1")));
+
+		// the subsets together exceed the memory limit, so at least one spills to disk
+		final ByteArrayFileCacheManager man = new ByteArrayFileCacheManager(
+				50000 + 60000, 200000, tfm);
+		final List<ByteArrayFileCache> subs = man.getSubdataExtractions(
+				create(man, data), paths);
+		assertThat("incorrect subset count", subs.size(), is(3));
+		checkBAFC(subs.get(0), expectedA);
+		checkBAFC(subs.get(1), data);
+		checkBAFC(subs.get(2), "{\"b\":[2]}");
+		assertThat("incorrect total size", man.getSizeInMem() + man.getSizeOnDisk(),
+				is(50000L + expectedA.length() + data.length() + 9));
+		assertThat("no temp files", tfm.getTempFileList().size() > 0, is(true));
+		for (final ByteArrayFileCache sub: subs) {
+			sub.destroy();
+		}
+		assertThat("temp files remain", tfm.getTempFileList().size(), is(0));
+
+		assertThat("incorrect subsets", man.getSubdataExtractions(
+				create(man, data), new ArrayList<SubsetSelection>()).size(), is(0));
+	}
+
+	@Test
+	public void multipleSubsetsFail() throws Exception {
+		final String data = makeData(50000);
+		final SubsetSelection a = new SubsetSelection(Arrays.asList("/a"));
+
+		// the subsets together exceed the disk limit
+		final ByteArrayFileCacheManager man = new ByteArrayFileCacheManager(
+				50000 + 10, 60000, tfm);
+		try {
+			man.getSubdataExtractions(create(man, data), Arrays.asList(a, a));
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new TypedObjectExtractionException(
+					"Disk limit exceeded for file cache: 60000"));
+		}
+		assertThat("temp files remain", tfm.getTempFileList().size(), is(0));
+
+		final SubsetSelection bad = new SubsetSelection(Arrays.asList("/a/x"));
+		final ByteArrayFileCacheManager man2 = new ByteArrayFileCacheManager(
+				50000 + 20000, 200000, tfm);
+		final ByteArrayFileCache parent = create(man2, data);
+		String expected = null;
+		try {
+			man2.getSubdataExtraction(parent, bad);
+			fail("expected exception");
+		} catch (TypedObjectExtractionException e) {
+			expected = e.getMessage();
+		}
+		parent.destroy();
+		final ByteArrayFileCache parent2 = create(man2, data);
+		try {
+			man2.getSubdataExtractions(parent2, Arrays.asList(a, bad));
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new TypedObjectExtractionException(expected));
+		}
+		parent2.destroy();
+		assertThat("temp files remain", tfm.getTempFileList().size(), is(0));
+	}
+
+	@Test
+	public void streamed() throws Exception {
+		final String data = makeData(250000);
+		final int[] opened = {0};
+		final ByteArrayFileCacheManager man = new ByteArrayFileCacheManager(1, 1, tfm);
+		final ByteArrayFileCache bafc = man.createStreamingBAFC(new DataSource() {
+			
+			@Override
+			public InputStream open() throws IOException {
+				opened[0]++;
+				return new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
+			}
+		}, 250000, true);
+		assertThat("data opened", opened[0], is(0));
+
+		checkBAFC(bafc, data);
+		assertThat("incorrect sorted", bafc.isSorted(), is(true));
+		assertThat("incorrect trusted", bafc.containsTrustedJson(), is(true));
+		assertThat("incorrect node", bafc.getAsJsonNode().get("b").size(), is(3));
+		final String serialized = UObject.getMapper().writeValueAsString(
+				Arrays.asList(1, bafc.getUObject()));
+		assertThat("incorrect serialization", serialized, is("[1," + data + "]"));
+		assertThat("incorrect opens", opened[0], is(3));
+		assertThat("incorrect mem size", man.getSizeInMem(), is(0));
+		assertThat("incorrect disk size", man.getSizeOnDisk(), is(0L));
+		assertThat("temp files created", tfm.getTempFileList().size(), is(0));
+
+		try {
+			man.getSubdataExtraction(bafc, new SubsetSelection(Arrays.asList("/a")));
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new IllegalArgumentException(
+					"Subsets cannot be extracted from streamed data"));
+		}
+		bafc.destroy();
+	}
+
+	@Test
+	public void streamedFail() throws Exception {
+		final ByteArrayFileCacheManager man = new ByteArrayFileCacheManager(1, 1, tfm);
+		try {
+			man.createStreamingBAFC(null, 1, true);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new NullPointerException(
+					"source cannot be null"));
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package us.kbase.workspace.test.database;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.workspace.database.PublicWorkspaceCache;
+import us.kbase.workspace.database.WorkspaceIDSet;
+
+public class PublicWorkspaceCacheTest {
+
+	private static WorkspaceIDSet ids(final Long... ids) {
+		return WorkspaceIDSet.of(Arrays.asList(ids));
+	}
+
+	private static PublicWorkspaceCache cache() {
+		return new PublicWorkspaceCache(1, TimeUnit.HOURS);
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		failConstruct(0, TimeUnit.SECONDS, new IllegalArgumentException(
+				"expiration must be greater than zero"));
+		failConstruct(1, null, new NullPointerException("unit"));
+	}
+
+	private void failConstruct(
+			final long expiration,
+			final TimeUnit unit,
+			final Exception expected) {
+		try {
+			new PublicWorkspaceCache(expiration, unit);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void publicWorkspaces() throws Exception {
+		final PublicWorkspaceCache cache = cache();
+		assertThat("incorrect public", cache.getPublicWorkspaces(), is((WorkspaceIDSet) null));
+		final long gen = cache.getGeneration();
+		// changes with no cached set are ignored other than the generation
+		cache.setPublicWorkspace(4, true);
+		assertThat("incorrect generation", cache.getGeneration(), is(gen + 1));
+		assertThat("incorrect public", cache.getPublicWorkspaces(), is((WorkspaceIDSet) null));
+
+		cache.putPublicWorkspaces(ids(1L, 3L), gen + 1);
+		assertThat("incorrect public", cache.getPublicWorkspaces(), is(ids(1L, 3L)));
+
+		cache.setPublicWorkspace(4, true);
+		cache.setPublicWorkspace(1, false);
+		cache.setPublicWorkspace(2, false);
+		assertThat("incorrect generation", cache.getGeneration(), is(gen + 4));
+		assertThat("incorrect public", cache.getPublicWorkspaces(), is(ids(3L, 4L)));
+
+		cache.invalidate();
+		assertThat("incorrect generation", cache.getGeneration(), is(gen + 5));
+		assertThat("incorrect public", cache.getPublicWorkspaces(), is((WorkspaceIDSet) null));
+	}
+
+	@Test
+	public void putStaleGeneration() throws Exception {
+		// a set read from the DB before a workspace changed must not be cached
+		final PublicWorkspaceCache cache = cache();
+		final long gen = cache.getGeneration();
+		cache.setPublicWorkspace(1, true);
+
+		cache.putPublicWorkspaces(ids(2L), gen);
+		assertThat("incorrect public", cache.getPublicWorkspaces(), is((WorkspaceIDSet) null));
+
+		cache.putPublicWorkspaces(ids(1L, 2L), gen + 1);
+		assertThat("incorrect public", cache.getPublicWorkspaces(), is(ids(1L, 2L)));
+	}
+
+	@Test
+	public void expiration() throws Exception {
+		final PublicWorkspaceCache cache = new PublicWorkspaceCache(50, TimeUnit.MILLISECONDS);
+		cache.putPublicWorkspaces(ids(1L), cache.getGeneration());
+		assertThat("incorrect public", cache.getPublicWorkspaces(), is(ids(1L)));
+
+		Thread.sleep(100);
+		assertThat("incorrect public", cache.getPublicWorkspaces(), is((WorkspaceIDSet) null));
+	}
+
+	@Test
+	public void putPublicWorkspacesFail() throws Exception {
+		try {
+			cache().putPublicWorkspaces(null, 0);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new NullPointerException("ids"));
+		}
+	}
+}
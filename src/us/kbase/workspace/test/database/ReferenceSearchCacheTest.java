@@ -0,0 +1,243 @@
+package us.kbase.workspace.test.database;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.workspace.database.ObjectReferenceSet;
+import us.kbase.workspace.database.Reference;
+import us.kbase.workspace.database.ReferenceSearchCache;
+import us.kbase.workspace.database.WorkspaceIDSet;
+
+public class ReferenceSearchCacheTest {
+
+	private static final Reference R1 = new Reference("1/1/1");
+	private static final Reference R2 = new Reference("1/2/1");
+	private static final Reference R3 = new Reference("2/1/1");
+	private static final Reference R4 = new Reference("3/1/1");
+
+	private static Set<Reference> set(final Reference... refs) {
+		return new HashSet<>(Arrays.asList(refs));
+	}
+
+	private static WorkspaceIDSet ids(final Long... ids) {
+		return WorkspaceIDSet.of(Arrays.asList(ids));
+	}
+
+	private static ObjectReferenceSet incoming(final Reference target, final Reference... refs) {
+		return new ObjectReferenceSet(target, set(refs), true);
+	}
+
+	private static ReferenceSearchCache cache(final long size) {
+		return new ReferenceSearchCache(size, 1, TimeUnit.HOURS);
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		failConstruct(0, 1, TimeUnit.SECONDS, new IllegalArgumentException(
+				"maxSize must be greater than zero"));
+		failConstruct(1, 0, TimeUnit.SECONDS, new IllegalArgumentException(
+				"expiration must be greater than zero"));
+		failConstruct(1, 1, null, new NullPointerException("unit"));
+	}
+
+	private void failConstruct(
+			final long size,
+			final long expiration,
+			final TimeUnit unit,
+			final Exception expected) {
+		try {
+			new ReferenceSearchCache(size, expiration, unit);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void paths() throws Exception {
+		final ReferenceSearchCache cache = cache(100);
+		assertThat("expected miss", cache.getPaths(set(R1)),
+				is(Collections.<Reference, List<Reference>>emptyMap()));
+
+		cache.putPath(Arrays.asList(R3, R2, R1));
+		cache.putPath(Arrays.asList(R4, R2));
+
+		assertThat("incorrect paths", cache.getPaths(set(R1, R2, R3)),
+				is(ImmutableMap.of(R1, Arrays.asList(R3, R2, R1), R2, Arrays.asList(R4, R2))));
+
+		// paths aren't affected by invalidation
+		cache.invalidateAllReferences();
+		assertThat("incorrect paths", cache.getPaths(set(R1)),
+				is(ImmutableMap.of(R1, Arrays.asList(R3, R2, R1))));
+		assertThat("incorrect hits", cache.getPathStatistics().hitCount(), is(3L));
+		assertThat("incorrect misses", cache.getPathStatistics().missCount(), is(2L));
+	}
+
+	@Test
+	public void putPathFail() throws Exception {
+		final ReferenceSearchCache cache = cache(100);
+		for (final List<Reference> path: Arrays.asList(null, Collections.<Reference>emptyList())) {
+			try {
+				cache.putPath(path);
+				fail("expected exception");
+			} catch (Exception got) {
+				TestCommon.assertExceptionCorrect(got, new IllegalArgumentException(
+						"path cannot be null or empty"));
+			}
+		}
+	}
+
+	@Test
+	public void pathEviction() throws Exception {
+		final ReferenceSearchCache cache = cache(10);
+		for (int i = 1; i <= 20; i++) {
+			cache.putPath(Arrays.asList(new Reference(2, i, 1), new Reference(1, i, 1)));
+		}
+		final Set<Reference> targets = new HashSet<>();
+		for (int i = 1; i <= 20; i++) {
+			targets.add(new Reference(1, i, 1));
+		}
+		assertThat("cache too large", cache.getPaths(targets).size() <= 5, is(true));
+	}
+
+	@Test
+	public void failedSearches() throws Exception {
+		final ReferenceSearchCache cache = cache(100);
+		final long gen = cache.getGeneration();
+		cache.putFailedSearches(set(R1, R2), ids(1L, 2L), gen);
+		cache.putFailedSearches(set(R3), null, gen);
+		cache.putFailedSearches(set(), ids(1L), gen);
+
+		assertThat("incorrect failed", cache.getFailedSearches(set(R1, R2, R3, R4), ids(2L, 1L)),
+				is(set(R1, R2)));
+		// changing the readable workspaces results in a cache miss
+		assertThat("incorrect failed", cache.getFailedSearches(set(R1, R2, R3), ids(1L)),
+				is(set()));
+		assertThat("incorrect failed", cache.getFailedSearches(set(R1, R2, R3),
+				ids(1L, 2L, 3L)), is(set()));
+		// all readable is different from no workspaces readable
+		assertThat("incorrect failed", cache.getFailedSearches(set(R1, R2, R3), null),
+				is(set(R3)));
+		assertThat("incorrect failed", cache.getFailedSearches(set(R1, R2, R3), ids()),
+				is(set()));
+		assertThat("incorrect failed", cache.getFailedSearches(set(), ids(1L, 2L)), is(set()));
+	}
+
+	@Test
+	public void incomingReferences() throws Exception {
+		final ReferenceSearchCache cache = cache(100);
+		cache.putIncomingReferences(ImmutableMap.of(
+				R1, incoming(R1, R2, R3),
+				R2, incoming(R2)),
+				cache.getGeneration());
+
+		final Map<Reference, ObjectReferenceSet> expected = new HashMap<>();
+		expected.put(R1, incoming(R1, R2, R3));
+		expected.put(R2, incoming(R2));
+		assertThat("incorrect refs", cache.getIncomingReferences(set(R1, R2, R3)), is(expected));
+		assertThat("incorrect hits", cache.getIncomingReferenceStatistics().hitCount(), is(2L));
+		assertThat("incorrect misses", cache.getIncomingReferenceStatistics().missCount(),
+				is(1L));
+	}
+
+	@Test
+	public void invalidateReferences() throws Exception {
+		final ReferenceSearchCache cache = cache(100);
+		final long gen = cache.getGeneration();
+		cache.putIncomingReferences(ImmutableMap.of(
+				R1, incoming(R1, R2), R2, incoming(R2), R3, incoming(R3)), gen);
+		cache.putFailedSearches(set(R1, R4), ids(1L), gen);
+
+		cache.invalidateReferences(set());
+		assertThat("incorrect generation", cache.getGeneration(), is(gen));
+		assertThat("incorrect refs", cache.getIncomingReferences(set(R1, R2, R3)).keySet(),
+				is(set(R1, R2, R3)));
+		assertThat("incorrect failed", cache.getFailedSearches(set(R1, R4), ids(1L)),
+				is(set(R1, R4)));
+
+		cache.invalidateReferences(Arrays.asList(R1, R3));
+		assertThat("incorrect generation", cache.getGeneration(), is(gen + 1));
+		assertThat("incorrect refs", cache.getIncomingReferences(set(R1, R2, R3)).keySet(),
+				is(set(R2)));
+		assertThat("incorrect failed", cache.getFailedSearches(set(R1, R4), ids(1L)),
+				is(set()));
+	}
+
+	@Test
+	public void invalidateAllReferences() throws Exception {
+		final ReferenceSearchCache cache = cache(100);
+		final long gen = cache.getGeneration();
+		cache.putIncomingReferences(ImmutableMap.of(R1, incoming(R1, R2), R2, incoming(R2)),
+				gen);
+		cache.putFailedSearches(set(R1), ids(1L), gen);
+
+		cache.invalidateAllReferences();
+		assertThat("incorrect generation", cache.getGeneration(), is(gen + 1));
+		assertThat("incorrect refs", cache.getIncomingReferences(set(R1, R2)).isEmpty(),
+				is(true));
+		assertThat("incorrect failed", cache.getFailedSearches(set(R1), ids(1L)), is(set()));
+	}
+
+	@Test
+	public void invalidateFailedSearches() throws Exception {
+		final ReferenceSearchCache cache = cache(100);
+		final long gen = cache.getGeneration();
+		cache.putIncomingReferences(ImmutableMap.of(R1, incoming(R1, R2)), gen);
+		cache.putFailedSearches(set(R1), ids(1L), gen);
+
+		cache.invalidateFailedSearches();
+		assertThat("incorrect generation", cache.getGeneration(), is(gen + 1));
+		assertThat("incorrect refs", cache.getIncomingReferences(set(R1)).keySet(),
+				is(set(R1)));
+		assertThat("incorrect failed", cache.getFailedSearches(set(R1), ids(1L)), is(set()));
+	}
+
+	@Test
+	public void putStaleGeneration() throws Exception {
+		// data read from the DB before an invalidation must not be cached
+		final ReferenceSearchCache cache = cache(100);
+		final long gen = cache.getGeneration();
+		cache.invalidateReferences(set(R1));
+
+		cache.putIncomingReferences(ImmutableMap.of(R1, incoming(R1)), gen);
+		cache.putFailedSearches(set(R1), ids(1L), gen);
+		assertThat("incorrect refs", cache.getIncomingReferences(set(R1)).isEmpty(), is(true));
+		assertThat("incorrect failed", cache.getFailedSearches(set(R1), ids(1L)), is(set()));
+
+		cache.putIncomingReferences(ImmutableMap.of(R1, incoming(R1)), gen + 1);
+		cache.putFailedSearches(set(R1), ids(1L), gen + 1);
+		assertThat("incorrect refs", cache.getIncomingReferences(set(R1)).keySet(), is(set(R1)));
+		assertThat("incorrect failed", cache.getFailedSearches(set(R1), ids(1L)), is(set(R1)));
+	}
+
+	@Test
+	public void expiration() throws Exception {
+		final ReferenceSearchCache cache = new ReferenceSearchCache(
+				100, 50, TimeUnit.MILLISECONDS);
+		final long gen = cache.getGeneration();
+		cache.putPath(Arrays.asList(R2, R1));
+		cache.putIncomingReferences(ImmutableMap.of(R1, incoming(R1, R2)), gen);
+		cache.putFailedSearches(set(R3), ids(1L), gen);
+
+		Thread.sleep(100);
+		// paths never expire
+		assertThat("incorrect paths", cache.getPaths(set(R1)).keySet(), is(set(R1)));
+		assertThat("incorrect refs", cache.getIncomingReferences(set(R1)).isEmpty(), is(true));
+		assertThat("incorrect failed", cache.getFailedSearches(set(R3), ids(1L)), is(set()));
+	}
+}
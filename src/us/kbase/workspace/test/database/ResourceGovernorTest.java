@@ -0,0 +1,145 @@
+package us.kbase.workspace.test.database;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.workspace.database.ResourceGovernor;
+
+public class ResourceGovernorTest {
+
+	@Test
+	public void construct() throws Exception {
+		final ResourceGovernor g = new ResourceGovernor(10, 20, 30);
+		assertThat("incorrect max mem", g.getMaxMemory(), is(10L));
+		assertThat("incorrect max disk", g.getMaxDisk(), is(20L));
+		assertThat("incorrect wait", g.getDiskWaitMillis(), is(30L));
+		checkUsage(g, 0, 0, 0, 0, 0);
+
+		final ResourceGovernor g2 = new ResourceGovernor(0, 0, 0);
+		assertThat("incorrect max mem", g2.getMaxMemory(), is(Long.MAX_VALUE));
+		assertThat("incorrect max disk", g2.getMaxDisk(), is(Long.MAX_VALUE));
+		assertThat("incorrect wait", g2.getDiskWaitMillis(), is(0L));
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		failConstruct(-1, 0, 0);
+		failConstruct(0, -1, 0);
+		failConstruct(0, 0, -1);
+	}
+
+	private void failConstruct(final long mem, final long disk, final long wait) {
+		try {
+			new ResourceGovernor(mem, disk, wait);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new IllegalArgumentException(
+					"Memory, disk, and disk wait limits must be at least zero"));
+		}
+	}
+
+	private void checkUsage(
+			final ResourceGovernor g,
+			final long mem,
+			final long disk,
+			final long shortfalls,
+			final long waits,
+			final long rejections) {
+		assertThat("incorrect mem", g.getMemoryReserved(), is(mem));
+		assertThat("incorrect disk", g.getDiskReserved(), is(disk));
+		assertThat("incorrect shortfalls", g.getMemoryShortfalls(), is(shortfalls));
+		assertThat("incorrect waits", g.getDiskWaits(), is(waits));
+		assertThat("incorrect rejections", g.getDiskRejections(), is(rejections));
+	}
+
+	@Test
+	public void memory() throws Exception {
+		final ResourceGovernor g = new ResourceGovernor(100, 0, 0);
+
+		assertThat("incorrect reservation", g.reserveMemory(60), is(60L));
+		checkUsage(g, 60, 0, 0, 0, 0);
+		assertThat("incorrect reservation", g.reserveMemory(60), is(40L));
+		checkUsage(g, 100, 0, 1, 0, 0);
+		assertThat("incorrect reservation", g.reserveMemory(1), is(0L));
+		checkUsage(g, 100, 0, 2, 0, 0);
+
+		g.releaseMemory(50);
+		assertThat("incorrect reservation", g.tryReserveMemory(51), is(false));
+		checkUsage(g, 50, 0, 3, 0, 0);
+		assertThat("incorrect reservation", g.tryReserveMemory(50), is(true));
+		checkUsage(g, 100, 0, 3, 0, 0);
+		g.releaseMemory(100);
+		checkUsage(g, 0, 0, 3, 0, 0);
+	}
+
+	@Test
+	public void memoryUnlimited() throws Exception {
+		final ResourceGovernor g = new ResourceGovernor(0, 0, 0);
+
+		assertThat("incorrect reservation", g.reserveMemory(Long.MAX_VALUE - 1),
+				is(Long.MAX_VALUE - 1));
+		assertThat("incorrect reservation", g.tryReserveMemory(1), is(true));
+		checkUsage(g, Long.MAX_VALUE, 0, 0, 0, 0);
+	}
+
+	@Test
+	public void disk() throws Exception {
+		final ResourceGovernor g = new ResourceGovernor(0, 100, 0);
+
+		assertThat("incorrect reservation", g.reserveDisk(60), is(true));
+		assertThat("incorrect reservation", g.reserveDisk(40), is(true));
+		checkUsage(g, 0, 100, 0, 0, 0);
+		// no wait time
+		assertThat("incorrect reservation", g.reserveDisk(1), is(false));
+		checkUsage(g, 0, 100, 0, 1, 1);
+		g.releaseDisk(100);
+		// larger than the limit
+		assertThat("incorrect reservation", g.reserveDisk(101), is(false));
+		checkUsage(g, 0, 0, 0, 1, 2);
+	}
+
+	@Test
+	public void diskWaitTimeout() throws Exception {
+		final ResourceGovernor g = new ResourceGovernor(0, 100, 100);
+		g.reserveDisk(100);
+
+		final long start = System.nanoTime();
+		assertThat("incorrect reservation", g.reserveDisk(1), is(false));
+		final long waited = (System.nanoTime() - start) / 1000000;
+		assertThat("wait too short: " + waited, waited >= 90, is(true));
+		checkUsage(g, 0, 100, 0, 1, 1);
+	}
+
+	@Test
+	public void diskWaitForRelease() throws Exception {
+		final ResourceGovernor g = new ResourceGovernor(0, 100, 10000);
+		g.reserveDisk(80);
+
+		final ExecutorService exe = Executors.newSingleThreadExecutor();
+		try {
+			final CountDownLatch started = new CountDownLatch(1);
+			final Future<Boolean> res = exe.submit(() -> {
+				started.countDown();
+				return g.reserveDisk(50);
+			});
+			started.await();
+			// let the reservation start waiting
+			Thread.sleep(100);
+			assertThat("reservation didn't wait", res.isDone(), is(false));
+			g.releaseDisk(30);
+			assertThat("incorrect reservation", res.get(), is(true));
+			checkUsage(g, 0, 100, 0, 1, 0);
+		} finally {
+			exe.shutdown();
+		}
+	}
+}
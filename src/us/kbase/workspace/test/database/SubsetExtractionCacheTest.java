@@ -0,0 +1,165 @@
+package us.kbase.workspace.test.database;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.typedobj.core.MD5;
+import us.kbase.typedobj.core.SubsetSelection;
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.SubsetExtractionCache;
+import us.kbase.workspace.database.exceptions.FileCacheLimitExceededException;
+
+public class SubsetExtractionCacheTest {
+
+	private static final MD5 MD5_1 = new MD5("1c2d6f5b0c6d1f0e6b7f4e9e3e2a1b0c");
+	private static final MD5 MD5_2 = new MD5("2c2d6f5b0c6d1f0e6b7f4e9e3e2a1b0c");
+	private static final String DATA = "{\"a\":{\"b\":1,\"c\":2},\"d\":[1,2,3]}";
+	private static final SubsetSelection SUB1 = new SubsetSelection(Arrays.asList("/a/b"));
+	private static final SubsetSelection SUB2 = new SubsetSelection(Arrays.asList("/d/1"));
+
+	private static TempFilesManager tfm;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		tfm = new TempFilesManager(new File(TestCommon.getTempDir()));
+	}
+
+	private ByteArrayFileCache extract(
+			final ByteArrayFileCacheManager man,
+			final SubsetSelection paths,
+			final boolean sorted)
+			throws Exception {
+		final ByteArrayFileCache parent = man.createBAFC(new ByteArrayInputStream(
+				DATA.getBytes(StandardCharsets.UTF_8)), true, sorted);
+		return man.getSubdataExtraction(parent, paths);
+	}
+
+	private void checkBAFC(
+			final ByteArrayFileCache bafc,
+			final String expected,
+			final boolean sorted)
+			throws Exception {
+		assertThat("incorrect data", IOUtils.toString(bafc.getJSON()), is(expected));
+		assertThat("incorrect size", bafc.getSize(), is((long) expected.length()));
+		assertThat("incorrect sorted", bafc.isSorted(), is(sorted));
+		assertThat("incorrect trusted", bafc.containsTrustedJson(), is(true));
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		failConstruct(0);
+		failConstruct(-1);
+	}
+
+	private void failConstruct(final long size) {
+		try {
+			new SubsetExtractionCache(size);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new IllegalArgumentException(
+					"maxSize must be greater than zero"));
+		}
+	}
+
+	@Test
+	public void putAndGet() throws Exception {
+		final SubsetExtractionCache cache = new SubsetExtractionCache(16 * 100);
+		final ByteArrayFileCacheManager man = new ByteArrayFileCacheManager(
+				100000, 100000, tfm);
+
+		assertThat("expected miss", cache.get(MD5_1, SUB1, man), nullValue());
+
+		final ByteArrayFileCache sub1 = extract(man, SUB1, true);
+		final ByteArrayFileCache sub2 = extract(man, SUB2, false);
+		cache.put(MD5_1, SUB1, sub1);
+		cache.put(MD5_1, SUB2, sub2);
+		// the cached subsets don't depend on the originals
+		sub1.destroy();
+		sub2.destroy();
+
+		final ByteArrayFileCacheManager man2 = new ByteArrayFileCacheManager(
+				100000, 100000, tfm);
+		final ByteArrayFileCache got1 = cache.get(MD5_1, SUB1, man2);
+		checkBAFC(got1, "{\"a\":{\"b\":1}}", true);
+		final ByteArrayFileCache got2 = cache.get(MD5_1, SUB2, man2);
+		checkBAFC(got2, "{\"d\":[2]}", false);
+		assertThat("incorrect mem usage", man2.getSizeInMem(), is(22));
+		got1.destroy();
+		got2.destroy();
+
+		assertThat("expected miss", cache.get(MD5_2, SUB1, man2), nullValue());
+		assertThat("expected miss", cache.get(MD5_1, new SubsetSelection(
+				Arrays.asList("/d/1"), false, false), man2), nullValue());
+		assertThat("incorrect hits", cache.getStatistics().hitCount(), is(2L));
+		assertThat("incorrect misses", cache.getStatistics().missCount(), is(3L));
+		assertThat("incorrect size", cache.getSize(), is(22L));
+	}
+
+	@Test
+	public void putTooLarge() throws Exception {
+		final SubsetExtractionCache cache = new SubsetExtractionCache(16 * 12);
+		final ByteArrayFileCacheManager man = new ByteArrayFileCacheManager(
+				100000, 100000, tfm);
+		final ByteArrayFileCache sub1 = extract(man, SUB1, true); // 13 bytes
+		final ByteArrayFileCache sub2 = extract(man, SUB2, true); // 9 bytes
+
+		cache.put(MD5_1, SUB1, sub1);
+		cache.put(MD5_1, SUB2, sub2);
+		sub1.destroy();
+		sub2.destroy();
+
+		assertThat("expected miss", cache.get(MD5_1, SUB1, man), nullValue());
+		final ByteArrayFileCache got = cache.get(MD5_1, SUB2, man);
+		checkBAFC(got, "{\"d\":[2]}", true);
+		got.destroy();
+		assertThat("incorrect size", cache.getSize(), is(9L));
+	}
+
+	@Test
+	public void eviction() throws Exception {
+		final SubsetExtractionCache cache = new SubsetExtractionCache(16 * 13);
+		final ByteArrayFileCacheManager man = new ByteArrayFileCacheManager(
+				100000, 100000, tfm);
+		for (int i = 0; i < 40; i++) {
+			final ByteArrayFileCache sub = extract(man, SUB1, true);
+			cache.put(new MD5(String.format("%032x", i)), SUB1, sub);
+			sub.destroy();
+		}
+		assertTrue("expected evictions", cache.getStatistics().evictionCount() > 0);
+		assertTrue("cache too large", cache.getSize() <= 16 * 13);
+	}
+
+	@Test
+	public void getExceedsLimits() throws Exception {
+		final SubsetExtractionCache cache = new SubsetExtractionCache(16 * 100);
+		final ByteArrayFileCacheManager man = new ByteArrayFileCacheManager(
+				100000, 100000, tfm);
+		final ByteArrayFileCache sub = extract(man, SUB1, true);
+		cache.put(MD5_1, SUB1, sub);
+		sub.destroy();
+
+		final ByteArrayFileCacheManager small = new ByteArrayFileCacheManager(5, 5, tfm);
+		try {
+			cache.get(MD5_1, SUB1, small);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new FileCacheLimitExceededException(
+					"Disk limit exceeded for file cache: 5"));
+		}
+	}
+}
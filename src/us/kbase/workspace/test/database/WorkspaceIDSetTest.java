@@ -0,0 +1,119 @@
+package us.kbase.workspace.test.database;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.workspace.database.WorkspaceIDSet;
+
+public class WorkspaceIDSetTest {
+
+	private static WorkspaceIDSet ids(final Long... ids) {
+		return WorkspaceIDSet.of(Arrays.asList(ids));
+	}
+
+	@Test
+	public void empty() throws Exception {
+		final WorkspaceIDSet s = WorkspaceIDSet.of(Collections.emptyList());
+		assertThat("incorrect empty", s.isEmpty(), is(true));
+		assertThat("incorrect size", s.size(), is(0));
+		assertThat("incorrect contains", s.contains(1), is(false));
+		assertThat("incorrect equals", s, is(WorkspaceIDSet.EMPTY));
+		assertThat("incorrect bitmap", s.toBitmap(), is(new long[0]));
+	}
+
+	@Test
+	public void contains() throws Exception {
+		final WorkspaceIDSet s = ids(1L, 64L, 100000L, (long) Integer.MAX_VALUE, 64L);
+		assertThat("incorrect empty", s.isEmpty(), is(false));
+		assertThat("incorrect size", s.size(), is(4));
+		for (final long id: Arrays.asList(1L, 64L, 100000L, (long) Integer.MAX_VALUE)) {
+			assertThat("incorrect contains " + id, s.contains(id), is(true));
+		}
+		for (final long id: Arrays.asList(-1L, 0L, 2L, 63L, 65L, 99999L,
+				Integer.MAX_VALUE + 1L, Long.MAX_VALUE)) {
+			assertThat("incorrect contains " + id, s.contains(id), is(false));
+		}
+		assertThat("incorrect bitmap", ids(0L, 2L, 64L).toBitmap(), is(new long[] {5, 1}));
+	}
+
+	@Test
+	public void ofFail() throws Exception {
+		failOf(null, new NullPointerException("ids"));
+		failOf(Arrays.asList(1L, null), new NullPointerException("null id"));
+		failOf(Arrays.asList(-1L), new IllegalArgumentException("Illegal workspace ID: -1"));
+		failOf(Arrays.asList(Integer.MAX_VALUE + 1L), new IllegalArgumentException(
+				"Illegal workspace ID: 2147483648"));
+	}
+
+	private void failOf(final Collection<Long> ids, final Exception expected) {
+		try {
+			WorkspaceIDSet.of(ids);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void union() throws Exception {
+		final WorkspaceIDSet s1 = ids(1L, 3L);
+		final WorkspaceIDSet s2 = ids(3L, 200L);
+		assertThat("incorrect union", s1.union(s2), is(ids(1L, 3L, 200L)));
+		assertThat("incorrect union", s2.union(s1), is(ids(1L, 3L, 200L)));
+		assertThat("incorrect union", s1.union(WorkspaceIDSet.EMPTY), is(s1));
+		assertThat("incorrect union", WorkspaceIDSet.EMPTY.union(s1), is(s1));
+		// the inputs are unchanged
+		assertThat("incorrect input", s1, is(ids(1L, 3L)));
+		assertThat("incorrect input", s2, is(ids(3L, 200L)));
+
+		try {
+			s1.union(null);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new NullPointerException("other"));
+		}
+	}
+
+	@Test
+	public void with() throws Exception {
+		final WorkspaceIDSet s = ids(1L, 3L);
+		assertThat("incorrect with", s.with(200L, true), is(ids(1L, 3L, 200L)));
+		assertThat("incorrect with", s.with(3L, false), is(ids(1L)));
+		assertThat("incorrect with", s.with(3L, true), is(s));
+		assertThat("incorrect with", s.with(2L, false), is(s));
+		// out of range IDs are never present
+		assertThat("incorrect with", s.with(-1L, false), is(s));
+		// the input is unchanged
+		assertThat("incorrect input", s, is(ids(1L, 3L)));
+
+		try {
+			s.with(-1L, true);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new IllegalArgumentException(
+					"Illegal workspace ID: -1"));
+		}
+	}
+
+	@Test
+	public void equals() throws Exception {
+		// a larger bitmap with trailing empty words is equal
+		assertThat("incorrect equals", ids(1L, 2L).equals(ids(1L, 2L, 1000L).with(1000L, false)),
+				is(true));
+		assertThat("incorrect hash", ids(1L, 2L).hashCode(),
+				is(ids(1L, 2L, 1000L).with(1000L, false).hashCode()));
+		assertThat("incorrect bitmap", ids(1L, 2L, 1000L).with(1000L, false).toBitmap(),
+				is(new long[] {6}));
+		assertThat("incorrect equals", ids(1L).equals(ids(2L)), is(false));
+		assertThat("incorrect toString", ids(1L, 2L).toString(),
+				is("WorkspaceIDSet [size=2, ids=[1, 2]]"));
+	}
+}
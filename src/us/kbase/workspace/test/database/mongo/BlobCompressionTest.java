@@ -0,0 +1,97 @@
+package us.kbase.workspace.test.database.mongo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.workspace.database.mongo.BlobCompression;
+
+public class BlobCompressionTest {
+
+	private static byte[] makeData() {
+		final StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < 10000; i++) {
+			sb.append("{\"id\":\"feature_" + i + "\",\"type\":\"CDS\",\"strand\":\"+\"},");
+		}
+		sb.append("{}]");
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] read(final InputStream is) throws Exception {
+		try {
+			return IOUtils.toByteArray(is);
+		} finally {
+			is.close();
+		}
+	}
+
+	@Test
+	public void names() throws Exception {
+		assertThat("incorrect name", BlobCompression.NONE.getName(), is("none"));
+		assertThat("incorrect name", BlobCompression.DEFLATE.getName(), is("deflate"));
+		assertThat("incorrect name", BlobCompression.DEFLATE_FAST.getName(),
+				is("deflate-fast"));
+		for (final BlobCompression c: BlobCompression.values()) {
+			assertThat("incorrect codec", BlobCompression.fromName(c.getName()), is(c));
+		}
+		// blobs saved before compression was supported have no codec recorded
+		assertThat("incorrect codec", BlobCompression.fromName(null),
+				is(BlobCompression.NONE));
+	}
+
+	@Test
+	public void fromNameFail() throws Exception {
+		for (final String name: new String[] {"", "gzip", "DEFLATE"}) {
+			try {
+				BlobCompression.fromName(name);
+				fail("expected exception");
+			} catch (Exception got) {
+				TestCommon.assertExceptionCorrect(got, new IllegalArgumentException(
+						"Unknown blob compression codec: " + name));
+			}
+		}
+	}
+
+	@Test
+	public void none() throws Exception {
+		final InputStream is = new ByteArrayInputStream(new byte[] {1, 2});
+		assertThat("stream wrapped", BlobCompression.NONE.compress(is) == is, is(true));
+		assertThat("stream wrapped", BlobCompression.NONE.decompress(is) == is, is(true));
+	}
+
+	@Test
+	public void roundTrip() throws Exception {
+		final byte[] data = makeData();
+		int fastsize = 0;
+		int size = 0;
+		for (final BlobCompression c: new BlobCompression[] {
+				BlobCompression.DEFLATE, BlobCompression.DEFLATE_FAST}) {
+			final byte[] compressed = read(c.compress(new ByteArrayInputStream(data)));
+			assertThat("data not compressed", compressed.length < data.length / 5, is(true));
+			assertThat("incorrect data", read(c.decompress(
+					new ByteArrayInputStream(compressed))), is(data));
+			if (c.equals(BlobCompression.DEFLATE)) {
+				size = compressed.length;
+			} else {
+				fastsize = compressed.length;
+			}
+		}
+		assertThat("fast compression smaller than default", size <= fastsize, is(true));
+	}
+
+	@Test
+	public void empty() throws Exception {
+		final byte[] compressed = read(BlobCompression.DEFLATE.compress(
+				new ByteArrayInputStream(new byte[0])));
+		assertThat("incorrect data", read(BlobCompression.DEFLATE.decompress(
+				new ByteArrayInputStream(compressed))), is(new byte[0]));
+	}
+}
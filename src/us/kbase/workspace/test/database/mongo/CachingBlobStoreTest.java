@@ -0,0 +1,386 @@
+package us.kbase.workspace.test.database.mongo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static us.kbase.common.test.TestCommon.set;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.typedobj.core.MD5;
+import us.kbase.typedobj.core.Restreamable;
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.DataSource;
+import us.kbase.workspace.database.DependencyStatus;
+import us.kbase.workspace.database.mongo.BlobSource;
+import us.kbase.workspace.database.mongo.BlobStore;
+import us.kbase.workspace.database.mongo.CachingBlobStore;
+import us.kbase.workspace.database.mongo.CachingBlobStore.CacheStatistics;
+
+public class CachingBlobStoreTest {
+
+	/* This is strictly for unit tests. */
+
+	private static Path tempDir;
+	private static TempFilesManager tfm;
+
+	private BlobStore store;
+	private ByteArrayFileCacheManager bafcMan;
+	private final Map<MD5, String> blobs = new HashMap<>();
+	private final Map<MD5, Boolean> sorted = new HashMap<>();
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		tempDir = Paths.get(TestCommon.getTempDir()).resolve("CachingBlobStoreTest");
+		Files.createDirectories(tempDir);
+		tfm = new TempFilesManager(tempDir.resolve("temp").toFile());
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+		if (tempDir != null && TestCommon.getDeleteTempFiles()) {
+			FileUtils.deleteQuietly(tempDir.toFile());
+		}
+	}
+
+	@Before
+	public void before() throws Exception {
+		blobs.clear();
+		sorted.clear();
+		bafcMan = new ByteArrayFileCacheManager(100000, 100000, tfm);
+		store = mock(BlobStore.class);
+		when(store.getBlob(any(MD5.class), any(ByteArrayFileCacheManager.class)))
+				.thenAnswer(new Answer<ByteArrayFileCache>() {
+
+					@Override
+					public ByteArrayFileCache answer(final InvocationOnMock inv)
+							throws Throwable {
+						final MD5 md5 = (MD5) inv.getArguments()[0];
+						final ByteArrayFileCacheManager man =
+								(ByteArrayFileCacheManager) inv.getArguments()[1];
+						return man.createBAFC(new ByteArrayInputStream(
+								blobs.get(md5).getBytes(StandardCharsets.UTF_8)),
+								true, sorted.get(md5));
+					}
+				});
+	}
+
+	private File newCacheDir() {
+		return tempDir.resolve("cache_" + UUID.randomUUID()).toFile();
+	}
+
+	/* makes a JSON blob of exactly the given size and adds it to the mock
+	 * blob store.
+	 */
+	private MD5 blob(final int id, final int size, final boolean isSorted) {
+		final MD5 md5 = new MD5(String.format("%032x", id));
+		final String start = "{\"id\":" + id + ",\"p\":\"";
+		final StringBuilder sb = new StringBuilder(start);
+		for (int i = 0; i < size - start.length() - 2; i++) {
+			sb.append("x");
+		}
+		sb.append("\"}");
+		blobs.put(md5, sb.toString());
+		sorted.put(md5, isSorted);
+		return md5;
+	}
+
+	private void getAndCheck(final CachingBlobStore cbs, final MD5 md5) throws Exception {
+		final ByteArrayFileCache bafc = cbs.getBlob(md5, bafcMan);
+		assertThat("incorrect data", IOUtils.toString(bafc.getJSON()), is(blobs.get(md5)));
+		assertThat("incorrect sorted", bafc.isSorted(), is(sorted.get(md5)));
+		assertThat("incorrect trusted", bafc.containsTrustedJson(), is(true));
+		assertThat("incorrect size", bafc.getSize(), is((long) blobs.get(md5).length()));
+		bafc.destroy();
+	}
+
+	private void checkStats(
+			final CacheStatistics stats,
+			final long memHits,
+			final long memMisses,
+			final long memSize,
+			final long diskHits,
+			final long diskMisses,
+			final long diskEvictions,
+			final long diskSize) {
+		assertThat("incorrect mem hits", stats.getMemoryHits(), is(memHits));
+		assertThat("incorrect mem misses", stats.getMemoryMisses(), is(memMisses));
+		assertThat("incorrect mem size", stats.getMemorySize(), is(memSize));
+		assertThat("incorrect disk hits", stats.getDiskHits(), is(diskHits));
+		assertThat("incorrect disk misses", stats.getDiskMisses(), is(diskMisses));
+		assertThat("incorrect disk evictions", stats.getDiskEvictions(), is(diskEvictions));
+		assertThat("incorrect disk size", stats.getDiskSize(), is(diskSize));
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		failConstruct(null, 1, newCacheDir(), 1, new NullPointerException("store cannot be null"));
+		failConstruct(store, -1, newCacheDir(), 1, new IllegalArgumentException(
+				"Cache sizes must be at least 0"));
+		failConstruct(store, 1, newCacheDir(), -1, new IllegalArgumentException(
+				"Cache sizes must be at least 0"));
+		failConstruct(store, 1, null, 1, new NullPointerException(
+				"diskCacheDirectory cannot be null if the disk cache is enabled"));
+	}
+
+	private void failConstruct(
+			final BlobStore store,
+			final long memSize,
+			final File dir,
+			final long diskSize,
+			final Exception expected) {
+		try {
+			new CachingBlobStore(store, memSize, dir, diskSize);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void constructCleansDiskCache() throws Exception {
+		final File dir = newCacheDir();
+		dir.mkdirs();
+		final File old = new File(dir, "blob_" + String.format("%032x", 1) + ".json");
+		final File other = new File(dir, "other.txt");
+		Files.write(old.toPath(), Arrays.asList("foo"), StandardCharsets.UTF_8);
+		Files.write(other.toPath(), Arrays.asList("foo"), StandardCharsets.UTF_8);
+
+		new CachingBlobStore(store, 0, dir, 1000);
+
+		assertThat("cache file not deleted", old.exists(), is(false));
+		assertThat("other file deleted", other.exists(), is(true));
+	}
+
+	@Test
+	public void noCache() throws Exception {
+		final CachingBlobStore cbs = new CachingBlobStore(store, 0, null, 0);
+		final MD5 md5 = blob(1, 20, true);
+
+		getAndCheck(cbs, md5);
+		getAndCheck(cbs, md5);
+
+		verify(store, times(2)).getBlob(md5, bafcMan);
+		checkStats(cbs.getStatistics(), 0, 0, 0, 0, 0, 0, 0);
+	}
+
+	@Test
+	public void memoryCache() throws Exception {
+		final CachingBlobStore cbs = new CachingBlobStore(store, 16 * 30, null, 0);
+		final MD5 md5 = blob(1, 30, true);
+		final MD5 md52 = blob(2, 25, false);
+
+		getAndCheck(cbs, md5);
+		getAndCheck(cbs, md5);
+		getAndCheck(cbs, md52);
+		getAndCheck(cbs, md5);
+		getAndCheck(cbs, md52);
+
+		verify(store, times(1)).getBlob(md5, bafcMan);
+		verify(store, times(1)).getBlob(md52, bafcMan);
+		checkStats(cbs.getStatistics(), 3, 2, 55, 0, 0, 0, 0);
+	}
+
+	@Test
+	public void blobSource() throws Exception {
+		final CachingBlobStore cbs = new CachingBlobStore(store, 16 * 30, null, 0);
+		final MD5 md5 = blob(1, 30, false);
+		final MD5 md52 = blob(2, 25, true);
+		final BlobSource src2 = new BlobSource(mock(DataSource.class), true);
+		when(store.getBlobSource(md52)).thenReturn(src2);
+
+		getAndCheck(cbs, md5);
+		final BlobSource src = cbs.getBlobSource(md5);
+		assertThat("incorrect sorted", src.isSorted(), is(false));
+		assertThat("incorrect data", IOUtils.toString(src.getSource().open()),
+				is(blobs.get(md5)));
+		// streamed blobs aren't cached
+		assertThat("incorrect source", cbs.getBlobSource(md52), is(src2));
+		assertThat("incorrect source", cbs.getBlobSource(md52), is(src2));
+
+		verify(store, times(1)).getBlob(md5, bafcMan);
+		verify(store, times(2)).getBlobSource(md52);
+		checkStats(cbs.getStatistics(), 1, 3, 30, 0, 0, 0, 0);
+	}
+
+	@Test
+	public void memoryCacheBlobTooLarge() throws Exception {
+		final CachingBlobStore cbs = new CachingBlobStore(store, 16 * 30, null, 0);
+		final MD5 md5 = blob(1, 31, true);
+
+		getAndCheck(cbs, md5);
+		getAndCheck(cbs, md5);
+
+		verify(store, times(2)).getBlob(md5, bafcMan);
+		checkStats(cbs.getStatistics(), 0, 2, 0, 0, 0, 0, 0);
+	}
+
+	@Test
+	public void memoryCacheEviction() throws Exception {
+		final CachingBlobStore cbs = new CachingBlobStore(store, 16 * 30, null, 0);
+		for (int i = 0; i < 40; i++) {
+			getAndCheck(cbs, blob(i, 30, true));
+		}
+		final CacheStatistics stats = cbs.getStatistics();
+		assertTrue("expected evictions", stats.getMemoryEvictions() > 0);
+		assertTrue("cache too large", stats.getMemorySize() <= 16 * 30);
+	}
+
+	@Test
+	public void diskCache() throws Exception {
+		final File dir = newCacheDir();
+		final CachingBlobStore cbs = new CachingBlobStore(store, 0, dir, 16 * 40);
+		final MD5 md5 = blob(1, 40, true);
+		final MD5 md52 = blob(2, 35, false);
+
+		getAndCheck(cbs, md5);
+		getAndCheck(cbs, md5);
+		getAndCheck(cbs, md52);
+		getAndCheck(cbs, md5);
+		getAndCheck(cbs, md52);
+
+		verify(store, times(1)).getBlob(md5, bafcMan);
+		verify(store, times(1)).getBlob(md52, bafcMan);
+		checkStats(cbs.getStatistics(), 0, 0, 0, 3, 2, 0, 75);
+		assertThat("incorrect cache files", set(dir.list()), is(set(
+				"blob_" + md5.getMD5() + ".json", "blob_" + md52.getMD5() + ".json")));
+	}
+
+	@Test
+	public void diskCacheBlobTooLarge() throws Exception {
+		final File dir = newCacheDir();
+		final CachingBlobStore cbs = new CachingBlobStore(store, 0, dir, 16 * 40);
+		final MD5 md5 = blob(1, 41, true);
+
+		getAndCheck(cbs, md5);
+		getAndCheck(cbs, md5);
+
+		verify(store, times(2)).getBlob(md5, bafcMan);
+		checkStats(cbs.getStatistics(), 0, 0, 0, 0, 2, 0, 0);
+		assertThat("incorrect cache files", dir.list().length, is(0));
+	}
+
+	@Test
+	public void diskCacheEviction() throws Exception {
+		final File dir = newCacheDir();
+		final CachingBlobStore cbs = new CachingBlobStore(store, 0, dir, 16 * 40);
+		for (int i = 0; i < 16; i++) {
+			getAndCheck(cbs, blob(i, 40, true));
+		}
+		checkStats(cbs.getStatistics(), 0, 0, 0, 0, 16, 0, 16 * 40);
+
+		// blob 0 becomes the most recently used, so blob 1 is evicted
+		getAndCheck(cbs, blob(0, 40, true));
+		getAndCheck(cbs, blob(16, 40, true));
+		checkStats(cbs.getStatistics(), 0, 0, 0, 1, 17, 1, 16 * 40);
+		assertThat("evicted file exists", new File(dir, "blob_" +
+				blob(1, 40, true).getMD5() + ".json").exists(), is(false));
+		assertThat("incorrect file count", dir.list().length, is(16));
+
+		getAndCheck(cbs, blob(0, 40, true));
+		getAndCheck(cbs, blob(1, 40, true));
+		verify(store, times(1)).getBlob(blob(0, 40, true), bafcMan);
+		verify(store, times(2)).getBlob(blob(1, 40, true), bafcMan);
+	}
+
+	@Test
+	public void diskCachePromotesToMemory() throws Exception {
+		final File dir = newCacheDir();
+		final CachingBlobStore cbs = new CachingBlobStore(store, 16 * 30, dir, 16 * 40);
+		final MD5 md5 = blob(1, 30, true);
+		final MD5 md5big = blob(2, 40, false);
+
+		getAndCheck(cbs, md5);
+		getAndCheck(cbs, md5big);
+		// the first blob is in both tiers, the second is too large for memory
+		checkStats(cbs.getStatistics(), 0, 2, 30, 0, 2, 0, 70);
+		getAndCheck(cbs, md5);
+		getAndCheck(cbs, md5big);
+		getAndCheck(cbs, md5big);
+
+		verify(store, times(1)).getBlob(md5, bafcMan);
+		verify(store, times(1)).getBlob(md5big, bafcMan);
+		checkStats(cbs.getStatistics(), 1, 4, 30, 2, 2, 0, 70);
+	}
+
+	@Test
+	public void removeBlob() throws Exception {
+		final File dir = newCacheDir();
+		final CachingBlobStore cbs = new CachingBlobStore(store, 16 * 30, dir, 16 * 40);
+		final MD5 md5 = blob(1, 30, true);
+
+		getAndCheck(cbs, md5);
+		checkStats(cbs.getStatistics(), 0, 1, 30, 0, 1, 0, 30);
+
+		cbs.removeBlob(md5);
+
+		verify(store).removeBlob(md5);
+		checkStats(cbs.getStatistics(), 0, 1, 0, 0, 1, 0, 0);
+		assertThat("incorrect file count", dir.list().length, is(0));
+		getAndCheck(cbs, md5);
+		verify(store, times(2)).getBlob(md5, bafcMan);
+	}
+
+	@Test
+	public void delegation() throws Exception {
+		final CachingBlobStore cbs = new CachingBlobStore(store, 16 * 30, null, 0);
+		final MD5 md5 = blob(1, 30, true);
+		final Restreamable data = mock(Restreamable.class);
+		final DependencyStatus ds = new DependencyStatus(true, "ok", "foo", "1");
+		when(store.getExistingBlobs(set(md5))).thenReturn(set(md5));
+		when(store.getExternalIdentifier(md5)).thenReturn("ext");
+		when(store.status()).thenReturn(Arrays.asList(ds));
+
+		cbs.saveBlob(md5, data, true);
+
+		verify(store).saveBlob(md5, data, true);
+		assertThat("incorrect existing", cbs.getExistingBlobs(set(md5)), is(set(md5)));
+		assertThat("incorrect existing", cbs.getExistingBlobs(Collections.<MD5>emptySet()),
+				is(Collections.<MD5>emptySet()));
+		assertThat("incorrect ext id", cbs.getExternalIdentifier(md5), is("ext"));
+		assertThat("incorrect status", cbs.status(), is(Arrays.asList(ds)));
+	}
+
+	@Test
+	public void cacheFailureDoesNotFailGet() throws Exception {
+		final File dir = newCacheDir();
+		final CachingBlobStore cbs = new CachingBlobStore(store, 0, dir, 16 * 40);
+		final MD5 md5 = blob(1, 30, true);
+		// writing the temp file will fail
+		FileUtils.deleteDirectory(dir);
+
+		getAndCheck(cbs, md5);
+
+		verify(store, times(1)).getBlob(eq(md5), any(ByteArrayFileCacheManager.class));
+		checkStats(cbs.getStatistics(), 0, 0, 0, 0, 1, 0, 0);
+	}
+}
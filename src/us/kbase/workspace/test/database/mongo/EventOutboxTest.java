@@ -0,0 +1,376 @@
+package us.kbase.workspace.test.database.mongo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static us.kbase.common.test.TestCommon.set;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.MongoClient;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.common.test.controllers.mongo.MongoController;
+import us.kbase.workspace.database.ObjectInformation;
+import us.kbase.workspace.database.Permission;
+import us.kbase.workspace.database.ResolvedWorkspaceID;
+import us.kbase.workspace.database.UncheckedUserMetadata;
+import us.kbase.workspace.database.WorkspaceUser;
+import us.kbase.workspace.database.mongo.EventOutbox;
+import us.kbase.workspace.database.mongo.EventOutbox.EventType;
+import us.kbase.workspace.database.mongo.EventOutbox.OutboxEvent;
+import us.kbase.workspace.database.mongo.EventOutboxDispatcher;
+import us.kbase.workspace.listener.WorkspaceEventListener;
+
+public class EventOutboxTest {
+
+	private static MongoController mongo;
+	private static DB db;
+
+	private static final Instant T = Instant.ofEpochMilli(10000);
+	private static final Duration POLL = Duration.ofMillis(10);
+	private static final Duration SETTLE = Duration.ofSeconds(30);
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		mongo = new MongoController(TestCommon.getMongoExe(),
+				Paths.get(TestCommon.getTempDir()),
+				TestCommon.useWiredTigerEngine());
+		System.out.println("Using Mongo temp dir " + mongo.getTempDir());
+		TestCommon.stfuLoggers();
+		@SuppressWarnings("resource")
+		final MongoClient mongoClient = new MongoClient("localhost:" + mongo.getServerPort());
+		db = mongoClient.getDB("EventOutboxTest");
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+		if (mongo != null) {
+			mongo.destroy(TestCommon.getDeleteTempFiles());
+		}
+	}
+
+	@Before
+	public void clearDB() throws Exception {
+		TestCommon.destroyDB(db);
+	}
+
+	private static ObjectInformation info(final long wsid, final long id, final int ver) {
+		return new ObjectInformation(id, "obj" + id, "Mod.Type-1.0", new Date(20000), ver,
+				new WorkspaceUser("u"), new ResolvedWorkspaceID(wsid, "ws" + wsid, false, false),
+				"ffffffffffffffffffffffffffffffff", 42L,
+				new UncheckedUserMetadata(ImmutableMap.of("foo", "bar")));
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		failConstruct(null, 1, new NullPointerException("workspaceDB"));
+		failConstruct(db, 0, new IllegalArgumentException(
+				"retentionDays must be greater than zero"));
+	}
+
+	private void failConstruct(final DB db, final int days, final Exception expected) {
+		try {
+			new EventOutbox(db, days);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void eventTypeNames() throws Exception {
+		for (final EventType t: EventType.values()) {
+			assertThat("incorrect type", EventType.fromName(t.getName()), is(t));
+		}
+		try {
+			EventType.fromName("delete");
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got,
+					new IllegalArgumentException("Unknown event type: delete"));
+		}
+	}
+
+	@Test
+	public void appendAndGet() throws Exception {
+		final EventOutbox ob = new EventOutbox(db, 7);
+		ob.append(EventType.SAVE, Arrays.asList(info(1, 1, 1), info(1, 2, 1)));
+		ob.append(EventType.COPY, Collections.<ObjectInformation>emptyList());
+		ob.append(EventType.REVERT, Arrays.asList(info(2, 3, 4)));
+		// changing the retention time updates the index
+		final EventOutbox ob2 = new EventOutbox(db, 1);
+		ob2.append(EventType.COPY_ALL_VERSIONS, Arrays.asList(info(1, 4, 2)));
+
+		final List<OutboxEvent> events = ob.getEvents(0, 10);
+		assertThat("incorrect count", events.size(), is(4));
+		checkEvent(events.get(0), 1, EventType.SAVE, info(1, 1, 1));
+		checkEvent(events.get(1), 2, EventType.SAVE, info(1, 2, 1));
+		checkEvent(events.get(2), 3, EventType.REVERT, info(2, 3, 4));
+		checkEvent(events.get(3), 4, EventType.COPY_ALL_VERSIONS, info(1, 4, 2));
+
+		final List<OutboxEvent> after = ob.getEvents(2, 1);
+		assertThat("incorrect count", after.size(), is(1));
+		checkEvent(after.get(0), 3, EventType.REVERT, info(2, 3, 4));
+
+		try {
+			ob.getEvents(0, 0);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got,
+					new IllegalArgumentException("limit must be greater than zero"));
+		}
+		try {
+			ob.append(EventType.RENAME_OBJECT, Arrays.asList(info(1, 1, 1)));
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new IllegalArgumentException(
+					"Not an object version event type: RENAME_OBJECT"));
+		}
+	}
+
+	private void checkEvent(
+			final OutboxEvent e,
+			final long seq,
+			final EventType type,
+			final ObjectInformation oi) {
+		assertThat("incorrect sequence", e.getSequence(), is(seq));
+		assertThat("incorrect type", e.getType(), is(type));
+		assertThat("incorrect object info", e.getObjectInformation(), is(oi));
+		assertThat("incorrect time", e.getTime().isAfter(Instant.now().minusSeconds(60)),
+				is(true));
+	}
+
+	@Test
+	public void checkpoints() throws Exception {
+		final EventOutbox ob = new EventOutbox(db, 7);
+		assertThat("incorrect checkpoint", ob.getCheckpoint("c1"), is(0L));
+		ob.setCheckpoint("c1", 5);
+		ob.setCheckpoint("c2", 3);
+		ob.setCheckpoint("c1", 7);
+		// checkpoints never move backwards
+		ob.setCheckpoint("c2", 2);
+		ob.setCheckpoint("c2", 3);
+		assertThat("incorrect checkpoint", ob.getCheckpoint("c1"), is(7L));
+		assertThat("incorrect checkpoint", ob.getCheckpoint("c2"), is(3L));
+	}
+
+	@Test
+	public void publicWorkspaces() throws Exception {
+		final EventOutbox ob = new EventOutbox(db, 7);
+		db.getCollection("workspaceACLs").insert(
+				new BasicDBObject("id", 1L).append("user", "*").append("perm", 10),
+				new BasicDBObject("id", 2L).append("user", "foo").append("perm", 10),
+				new BasicDBObject("id", 3L).append("user", "*").append("perm", 10));
+		assertThat("incorrect public", ob.getPublicWorkspaces(set(1L, 2L, 4L)), is(set(1L)));
+		assertThat("incorrect public", ob.getPublicWorkspaces(set(2L)),
+				is(Collections.<Long>emptySet()));
+	}
+
+	@Test
+	public void dispatch() throws Exception {
+		final EventOutbox ob = new EventOutbox(db, 7);
+		db.getCollection("workspaceACLs").insert(
+				new BasicDBObject("id", 2L).append("user", "*").append("perm", 10));
+		ob.append(EventType.SAVE, Arrays.asList(info(1, 1, 1)));
+		ob.append(EventType.COPY, Arrays.asList(info(2, 2, 1)));
+		ob.append(EventType.COPY_ALL_VERSIONS, Arrays.asList(info(1, 3, 5)));
+		ob.append(EventType.REVERT, Arrays.asList(info(2, 4, 3)));
+
+		// whether the workspace is public is recorded with the event
+		db.getCollection("workspaceACLs").remove(new BasicDBObject("id", 2L));
+
+		final WorkspaceEventListener l = mock(WorkspaceEventListener.class);
+		final EventOutboxDispatcher d = new EventOutboxDispatcher(
+				ob, "test", l, 2, POLL, SETTLE, 10);
+		verify(l, timeout(5000)).revertObject(info(2, 4, 3), true);
+		assertThat("incorrect close", d.close(5, TimeUnit.SECONDS), is(true));
+
+		verify(l).saveObject(info(1, 1, 1), false);
+		verify(l).copyObject(info(2, 2, 1), true);
+		verify(l).copyObject(1, 3, 5, Instant.ofEpochMilli(20000), false);
+		verifyNoMoreInteractions(l);
+		assertThat("incorrect checkpoint", d.getCheckpoint(), is(4L));
+		assertThat("incorrect stored checkpoint", ob.getCheckpoint("test"), is(4L));
+		assertThat("incorrect delivered", d.getDeliveredCount(), is(4L));
+
+		// a restarted dispatcher resumes from the checkpoint
+		ob.append(EventType.SAVE, Arrays.asList(info(1, 5, 1)));
+		final WorkspaceEventListener l2 = mock(WorkspaceEventListener.class);
+		final EventOutboxDispatcher d2 = new EventOutboxDispatcher(
+				ob, "test", l2, 2, POLL, SETTLE, 10);
+		verify(l2, timeout(5000)).saveObject(info(1, 5, 1), false);
+		d2.close(5, TimeUnit.SECONDS);
+		verifyNoMoreInteractions(l2);
+	}
+
+	@Test
+	public void redeliverAfterFailure() throws Exception {
+		final EventOutbox ob = new EventOutbox(db, 7);
+		ob.append(EventType.SAVE, Arrays.asList(info(1, 1, 1)));
+		final WorkspaceEventListener l = mock(WorkspaceEventListener.class);
+		doThrow(new IllegalStateException("whoops")).doNothing()
+				.when(l).saveObject(info(1, 1, 1), false);
+
+		final EventOutboxDispatcher d = new EventOutboxDispatcher(
+				ob, "test", l, 10, POLL, SETTLE, 10);
+		verify(l, timeout(5000).times(2)).saveObject(info(1, 1, 1), false);
+		for (int i = 0; i < 100 && d.getCheckpoint() < 1; i++) {
+			Thread.sleep(10);
+		}
+		d.close(5, TimeUnit.SECONDS);
+		assertThat("incorrect checkpoint", d.getCheckpoint(), is(1L));
+		assertThat("incorrect failed", d.getFailedCount(), is(1L));
+		assertThat("incorrect delivered", d.getDeliveredCount(), is(2L));
+		assertThat("incorrect skipped", d.getSkippedCount(), is(0L));
+	}
+
+	@Test
+	public void skipAfterMaxAttempts() throws Exception {
+		final EventOutbox ob = new EventOutbox(db, 7);
+		ob.append(EventType.SAVE, Arrays.asList(info(1, 1, 1), info(1, 2, 1)));
+		ob.append(EventType.SAVE, Arrays.asList(info(1, 3, 1)));
+		final WorkspaceEventListener l = mock(WorkspaceEventListener.class);
+		doThrow(new IllegalStateException("whoops")).when(l).saveObject(info(1, 1, 1), false);
+
+		final EventOutboxDispatcher d = new EventOutboxDispatcher(
+				ob, "test", l, 2, POLL, SETTLE, 3);
+		verify(l, timeout(5000)).saveObject(info(1, 3, 1), false);
+		d.close(5, TimeUnit.SECONDS);
+		// 3 failed batch attempts, then the events are delivered one at a time
+		verify(l, times(4)).saveObject(info(1, 1, 1), false);
+		verify(l).saveObject(info(1, 2, 1), false);
+		verifyNoMoreInteractions(l);
+		assertThat("incorrect checkpoint", d.getCheckpoint(), is(3L));
+		assertThat("incorrect failed", d.getFailedCount(), is(7L));
+		assertThat("incorrect skipped", d.getSkippedCount(), is(1L));
+	}
+
+	@Test
+	public void skipSettledGap() throws Exception {
+		final EventOutbox ob = new EventOutbox(db, 7);
+		ob.append(EventType.SAVE, Arrays.asList(info(1, 1, 1), info(1, 2, 1)));
+		// simulate a server failing between allocating a sequence number and writing the event
+		db.getCollection("eventOutbox").remove(new BasicDBObject("_id", 1L));
+
+		final WorkspaceEventListener l = mock(WorkspaceEventListener.class);
+		final EventOutboxDispatcher d = new EventOutboxDispatcher(
+				ob, "test", l, 10, POLL, Duration.ofMillis(100), 10);
+		verify(l, timeout(5000)).saveObject(info(1, 2, 1), false);
+		d.close(5, TimeUnit.SECONDS);
+		verifyNoMoreInteractions(l);
+	}
+
+	@Test
+	public void dispatchFail() throws Exception {
+		final EventOutbox ob = new EventOutbox(db, 7);
+		final WorkspaceEventListener l = mock(WorkspaceEventListener.class);
+		failDispatch(null, "c", l, 1, POLL, SETTLE, 1, new NullPointerException("outbox"));
+		failDispatch(ob, null, l, 1, POLL, SETTLE, 1, new NullPointerException("consumer"));
+		failDispatch(ob, "c", null, 1, POLL, SETTLE, 1, new NullPointerException("listener"));
+		failDispatch(ob, "c", l, 1, null, SETTLE, 1, new NullPointerException("pollInterval"));
+		failDispatch(ob, "c", l, 1, POLL, null, 1, new NullPointerException("settleTime"));
+		failDispatch(ob, "c", l, 0, POLL, SETTLE, 1, new IllegalArgumentException(
+				"batchSize must be greater than zero"));
+		failDispatch(ob, "c", l, 1, POLL, SETTLE, 0, new IllegalArgumentException(
+				"maxAttempts must be greater than zero"));
+	}
+
+	private void failDispatch(
+			final EventOutbox ob,
+			final String consumer,
+			final WorkspaceEventListener l,
+			final int batchSize,
+			final Duration poll,
+			final Duration settle,
+			final int maxAttempts,
+			final Exception expected) {
+		try {
+			new EventOutboxDispatcher(ob, consumer, l, batchSize, poll, settle, maxAttempts);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void recordAndDispatchAllEvents() throws Exception {
+		final EventOutbox ob = new EventOutbox(db, 7);
+		final WorkspaceEventListener r = ob.getRecorder();
+		final WorkspaceUser u1 = new WorkspaceUser("u1");
+		final WorkspaceUser u2 = new WorkspaceUser("u2");
+		r.createWorkspace(1, T);
+		r.cloneWorkspace(2, true, T);
+		r.setWorkspaceMetadata(1, T);
+		r.lockWorkspace(1, T);
+		r.renameWorkspace(1, "newws", T);
+		r.setGlobalPermission(1, Permission.READ, T);
+		r.setPermissions(1, Permission.WRITE, Arrays.asList(u1, u2), T);
+		r.setWorkspaceDescription(1, T);
+		r.setWorkspaceOwner(1, u1, Optional.of("u1:ws"), T);
+		r.setWorkspaceOwner(2, u2, Optional.absent(), T);
+		// version events are recorded by the workspace database, not the recorder
+		r.saveObject(info(1, 1, 1), true);
+		r.copyObject(info(1, 1, 1), true);
+		r.copyObject(1, 1, 1, T, true);
+		r.revertObject(info(1, 1, 1), true);
+		ob.append(EventType.SAVE, Arrays.asList(info(1, 1, 1)));
+		r.renameObject(1, 1, "newobj", T);
+		r.setObjectDeleted(1, 1, true, T);
+		r.setWorkspaceDeleted(1, true, 1, T);
+
+		final List<OutboxEvent> events = ob.getEvents(0, 100);
+		assertThat("incorrect count", events.size(), is(14));
+		assertThat("incorrect type", events.get(0).getType(), is(EventType.CREATE_WORKSPACE));
+		assertThat("incorrect object", events.get(0).getObjectInformation(), is((Object) null));
+		checkEvent(events.get(10), 11, EventType.SAVE, info(1, 1, 1));
+
+		final WorkspaceEventListener l = mock(WorkspaceEventListener.class);
+		final EventOutboxDispatcher d = new EventOutboxDispatcher(
+				ob, "test", l, 5, POLL, SETTLE, 10);
+		verify(l, timeout(5000)).setWorkspaceDeleted(1, true, 1, T);
+		d.close(5, TimeUnit.SECONDS);
+
+		final InOrder o = inOrder(l);
+		o.verify(l).createWorkspace(1, T);
+		o.verify(l).cloneWorkspace(2, true, T);
+		o.verify(l).setWorkspaceMetadata(1, T);
+		o.verify(l).lockWorkspace(1, T);
+		o.verify(l).renameWorkspace(1, "newws", T);
+		o.verify(l).setGlobalPermission(1, Permission.READ, T);
+		o.verify(l).setPermissions(1, Permission.WRITE, Arrays.asList(u1, u2), T);
+		o.verify(l).setWorkspaceDescription(1, T);
+		o.verify(l).setWorkspaceOwner(1, u1, Optional.of("u1:ws"), T);
+		o.verify(l).setWorkspaceOwner(2, u2, Optional.absent(), T);
+		o.verify(l).saveObject(info(1, 1, 1), false);
+		o.verify(l).renameObject(1, 1, "newobj", T);
+		o.verify(l).setObjectDeleted(1, 1, true, T);
+		o.verify(l).setWorkspaceDeleted(1, true, 1, T);
+		verifyNoMoreInteractions(l);
+		assertThat("incorrect checkpoint", d.getCheckpoint(), is(14L));
+	}
+}
@@ -0,0 +1,315 @@
+package us.kbase.workspace.test.database.mongo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static us.kbase.common.test.TestCommon.set;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.typedobj.core.MD5;
+import us.kbase.typedobj.core.Restreamable;
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.DependencyStatus;
+import us.kbase.workspace.database.mongo.BlobCompression;
+import us.kbase.workspace.database.mongo.BlobSource;
+import us.kbase.workspace.database.mongo.FileSystemBlobStore;
+import us.kbase.workspace.database.mongo.IndexedBlob;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreCommunicationException;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreException;
+
+public class FileSystemBlobStoreTest {
+
+	private static Path root;
+	private static FileSystemBlobStore fsb;
+	private static TempFilesManager tfm;
+
+	private static final String a32 = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa";
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		tfm = new TempFilesManager(new File(TestCommon.getTempDir()));
+		root = Files.createTempDirectory(Paths.get(TestCommon.getTempDir()), "FSBlobStoreTest");
+		fsb = new FileSystemBlobStore(root.toFile(), BlobCompression.NONE);
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+		if (root != null && TestCommon.getDeleteTempFiles()) {
+			FileUtils.deleteDirectory(root.toFile());
+		}
+	}
+
+	private static class StringRestreamable implements Restreamable {
+
+		private final String data;
+
+		public StringRestreamable(final String data) {
+			this.data = data;
+		}
+		@Override
+		public InputStream getInputStream() {
+			return IOUtils.toInputStream(data);
+		}
+	}
+
+	private static ByteArrayFileCacheManager bafcMan() {
+		return new ByteArrayFileCacheManager(16000000, 2000000000L, tfm);
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		failConstruct(null, BlobCompression.NONE);
+		failConstruct(root.toFile(), null);
+	}
+
+	private void failConstruct(final File dir, final BlobCompression comp) {
+		try {
+			new FileSystemBlobStore(dir, comp);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got,
+					new NullPointerException("Arguments cannot be null"));
+		}
+	}
+
+	@Test
+	public void badInput() throws Exception {
+		try {
+			fsb.saveBlob(new MD5(a32), null, true);
+			fail("expected exception");
+		} catch (NullPointerException npe) {
+			assertThat("correct excepction message", npe.getLocalizedMessage(),
+					is("Arguments cannot be null"));
+		}
+
+		try {
+			fsb.saveBlob(null, new StringRestreamable("foo"), true);
+			fail("expected exception");
+		} catch (NullPointerException npe) {
+			assertThat("correct excepction message", npe.getLocalizedMessage(),
+					is("Arguments cannot be null"));
+		}
+	}
+
+	@Test
+	public void saveAndGetBlob() throws Exception {
+		final MD5 md1 = new MD5("0123456789abcdef0123456789abcdef");
+		final String data = "this is a blob yo";
+		fsb.saveBlob(md1, new StringRestreamable(data), true);
+		assertThat("blob in wrong location", Files.isRegularFile(
+				root.resolve("01/23/0123456789abcdef0123456789abcdef")), is(true));
+		assertThat("temp file not removed", root.resolve("tmp").toFile().list().length, is(0));
+
+		ByteArrayFileCache d = fsb.getBlob(new MD5("0123456789abcdef0123456789abcdef"),
+				bafcMan());
+		assertThat("data returned marked as sorted", d.isSorted(), is(true));
+		assertThat("Didn't get same data back from store", IOUtils.toString(d.getJSON()),
+				is(data));
+		assertThat("no external ID", fsb.getExternalIdentifier(md1) == null, is(true));
+
+		fsb.saveBlob(md1, new StringRestreamable(data), false); //this should do nothing
+		assertThat("sorted still true", fsb.getBlob(md1, bafcMan()).isSorted(), is(true));
+
+		final MD5 md2 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa2");
+		fsb.saveBlob(md2, new StringRestreamable("this is also a blob yo"), false);
+		d = fsb.getBlob(md2, bafcMan());
+		assertThat("data returned marked as unsorted", d.isSorted(), is(false));
+
+		fsb.removeBlob(md1);
+		fsb.removeBlob(md2);
+		assertThat("blob not removed", Files.exists(
+				root.resolve("01/23/0123456789abcdef0123456789abcdef")), is(false));
+	}
+
+	@Test
+	public void getBlobSource() throws Exception {
+		final MD5 md1 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa1");
+		final MD5 md2 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa2");
+		fsb.saveBlob(md1, new StringRestreamable("blob 1"), true);
+		fsb.saveBlob(md2, new StringRestreamable("blob 2"), false);
+
+		final BlobSource s1 = fsb.getBlobSource(md1);
+		assertThat("incorrect sorted", s1.isSorted(), is(true));
+		// the source can be read more than once
+		for (int i = 0; i < 2; i++) {
+			try (final InputStream is = s1.getSource().open()) {
+				assertThat("incorrect data", IOUtils.toString(is), is("blob 1"));
+			}
+		}
+		final BlobSource s2 = fsb.getBlobSource(md2);
+		assertThat("incorrect sorted", s2.isSorted(), is(false));
+		try (final InputStream is = s2.getSource().open()) {
+			assertThat("incorrect data", IOUtils.toString(is), is("blob 2"));
+		}
+
+		fsb.removeBlob(md1);
+		fsb.removeBlob(md2);
+
+		try {
+			fsb.getBlobSource(new MD5(a32));
+			fail("expected exception");
+		} catch (BlobStoreException wbe) {
+			assertThat("wrong exception message", wbe.getLocalizedMessage(),
+					is("Attempt to retrieve non-existant blob with chksum " + a32));
+		}
+	}
+
+	@Test
+	public void compression() throws Exception {
+		final FileSystemBlobStore deflate = new FileSystemBlobStore(
+				root.toFile(), BlobCompression.DEFLATE);
+		final MD5 md1 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa1");
+		final MD5 md2 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa2");
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append("{\"id\":\"feature\",\"type\":\"CDS\"}");
+		}
+		final String data = sb.toString();
+		deflate.saveBlob(md1, new StringRestreamable(data), true);
+		fsb.saveBlob(md2, new StringRestreamable(data), false);
+
+		assertThat("data not compressed", Files.size(root.resolve("aa/aa/" + md1.getMD5())) <
+				data.length() / 10, is(true));
+		assertThat("data compressed", Files.size(root.resolve("aa/aa/" + md2.getMD5())) >
+				data.length(), is(true));
+
+		// blobs are read with the codec they were saved with, not the store's codec
+		for (final FileSystemBlobStore store: Arrays.asList(fsb, deflate)) {
+			for (final MD5 md5: Arrays.asList(md1, md2)) {
+				final ByteArrayFileCache d = store.getBlob(md5, bafcMan());
+				assertThat("incorrect data", IOUtils.toString(d.getJSON()), is(data));
+				assertThat("incorrect sorted", d.isSorted(), is(md5.equals(md1)));
+				try (final InputStream is = store.getBlobSource(md5).getSource().open()) {
+					assertThat("incorrect data", IOUtils.toString(is), is(data));
+				}
+			}
+		}
+		fsb.removeBlob(md1);
+		fsb.removeBlob(md2);
+	}
+
+	@Test
+	public void blobIndex() throws Exception {
+		final MD5 md1 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaab1");
+		final MD5 md2 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaab2");
+		final byte[] index = {1, 2, 3};
+		final String data = "{\"a\":[1,2,3],\"b\":\"foo\"}";
+		fsb.saveBlob(md1, new StringRestreamable(data), true);
+		assertThat("incorrect supported", fsb.supportsBlobIndexes(), is(true));
+		assertThat("incorrect indexed blob", fsb.getIndexedBlob(md1), nullValue());
+
+		fsb.saveBlobIndex(md1, index);
+		fsb.saveBlobIndex(md1, new byte[] {4}); // ignored
+		final IndexedBlob ib = fsb.getIndexedBlob(md1);
+		assertThat("incorrect index", Arrays.equals(ib.getIndex(), index), is(true));
+		assertThat("incorrect sorted", ib.isSorted(), is(true));
+		try (final InputStream is = ib.getSource().open(5, 7)) {
+			assertThat("incorrect range", IOUtils.toString(is), is("[1,2,3]"));
+		}
+		try (final InputStream is = ib.getSource().open(17, 100)) {
+			assertThat("incorrect range", IOUtils.toString(is), is("\"foo\"}"));
+		}
+
+		// compressed blobs can't be read by range
+		final FileSystemBlobStore deflate = new FileSystemBlobStore(
+				root.toFile(), BlobCompression.DEFLATE);
+		assertThat("incorrect supported", deflate.supportsBlobIndexes(), is(false));
+		deflate.saveBlob(md2, new StringRestreamable(data), true);
+		fsb.saveBlobIndex(md2, index);
+		assertThat("incorrect indexed blob", fsb.getIndexedBlob(md2), nullValue());
+		assertThat("incorrect indexed blob", deflate.getIndexedBlob(md1) == null, is(false));
+
+		fsb.removeBlob(md1);
+		fsb.removeBlob(md2);
+		assertThat("index not removed", Files.exists(
+				root.resolve("aa/aa/" + md1.getMD5() + ".index")), is(false));
+		assertThat("incorrect indexed blob", fsb.getIndexedBlob(md1), nullValue());
+	}
+
+	@Test
+	public void corruptBlob() throws Exception {
+		final Path p = root.resolve("aa/aa/" + a32);
+		Files.createDirectories(p.getParent());
+		Files.write(p, "pootypoot".getBytes(StandardCharsets.UTF_8));
+		try {
+			fsb.getBlob(new MD5(a32), bafcMan());
+			fail("expected exception");
+		} catch (BlobStoreCommunicationException e) {
+			assertThat("incorrect exception message", e.getLocalizedMessage(), is(
+					"Could not read from the blob directory: Truncated header for blob " + a32));
+		}
+		fsb.removeBlob(new MD5(a32));
+	}
+
+	@Test
+	public void getExistingBlobs() throws Exception {
+		final MD5 md1 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa1");
+		final MD5 md2 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa2");
+		final MD5 md3 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa3");
+		fsb.saveBlob(md1, new StringRestreamable("blob 1"), true);
+		fsb.saveBlob(md3, new StringRestreamable("blob 3"), true);
+
+		assertThat("incorrect existing blobs", fsb.getExistingBlobs(set(md1, md2, md3)),
+				is(set(md1, md3)));
+		assertThat("incorrect existing blobs", fsb.getExistingBlobs(set(md2)),
+				is(Collections.<MD5>emptySet()));
+
+		fsb.removeBlob(md1);
+		fsb.removeBlob(md3);
+
+		try {
+			fsb.getExistingBlobs(null);
+			fail("expected exception");
+		} catch (NullPointerException npe) {
+			assertThat("incorrect exception message", npe.getLocalizedMessage(),
+					is("md5s cannot be null"));
+		}
+	}
+
+	@Test
+	public void getNonExistantBlob() throws Exception {
+		try {
+			fsb.getBlob(new MD5(a32), bafcMan());
+			fail("getblob should throw exception");
+		} catch (BlobStoreException wbe) {
+			assertThat("wrong exception message from failed getblob",
+					wbe.getLocalizedMessage(),
+					is("Attempt to retrieve non-existant blob with chksum " + a32));
+		}
+	}
+
+	@Test
+	public void removeNonExistantBlob() throws Exception {
+		fsb.removeBlob(new MD5(a32)); //should silently not remove anything
+	}
+
+	@Test
+	public void status() throws Exception {
+		final List<DependencyStatus> deps = fsb.status();
+		assertThat("incorrect number of deps", deps.size(), is(1));
+		final DependencyStatus dep = deps.get(0);
+		assertThat("incorrect fail", dep.isOk(), is(true));
+		assertThat("incorrect name", dep.getName(), is("FileSystem"));
+		assertThat("incorrect status", dep.getStatus(), is("OK"));
+		assertThat("incorrect version", dep.getVersion(), is("N/A"));
+	}
+}
@@ -4,10 +4,13 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static us.kbase.common.test.TestCommon.set;
 
 import java.io.File;
 import java.io.InputStream;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.commons.io.IOUtils;
@@ -29,6 +32,8 @@ import us.kbase.typedobj.core.TempFilesManager;
 import us.kbase.workspace.database.ByteArrayFileCacheManager;
 import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
 import us.kbase.workspace.database.DependencyStatus;
+import us.kbase.workspace.database.mongo.BlobCompression;
+import us.kbase.workspace.database.mongo.BlobSource;
 import us.kbase.workspace.database.mongo.GridFSBlobStore;
 import us.kbase.workspace.database.mongo.exceptions.BlobStoreException;
 
@@ -142,6 +147,103 @@ public class GridFSBlobStoreTest {
 		gfsb.removeBlob(md2);
 	}
 	
+	@Test
+	public void getBlobSource() throws Exception {
+		final MD5 md1 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa1");
+		final MD5 md2 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa2");
+		gfsb.saveBlob(md1, new StringRestreamable("blob 1"), true);
+		gfsb.saveBlob(md2, new StringRestreamable("blob 2"), false);
+		
+		final BlobSource s1 = gfsb.getBlobSource(md1);
+		assertThat("incorrect sorted", s1.isSorted(), is(true));
+		// the source can be read more than once
+		for (int i = 0; i < 2; i++) {
+			try (final InputStream is = s1.getSource().open()) {
+				assertThat("incorrect data", IOUtils.toString(is), is("blob 1"));
+			}
+		}
+		final BlobSource s2 = gfsb.getBlobSource(md2);
+		assertThat("incorrect sorted", s2.isSorted(), is(false));
+		assertThat("incorrect data", IOUtils.toString(s2.getSource().open()), is("blob 2"));
+		
+		gfsb.removeBlob(md1);
+		gfsb.removeBlob(md2);
+		
+		try {
+			gfsb.getBlobSource(new MD5(a32));
+			fail("expected exception");
+		} catch (BlobStoreException wbe) {
+			assertThat("wrong exception message", wbe.getLocalizedMessage(),
+					is("Attempt to retrieve non-existant blob with chksum " + a32));
+		}
+	}
+	
+	@Test
+	public void compression() throws Exception {
+		final GridFSBlobStore deflate = new GridFSBlobStore(gfs.getDB(), BlobCompression.DEFLATE);
+		final MD5 md1 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa1");
+		final MD5 md2 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa2");
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append("{\"id\":\"feature\",\"type\":\"CDS\"}");
+		}
+		final String data = sb.toString();
+		deflate.saveBlob(md1, new StringRestreamable(data), true);
+		gfsb.saveBlob(md2, new StringRestreamable(data), false);
+		
+		assertThat("incorrect codec", gfs.findOne(md1.getMD5()).get("compression"),
+				is((Object) "deflate"));
+		assertThat("data not compressed",
+				gfs.findOne(md1.getMD5()).getLength() < data.length() / 10, is(true));
+		assertThat("incorrect codec", gfs.findOne(md2.getMD5()).get("compression"),
+				is((Object) null));
+		assertThat("incorrect length", gfs.findOne(md2.getMD5()).getLength(),
+				is((long) data.length()));
+		
+		// blobs are read with the codec they were saved with, not the store's codec
+		for (final GridFSBlobStore store: Arrays.asList(gfsb, deflate)) {
+			for (final MD5 md5: Arrays.asList(md1, md2)) {
+				final ByteArrayFileCache d = store.getBlob(md5,
+						new ByteArrayFileCacheManager(16000000, 2000000000L, tfm));
+				assertThat("incorrect data", IOUtils.toString(d.getJSON()), is(data));
+				assertThat("incorrect sorted", d.isSorted(), is(md5.equals(md1)));
+				try (final InputStream is = store.getBlobSource(md5).getSource().open()) {
+					assertThat("incorrect data", IOUtils.toString(is), is(data));
+				}
+			}
+		}
+		gfsb.removeBlob(md1);
+		gfsb.removeBlob(md2);
+	}
+	
+	@Test
+	public void getExistingBlobs() throws Exception {
+		final MD5 md1 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa1");
+		final MD5 md2 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa2");
+		final MD5 md3 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa3");
+		gfsb.saveBlob(md1, new StringRestreamable("blob 1"), true);
+		gfsb.saveBlob(md3, new StringRestreamable("blob 3"), true);
+		
+		assertThat("incorrect existing blobs", gfsb.getExistingBlobs(set(md1, md2, md3)),
+				is(set(md1, md3)));
+		assertThat("incorrect existing blobs", gfsb.getExistingBlobs(set(md2)),
+				is(Collections.<MD5>emptySet()));
+		assertThat("incorrect existing blobs",
+				gfsb.getExistingBlobs(Collections.<MD5>emptySet()),
+				is(Collections.<MD5>emptySet()));
+		
+		gfsb.removeBlob(md1);
+		gfsb.removeBlob(md3);
+		
+		try {
+			gfsb.getExistingBlobs(null);
+			fail("expected exception");
+		} catch (NullPointerException npe) {
+			assertThat("incorrect exception message", npe.getLocalizedMessage(),
+					is("md5s cannot be null"));
+		}
+	}
+	
 	@Test
 	public void getNonExistantBlob() throws Exception {
 		try {
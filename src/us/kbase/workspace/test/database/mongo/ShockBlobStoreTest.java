@@ -3,23 +3,34 @@ package us.kbase.workspace.test.database.mongo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.verifyZeroInteractions;
+import static us.kbase.common.test.TestCommon.set;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.MongoException;
 
@@ -34,6 +45,8 @@ import us.kbase.shock.client.exceptions.ShockHttpException;
 import us.kbase.typedobj.core.MD5;
 import us.kbase.typedobj.core.Restreamable;
 import us.kbase.workspace.database.DependencyStatus;
+import us.kbase.workspace.database.mongo.BlobCompression;
+import us.kbase.workspace.database.mongo.BlobSource;
 import us.kbase.workspace.database.mongo.ShockBlobStore;
 import us.kbase.workspace.database.mongo.exceptions.BlobStoreCommunicationException;
 import us.kbase.workspace.test.database.mongo.ShockBlobStoreIntegrationTest.StringRestreamable;
@@ -47,15 +60,17 @@ public class ShockBlobStoreTest {
 		final DBCollection col = mock(DBCollection.class);
 		final BasicShockClient client = mock(BasicShockClient.class);
 		
-		failConstruct(null, client);
-		failConstruct(col, null);
+		failConstruct(null, client, BlobCompression.NONE);
+		failConstruct(col, null, BlobCompression.NONE);
+		failConstruct(col, client, null);
 	}
 	
 	private void failConstruct(
 			final DBCollection collection,
-			final BasicShockClient client) {
+			final BasicShockClient client,
+			final BlobCompression compression) {
 		try {
-			new ShockBlobStore(collection, client);
+			new ShockBlobStore(collection, client, compression);
 		} catch (NullPointerException npe) {
 			assertThat("correct exception message", npe.getLocalizedMessage(),
 					is("Arguments cannot be null"));
@@ -191,6 +206,74 @@ public class ShockBlobStoreTest {
 				true, false);
 	}
 	
+	@Test
+	public void saveBlobCompressed() throws Exception {
+		final String md5 = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa1";
+		final DBCollection col = mock(DBCollection.class);
+		final BasicShockClient client = mock(BasicShockClient.class);
+		final ShockNode sn = mock(ShockNode.class);
+		final ShockFileInformation sfi = mock(ShockFileInformation.class);
+		
+		final ShockBlobStore sbs = new ShockBlobStore(col, client, BlobCompression.DEFLATE);
+		
+		when(col.findOne(new BasicDBObject("chksum", md5))).thenReturn(null);
+		
+		final byte[] compressed = IOUtils.toByteArray(BlobCompression.DEFLATE.compress(
+				new ByteArrayInputStream("foo".getBytes())));
+		final byte[][] sent = new byte[1][];
+		when(client.addNode(any(InputStream.class), eq("workspace_" + md5), eq("JSON")))
+				.thenAnswer(new Answer<ShockNode>() {
+
+					@Override
+					public ShockNode answer(final InvocationOnMock inv) throws Throwable {
+						sent[0] = IOUtils.toByteArray((InputStream) inv.getArguments()[0]);
+						return sn;
+					}
+				});
+		
+		when(sn.getId()).thenReturn(new ShockNodeId("ca4a4b5a-b676-4090-9a7d-9690189e29be"));
+		when(sn.getVersion()).thenReturn(
+				new ShockVersionStamp("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa2"));
+		when(sn.getFileInformation()).thenReturn(sfi);
+		// Shock's md5 is of the compressed data
+		when(sfi.getChecksum("md5")).thenReturn(DigestUtils.md5Hex(compressed));
+		
+		sbs.saveBlob(new MD5(md5), new StringRestreamable("foo"), true);
+		
+		assertThat("incorrect data", sent[0], is(compressed));
+		verify(col).update(new BasicDBObject("chksum", md5),
+				new BasicDBObject("chksum", md5)
+					.append("node", "ca4a4b5a-b676-4090-9a7d-9690189e29be")
+					.append("ver", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa2")
+					.append("sorted", true)
+					.append("compression", "deflate"),
+				true, false);
+	}
+	
+	@Test
+	public void getBlobSourceCompressed() throws Exception {
+		final String md5 = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa1";
+		final DBCollection col = mock(DBCollection.class);
+		final BasicShockClient client = mock(BasicShockClient.class);
+		
+		// blobs are read with the codec they were saved with, not the store's codec
+		final ShockBlobStore sbs = new ShockBlobStore(col, client);
+		
+		when(col.findOne(new BasicDBObject("chksum", md5))).thenReturn(
+				new BasicDBObject("node", "ca4a4b5a-b676-4090-9a7d-9690189e29be")
+						.append("sorted", true)
+						.append("compression", "deflate-fast"));
+		when(client.getFile(new ShockNodeId("ca4a4b5a-b676-4090-9a7d-9690189e29be")))
+				.thenReturn(BlobCompression.DEFLATE_FAST.compress(
+						new ByteArrayInputStream("foo".getBytes())));
+		
+		final BlobSource bs = sbs.getBlobSource(new MD5(md5));
+		assertThat("incorrect sorted", bs.isSorted(), is(true));
+		try (final InputStream is = bs.getSource().open()) {
+			assertThat("incorrect data", IOUtils.toString(is), is("foo"));
+		}
+	}
+	
 	@Test
 	public void saveBlob4AttemptsAndSortedFalse() throws Exception {
 		final String md5 = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa1";
@@ -443,6 +526,89 @@ public class ShockBlobStoreTest {
 		failSaveBlob(sbs, new MD5(md5), res, true, expected);
 	}
 	
+	@Test
+	public void getExistingBlobs() throws Exception {
+		final DBCollection col = mock(DBCollection.class);
+		final BasicShockClient client = mock(BasicShockClient.class);
+		final DBCursor cur = mock(DBCursor.class);
+		
+		final ShockBlobStore sbs = new ShockBlobStore(col, client);
+		
+		when(col.find(
+				new BasicDBObject("chksum", new BasicDBObject("$in", Arrays.asList(
+						"aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa1",
+						"aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa2",
+						"aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa3"))),
+				new BasicDBObject("chksum", 1)))
+				.thenReturn(cur);
+		when(cur.iterator()).thenReturn(Arrays.<DBObject>asList(
+				new BasicDBObject("chksum", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa3"),
+				new BasicDBObject("chksum", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa1"))
+				.iterator());
+		
+		assertThat("incorrect existing blobs", sbs.getExistingBlobs(new LinkedHashSet<>(
+				Arrays.asList(
+						new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa1"),
+						new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa2"),
+						new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa3")))),
+				is(set(new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa1"),
+						new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa3"))));
+		
+		verifyZeroInteractions(client);
+	}
+	
+	@Test
+	public void getExistingBlobsEmpty() throws Exception {
+		final DBCollection col = mock(DBCollection.class);
+		final BasicShockClient client = mock(BasicShockClient.class);
+		
+		final ShockBlobStore sbs = new ShockBlobStore(col, client);
+		
+		final DBObject dbo = new BasicDBObject();
+		dbo.put("chksum", 1);
+		final DBObject opts = new BasicDBObject();
+		opts.put("unique", 1);
+		// need to verify so verifyNoMoreInteractions() works
+		verify(col).createIndex(dbo, opts);
+		
+		assertThat("incorrect existing blobs", sbs.getExistingBlobs(Collections.<MD5>emptySet()),
+				is(Collections.<MD5>emptySet()));
+		
+		verifyZeroInteractions(client);
+		verifyNoMoreInteractions(col);
+	}
+	
+	@Test
+	public void getExistingBlobsFail() throws Exception {
+		final DBCollection col = mock(DBCollection.class);
+		final BasicShockClient client = mock(BasicShockClient.class);
+		
+		final ShockBlobStore sbs = new ShockBlobStore(col, client);
+		
+		failGetExistingBlobs(sbs, null, new NullPointerException("md5s cannot be null"));
+		
+		when(col.find(
+				new BasicDBObject("chksum", new BasicDBObject("$in", Arrays.asList(
+						"aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa1"))),
+				new BasicDBObject("chksum", 1)))
+				.thenThrow(new MongoException("foo"));
+		
+		failGetExistingBlobs(sbs, set(new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa1")),
+				new BlobStoreCommunicationException("Could not read from the mongo database"));
+	}
+	
+	private void failGetExistingBlobs(
+			final ShockBlobStore sbs,
+			final Set<MD5> md5s,
+			final Exception expected) {
+		try {
+			sbs.getExistingBlobs(md5s);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+	
 	@Test
 	public void removeBlobNoop() throws Exception {
 		final String md5 = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa1";
@@ -0,0 +1,185 @@
+package us.kbase.workspace.test.database.mongo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static us.kbase.common.test.TestCommon.set;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.typedobj.core.MD5;
+import us.kbase.typedobj.core.Restreamable;
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.DataSource;
+import us.kbase.workspace.database.mongo.BlobSource;
+import us.kbase.workspace.database.mongo.BlobStore;
+import us.kbase.workspace.database.mongo.TimedBlobStore;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreCommunicationException;
+import us.kbase.workspace.database.mongo.exceptions.NoSuchBlobException;
+import us.kbase.workspace.metrics.Metrics;
+import us.kbase.workspace.metrics.Timer;
+
+public class TimedBlobStoreTest {
+
+	/* This is strictly for unit tests. */
+
+	private static final MD5 MD5_1 = new MD5("1c2d6f5b0c6d1f0e6b7f4e9e3e2a1b0c");
+	private static final String DATA = "{\"a\":[1,2,3]}";
+
+	private static TempFilesManager tfm;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		tfm = new TempFilesManager(new File(TestCommon.getTempDir()));
+	}
+
+	private static InputStream data() {
+		return new ByteArrayInputStream(DATA.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void checkTimer(
+			final Metrics m,
+			final String name,
+			final long count,
+			final long errors,
+			final long bytes) {
+		final Timer t = m.getTimer("blobstore." + name);
+		assertThat("incorrect count for " + name, t.getCount(), is(count));
+		assertThat("incorrect errors for " + name, t.getErrors(), is(errors));
+		assertThat("incorrect bytes for " + name, t.getBytes(), is(bytes));
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		try {
+			new TimedBlobStore(null, new Metrics());
+			fail("expected exception");
+		} catch (NullPointerException e) {
+			assertThat("incorrect exception message", e.getMessage(), is("store"));
+		}
+		try {
+			new TimedBlobStore(mock(BlobStore.class), null);
+			fail("expected exception");
+		} catch (NullPointerException e) {
+			assertThat("incorrect exception message", e.getMessage(), is("metrics"));
+		}
+	}
+
+	@Test
+	public void saveBlob() throws Exception {
+		final BlobStore store = mock(BlobStore.class);
+		// read the data twice, as a compressing store might
+		doAnswer(new Answer<Void>() {
+
+			@Override
+			public Void answer(final InvocationOnMock inv) throws Throwable {
+				final Restreamable r = (Restreamable) inv.getArguments()[1];
+				IOUtils.toByteArray(r.getInputStream());
+				IOUtils.toByteArray(r.getInputStream());
+				return null;
+			}
+		}).when(store).saveBlob(eq(MD5_1), any(Restreamable.class), eq(true));
+		final Metrics m = new Metrics();
+		final TimedBlobStore tbs = new TimedBlobStore(store, m);
+
+		tbs.saveBlob(MD5_1, () -> data(), true);
+		checkTimer(m, "saveBlob", 1, 0, DATA.length());
+
+		doThrow(new BlobStoreCommunicationException("oops")).when(store)
+				.saveBlob(eq(MD5_1), any(Restreamable.class), eq(false));
+		try {
+			tbs.saveBlob(MD5_1, () -> data(), false);
+			fail("expected exception");
+		} catch (BlobStoreCommunicationException e) {
+			assertThat("incorrect exception message", e.getMessage(), is("oops"));
+		}
+		checkTimer(m, "saveBlob", 2, 1, DATA.length());
+	}
+
+	@Test
+	public void getBlob() throws Exception {
+		final BlobStore store = mock(BlobStore.class);
+		final ByteArrayFileCacheManager man = new ByteArrayFileCacheManager(100000, 100000, tfm);
+		final ByteArrayFileCache bafc = man.createBAFC(data(), true, true);
+		when(store.getBlob(MD5_1, man)).thenReturn(bafc)
+				.thenThrow(new NoSuchBlobException("no blob"));
+		final Metrics m = new Metrics();
+		final TimedBlobStore tbs = new TimedBlobStore(store, m);
+
+		assertThat("incorrect blob", tbs.getBlob(MD5_1, man) == bafc, is(true));
+		try {
+			tbs.getBlob(MD5_1, man);
+			fail("expected exception");
+		} catch (NoSuchBlobException e) {
+			assertThat("incorrect exception message", e.getMessage(), is("no blob"));
+		}
+		checkTimer(m, "getBlob", 2, 1, DATA.length());
+	}
+
+	@Test
+	public void getBlobSource() throws Exception {
+		final BlobStore store = mock(BlobStore.class);
+		when(store.getBlobSource(MD5_1)).thenReturn(new BlobSource(new DataSource() {
+
+			@Override
+			public InputStream open() {
+				return data();
+			}
+		}, true));
+		final Metrics m = new Metrics();
+		final TimedBlobStore tbs = new TimedBlobStore(store, m);
+
+		final BlobSource bs = tbs.getBlobSource(MD5_1);
+		assertThat("incorrect sorted", bs.isSorted(), is(true));
+		checkTimer(m, "getBlobSource", 1, 0, 0);
+		checkTimer(m, "readBlobSource", 0, 0, 0);
+		for (int i = 0; i < 2; i++) {
+			final InputStream is = bs.getSource().open();
+			assertThat("incorrect data", IOUtils.toString(is, StandardCharsets.UTF_8), is(DATA));
+			is.close();
+			is.close(); // only counted once
+		}
+		checkTimer(m, "readBlobSource", 2, 0, 2 * DATA.length());
+	}
+
+	@Test
+	public void otherMethods() throws Exception {
+		final BlobStore store = mock(BlobStore.class);
+		when(store.getExistingBlobs(set(MD5_1))).thenReturn(set(MD5_1));
+		when(store.getExternalIdentifier(MD5_1)).thenReturn("foo");
+		when(store.supportsBlobIndexes()).thenReturn(true);
+		final Metrics m = new Metrics();
+		final TimedBlobStore tbs = new TimedBlobStore(store, m);
+
+		assertThat("incorrect blobs", tbs.getExistingBlobs(set(MD5_1)), is(set(MD5_1)));
+		assertThat("incorrect id", tbs.getExternalIdentifier(MD5_1), is("foo"));
+		assertThat("incorrect supported", tbs.supportsBlobIndexes(), is(true));
+		tbs.saveBlobIndex(MD5_1, new byte[] {1, 2, 3});
+		assertThat("incorrect indexed blob", tbs.getIndexedBlob(MD5_1), nullValue());
+		tbs.removeBlob(MD5_1);
+		checkTimer(m, "getExistingBlobs", 1, 0, 0);
+		checkTimer(m, "getExternalIdentifier", 1, 0, 0);
+		checkTimer(m, "saveBlobIndex", 1, 0, 3);
+		checkTimer(m, "getIndexedBlob", 1, 0, 0);
+		checkTimer(m, "removeBlob", 1, 0, 0);
+	}
+}
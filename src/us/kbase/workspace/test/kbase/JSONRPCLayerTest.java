@@ -1212,6 +1212,43 @@ public class JSONRPCLayerTest extends JSONRPCLayerTester {
 		}
 	}
 	
+	@Test
+	public void metricsUnknownMethod() throws Exception {
+		// made up method names must not each create a new metric
+		for (final String method: Arrays.asList("no_such_method", "no_such_method2")) {
+			final byte[] req = ("{\"params\": [], \"method\": \"Workspace." + method +
+					"\", \"version\": \"1.1\", \"id\": \"1\"}").getBytes("UTF-8");
+			final HttpURLConnection conn = (HttpURLConnection) CLIENT1.getURL()
+					.openConnection();
+			conn.setConnectTimeout(10000);
+			conn.setDoOutput(true);
+			conn.setRequestMethod("POST");
+			conn.setRequestProperty("Authorization", CLIENT1.getToken().getToken());
+			conn.getOutputStream().write(req);
+			assertThat("incorrect response code", conn.getResponseCode(), is(500));
+			conn.getErrorStream().close();
+		}
+		CLIENT1.ver();
+		
+		@SuppressWarnings("unchecked")
+		final Map<String, Object> metrics = CLIENT2.administer(new UObject(
+				ImmutableMap.of("command", "getMetrics"))).asClassInstance(Map.class);
+		@SuppressWarnings("unchecked")
+		final Set<String> timers = ((Map<String, Object>) metrics.get("timers")).keySet();
+		@SuppressWarnings("unchecked")
+		final Set<String> histograms = ((Map<String, Object>) metrics.get("histograms")).keySet();
+		assertThat("missing rpc.ver", timers.contains("rpc.ver"), is(true));
+		assertThat("missing rpc.unknown", timers.contains("rpc.unknown"), is(true));
+		assertThat("missing rpc.unknown", histograms.contains("rpc.unknown.bytesIn"), is(true));
+		for (final String name: timers) {
+			assertThat("unexpected timer " + name, name.contains("no_such_method"), is(false));
+		}
+		for (final String name: histograms) {
+			assertThat("unexpected histogram " + name, name.contains("no_such_method"),
+					is(false));
+		}
+	}
+	
 	@SuppressWarnings("deprecation")
 	@Test
 	public void deprecatedMethods() throws Exception {
@@ -0,0 +1,308 @@
+package us.kbase.workspace.test.listener;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.workspace.listener.AsyncWorkspaceEventListener;
+import us.kbase.workspace.listener.AsyncWorkspaceEventListener.OverflowPolicy;
+import us.kbase.workspace.listener.BatchWorkspaceEventListener;
+import us.kbase.workspace.listener.WorkspaceEvent;
+import us.kbase.workspace.listener.WorkspaceEventListener;
+
+public class AsyncWorkspaceEventListenerTest {
+
+	private static final Instant T = Instant.ofEpochMilli(10000);
+
+	// records the ids of delivered events and the sizes of delivered batches
+	private static class Recorder implements Answer<Void> {
+
+		private final CountDownLatch release;
+		private final List<Long> ids = new ArrayList<>();
+		private final List<Integer> batches = new ArrayList<>();
+
+		private Recorder(final CountDownLatch release) {
+			this.release = release;
+		}
+
+		@Override
+		public Void answer(final InvocationOnMock inv) throws Throwable {
+			release.await();
+			@SuppressWarnings("unchecked")
+			final List<WorkspaceEvent> events = (List<WorkspaceEvent>) inv.getArguments()[0];
+			final WorkspaceEventListener l = mock(WorkspaceEventListener.class);
+			doAnswer(new Answer<Void>() {
+
+				@Override
+				public Void answer(final InvocationOnMock inv) {
+					synchronized (Recorder.this) {
+						ids.add((Long) inv.getArguments()[0]);
+					}
+					return null;
+				}
+			}).when(l).createWorkspace(any(Long.class), any(Instant.class));
+			for (final WorkspaceEvent e: events) {
+				e.dispatch(l);
+			}
+			synchronized (this) {
+				batches.add(events.size());
+			}
+			return null;
+		}
+
+		private synchronized List<Long> getIDs() {
+			return new ArrayList<>(ids);
+		}
+
+		private synchronized List<Integer> getBatches() {
+			return new ArrayList<>(batches);
+		}
+	}
+
+	private static void waitForQueueDepth(final AsyncWorkspaceEventListener l, final int depth)
+			throws Exception {
+		for (int i = 0; i < 100 && l.getQueueDepth() != depth; i++) {
+			Thread.sleep(10);
+		}
+		assertThat("incorrect queue depth", l.getQueueDepth(), is(depth));
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		final WorkspaceEventListener l = mock(WorkspaceEventListener.class);
+		failConstruct(null, 1, 1, OverflowPolicy.BLOCK, new NullPointerException("listener"));
+		failConstruct(l, 1, 1, null, new NullPointerException("policy"));
+		failConstruct(l, 0, 1, OverflowPolicy.BLOCK,
+				new IllegalArgumentException("queueSize must be greater than zero"));
+		failConstruct(l, 1, 0, OverflowPolicy.BLOCK,
+				new IllegalArgumentException("batchSize must be greater than zero"));
+	}
+
+	private void failConstruct(
+			final WorkspaceEventListener l,
+			final int queueSize,
+			final int batchSize,
+			final OverflowPolicy policy,
+			final Exception expected) {
+		try {
+			new AsyncWorkspaceEventListener(l, queueSize, batchSize, policy);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void overflowPolicyNames() throws Exception {
+		for (final OverflowPolicy p: OverflowPolicy.values()) {
+			assertThat("incorrect policy", OverflowPolicy.fromName(p.getName()), is(p));
+		}
+		assertThat("incorrect name", OverflowPolicy.DROP_OLDEST.getName(), is("drop-oldest"));
+		try {
+			OverflowPolicy.fromName("drop");
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got,
+					new IllegalArgumentException("Unknown overflow policy: drop"));
+		}
+	}
+
+	@Test
+	public void deliverInOrder() throws Exception {
+		final WorkspaceEventListener l = mock(WorkspaceEventListener.class);
+		final AsyncWorkspaceEventListener al = new AsyncWorkspaceEventListener(
+				l, 100, 10, OverflowPolicy.BLOCK);
+		al.createWorkspace(1, T);
+		al.renameObject(1, 2, "foo", T);
+		al.setObjectDeleted(1, 2, true, T);
+		al.setWorkspaceDeleted(1, true, 2, T);
+
+		assertThat("incorrect drain", al.close(10, TimeUnit.SECONDS), is(true));
+		final InOrder o = inOrder(l);
+		o.verify(l).createWorkspace(1, T);
+		o.verify(l).renameObject(1, 2, "foo", T);
+		o.verify(l).setObjectDeleted(1, 2, true, T);
+		o.verify(l).setWorkspaceDeleted(1, true, 2, T);
+		assertThat("incorrect delivered", al.getDeliveredCount(), is(4L));
+		assertThat("incorrect queue depth", al.getQueueDepth(), is(0));
+		assertThat("incorrect lag", al.getLag(), is(Duration.ZERO));
+
+		// events after close are delivered in the calling thread
+		al.lockWorkspace(1, T);
+		verify(l).lockWorkspace(1, T);
+		assertThat("incorrect delivered", al.getDeliveredCount(), is(5L));
+	}
+
+	@Test
+	public void batches() throws Exception {
+		final BatchWorkspaceEventListener l = mock(BatchWorkspaceEventListener.class);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Recorder rec = new Recorder(release);
+		doAnswer(rec).when(l).handleEvents(anyListOf(WorkspaceEvent.class));
+		final AsyncWorkspaceEventListener al = new AsyncWorkspaceEventListener(
+				l, 100, 3, OverflowPolicy.BLOCK);
+
+		// the first event is taken from the queue and blocks in the listener
+		al.createWorkspace(0, T);
+		waitForQueueDepth(al, 0);
+		for (long i = 1; i < 8; i++) {
+			al.createWorkspace(i, T);
+		}
+		assertThat("incorrect queue depth", al.getQueueDepth(), is(7));
+		Thread.sleep(20);
+		assertThat("incorrect lag", al.getLag().toMillis() >= 20, is(true));
+		release.countDown();
+
+		assertThat("incorrect drain", al.close(10, TimeUnit.SECONDS), is(true));
+		assertThat("incorrect events", rec.getIDs(), is(Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L,
+				6L, 7L)));
+		assertThat("incorrect batches", rec.getBatches(), is(Arrays.asList(1, 3, 3, 1)));
+		assertThat("incorrect delivered", al.getDeliveredCount(), is(8L));
+	}
+
+	@Test
+	public void dropNewest() throws Exception {
+		overflow(OverflowPolicy.DROP_NEWEST, Arrays.asList(0L, 1L, 2L));
+	}
+
+	@Test
+	public void dropOldest() throws Exception {
+		overflow(OverflowPolicy.DROP_OLDEST, Arrays.asList(0L, 3L, 4L));
+	}
+
+	private void overflow(final OverflowPolicy policy, final List<Long> expected)
+			throws Exception {
+		final BatchWorkspaceEventListener l = mock(BatchWorkspaceEventListener.class);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Recorder rec = new Recorder(release);
+		doAnswer(rec).when(l).handleEvents(anyListOf(WorkspaceEvent.class));
+		final AsyncWorkspaceEventListener al = new AsyncWorkspaceEventListener(
+				l, 2, 10, policy);
+
+		al.createWorkspace(0, T);
+		waitForQueueDepth(al, 0);
+		for (long i = 1; i < 5; i++) {
+			al.createWorkspace(i, T);
+		}
+		assertThat("incorrect queue depth", al.getQueueDepth(), is(2));
+		assertThat("incorrect dropped", al.getDroppedCount(), is(2L));
+		release.countDown();
+
+		assertThat("incorrect drain", al.close(10, TimeUnit.SECONDS), is(true));
+		assertThat("incorrect events", rec.getIDs(), is(expected));
+		assertThat("incorrect delivered", al.getDeliveredCount(), is(3L));
+	}
+
+	@Test
+	public void block() throws Exception {
+		final BatchWorkspaceEventListener l = mock(BatchWorkspaceEventListener.class);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Recorder rec = new Recorder(release);
+		doAnswer(rec).when(l).handleEvents(anyListOf(WorkspaceEvent.class));
+		final AsyncWorkspaceEventListener al = new AsyncWorkspaceEventListener(
+				l, 1, 10, OverflowPolicy.BLOCK);
+
+		al.createWorkspace(0, T);
+		waitForQueueDepth(al, 0);
+		al.createWorkspace(1, T);
+		final Thread t = new Thread(() -> al.createWorkspace(2, T));
+		t.start();
+		Thread.sleep(50);
+		assertThat("caller not blocked", t.isAlive(), is(true));
+		release.countDown();
+		t.join(10000);
+		assertThat("caller still blocked", t.isAlive(), is(false));
+
+		assertThat("incorrect drain", al.close(10, TimeUnit.SECONDS), is(true));
+		assertThat("incorrect events", rec.getIDs(), is(Arrays.asList(0L, 1L, 2L)));
+		assertThat("incorrect dropped", al.getDroppedCount(), is(0L));
+	}
+
+	@Test
+	public void listenerException() throws Exception {
+		final WorkspaceEventListener l = mock(WorkspaceEventListener.class);
+		doThrow(new IllegalStateException("whoops")).when(l).createWorkspace(1, T);
+		final AsyncWorkspaceEventListener al = new AsyncWorkspaceEventListener(
+				l, 10, 10, OverflowPolicy.BLOCK);
+		al.createWorkspace(1, T);
+		al.createWorkspace(2, T);
+
+		assertThat("incorrect drain", al.close(10, TimeUnit.SECONDS), is(true));
+		verify(l).createWorkspace(2, T);
+		assertThat("incorrect delivered", al.getDeliveredCount(), is(2L));
+		assertThat("incorrect failed", al.getFailedCount(), is(1L));
+	}
+
+	@Test
+	public void closeTimeout() throws Exception {
+		final BatchWorkspaceEventListener l = mock(BatchWorkspaceEventListener.class);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Recorder rec = new Recorder(release);
+		doAnswer(rec).when(l).handleEvents(anyListOf(WorkspaceEvent.class));
+		final AsyncWorkspaceEventListener al = new AsyncWorkspaceEventListener(
+				l, 10, 10, OverflowPolicy.BLOCK);
+		al.createWorkspace(0, T);
+		waitForQueueDepth(al, 0);
+		al.createWorkspace(1, T);
+
+		assertThat("incorrect drain", al.close(50, TimeUnit.MILLISECONDS), is(false));
+		release.countDown();
+		// the queue is still drained after the timeout
+		for (int i = 0; i < 100 && al.getDeliveredCount() < 2; i++) {
+			Thread.sleep(10);
+		}
+		assertThat("incorrect events", rec.getIDs(), is(Arrays.asList(0L, 1L)));
+	}
+
+	@Test
+	public void eventsAfterCloseInOrder() throws Exception {
+		final BatchWorkspaceEventListener l = mock(BatchWorkspaceEventListener.class);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Recorder rec = new Recorder(release);
+		doAnswer(rec).when(l).handleEvents(anyListOf(WorkspaceEvent.class));
+		final AsyncWorkspaceEventListener al = new AsyncWorkspaceEventListener(
+				l, 10, 10, OverflowPolicy.BLOCK);
+		al.createWorkspace(0, T);
+		waitForQueueDepth(al, 0);
+		al.createWorkspace(1, T);
+
+		assertThat("incorrect drain", al.close(50, TimeUnit.MILLISECONDS), is(false));
+		// events after close must not be delivered ahead of the queued events
+		al.createWorkspace(2, T);
+		assertThat("incorrect queue depth", al.getQueueDepth(), is(2));
+		release.countDown();
+		for (int i = 0; i < 100 && al.getDeliveredCount() < 3; i++) {
+			Thread.sleep(10);
+		}
+		assertThat("incorrect events", rec.getIDs(), is(Arrays.asList(0L, 1L, 2L)));
+
+		// wait for the delivery thread to poll the empty queue and stop. After that, events
+		// are delivered in the calling thread
+		Thread.sleep(300);
+		al.createWorkspace(3, T);
+		assertThat("incorrect events", rec.getIDs(), is(Arrays.asList(0L, 1L, 2L, 3L)));
+		assertThat("incorrect delivered", al.getDeliveredCount(), is(4L));
+		assertThat("incorrect queue depth", al.getQueueDepth(), is(0));
+	}
+}
@@ -0,0 +1,227 @@
+package us.kbase.workspace.test.metrics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.google.common.cache.CacheStats;
+
+import us.kbase.workspace.metrics.Histogram;
+import us.kbase.workspace.metrics.Metrics;
+import us.kbase.workspace.metrics.Timer;
+
+public class MetricsTest {
+
+	@Test
+	public void histogramEmpty() throws Exception {
+		final Histogram h = new Histogram();
+		assertThat("incorrect count", h.getCount(), is(0L));
+		assertThat("incorrect sum", h.getSum(), is(0L));
+		assertThat("incorrect max", h.getMax(), is(0L));
+		assertThat("incorrect mean", h.getMean(), is(0.0));
+		assertThat("incorrect p50", h.getPercentile(50), is(0L));
+	}
+
+	@Test
+	public void histogramSmallValuesExact() throws Exception {
+		final Histogram h = new Histogram();
+		for (final long v: Arrays.asList(0L, 1L, 2L, 3L, -5L)) {
+			h.update(v);
+		}
+		assertThat("incorrect count", h.getCount(), is(5L));
+		assertThat("incorrect sum", h.getSum(), is(6L));
+		assertThat("incorrect max", h.getMax(), is(3L));
+		assertThat("incorrect mean", h.getMean(), is(1.2));
+		assertThat("incorrect p0", h.getPercentile(0), is(0L));
+		assertThat("incorrect p40", h.getPercentile(40), is(0L));
+		assertThat("incorrect p60", h.getPercentile(60), is(1L));
+		assertThat("incorrect p100", h.getPercentile(100), is(3L));
+	}
+
+	@Test
+	public void histogramPercentiles() throws Exception {
+		final Histogram h = new Histogram();
+		for (long i = 1; i <= 1000; i++) {
+			h.update(i);
+		}
+		assertThat("incorrect count", h.getCount(), is(1000L));
+		assertThat("incorrect sum", h.getSum(), is(500500L));
+		assertThat("incorrect max", h.getMax(), is(1000L));
+		// bucket upper bounds: 500 is in [448, 511], 990 in [896, 1023], 950 in [896, 1023]
+		assertThat("incorrect p50", h.getPercentile(50), is(511L));
+		assertThat("incorrect p95", h.getPercentile(95), is(1000L));
+		assertThat("incorrect p99", h.getPercentile(99), is(1000L));
+		assertThat("incorrect p40", h.getPercentile(40), is(447L));
+	}
+
+	@Test
+	public void histogramLargeValues() throws Exception {
+		final Histogram h = new Histogram();
+		h.update(Long.MAX_VALUE);
+		h.update(1L << 62);
+		assertThat("incorrect max", h.getMax(), is(Long.MAX_VALUE));
+		assertThat("incorrect p50", h.getPercentile(50), is((1L << 62) + (1L << 60) - 1));
+		assertThat("incorrect p100", h.getPercentile(100), is(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void histogramBadPercentile() throws Exception {
+		for (final double p: Arrays.asList(-0.1, 100.1, Double.NaN)) {
+			try {
+				new Histogram().getPercentile(p);
+				fail("expected exception");
+			} catch (IllegalArgumentException e) {
+				assertThat("incorrect exception message", e.getMessage(),
+						is("percentile must be between 0 and 100"));
+			}
+		}
+	}
+
+	@Test
+	public void timer() throws Exception {
+		final Timer t = new Timer();
+		t.stop(Timer.start());
+		t.stop(Timer.start(), 100);
+		t.fail(Timer.start());
+		t.addBytes(50);
+		t.addBytes(-1);
+		assertThat("incorrect count", t.getCount(), is(3L));
+		assertThat("incorrect errors", t.getErrors(), is(1L));
+		assertThat("incorrect bytes", t.getBytes(), is(150L));
+	}
+
+	@Test
+	public void getTimerAndHistogramReturnSameInstance() throws Exception {
+		final Metrics m = new Metrics();
+		assertThat("incorrect timer", m.getTimer("t") == m.getTimer("t"), is(true));
+		assertThat("incorrect histogram", m.getHistogram("h") == m.getHistogram("h"), is(true));
+	}
+
+	@Test
+	public void badNames() throws Exception {
+		final Metrics m = new Metrics();
+		for (final String name: Arrays.asList(null, "  \t ")) {
+			failName(() -> m.getTimer(name));
+			failName(() -> m.getHistogram(name));
+			failName(() -> {m.registerGauge(name, () -> 1); return null;});
+		}
+		try {
+			m.registerGauge("g", null);
+			fail("expected exception");
+		} catch (NullPointerException e) {
+			assertThat("incorrect exception message", e.getMessage(), is("gauge"));
+		}
+	}
+
+	private void failName(final Callable<?> c) throws Exception {
+		try {
+			c.call();
+			fail("expected exception");
+		} catch (IllegalArgumentException e) {
+			assertThat("incorrect exception message", e.getMessage(),
+					is("name cannot be null or whitespace only"));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void snapshot() throws Exception {
+		final Metrics m = new Metrics();
+		final Timer t = m.getTimer("rpc.save_objects");
+		t.stop(System.nanoTime() - 2000000, 10);
+		t.fail(System.nanoTime() - 4000000);
+		final Histogram h = m.getHistogram("bytes");
+		h.update(3);
+		h.update(1);
+		final AtomicLong gauge = new AtomicLong(1);
+		m.registerGauge("g", () -> gauge.get());
+		m.registerGauge("bad", () -> {throw new IllegalStateException("oops");});
+		gauge.set(2);
+
+		final Map<String, Object> snap = m.getSnapshot();
+		assertThat("incorrect keys", snap.keySet().toString(), is("[timers, histograms, gauges]"));
+
+		final Map<String, Map<String, Object>> timers =
+				(Map<String, Map<String, Object>>) snap.get("timers");
+		assertThat("incorrect timers", timers.keySet().toString(), is("[rpc.save_objects]"));
+		final Map<String, Object> tm = timers.get("rpc.save_objects");
+		assertThat("incorrect timer keys", tm.keySet().toString(), is(
+				"[count, errors, bytes, total_ms, mean_ms, p50_ms, p95_ms, p99_ms, max_ms]"));
+		assertThat("incorrect count", tm.get("count"), is((Object) 2L));
+		assertThat("incorrect errors", tm.get("errors"), is((Object) 1L));
+		assertThat("incorrect bytes", tm.get("bytes"), is((Object) 10L));
+		assertThat("incorrect max", (Double) tm.get("max_ms") >= 4.0, is(true));
+		assertThat("incorrect p50", (Double) tm.get("p50_ms") >= 2.0, is(true));
+		assertThat("incorrect p50", (Double) tm.get("p50_ms") <= (Double) tm.get("max_ms"),
+				is(true));
+
+		final Map<String, Map<String, Object>> hists =
+				(Map<String, Map<String, Object>>) snap.get("histograms");
+		assertThat("incorrect histogram", hists.get("bytes").toString(),
+				is("{count=2, sum=4, mean=2.0, p50=1, p95=3, p99=3, max=3}"));
+
+		final Map<String, Object> gauges = (Map<String, Object>) snap.get("gauges");
+		assertThat("incorrect gauges", gauges.toString(),
+				is("{bad=Error getting gauge value: oops, g=2}"));
+	}
+
+	@Test
+	public void toMap() throws Exception {
+		assertThat("incorrect map", Metrics.toMap(null), nullValue());
+		assertThat("incorrect map", Metrics.toMap(new CacheStats(1, 2, 3, 4, 5, 6)).toString(),
+				is("{hits=1, misses=2, evictions=6}"));
+	}
+
+	public interface Thing {
+		String doThing(String arg) throws IOException;
+		void fail() throws IOException;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void timed() throws Exception {
+		final Metrics m = new Metrics();
+		final Thing t = m.timed(Thing.class, new Thing() {
+
+			@Override
+			public String doThing(final String arg) {
+				return arg + " done";
+			}
+
+			@Override
+			public void fail() throws IOException {
+				throw new IOException("failed");
+			}
+
+			@Override
+			public String toString() {
+				return "thing";
+			}
+		}, "thing.");
+		assertThat("incorrect result", t.doThing("foo"), is("foo done"));
+		assertThat("incorrect result", t.doThing("bar"), is("bar done"));
+		try {
+			t.fail();
+			fail("expected exception");
+		} catch (IOException e) {
+			assertThat("incorrect exception message", e.getMessage(), is("failed"));
+		}
+		assertThat("incorrect toString", t.toString(), is("thing"));
+
+		assertThat("incorrect timers", ((Map<String, Object>) m.getSnapshot().get("timers"))
+				.keySet().toString(), is("[thing.doThing, thing.fail]"));
+		assertThat("incorrect count", m.getTimer("thing.doThing").getCount(), is(2L));
+		assertThat("incorrect errors", m.getTimer("thing.doThing").getErrors(), is(0L));
+		assertThat("incorrect count", m.getTimer("thing.fail").getCount(), is(1L));
+		assertThat("incorrect errors", m.getTimer("thing.fail").getErrors(), is(1L));
+	}
+}
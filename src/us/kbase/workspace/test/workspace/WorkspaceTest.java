@@ -1880,6 +1880,579 @@ public class WorkspaceTest extends WorkspaceTester {
 		assertThat("Only metadata we wanted was extracted", savedUserMetaData.size(), is(0));
 	}
 	
+	@Test
+	public void saveObjectsConcurrently() throws Exception {
+		final ResourceUsageConfiguration oldcfg = ws.getResourceConfig();
+		final ResourceUsageConfiguration concfg = new ResourceUsageConfigurationBuilder(oldcfg)
+				.withSaveObjectsThreads(4).build();
+		final WorkspaceUser user = new WorkspaceUser("foo");
+		final WorkspaceIdentifier wsi = new WorkspaceIdentifier("concurrentsave");
+		final long wsid = ws.createWorkspace(user, wsi.getName(), false, null, null).getId();
+		ws.saveObjects(user, wsi, Arrays.asList(new WorkspaceSaveObject(
+				new ObjectIDNoWSNoVer("target"), new HashMap<>(), SAFE_TYPE1, null,
+				new Provenance(user), false)), getIdFactory());
+		final Provenance p = new Provenance(user);
+		p.addAction(new ProvenanceAction().withWorkspaceObjects(
+				Arrays.asList("concurrentsave/target")));
+		
+		try {
+			ws.setResourceConfig(concfg);
+			final List<WorkspaceSaveObject> objs = new LinkedList<>();
+			for (int i = 1; i <= 10; i++) {
+				objs.add(new WorkspaceSaveObject(new ObjectIDNoWSNoVer("obj" + i),
+						ImmutableMap.of("refs", Arrays.asList("concurrentsave/target")),
+						REF_TYPE, null, p, false));
+			}
+			final List<ObjectInformation> infos = ws.saveObjects(
+					user, wsi, objs, getIdFactory());
+			assertThat("incorrect object count", infos.size(), is(10));
+			final List<ObjectIdentifier> oids = new LinkedList<>();
+			for (int i = 0; i < 10; i++) {
+				assertThat("incorrect name", infos.get(i).getObjectName(), is("obj" + (i + 1)));
+				assertThat("incorrect id", infos.get(i).getObjectId(), is(i + 2L));
+				oids.add(new ObjectIdentifier(wsi, i + 2));
+			}
+			final List<WorkspaceObjectData> data = ws.getObjects(user, oids);
+			try {
+				for (final WorkspaceObjectData d: data) {
+					assertThat("incorrect refs", d.getReferences(),
+							is(Arrays.asList(wsid + "/1/1")));
+					assertThat("incorrect data", getData(d), is((Object) ImmutableMap.of(
+							"refs", Arrays.asList(wsid + "/1/1"))));
+					assertThat("incorrect prov refs", d.getProvenance().getActions().get(0)
+							.getResolvedObjects(), is(Arrays.asList(wsid + "/1/1")));
+				}
+			} finally {
+				destroyGetObjectsResources(data);
+			}
+			
+			// errors must be identical to the errors thrown when saving serially
+			// type checking failures in objects 3 and 5
+			final List<WorkspaceSaveObject> fails = new LinkedList<>(objs);
+			fails.set(2, new WorkspaceSaveObject(new ObjectIDNoWSNoVer("obj3"),
+					ImmutableMap.of("refs", "foo"), REF_TYPE, null, p, false));
+			fails.set(4, new WorkspaceSaveObject(new ObjectIDNoWSNoVer("obj5"),
+					ImmutableMap.of("refs", "bar"), REF_TYPE, null, p, false));
+			checkConcurrentSaveFailure(user, wsi, fails, oldcfg, concfg);
+			
+			// unparseable id in object 4
+			final List<WorkspaceSaveObject> fails2 = new LinkedList<>(objs);
+			fails2.set(3, new WorkspaceSaveObject(new ObjectIDNoWSNoVer("obj4"),
+					ImmutableMap.of("refs", Arrays.asList("concurrentsave/target", "")),
+					REF_TYPE, null, p, false));
+			checkConcurrentSaveFailure(user, wsi, fails2, oldcfg, concfg);
+			
+			// inaccessible reference in object 6
+			final List<WorkspaceSaveObject> fails3 = new LinkedList<>(objs);
+			fails3.set(5, new WorkspaceSaveObject(new ObjectIDNoWSNoVer("obj6"),
+					ImmutableMap.of("refs", Arrays.asList("nosuchws/1/1")),
+					REF_TYPE, null, p, false));
+			checkConcurrentSaveFailure(user, wsi, fails3, oldcfg, concfg);
+		} finally {
+			ws.setResourceConfig(oldcfg);
+		}
+	}
+	
+	@Test
+	public void saveObjectsConcurrentBlobWrites() throws Exception {
+		final ResourceUsageConfiguration oldcfg = ws.getResourceConfig();
+		final WorkspaceUser user = new WorkspaceUser("foo");
+		final WorkspaceIdentifier wsi = new WorkspaceIdentifier("concurrentblobs");
+		ws.createWorkspace(user, wsi.getName(), false, null, null);
+		// this blob will already exist when the batch is saved
+		ws.saveObjects(user, wsi, Arrays.asList(new WorkspaceSaveObject(
+				new ObjectIDNoWSNoVer("pre"), ImmutableMap.of("foo", 0), SAFE_TYPE1, null,
+				new Provenance(user), false)), getIdFactory());
+		
+		try {
+			ws.setResourceConfig(new ResourceUsageConfigurationBuilder(oldcfg)
+					.withBlobWriteThreads(4).build());
+			final List<WorkspaceSaveObject> objs = new LinkedList<>();
+			for (int i = 0; i < 10; i++) {
+				// every blob is saved by two objects
+				objs.add(new WorkspaceSaveObject(new ObjectIDNoWSNoVer("obj" + i),
+						ImmutableMap.of("foo", i / 2), SAFE_TYPE1, null,
+						new Provenance(user), false));
+			}
+			final List<ObjectInformation> infos = ws.saveObjects(
+					user, wsi, objs, getIdFactory());
+			final List<ObjectIdentifier> oids = new LinkedList<>();
+			for (int i = 0; i < 10; i++) {
+				assertThat("incorrect md5", infos.get(i).getCheckSum(), is(DigestUtils.md5Hex(
+						"{\"foo\":" + (i / 2) + "}")));
+				oids.add(new ObjectIdentifier(wsi, "obj" + i));
+			}
+			final List<WorkspaceObjectData> data = ws.getObjects(user, oids);
+			try {
+				for (int i = 0; i < 10; i++) {
+					assertThat("incorrect data", getData(data.get(i)),
+							is((Object) ImmutableMap.of("foo", i / 2)));
+				}
+			} finally {
+				destroyGetObjectsResources(data);
+			}
+		} finally {
+			ws.setResourceConfig(oldcfg);
+		}
+	}
+	
+	@Test
+	public void getObjectsConcurrentBlobReads() throws Exception {
+		final ResourceUsageConfiguration oldcfg = ws.getResourceConfig();
+		final WorkspaceUser user = new WorkspaceUser("foo");
+		final WorkspaceIdentifier wsi = new WorkspaceIdentifier("concurrentblobreads");
+		ws.createWorkspace(user, wsi.getName(), false, null, null);
+		final List<WorkspaceSaveObject> objs = new LinkedList<>();
+		for (int i = 0; i < 10; i++) {
+			// every blob is saved by two objects
+			objs.add(new WorkspaceSaveObject(new ObjectIDNoWSNoVer("obj" + i),
+					ImmutableMap.of("foo", i / 2, "bar", Arrays.asList(i / 2, "baz")),
+					SAFE_TYPE1, null, new Provenance(user), false));
+		}
+		ws.saveObjects(user, wsi, objs, getIdFactory());
+		final SubsetSelection foosub = new SubsetSelection(Arrays.asList("/foo"));
+		final SubsetSelection barsub = new SubsetSelection(Arrays.asList("/bar/1"));
+		
+		try {
+			ws.setResourceConfig(new ResourceUsageConfigurationBuilder(oldcfg)
+					.withBlobReadThreads(4).build());
+			final List<ObjIDWithRefPathAndSubset> oids = new LinkedList<>();
+			for (int i = 0; i < 10; i++) {
+				final ObjectIdentifier oi = new ObjectIdentifier(wsi, "obj" + i);
+				oids.add(new ObjIDWithRefPathAndSubset(oi, null, null));
+				oids.add(new ObjIDWithRefPathAndSubset(oi, null, i % 2 == 0 ? foosub : barsub));
+			}
+			final List<WorkspaceObjectData> data = ws.getObjects(
+					user, new LinkedList<ObjectIdentifier>(oids));
+			try {
+				for (int i = 0; i < 10; i++) {
+					assertThat("incorrect data", getData(data.get(2 * i)), is((Object)
+							ImmutableMap.of("foo", i / 2, "bar", Arrays.asList(i / 2, "baz"))));
+					assertThat("incorrect data", getData(data.get(2 * i + 1)), is((Object)
+							(i % 2 == 0 ? ImmutableMap.of("foo", i / 2) :
+								ImmutableMap.of("bar", Arrays.asList("baz")))));
+				}
+			} finally {
+				destroyGetObjectsResources(data);
+			}
+			// a failed subset extraction cleans up the concurrently read data
+			oids.add(new ObjIDWithRefPathAndSubset(new ObjectIdentifier(wsi, "obj0"), null,
+					new SubsetSelection(Arrays.asList("/bar/2"))));
+			failGetSubset(user, oids, new TypedObjectExtractionException(
+					"Invalid selection: no array element exists at position " +
+					"'2', at: /bar/2"));
+		} finally {
+			ws.setResourceConfig(oldcfg);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> getResourceGovernorStatistics() {
+		return (Map<String, Object>) ((Map<String, Object>) ws.getMetrics().getSnapshot()
+				.get("gauges")).get("workspace.resourceGovernor");
+	}
+
+	@Test
+	public void serverDataLimits() throws Exception {
+		final ResourceUsageConfiguration oldcfg = ws.getResourceConfig();
+		final WorkspaceUser user = new WorkspaceUser("foo");
+		final WorkspaceIdentifier wsi = new WorkspaceIdentifier("serverdatalimits");
+		ws.createWorkspace(user, wsi.getName(), false, null, null);
+		assertThat("incorrect statistics", getResourceGovernorStatistics(), is((Object) null));
+
+		try {
+			// too small for any object, so all data is processed on disk
+			ws.setResourceConfig(new ResourceUsageConfigurationBuilder(oldcfg)
+					.withServerDataMemoryLimit(1).build());
+			final List<WorkspaceSaveObject> objs = new LinkedList<>();
+			for (int i = 0; i < 4; i++) {
+				objs.add(new WorkspaceSaveObject(new ObjectIDNoWSNoVer("obj" + i),
+						ImmutableMap.of("foo", i, "bar", Arrays.asList(i, "baz")),
+						SAFE_TYPE1, null, new Provenance(user), false));
+			}
+			ws.saveObjects(user, wsi, objs, getIdFactory());
+			final SubsetSelection foosub = new SubsetSelection(Arrays.asList("/foo"));
+			final List<ObjectIdentifier> oids = new LinkedList<>();
+			for (int i = 0; i < 4; i++) {
+				final ObjectIdentifier oi = new ObjectIdentifier(wsi, "obj" + i);
+				oids.add(oi);
+				oids.add(new ObjIDWithRefPathAndSubset(oi, null, foosub));
+			}
+			final List<WorkspaceObjectData> data = ws.getObjects(user, oids);
+			try {
+				for (int i = 0; i < 4; i++) {
+					assertThat("incorrect data", getData(data.get(2 * i)), is((Object)
+							ImmutableMap.of("foo", i, "bar", Arrays.asList(i, "baz"))));
+					assertThat("incorrect data", getData(data.get(2 * i + 1)),
+							is((Object) ImmutableMap.of("foo", i)));
+				}
+				final Map<String, Object> stats = getResourceGovernorStatistics();
+				assertThat("incorrect mem", stats.get("memoryReserved"), is((Object) 0L));
+				assertThat("no disk reserved", (Long) stats.get("diskReserved") > 0, is(true));
+				assertThat("no shortfalls", (Long) stats.get("memoryShortfalls") > 0, is(true));
+			} finally {
+				destroyGetObjectsResources(data);
+			}
+			final Map<String, Object> stats = getResourceGovernorStatistics();
+			assertThat("incorrect mem", stats.get("memoryReserved"), is((Object) 0L));
+			assertThat("incorrect disk", stats.get("diskReserved"), is((Object) 0L));
+			assertThat("incorrect mem limit", stats.get("memoryLimit"), is((Object) 1L));
+			assertThat("incorrect disk limit", stats.get("diskLimit"),
+					is((Object) Long.MAX_VALUE));
+		} finally {
+			ws.setResourceConfig(oldcfg);
+		}
+		assertThat("incorrect statistics", getResourceGovernorStatistics(), is((Object) null));
+	}
+
+	@Test
+	public void getSubsetsCached() throws Exception {
+		final ResourceUsageConfiguration oldcfg = ws.getResourceConfig();
+		final WorkspaceUser user = new WorkspaceUser("foo");
+		final WorkspaceIdentifier wsi = new WorkspaceIdentifier("subsetcache");
+		ws.createWorkspace(user, wsi.getName(), false, null, null);
+		final Map<String, Object> data = ImmutableMap.of(
+				"map", ImmutableMap.of("a", 1, "b", 2),
+				"array", Arrays.asList(1, 2, 3));
+		// both objects share the same blob
+		ws.saveObjects(user, wsi, Arrays.asList(
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("o1"), data, SAFE_TYPE1, null,
+						new Provenance(user), false),
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("o2"), data, SAFE_TYPE1, null,
+						new Provenance(user), false)),
+				getIdFactory());
+		final ObjectIdentifier o1 = new ObjectIdentifier(wsi, "o1");
+		final ObjectIdentifier o2 = new ObjectIdentifier(wsi, "o2");
+		final SubsetSelection mapsub = new SubsetSelection(Arrays.asList("/map/a"));
+		final SubsetSelection arraysub = new SubsetSelection(Arrays.asList("/array/0"));
+		final SubsetSelection oob = new SubsetSelection(Arrays.asList("/array/3"));
+		final SubsetSelection ooblax = new SubsetSelection(
+				Arrays.asList("/array/3", "/array/1"), false, false);
+		
+		try {
+			ws.setResourceConfig(new ResourceUsageConfigurationBuilder(oldcfg)
+					.withSubsetCacheSize(100000).build());
+			for (int i = 0; i < 2; i++) {
+				final List<WorkspaceObjectData> got = ws.getObjects(user, Arrays.asList(
+						new ObjIDWithRefPathAndSubset(o1, null, mapsub),
+						new ObjIDWithRefPathAndSubset(o2, null, mapsub),
+						new ObjIDWithRefPathAndSubset(o1, null, arraysub),
+						new ObjIDWithRefPathAndSubset(o2, null, ooblax),
+						o1));
+				try {
+					assertThat("incorrect data", getData(got.get(0)),
+							is((Object) ImmutableMap.of("map", ImmutableMap.of("a", 1))));
+					assertThat("incorrect data", getData(got.get(1)),
+							is((Object) ImmutableMap.of("map", ImmutableMap.of("a", 1))));
+					assertThat("incorrect data", getData(got.get(2)),
+							is((Object) ImmutableMap.of("array", Arrays.asList(1))));
+					assertThat("incorrect data", getData(got.get(3)),
+							is((Object) ImmutableMap.of("array", Arrays.asList(2))));
+					assertThat("incorrect data", getData(got.get(4)), is((Object) data));
+				} finally {
+					destroyGetObjectsResources(got);
+				}
+				// failed extractions are never cached
+				failGetSubset(user, Arrays.asList(
+						new ObjIDWithRefPathAndSubset(o1, null, oob)),
+						new TypedObjectExtractionException(
+								"Invalid selection: no array element exists at position " +
+								"'3', at: /array/3"));
+			}
+		} finally {
+			ws.setResourceConfig(oldcfg);
+		}
+	}
+	
+	@Test
+	public void getObjectsStreamed() throws Exception {
+		final ResourceUsageConfiguration oldcfg = ws.getResourceConfig();
+		final WorkspaceUser user = new WorkspaceUser("foo");
+		final WorkspaceIdentifier wsi = new WorkspaceIdentifier("streamed");
+		ws.createWorkspace(user, wsi.getName(), false, null, null);
+		final Map<String, Object> data = ImmutableMap.of(
+				"map", ImmutableMap.of("a", 1, "b", 2),
+				"array", Arrays.asList(1, 2, 3));
+		final Map<String, Object> data2 = ImmutableMap.of(
+				"map", ImmutableMap.of("c", 3));
+		// o1 and o2 share the same blob
+		ws.saveObjects(user, wsi, Arrays.asList(
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("o1"), data, SAFE_TYPE1, null,
+						new Provenance(user), false),
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("o2"), data, SAFE_TYPE1, null,
+						new Provenance(user), false),
+				new WorkspaceSaveObject(new ObjectIDNoWSNoVer("o3"), data2, SAFE_TYPE1, null,
+						new Provenance(user), false)),
+				getIdFactory());
+		final ObjectIdentifier o1 = new ObjectIdentifier(wsi, "o1");
+		final ObjectIdentifier o2 = new ObjectIdentifier(wsi, "o2");
+		final ObjectIdentifier o3 = new ObjectIdentifier(wsi, "o3");
+		final SubsetSelection mapsub = new SubsetSelection(Arrays.asList("/map/a"));
+		
+		try {
+			ws.setResourceConfig(new ResourceUsageConfigurationBuilder(oldcfg)
+					.withStreamReturnedData(true).build());
+			// o2's blob must not be streamed since a subset is extracted from it
+			final List<WorkspaceObjectData> got = ws.getObjects(user, Arrays.asList(
+					new ObjIDWithRefPathAndSubset(o1, null, mapsub),
+					o2, o3, o3));
+			try {
+				assertThat("incorrect data", getData(got.get(0)),
+						is((Object) ImmutableMap.of("map", ImmutableMap.of("a", 1))));
+				assertThat("incorrect data", getData(got.get(1)), is((Object) data));
+				assertThat("incorrect data", getData(got.get(2)), is((Object) data2));
+				assertThat("incorrect data", getData(got.get(3)), is((Object) data2));
+				// streamed data can be read more than once
+				assertThat("incorrect data", getData(got.get(2)), is((Object) data2));
+				assertThat("incorrect size", got.get(2).getSerializedData().getSize(),
+						is(got.get(2).getObjectInfo().getSize()));
+			} finally {
+				destroyGetObjectsResources(got);
+			}
+		} finally {
+			ws.setResourceConfig(oldcfg);
+		}
+	}
+	
+	@Test
+	public void getObjectsReferenceSearchCached() throws Exception {
+		final ResourceUsageConfiguration oldcfg = ws.getResourceConfig();
+		final WorkspaceUser user1 = new WorkspaceUser("foo");
+		final WorkspaceUser user2 = new WorkspaceUser("bar");
+		final WorkspaceIdentifier target = new WorkspaceIdentifier("target");
+		final WorkspaceIdentifier head = new WorkspaceIdentifier("head");
+		ws.createWorkspace(user1, target.getName(), false, null, null);
+		ws.createWorkspace(user1, head.getName(), false, null, null);
+		final Map<String, String> meta = ImmutableMap.of("foo", "bar");
+		saveObject(user1, target, meta, meta, SAFE_TYPE1, "leaf", new Provenance(user1));
+		final Map<String, Object> data = ImmutableMap.of("refs", Arrays.asList("target/leaf"));
+		saveObject(user1, head, meta, data, REF_TYPE, "ref", new Provenance(user1));
+		final ObjectIDWithRefPath leaf = new ObjectIDWithRefPath(
+				new ObjectIdentifier(target, "leaf"));
+		final List<Reference> path1 = Arrays.asList(new Reference("2/1/1"), new Reference("1/1/1"));
+		
+		try {
+			ws.setResourceConfig(new ResourceUsageConfigurationBuilder(oldcfg)
+					.withReferenceCacheSize(1000).build());
+			// run each search twice so the second search is served from the cache
+			checkReferenceSearch(user2, leaf, null);
+			checkReferenceSearch(user2, leaf, null);
+			
+			// permission changes change the readable workspaces
+			ws.setPermissions(user1, head, Arrays.asList(user2), Permission.READ);
+			checkReferenceSearch(user2, leaf, path1);
+			checkReferenceSearch(user2, leaf, path1);
+			
+			// cached paths are checked against the object state
+			ws.setObjectsDeleted(user1, Arrays.asList(new ObjectIdentifier(head, "ref")), true);
+			checkReferenceSearch(user2, leaf, null);
+			checkReferenceSearch(user2, leaf, null);
+			
+			// new objects invalidate failed searches
+			saveObject(user1, head, meta, data, REF_TYPE, "ref2", new Provenance(user1));
+			final List<Reference> path2 = Arrays.asList(
+					new Reference("2/2/1"), new Reference("1/1/1"));
+			checkReferenceSearch(user2, leaf, path2);
+			checkReferenceSearch(user2, leaf, path2);
+			
+			// undeleting objects invalidates failed searches
+			ws.setObjectsDeleted(user1, Arrays.asList(new ObjectIdentifier(head, "ref2")), true);
+			checkReferenceSearch(user2, leaf, null);
+			ws.setObjectsDeleted(user1, Arrays.asList(new ObjectIdentifier(head, "ref")), false);
+			checkReferenceSearch(user2, leaf, path1);
+			
+			// cached paths are checked against the user's permissions
+			ws.setPermissions(user1, head, Arrays.asList(user2), Permission.NONE);
+			checkReferenceSearch(user2, leaf, null);
+			checkReferenceSearch(user2, leaf, null);
+			
+			// global read changes update the cached public workspaces
+			ws.setGlobalPermission(user1, head, Permission.READ);
+			checkReferenceSearch(user2, leaf, path1);
+			checkReferenceSearch(user2, leaf, path1);
+			ws.setGlobalPermission(user1, head, Permission.NONE);
+			checkReferenceSearch(user2, leaf, null);
+			checkReferenceSearch(user2, leaf, null);
+			
+			// deleting and undeleting workspaces update the cached public workspaces
+			ws.setGlobalPermission(user1, head, Permission.READ);
+			checkReferenceSearch(user2, leaf, path1);
+			ws.setWorkspaceDeleted(user1, head, true);
+			checkReferenceSearch(user2, leaf, null);
+			ws.setWorkspaceDeleted(user1, head, false);
+			checkReferenceSearch(user2, leaf, path1);
+			checkReferenceSearch(user2, leaf, path1);
+		} finally {
+			ws.setResourceConfig(oldcfg);
+		}
+	}
+	
+	@Test
+	public void getObjectInfoBatchedVersionQueries() throws Exception {
+		final ResourceUsageConfiguration oldcfg = ws.getResourceConfig();
+		final WorkspaceUser user = new WorkspaceUser("foo");
+		final WorkspaceIdentifier wsi1 = new WorkspaceIdentifier("batch1");
+		final WorkspaceIdentifier wsi2 = new WorkspaceIdentifier("batch2");
+		ws.createWorkspace(user, wsi1.getName(), false, null, null);
+		ws.createWorkspace(user, wsi2.getName(), false, null, null);
+		final List<ObjectIdentifier> objs = new LinkedList<>();
+		for (final WorkspaceIdentifier wsi: Arrays.asList(wsi1, wsi2)) {
+			for (int i = 1; i <= 3; i++) {
+				for (int ver = 1; ver <= i; ver++) {
+					saveObject(user, wsi, null, ImmutableMap.of("ver", ver), SAFE_TYPE1,
+							"obj" + i, new Provenance(user));
+				}
+				objs.add(new ObjectIdentifier(wsi, "obj" + i));
+				objs.add(new ObjectIdentifier(wsi, "obj" + i, 1));
+			}
+		}
+		objs.add(new ObjectIdentifier(wsi1, "obj3", 2));
+		objs.add(new ObjectIdentifier(wsi2, "obj2", 2));
+		
+		final List<ObjectInformation> expected = ws.getObjectInformation(
+				user, objs, true, false);
+		final List<ObjectInformation> expectedHistory = ws.getObjectHistory(
+				user, new ObjectIdentifier(wsi2, "obj3"));
+		assertThat("incorrect history size", expectedHistory.size(), is(3));
+		
+		try {
+			for (final ResourceUsageConfiguration cfg: Arrays.asList(
+					new ResourceUsageConfigurationBuilder(oldcfg)
+							.withVersionQueryBatchSize(1).build(),
+					new ResourceUsageConfigurationBuilder(oldcfg)
+							.withVersionQueryBatchSize(4).build(),
+					new ResourceUsageConfigurationBuilder(oldcfg)
+							.withVersionQueryBatchSize(4).withVersionQueryThreads(3).build(),
+					new ResourceUsageConfigurationBuilder(oldcfg)
+							.withVersionQueryBatchSize(1).withVersionQueryThreads(3).build())) {
+				ws.setResourceConfig(cfg);
+				assertThat("incorrect info", ws.getObjectInformation(user, objs, true, false),
+						is(expected));
+				assertThat("incorrect history", ws.getObjectHistory(
+						user, new ObjectIdentifier(wsi2, "obj3")), is(expectedHistory));
+				final List<WorkspaceObjectData> got = ws.getObjects(user, objs);
+				try {
+					for (int i = 0; i < objs.size(); i++) {
+						assertThat("incorrect info", got.get(i).getObjectInfo(),
+								is(expected.get(i)));
+						assertThat("incorrect data", getData(got.get(i)), is((Object)
+								ImmutableMap.of("ver", expected.get(i).getVersion())));
+					}
+				} finally {
+					destroyGetObjectsResources(got);
+				}
+			}
+		} finally {
+			ws.setResourceConfig(oldcfg);
+		}
+	}
+	
+	@Test
+	public void saveObjectsBulk() throws Exception {
+		// bulk saves must return the same results as saving objects one at a time
+		final ResourceUsageConfiguration oldcfg = ws.getResourceConfig();
+		final WorkspaceUser user = new WorkspaceUser("foo");
+		final WorkspaceIdentifier single = new WorkspaceIdentifier("single");
+		final WorkspaceIdentifier bulk = new WorkspaceIdentifier("bulk");
+		try {
+			final List<List<ObjectInformation>> infos = new LinkedList<>();
+			final List<Set<String>> visible = new LinkedList<>();
+			for (final WorkspaceIdentifier wsi: Arrays.asList(single, bulk)) {
+				ws.createWorkspace(user, wsi.getName(), false, null, null);
+				saveObject(user, wsi, null, ImmutableMap.of("i", 0), SAFE_TYPE1, "existing",
+						new Provenance(user));
+				ws.setResourceConfig(new ResourceUsageConfigurationBuilder(oldcfg)
+						.withBulkSaveThreshold(wsi.equals(bulk) ? 1 : 100).build());
+				final List<WorkspaceSaveObject> objs = new LinkedList<>();
+				int i = 1;
+				for (final ObjectIDNoWSNoVer o: Arrays.asList(
+						new ObjectIDNoWSNoVer("a"),
+						new ObjectIDNoWSNoVer("existing"),
+						new ObjectIDNoWSNoVer("b"),
+						new ObjectIDNoWSNoVer("a"),
+						new ObjectIDNoWSNoVer(1),
+						new ObjectIDNoWSNoVer("hidden"))) {
+					objs.add(new WorkspaceSaveObject(o, ImmutableMap.of("i", i++), SAFE_TYPE1,
+							null, new Provenance(user), o.getName().equals(Optional.of("hidden"))));
+				}
+				final List<ObjectInformation> got = ws.saveObjects(
+						user, wsi, objs, getIdFactory());
+				infos.add(got);
+				ws.setResourceConfig(oldcfg);
+				
+				final List<ObjectIdentifier> oids = new LinkedList<>();
+				for (final ObjectInformation oi: got) {
+					oids.add(new ObjectIdentifier(wsi, oi.getObjectId(), oi.getVersion()));
+				}
+				assertThat("incorrect info", ws.getObjectInformation(user, oids, false, false),
+						is(got));
+				final List<WorkspaceObjectData> data = ws.getObjects(user, oids);
+				try {
+					for (int j = 0; j < data.size(); j++) {
+						assertThat("incorrect data", getData(data.get(j)),
+								is((Object) ImmutableMap.of("i", j + 1)));
+					}
+				} finally {
+					destroyGetObjectsResources(data);
+				}
+				final Set<String> names = new HashSet<>();
+				for (final ObjectInformation oi: ws.listObjects(
+						new ListObjectsParameters(user, Arrays.asList(wsi)))) {
+					names.add(oi.getObjectName() + "/" + oi.getVersion());
+				}
+				visible.add(names);
+			}
+			final List<String> expected = Arrays.asList(
+					"2 a 1", "1 existing 2", "3 b 1", "2 a 2", "1 existing 3", "4 hidden 1");
+			for (final List<ObjectInformation> got: infos) {
+				final List<String> summary = new LinkedList<>();
+				for (final ObjectInformation oi: got) {
+					summary.add(oi.getObjectId() + " " + oi.getObjectName() + " " +
+							oi.getVersion());
+				}
+				assertThat("incorrect objects", summary, is(expected));
+			}
+			assertThat("incorrect visible objects", visible.get(1), is(visible.get(0)));
+			assertThat("incorrect visible objects", visible.get(0),
+					is((Set<String>) new HashSet<>(Arrays.asList("a/2", "existing/3", "b/1"))));
+		} finally {
+			ws.setResourceConfig(oldcfg);
+		}
+	}
+	
+	private void checkReferenceSearch(
+			final WorkspaceUser user,
+			final ObjectIdentifier obj,
+			final List<Reference> expectedPath)
+			throws Exception {
+		final ObjectInformation info = ws.getObjectInformation(
+				user, Arrays.asList(obj), false, true).get(0);
+		if (expectedPath == null) {
+			assertThat("expected inaccessible object", info, is((ObjectInformation) null));
+		} else {
+			assertThat("incorrect path", info.getReferencePath(), is(expectedPath));
+		}
+	}
+	
+	private void checkConcurrentSaveFailure(
+			final WorkspaceUser user,
+			final WorkspaceIdentifier wsi,
+			final List<WorkspaceSaveObject> objects,
+			final ResourceUsageConfiguration serialcfg,
+			final ResourceUsageConfiguration concurrentcfg)
+			throws Exception {
+		ws.setResourceConfig(serialcfg);
+		Exception expected = null;
+		try {
+			ws.saveObjects(user, wsi, objects, getIdFactory());
+			fail("Saved bad objects");
+		} catch (TypedObjectValidationException e) {
+			expected = e;
+		}
+		ws.setResourceConfig(concurrentcfg);
+		failSave(user, wsi, objects, expected);
+	}
+	
 	@Test
 	public void metadataExtractedLargeTest() throws Exception {
 		//make sure all temporary files are deleted when errors occur here
@@ -6751,6 +7324,140 @@ public class WorkspaceTest extends WorkspaceTester {
 		checkObjectLimit(user, wsi, 60, 251, 300);
 	}
 	
+	@Test
+	public void listObjectsAllVersionsLimit() throws Exception {
+		/* Test the limit parameter when listing all versions of objects,
+		 * including when the versions span more than one round of retrieving
+		 * objects from mongo.
+		 */
+		final WorkspaceUser user = new WorkspaceUser("allverlimitUser");
+		final WorkspaceIdentifier wsi = new WorkspaceIdentifier("allverlimit");
+		ws.createWorkspace(user, wsi.getName(), false, null, null);
+		
+		final List<WorkspaceSaveObject> objs = new LinkedList<WorkspaceSaveObject>();
+		for (int i = 1; i < 151; i++) {
+			objs.add(new WorkspaceSaveObject(new ObjectIDNoWSNoVer("obj" + i),
+					new HashMap<String, String>(), SAFE_TYPE1, null, new Provenance(user),
+					false));
+		}
+		ws.saveObjects(user, wsi, objs, new IdReferenceHandlerSetFactory(0));
+		ws.saveObjects(user, wsi, objs, new IdReferenceHandlerSetFactory(0));
+		
+		final List<ObjectIdentifier> hidden = new LinkedList<ObjectIdentifier>();
+		for (int i = 1; i < 60; i += 2) {
+			hidden.add(new ObjectIdentifier(wsi, i));
+		}
+		ws.setObjectsHidden(user, hidden, true);
+		ws.setObjectsDeleted(user, Arrays.asList(new ObjectIdentifier(wsi, 100)), true);
+		
+		final List<String> expected = new LinkedList<>();
+		for (int i = 1; i < 151; i++) {
+			if ((i < 60 && i % 2 == 1) || i == 100) {
+				continue;
+			}
+			expected.add(i + "/2");
+			expected.add(i + "/1");
+		}
+		assertThat("incorrect expected size", expected.size(), is(238));
+		
+		for (final int limit: Arrays.asList(1, 3, 150, 237, 238, 300)) {
+			final List<String> got = new LinkedList<>();
+			for (final ObjectInformation oi: ws.listObjects(
+					new ListObjectsParameters(user, Arrays.asList(wsi))
+					.withShowAllVersions(true).withLimit(limit))) {
+				got.add(oi.getObjectId() + "/" + oi.getVersion());
+			}
+			assertThat("incorrect objects for limit " + limit, got,
+					is(expected.subList(0, Math.min(limit, expected.size()))));
+		}
+	}
+	
+	@Test
+	public void listObjectsStartAfter() throws Exception {
+		/* Test paging through objects by starting each page after the last object
+		 * returned in the previous page.
+		 */
+		final WorkspaceUser user = new WorkspaceUser("startafterUser");
+		final WorkspaceIdentifier wsi1 = new WorkspaceIdentifier("startafter1");
+		final WorkspaceIdentifier wsi2 = new WorkspaceIdentifier("startafter2");
+		final long wsid1 = ws.createWorkspace(user, wsi1.getName(), false, null, null).getId();
+		ws.createWorkspace(user, wsi2.getName(), false, null, null);
+		
+		final List<WorkspaceSaveObject> objs = new LinkedList<WorkspaceSaveObject>();
+		for (int i = 1; i < 8; i++) {
+			objs.add(new WorkspaceSaveObject(new ObjectIDNoWSNoVer("obj" + i),
+					new HashMap<String, String>(), SAFE_TYPE1, null, new Provenance(user),
+					false));
+		}
+		for (final WorkspaceIdentifier wsi: Arrays.asList(wsi1, wsi2)) {
+			ws.saveObjects(user, wsi, objs, new IdReferenceHandlerSetFactory(0));
+			ws.saveObjects(user, wsi, objs.subList(2, 5), new IdReferenceHandlerSetFactory(0));
+		}
+		ws.setObjectsHidden(user, Arrays.asList(new ObjectIdentifier(wsi1, 4)), true);
+		
+		for (final boolean allVers: Arrays.asList(true, false)) {
+			final List<ObjectInformation> expected = ws.listObjects(
+					new ListObjectsParameters(user, Arrays.asList(wsi1, wsi2))
+					.withShowAllVersions(allVers));
+			assertThat("incorrect object count", expected.size(), is(allVers ? 18 : 13));
+			for (final int limit: Arrays.asList(1, 2, 3, 5)) {
+				final List<ObjectInformation> got = new LinkedList<>();
+				Reference start = null;
+				while (true) {
+					final List<ObjectInformation> page = ws.listObjects(
+							new ListObjectsParameters(user, Arrays.asList(wsi1, wsi2))
+							.withShowAllVersions(allVers)
+							.withLimit(limit)
+							.withStartAfter(start));
+					assertTrue("page too large", page.size() <= limit);
+					if (page.isEmpty()) {
+						break;
+					}
+					got.addAll(page);
+					final ObjectInformation last = page.get(page.size() - 1);
+					start = new Reference(last.getWorkspaceId(), last.getObjectId(),
+							last.getVersion());
+				}
+				assertThat("incorrect paged objects for limit " + limit, got, is(expected));
+			}
+		}
+		
+		// object ID filters can be combined with the start reference
+		final List<String> got = new LinkedList<>();
+		for (final ObjectInformation oi: ws.listObjects(
+				new ListObjectsParameters(user, Arrays.asList(wsi1, wsi2))
+				.withShowAllVersions(true)
+				.withMinObjectID(2)
+				.withMaxObjectID(3)
+				.withStartAfter(new Reference(wsid1, 3, 2)))) {
+			got.add(oi.getObjectId() + "/" + oi.getVersion());
+		}
+		assertThat("incorrect objects", got, is(Arrays.asList("3/1", "2/1", "3/2", "3/1")));
+		
+		try {
+			ws.listObjects(new ListObjectsParameters(user, Arrays.asList(wsi1))
+					.withSavers(Arrays.asList(user))
+					.withStartAfter(new Reference(wsid1, 3, 2)));
+			fail("expected exception");
+		} catch (Exception e) {
+			TestCommon.assertExceptionCorrect(e, new IllegalArgumentException(
+					"The start after reference cannot be used with the type, savers, " +
+					"metadata, after, or before filters. Filters set: savers"));
+		}
+		
+		try {
+			ws.listObjects(new ListObjectsParameters(user, Arrays.asList(wsi1))
+					.withMetadata(new WorkspaceUserMetadata(ImmutableMap.of("a", "b")))
+					.withBefore(new Date())
+					.withStartAfter(new Reference(wsid1, 3, 2)));
+			fail("expected exception");
+		} catch (Exception e) {
+			TestCommon.assertExceptionCorrect(e, new IllegalArgumentException(
+					"The start after reference cannot be used with the type, savers, " +
+					"metadata, after, or before filters. Filters set: metadata, before"));
+		}
+	}
+	
 	private Set<Long> nums(Integer... nums) {
 		Set<Long> ret = new HashSet<Long>();
 		for (int i = 0; i < nums.length; i++) {
@@ -0,0 +1,143 @@
+package performance;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.nocrala.tools.texttablefmt.Table;
+
+import com.google.common.collect.ImmutableMap;
+import com.mongodb.DB;
+
+import us.kbase.common.mongo.GetMongoDB;
+import us.kbase.common.test.TestCommon;
+import us.kbase.typedobj.core.LocalTypeProvider;
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.typedobj.core.TypeDefId;
+import us.kbase.typedobj.core.TypeDefName;
+import us.kbase.typedobj.core.TypedObjectValidator;
+import us.kbase.typedobj.db.MongoTypeStorage;
+import us.kbase.typedobj.db.TypeDefinitionDB;
+import us.kbase.typedobj.idref.IdReferenceHandlerSetFactory;
+import us.kbase.workspace.database.ObjectIDNoWSNoVer;
+import us.kbase.workspace.database.ObjectIdentifier;
+import us.kbase.workspace.database.Provenance;
+import us.kbase.workspace.database.ResourceUsageConfigurationBuilder;
+import us.kbase.workspace.database.ResourceUsageConfigurationBuilder.ResourceUsageConfiguration;
+import us.kbase.workspace.database.Types;
+import us.kbase.workspace.database.Workspace;
+import us.kbase.workspace.database.WorkspaceIdentifier;
+import us.kbase.workspace.database.WorkspaceSaveObject;
+import us.kbase.workspace.database.WorkspaceUser;
+import us.kbase.workspace.database.mongo.GridFSBlobStore;
+import us.kbase.workspace.database.mongo.MongoWorkspaceDB;
+
+/** Compares the speed of retrieving object information for many objects with the version
+ * queries run sequentially (one query per object), as a single $or query, and as chunked
+ * $or queries run concurrently.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class QueryVersionsSpeedTest {
+
+	private static final String MONGO_HOST = "localhost";
+	private static final String WS_DB = "queryVersionsSpeedTest"; // this will get wiped out
+	private static final String TYPE_DB = "queryVersionsSpeedTestTypes"; // this too
+	private static final String MODULE = "QueryVersionsSpeedTest";
+	private static final String TYPE = "Obj";
+	private static final int OBJECTS = 10000;
+	private static final int SAVE_BATCH = 1000;
+	private static final int REPS = 10;
+
+	public static void main(final String[] args) throws Exception {
+		final DB db = GetMongoDB.getDB(MONGO_HOST, WS_DB);
+		final DB typedb = GetMongoDB.getDB(MONGO_HOST, TYPE_DB);
+		db.dropDatabase();
+		typedb.dropDatabase();
+		final TempFilesManager tfm = new TempFilesManager(new File(TestCommon.getTempDir()));
+		final TypeDefinitionDB typeDefDB = new TypeDefinitionDB(new MongoTypeStorage(typedb));
+		final TypedObjectValidator val = new TypedObjectValidator(
+				new LocalTypeProvider(typeDefDB));
+		final MongoWorkspaceDB mwdb = new MongoWorkspaceDB(db, new GridFSBlobStore(db), tfm);
+		final ResourceUsageConfiguration basecfg = new ResourceUsageConfigurationBuilder().build();
+		final Workspace ws = new Workspace(mwdb, basecfg, val);
+		final Types types = new Types(typeDefDB);
+
+		final WorkspaceUser user = new WorkspaceUser("foo");
+		types.requestModuleRegistration(user, MODULE);
+		types.resolveModuleRegistration(MODULE, true);
+		types.compileNewTypeSpec(user,
+				"module " + MODULE + " {typedef structure {int i;} " + TYPE + ";};",
+				Arrays.asList(TYPE), null, null, false, null);
+		types.releaseTypes(user, MODULE);
+		final TypeDefId td = new TypeDefId(new TypeDefName(MODULE, TYPE));
+
+		final WorkspaceIdentifier wsi = new WorkspaceIdentifier("versions");
+		ws.createWorkspace(user, wsi.getName(), false, null, null);
+		final List<ObjectIdentifier> objs = new ArrayList<>();
+		for (int i = 0; i < OBJECTS; i += SAVE_BATCH) {
+			final List<WorkspaceSaveObject> save = new LinkedList<>();
+			for (int j = i; j < i + SAVE_BATCH; j++) {
+				final Map<String, Object> data = ImmutableMap.of("i", j);
+				save.add(new WorkspaceSaveObject(new ObjectIDNoWSNoVer("obj" + j), data, td,
+						null, new Provenance(user), false));
+				objs.add(new ObjectIdentifier(wsi, j + 1, 1));
+			}
+			ws.saveObjects(user, wsi, save, new IdReferenceHandlerSetFactory(1));
+		}
+
+		final List<PerformanceMeasurement> pms = new LinkedList<>();
+		pms.add(measure(ws, user, objs, "Sequential",
+				new ResourceUsageConfigurationBuilder(basecfg)
+						.withVersionQueryBatchSize(1).build()));
+		pms.add(measure(ws, user, objs, "Single $or",
+				new ResourceUsageConfigurationBuilder(basecfg)
+						.withVersionQueryBatchSize(OBJECTS).build()));
+		for (final int batch: Arrays.asList(100, 1000)) {
+			for (final int threads: Arrays.asList(1, 4, 8)) {
+				pms.add(measure(ws, user, objs,
+						String.format("Chunked $or, batch %s, threads %s", batch, threads),
+						new ResourceUsageConfigurationBuilder(basecfg)
+								.withVersionQueryBatchSize(batch)
+								.withVersionQueryThreads(threads).build()));
+			}
+		}
+		renderResults(pms);
+	}
+
+	private static PerformanceMeasurement measure(
+			final Workspace ws,
+			final WorkspaceUser user,
+			final List<ObjectIdentifier> objs,
+			final String name,
+			final ResourceUsageConfiguration cfg)
+			throws Exception {
+		ws.setResourceConfig(cfg);
+		ws.getObjectInformation(user, objs, false, false); // warm up
+		final List<Long> times = new LinkedList<>();
+		for (int i = 0; i < REPS; i++) {
+			final long start = System.nanoTime();
+			ws.getObjectInformation(user, objs, false, false);
+			times.add(System.nanoTime() - start);
+		}
+		return new PerformanceMeasurement(times, name);
+	}
+
+	private static void renderResults(final List<PerformanceMeasurement> pms) {
+		final Table tbl = new Table(4);
+		tbl.addCell("Strategy");
+		tbl.addCell("N");
+		tbl.addCell("Mean time (s)");
+		tbl.addCell("Std dev (s)");
+		for (final PerformanceMeasurement pm: pms) {
+			tbl.addCell(pm.getName());
+			tbl.addCell("" + pm.getN());
+			tbl.addCell(String.format("%,.4f", pm.getAverageInSec()));
+			tbl.addCell(String.format("%,.4f", pm.getStdDevInSec()));
+		}
+		System.out.println(tbl.render());
+	}
+}
@@ -0,0 +1,70 @@
+package sorting;
+
+import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import us.kbase.auth.AuthConfig;
+import us.kbase.auth.AuthToken;
+import us.kbase.auth.ConfigurableAuthService;
+import us.kbase.workspace.ListObjectsParams;
+import us.kbase.workspace.WorkspaceClient;
+
+/** Time list_objects calls against the data loaded by {@link LoadSortData}. Run before and
+ * after changing how list_objects queries mongo to compare performance.
+ * @author gaprice@lbl.gov
+ *
+ */
+public class TimeListObjects {
+
+	private static final String WS_NAME = "sorttest3";
+	private static final String WS_URL = "http://localhost:20000";
+	private static final String AUTH_URL = "https://ci.kbase.us/services/auth/api/legacy/KBase";
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) throws Exception {
+		final ConfigurableAuthService auth = new ConfigurableAuthService(new AuthConfig()
+				.withKBaseAuthServerURL(new URL(AUTH_URL)));
+		final AuthToken token = auth.validateToken(args[0]);
+		final WorkspaceClient ws = new WorkspaceClient(new URL(WS_URL), token);
+		ws.setIsInsecureHttpConnectionAllowed(true);
+
+		time(ws, "latest versions", new ListObjectsParams()
+				.withWorkspaces(Arrays.asList(WS_NAME)));
+		time(ws, "all versions", new ListObjectsParams()
+				.withWorkspaces(Arrays.asList(WS_NAME))
+				.withShowAllVersions(1L));
+		time(ws, "all versions, limit 10", new ListObjectsParams()
+				.withWorkspaces(Arrays.asList(WS_NAME))
+				.withShowAllVersions(1L)
+				.withLimit(10L));
+		time(ws, "all versions, object IDs 40-60", new ListObjectsParams()
+				.withWorkspaces(Arrays.asList(WS_NAME))
+				.withShowAllVersions(1L)
+				.withMinObjectID(40L)
+				.withMaxObjectID(60L));
+	}
+
+	private static void time(
+			final WorkspaceClient ws,
+			final String name,
+			final ListObjectsParams params)
+			throws Exception {
+		Duration best = null;
+		int count = -1;
+		for (int i = 0; i < RUNS; i++) {
+			final Instant start = Instant.now();
+			final List<?> objs = ws.listObjects(params);
+			final Duration d = Duration.between(start, Instant.now());
+			count = objs.size();
+			if (best == null || d.compareTo(best) < 0) {
+				best = d;
+			}
+		}
+		System.out.println(String.format("%s: %s objects, best of %s: %s ms",
+				name, count, RUNS, best.toMillis()));
+	}
+
+}
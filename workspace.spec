@@ -1234,6 +1234,7 @@ module Workspace {
 	
 	/*
 		List workspaces viewable by the user.
+		The results are not paged; all matching workspaces are returned.
 	 */
 	funcdef list_workspace_info(ListWorkspaceInfoParams params)
 		returns(list<workspace_info> wsinfo) authentication optional;
@@ -1361,6 +1362,16 @@ module Workspace {
 			parameter only has an effect when filtering by types alone.
 		int limit - limit the output to X objects. Default and maximum value
 			is 10000. Limit values < 1 are treated as 10000, the default.
+		obj_ref startafter - only return objects after this reference, which
+			must be of the form X/Y/Z, where X is the workspace ID, Y the object
+			ID, and Z the version. Objects are returned in order of workspace
+			ID, object ID, and version descending. To page through objects,
+			set startafter to the reference of the last object returned by
+			the previous call. startafter is a plain object reference rather
+			than an opaque paging token. It cannot be used with the type,
+			savedby, meta, after, before, after_epoch, or before_epoch
+			filters, since the results are not sorted when those filters are
+			set, and the error returned names the filters that conflict.
 		
 	*/
 	typedef structure {
@@ -1383,6 +1394,7 @@ module Workspace {
 		boolean includeMetadata;
 		boolean excludeGlobal;
 		int limit;
+		obj_ref startafter;
 	} ListObjectsParams;
 	
 	/*